@@ -2,6 +2,7 @@ package io.vproxy.app.app;
 
 import io.vproxy.base.util.exception.AlreadyExistException;
 import io.vproxy.base.util.exception.NotFoundException;
+import io.vproxy.base.util.ringbuffer.ssl.SSLContextHolder;
 import io.vproxy.component.ssl.CertKey;
 import io.vproxy.util.CoreUtils;
 
@@ -39,5 +40,7 @@ public class CertKeyHolder {
         if (ck == null) {
             throw new NotFoundException("cert-key", alias);
         }
+        // the stats are shared by all contexts built from the cert-key, which are not used anymore
+        SSLContextHolder.removeSessionStats(alias);
     }
 }
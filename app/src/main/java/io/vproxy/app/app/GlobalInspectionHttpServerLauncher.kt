@@ -37,6 +37,7 @@ class GlobalInspectionHttpServerLauncher private constructor() {
       it.conn.response(200).send(data)
     }
     app.get("/jstack") { it.conn.response(200).send(io.vproxy.base.GlobalInspection.getInstance().stackTraces) }
+    app.get("/eventloops") { it.conn.response(200).send(io.vproxy.base.GlobalInspection.getInstance().eventLoopInspection) }
 
     loop!!.launch {
       app.start()
@@ -40,5 +40,6 @@ public class SecurityGroupHolder {
         SecurityGroup g = map.remove(alias);
         if (g == null)
             throw new NotFoundException("security-group", alias);
+        g.destroy();
     }
 }
@@ -69,13 +69,16 @@ public class ServerAddressUpdater implements ResolveListener {
                 continue;
             }
 
-            List<ServerGroup.ServerHandle> handles = grp.getServerHandles();
-            for (ServerGroup.ServerHandle h : handles) {
-                // host name matches, and the address is not in new record
-                if (host.equals(/*may be null*/h.hostName) && !addresses.contains(h.server.getAddress())) {
-                    doReplace(grp, c, h);
+            // replace all addresses of the group in one batch
+            grp.update(g -> {
+                List<ServerGroup.ServerHandle> handles = g.getServerHandles();
+                for (ServerGroup.ServerHandle h : handles) {
+                    // host name matches, and the address is not in new record
+                    if (host.equals(/*may be null*/h.hostName) && !addresses.contains(h.server.getAddress())) {
+                        doReplace(g, c, h);
+                    }
                 }
-            }
+            });
         }
     }
 
@@ -110,13 +113,16 @@ public class ServerAddressUpdater implements ResolveListener {
                 continue;
             }
 
-            List<ServerGroup.ServerHandle> handles = grp.getServerHandles();
-            for (ServerGroup.ServerHandle h : handles) {
-                // host name matches, and the address is missing
-                if (host.equals(/*may be null*/h.hostName) && missing.contains(h.server.getAddress())) {
-                    doReplace(grp, c, h);
+            // replace all addresses of the group in one batch
+            grp.update(g -> {
+                List<ServerGroup.ServerHandle> handles = g.getServerHandles();
+                for (ServerGroup.ServerHandle h : handles) {
+                    // host name matches, and the address is missing
+                    if (host.equals(/*may be null*/h.hostName) && missing.contains(h.server.getAddress())) {
+                        doReplace(g, c, h);
+                    }
                 }
-            }
+            });
         }
     }
 
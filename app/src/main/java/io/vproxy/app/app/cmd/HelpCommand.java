@@ -742,7 +742,7 @@ public class HelpCommand {
                         new ResActParamMan(ParamMan.up, "set server status to UP after succeeded for `${up}` times"),
                         new ResActParamMan(ParamMan.down, "set server status to DOWN after failed for `${down}` times"),
                         new ResActParamMan(ParamMan.protocol, "the protocol used for checking the servers, you may choose `tcp`, `none`", "tcp"),
-                        new ResActParamMan(ParamMan.method, "loadbalancing algorithm, you can choose `wrr`, `wlc`, `source`", "wrr"),
+                        new ResActParamMan(ParamMan.method, "loadbalancing algorithm, you can choose `wrr`, `wlc`, `source`, `maglev`, `ketama`, `p2c`", "wrr"),
                         new ResActParamMan(ParamMan.annotations, "extra info for the server-group, such as host info, health check url. Must be a json and values must be strings", "{}"),
                         new ResActParamMan(ParamMan.eventloopgroup, "choose a event-loop-group for the server group. health check operations will be performed on the event loop group", Application.DEFAULT_CONTROL_EVENT_LOOP_GROUP_NAME)
                     ),
@@ -797,7 +797,7 @@ public class HelpCommand {
                         new ResActParamMan(ParamMan.down, "set server status to DOWN after failed for `${down}` times", "not changed"),
                         new ResActParamMan(ParamMan.protocol, "the protocol used for checking the servers, you may choose `tcp`, `none`. " +
                             "Note: this field will be set to `tcp` as default when updating other hc options", "not changed"),
-                        new ResActParamMan(ParamMan.method, "loadbalancing algorithm, you can choose `wrr`, `wlc`, `source`", "not changed"),
+                        new ResActParamMan(ParamMan.method, "loadbalancing algorithm, you can choose `wrr`, `wlc`, `source`, `maglev`, `ketama`, `p2c`", "not changed"),
                         new ResActParamMan(ParamMan.weight, "the weight of group in the upstream resource (only available for server-group in upstream)", "not changed"),
                         new ResActParamMan(ParamMan.annotations, "annotation of the group itself, or the group in the upstream", "not changed")
                     ),
@@ -878,7 +878,7 @@ public class HelpCommand {
                 new ResActMan(ActMan.addto, "specify name, remote ip:port, weight, and attach the server into the server group",
                     Arrays.asList(
                         new ResActParamMan(ParamMan.address, "remote address, ip:port"),
-                        new ResActParamMan(ParamMan.weight, "weight of the server, which will be used by wrr, wlc and source algorithm", "10")
+                        new ResActParamMan(ParamMan.weight, "weight of the server, which will be used by wrr, wlc, source, maglev, ketama and p2c algorithm", "10")
                     ),
                     Collections.singletonList(
                         new Tuple<>(
@@ -904,7 +904,7 @@ public class HelpCommand {
                     )),
                 new ResActMan(ActMan.update, "change weight of the server",
                     Collections.singletonList(
-                        new ResActParamMan(ParamMan.weight, "weight of the server, which will be used by wrr, wlc and source algorithm", "not changed")
+                        new ResActParamMan(ParamMan.weight, "weight of the server, which will be used by wrr, wlc, source, maglev, ketama and p2c algorithm", "not changed")
                     ),
                     Collections.singletonList(
                         new Tuple<>(
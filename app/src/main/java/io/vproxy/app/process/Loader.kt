@@ -1,7 +1,11 @@
 package io.vproxy.app.process
 
+import io.vproxy.app.app.cmd.Action
 import io.vproxy.app.app.cmd.ModuleCommands
+import io.vproxy.app.app.cmd.ResourceType
 import io.vproxy.app.app.cmd.SystemCommands
+import io.vproxy.app.app.cmd.handle.resource.ServerGroupHandle
+import io.vproxy.base.component.svrgroup.ServerGroup
 import io.vproxy.lib.common.awaitCallback
 import io.vproxy.lib.common.defaultCoroutineEventLoop
 import io.vproxy.lib.common.launch
@@ -15,18 +19,25 @@ object Loader {
       io.vproxy.base.selector.SelectorEventLoop.current()
     }
     loop.launch {
+      // servers added to the same group are committed in one batch
+      // so that the group doesn't rebuild its balancing fields for every single server
+      val batching = LinkedHashSet<ServerGroup>()
       try {
-        loadCommandsAsync(filepath)
+        loadCommandsAsync(filepath, batching)
       } catch (t: Throwable) {
         cb.failed(t)
         return@launch
+      } finally {
+        for (sg in batching) {
+          sg.commit()
+        }
       }
       cb.succeeded("")
     }
   }
 
   @Suppress("BlockingMethodInNonBlockingContext")
-  private suspend fun loadCommandsAsync(filepathx: String) {
+  private suspend fun loadCommandsAsync(filepathx: String, batching: MutableSet<ServerGroup>) {
     val filepath = io.vproxy.base.util.Utils.filename(filepathx)
     val f = File(filepath)
     val fis = FileInputStream(f)
@@ -52,7 +63,7 @@ object Loader {
         if (subline.startsWith("load ")) {
           val file = subline.substring("load ".length).trim()
           io.vproxy.base.util.Logger.alert("loading more commands from $file")
-          loadCommandsAsync(file)
+          loadCommandsAsync(file, batching)
           continue
         } else if (subline.startsWith("exec ")) {
           val filename = subline.substring("exec ".length).trim()
@@ -81,10 +92,30 @@ object Loader {
         throw e
       }
       assert(io.vproxy.base.util.Logger.lowLevelDebug(io.vproxy.base.util.LogType.ALERT.toString() + " - " + cmd))
+      beginBatchForServerAdding(cmd, batching)
       executeCommand(isSystemCommand, cmd)
     }
   }
 
+  private fun beginBatchForServerAdding(cmd: io.vproxy.app.app.cmd.Command, batching: MutableSet<ServerGroup>) {
+    if (cmd.action != Action.add || cmd.resource?.type != ResourceType.svr) {
+      return
+    }
+    val sgRes = cmd.prepositionResource ?: return
+    if (sgRes.type != ResourceType.sg) {
+      return
+    }
+    val sg = try {
+      ServerGroupHandle.get(sgRes)
+    } catch (e: Exception) {
+      // let the command itself report the error
+      return
+    }
+    if (batching.add(sg)) {
+      sg.beginUpdate()
+    }
+  }
+
   private suspend fun executeCommand(isSystemCommand: Boolean, cmd: io.vproxy.app.app.cmd.Command) {
     if (isSystemCommand) {
       io.vproxy.base.util.Logger.alert("loading command: System: $cmd")
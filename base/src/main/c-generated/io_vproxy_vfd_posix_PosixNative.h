@@ -17,6 +17,7 @@ extern "C" {
 #include "io_vproxy_vfd_posix_SocketAddressUDSST.h"
 #include "io_vproxy_vfd_posix_UDPRecvResultIPv4ST.h"
 #include "io_vproxy_vfd_posix_UDPRecvResultIPv6ST.h"
+#include "io_vproxy_vfd_posix_UDPRecvResultIPv6BinST.h"
 #include "io_vproxy_vfd_posix_TapInfoST.h"
 
 #ifdef __cplusplus
@@ -50,11 +51,11 @@ JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_createIPv4UdpFD(PNIEn
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_createIPv6UdpFD(PNIEnv_int * env);
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_createUnixDomainSocketFD(PNIEnv_int * env);
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_bindIPv4(PNIEnv_void * env, int32_t fd, int32_t addrHostOrder, int32_t port);
-JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_bindIPv6(PNIEnv_void * env, int32_t fd, char * fullAddr, int32_t port);
+JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_bindIPv6(PNIEnv_void * env, int32_t fd, int32_t addr0, int32_t addr1, int32_t addr2, int32_t addr3, int32_t port);
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_bindUnixDomainSocket(PNIEnv_void * env, int32_t fd, char * path);
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_accept(PNIEnv_int * env, int32_t fd);
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_connectIPv4(PNIEnv_void * env, int32_t fd, int32_t addrHostOrder, int32_t port);
-JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_connectIPv6(PNIEnv_void * env, int32_t fd, char * fullAddr, int32_t port);
+JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_connectIPv6(PNIEnv_void * env, int32_t fd, int32_t addr0, int32_t addr1, int32_t addr2, int32_t addr3, int32_t port);
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_connectUDS(PNIEnv_void * env, int32_t fd, char * sock);
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_finishConnect(PNIEnv_void * env, int32_t fd);
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_shutdownOutput(PNIEnv_void * env, int32_t fd);
@@ -67,10 +68,17 @@ JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_getUDSRemote(PNIEnv_S
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_read(PNIEnv_int * env, int32_t fd, void * directBuffer, int32_t off, int32_t len);
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_readBlocking(PNIEnv_int * env, int32_t fd, void * directBuffer, int32_t off, int32_t len);
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_write(PNIEnv_int * env, int32_t fd, void * directBuffer, int32_t off, int32_t len);
+JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_readv(PNIEnv_int * env, int32_t fd, void * iov, int32_t iovcnt);
+JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_writev(PNIEnv_int * env, int32_t fd, void * iov, int32_t iovcnt);
+JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_pipe2(PNIEnv_void * env, PNIBuf_int * fds);
+JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_splice(PNIEnv_int * env, int32_t fdIn, int32_t fdOut, int32_t len);
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_sendtoIPv4(PNIEnv_int * env, int32_t fd, void * directBuffer, int32_t off, int32_t len, int32_t addrHostOrder, int32_t port);
-JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_sendtoIPv6(PNIEnv_int * env, int32_t fd, void * directBuffer, int32_t off, int32_t len, char * fullAddr, int32_t port);
+JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_sendtoIPv6(PNIEnv_int * env, int32_t fd, void * directBuffer, int32_t off, int32_t len, int32_t addr0, int32_t addr1, int32_t addr2, int32_t addr3, int32_t port);
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_recvfromIPv4(PNIEnv_UDPRecvResultIPv4_st * env, int32_t fd, void * directBuffer, int32_t off, int32_t len, UDPRecvResultIPv4_st * return_);
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_recvfromIPv6(PNIEnv_UDPRecvResultIPv6_st * env, int32_t fd, void * directBuffer, int32_t off, int32_t len, UDPRecvResultIPv6_st * return_);
+JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_recvfromIPv6Bin(PNIEnv_bool * env, int32_t fd, void * directBuffer, int32_t off, int32_t len, UDPRecvResultIPv6Bin_st * result);
+JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_recvmmsg(PNIEnv_int * env, int32_t fd, void * directBuffer, int32_t headroom, int32_t slotLen, void * meta, int32_t vlen, uint8_t ipv4);
+JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_sendmmsg(PNIEnv_int * env, int32_t fd, void * directBuffer, int32_t headroom, int32_t slotLen, void * meta, int32_t vlen, uint8_t ipv4);
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_currentTimeMillis(PNIEnv_long * env);
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_tapNonBlockingSupported(PNIEnv_bool * env);
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_tunNonBlockingSupported(PNIEnv_bool * env);
@@ -82,4 +90,4 @@ JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_setCoreAffinityForCur
 #endif
 #endif // _Included_io_vproxy_vfd_posix_PosixNative
 // metadata.generator-version: pni 21.0.0.17
-// sha256:1e84eb47f36e590566f1bbbf692bdba8e228a6ba2a5900b4e62f016ecfb9a38b
+// sha256:156bf4bfe3e061c93658d0d4b2c9233c9e8a82de33996f32c886f26158598bee
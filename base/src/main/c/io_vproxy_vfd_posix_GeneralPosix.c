@@ -6,6 +6,13 @@
 #include "io_vproxy_vfd_posix_PosixNative.h"
 #include "exception.h"
 
+#ifndef _WIN32
+#include <sys/uio.h>
+#ifdef __linux__
+#include <poll.h>
+#endif
+#endif
+
 #define LISTEN_BACKLOG 512
 
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_aeReadable
@@ -388,29 +395,25 @@ JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_bindIPv4
     return 0;
 }
 
-int j2cSockAddrIPv6(v_sockaddr_in6* name, char* fullAddrCharArray, uint16_t port) {
+void j2cSockAddrIPv6(v_sockaddr_in6* name, int32_t addr0, int32_t addr1, int32_t addr2, int32_t addr3, uint16_t port) {
     v_memset(name, 0, sizeof(v_sockaddr_in6));
     name->sin6_family = AF_INET6;
     name->sin6_port = htons(port);
-#ifdef _WIN32
-    int size = sizeof(v_sockaddr_in6);
-    int res = WSAStringToAddress(fullAddrCharArray, V_AF_INET6, NULL,
-                                 (LPSOCKADDR)name, &size);
-#else
-    int res = v_inet_pton(V_AF_INET6, fullAddrCharArray, &(name->sin6_addr.s6_addr));
-#endif
-    return res;
+    // each int holds 4 bytes of the address in host byte order
+    uint32_t addr[4];
+    addr[0] = v_htonl((uint32_t) addr0);
+    addr[1] = v_htonl((uint32_t) addr1);
+    addr[2] = v_htonl((uint32_t) addr2);
+    addr[3] = v_htonl((uint32_t) addr3);
+    v_memcpy(&(name->sin6_addr), addr, 16);
 }
 
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_bindIPv6
-  (PNIEnv_void* env, int32_t fd, char* fullAddr, int32_t port) {
+  (PNIEnv_void* env, int32_t fd, int32_t addr0, int32_t addr1, int32_t addr2, int32_t addr3, int32_t port) {
     v_sockaddr_in6 name;
-    int res = j2cSockAddrIPv6(&name, fullAddr, port);
-    if (res < 0) {
-        return throwIOExceptionBasedOnErrno(env);
-    }
+    j2cSockAddrIPv6(&name, addr0, addr1, addr2, addr3, port);
     int reuseaddr = 1;
-    res = v_setsockopt(fd, V_SOL_SOCKET, V_SO_REUSEADDR, (void*)&reuseaddr, sizeof(int));
+    int res = v_setsockopt(fd, V_SOL_SOCKET, V_SO_REUSEADDR, (void*)&reuseaddr, sizeof(int));
     if (res < 0) {
         return throwIOExceptionBasedOnErrno(env);
     }
@@ -488,13 +491,10 @@ JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_connectIPv4
 }
 
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_connectIPv6
-  (PNIEnv_void* env, int32_t fd, char* fullAddr, int32_t port) {
+  (PNIEnv_void* env, int32_t fd, int32_t addr0, int32_t addr1, int32_t addr2, int32_t addr3, int32_t port) {
     v_sockaddr_in6 name;
-    int res = j2cSockAddrIPv6(&name, fullAddr, port);
-    if (res < 0) {
-        return throwIOExceptionBasedOnErrno(env);
-    }
-    res = v_connect(fd, (v_sockaddr*) &name, sizeof(v_sockaddr_in6));
+    j2cSockAddrIPv6(&name, addr0, addr1, addr2, addr3, port);
+    int res = v_connect(fd, (v_sockaddr*) &name, sizeof(v_sockaddr_in6));
     if (res < 0) {
         if (errno == V_EINPROGRESS) {
             return 0;
@@ -744,6 +744,111 @@ JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_write
     return 0;
 }
 
+// the iov passed from java is an array of (int64 address, int64 len) pairs
+#define IOV_MAX_CNT 64
+
+#ifndef _WIN32
+static int formatIOVecs(struct iovec* iovecs, void* iov, int32_t iovcnt) {
+    int64_t* pairs = (int64_t*) iov;
+    if (iovcnt > IOV_MAX_CNT) {
+        iovcnt = IOV_MAX_CNT;
+    }
+    for (int i = 0; i < iovcnt; ++i) {
+        iovecs[i].iov_base = (void*) (intptr_t) pairs[i * 2];
+        iovecs[i].iov_len = (size_t) pairs[i * 2 + 1];
+    }
+    return iovcnt;
+}
+#endif
+
+JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_readv
+  (PNIEnv_int* env, int32_t fd, void* iov, int32_t iovcnt) {
+#ifdef _WIN32
+    return throwUnsupportedOperationException(env, "readv is not supported on windows");
+#else
+    if (iovcnt <= 0) {
+        env->return_ = 0;
+        return 0;
+    }
+    struct iovec iovecs[IOV_MAX_CNT];
+    iovcnt = formatIOVecs(iovecs, iov, iovcnt);
+    int res = readv(fd, iovecs, iovcnt);
+    env->return_ = handleReadIOOperationResultFinal(env, res);
+    if (env->return_ == -3) {
+        return -1;
+    }
+    return 0;
+#endif
+}
+
+JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_writev
+  (PNIEnv_int* env, int32_t fd, void* iov, int32_t iovcnt) {
+#ifdef _WIN32
+    return throwUnsupportedOperationException(env, "writev is not supported on windows");
+#else
+    if (iovcnt <= 0) {
+        env->return_ = 0;
+        return 0;
+    }
+    struct iovec iovecs[IOV_MAX_CNT];
+    iovcnt = formatIOVecs(iovecs, iov, iovcnt);
+    int res = writev(fd, iovecs, iovcnt);
+    env->return_ = handleWriteIOOperationResult(env, res);
+    if (env->return_ < 0) {
+        return -1;
+    }
+    return 0;
+#endif
+}
+
+JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_pipe2
+  (PNIEnv_void* env, PNIBuf_int* _fds) {
+#ifdef __linux__
+    int32_t* fds = _fds->buf;
+    int pipes[2];
+    int res = pipe2(pipes, O_NONBLOCK | O_CLOEXEC);
+    if (res < 0) {
+        return throwIOExceptionBasedOnErrno(env);
+    }
+    fds[0] = pipes[0];
+    fds[1] = pipes[1];
+    return 0;
+#else
+    return throwUnsupportedOperationException(env, "pipe2 is only supported on linux");
+#endif
+}
+
+JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_splice
+  (PNIEnv_int* env, int32_t fdIn, int32_t fdOut, int32_t len) {
+#ifdef __linux__
+    if (len == 0) {
+        env->return_ = 0;
+        return 0;
+    }
+    ssize_t res = splice(fdIn, NULL, fdOut, NULL, len, SPLICE_F_MOVE | SPLICE_F_NONBLOCK);
+    int32_t n = handleReadIOOperationResult(env, (int) res);
+    if (n == -3) {
+        env->return_ = -3;
+        return -1;
+    }
+    if (n == -2) {
+        // EAGAIN, it's either fdIn having nothing to read or fdOut being full
+        // a pipe reports POLLOUT only when it has free slots, which cannot be derived from the bytes stored
+        struct pollfd pfd;
+        pfd.fd = fdOut;
+        pfd.events = POLLOUT;
+        pfd.revents = 0;
+        if (poll(&pfd, 1, 0) != 0) {
+            n = 0;
+        }
+    }
+    env->return_ = n;
+    return 0;
+#else
+    return throwUnsupportedOperationException(env, "splice is only supported on linux");
+#endif
+}
+
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_sendtoIPv4
   (PNIEnv_int* env, int32_t fd, void* directBuffer, int32_t off, int32_t len, int32_t addrHostOrder, int32_t port) {
     if (len == 0) {
@@ -762,18 +867,15 @@ JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_sendtoIPv4
 }
 
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_sendtoIPv6
-  (PNIEnv_int* env, int32_t fd, void* directBuffer, int32_t off, int32_t len, char* fullAddr, int32_t port) {
+  (PNIEnv_int* env, int32_t fd, void* directBuffer, int32_t off, int32_t len, int32_t addr0, int32_t addr1, int32_t addr2, int32_t addr3, int32_t port) {
     if (len == 0) {
         env->return_ = 0;
         return 0;
     }
     byte* buf = (byte*) directBuffer;
     v_sockaddr_in6 name;
-    int res = j2cSockAddrIPv6(&name, fullAddr, port);
-    if (res < 0) {
-        return throwIOExceptionBasedOnErrno(env);
-    }
-    res = v_sendto(fd, buf + off, len, 0, (v_sockaddr*) &name, sizeof(v_sockaddr_in6));
+    j2cSockAddrIPv6(&name, addr0, addr1, addr2, addr3, port);
+    int res = v_sendto(fd, buf + off, len, 0, (v_sockaddr*) &name, sizeof(v_sockaddr_in6));
     env->return_ = handleWriteIOOperationResult(env, res);
     if (env->return_ < 0) {
         return -1;
@@ -828,10 +930,188 @@ JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_recvfromIPv6
     if (retAddr == NULL) {
         return -1;
     }
-    result->len = len;
+    result->len = retLen;
+    return 0;
+}
+
+JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_recvfromIPv6Bin
+  (PNIEnv_bool* env, int32_t fd, void* directBuffer, int32_t off, int32_t len, UDPRecvResultIPv6Bin_st* result) {
+    if (len == 0) {
+        env->return_ = 0;
+        return 0;
+    }
+    byte* buf = (byte*) directBuffer;
+    v_sockaddr_in6 name;
+    unsigned int foo = sizeof(v_sockaddr_in6);
+    int res = v_recvfrom(fd, buf + off, len, 0, (v_sockaddr*) &name, &foo);
+    int32_t retLen = handleReadIOOperationResult(env, res);
+    if (res < 0) {
+        if (retLen == -3) {
+            return -1;
+        }
+        env->return_ = 0;
+        return 0;
+    }
+    uint32_t addr[4];
+    v_memcpy(addr, &(name.sin6_addr), 16);
+    result->ip0 = v_ntohl(addr[0]);
+    result->ip1 = v_ntohl(addr[1]);
+    result->ip2 = v_ntohl(addr[2]);
+    result->ip3 = v_ntohl(addr[3]);
+    result->port = v_ntohs(name.sin6_port);
+    result->len = retLen;
+    env->return_ = 1;
     return 0;
 }
 
+// the meta of each datagram slot (24 bytes, host byte order):
+// int32 len | int32 port | 16 bytes address
+// for ipv4, the address is stored as an int32 in host byte order
+// for ipv6, the address is stored as 16 bytes in network byte order
+#define MMSG_META_LEN 24
+#define MMSG_MAX_VLEN 256
+
+void formatMMsgMeta(byte* meta, int32_t len, v_sockaddr* name, int ipv4) {
+    int32_t* m = (int32_t*) meta;
+    m[0] = len;
+    if (ipv4) {
+        v_sockaddr_in* addr = (v_sockaddr_in*) name;
+        m[1] = v_ntohs(addr->sin_port);
+        m[2] = v_ntohl(addr->sin_addr.s_addr);
+    } else {
+        v_sockaddr_in6* addr = (v_sockaddr_in6*) name;
+        m[1] = v_ntohs(addr->sin6_port);
+        v_memcpy(meta + 8, &(addr->sin6_addr), 16);
+    }
+}
+
+int parseMMsgMeta(byte* meta, v_sockaddr_in6* name, int ipv4) {
+    int32_t* m = (int32_t*) meta;
+    if (ipv4) {
+        j2cSockAddrIPv4((v_sockaddr_in*) name, m[2], m[1]);
+        return sizeof(v_sockaddr_in);
+    } else {
+        v_memset(name, 0, sizeof(v_sockaddr_in6));
+        name->sin6_family = V_AF_INET6;
+        name->sin6_port = v_htons(m[1]);
+        v_memcpy(&(name->sin6_addr), meta + 8, 16);
+        return sizeof(v_sockaddr_in6);
+    }
+}
+
+JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_recvmmsg
+  (PNIEnv_int* env, int32_t fd, void* directBuffer, int32_t headroom, int32_t slotLen, void* meta, int32_t vlen, uint8_t ipv4) {
+    if (vlen <= 0) {
+        env->return_ = 0;
+        return 0;
+    }
+    if (vlen > MMSG_MAX_VLEN) {
+        vlen = MMSG_MAX_VLEN;
+    }
+    byte* buf = (byte*) directBuffer;
+    byte* m = (byte*) meta;
+#ifdef __linux__
+    struct mmsghdr msgs[MMSG_MAX_VLEN];
+    struct iovec iovecs[MMSG_MAX_VLEN];
+    v_sockaddr_in6 names[MMSG_MAX_VLEN];
+    for (int i = 0; i < vlen; ++i) {
+        v_memset(&msgs[i], 0, sizeof(struct mmsghdr));
+        iovecs[i].iov_base = buf + i * (headroom + slotLen) + headroom;
+        iovecs[i].iov_len = slotLen;
+        msgs[i].msg_hdr.msg_name = &names[i];
+        msgs[i].msg_hdr.msg_namelen = ipv4 ? sizeof(v_sockaddr_in) : sizeof(v_sockaddr_in6);
+        msgs[i].msg_hdr.msg_iov = &iovecs[i];
+        msgs[i].msg_hdr.msg_iovlen = 1;
+    }
+    int res = recvmmsg(fd, msgs, vlen, 0, NULL);
+    if (res < 0) {
+        if (errno == V_EAGAIN || errno == V_EWOULDBLOCK) {
+            env->return_ = 0;
+            return 0;
+        }
+        return throwIOExceptionBasedOnErrno(env);
+    }
+    for (int i = 0; i < res; ++i) {
+        formatMMsgMeta(m + i * MMSG_META_LEN, msgs[i].msg_len, (v_sockaddr*) &names[i], ipv4);
+    }
+    env->return_ = res;
+    return 0;
+#else
+    // no recvmmsg, receive one by one
+    int n = 0;
+    for (; n < vlen; ++n) {
+        v_sockaddr_in6 name;
+        unsigned int nameLen = ipv4 ? sizeof(v_sockaddr_in) : sizeof(v_sockaddr_in6);
+        int res = v_recvfrom(fd, buf + n * (headroom + slotLen) + headroom, slotLen, 0, (v_sockaddr*) &name, &nameLen);
+        if (res < 0) {
+            if (errno == V_EAGAIN || errno == V_EWOULDBLOCK || n > 0) {
+                // when some datagrams are received, the error will be raised in the next call
+                break;
+            }
+            return throwIOExceptionBasedOnErrno(env);
+        }
+        formatMMsgMeta(m + n * MMSG_META_LEN, res, (v_sockaddr*) &name, ipv4);
+    }
+    env->return_ = n;
+    return 0;
+#endif
+}
+
+JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_sendmmsg
+  (PNIEnv_int* env, int32_t fd, void* directBuffer, int32_t headroom, int32_t slotLen, void* meta, int32_t vlen, uint8_t ipv4) {
+    if (vlen <= 0) {
+        env->return_ = 0;
+        return 0;
+    }
+    if (vlen > MMSG_MAX_VLEN) {
+        vlen = MMSG_MAX_VLEN;
+    }
+    byte* buf = (byte*) directBuffer;
+    byte* m = (byte*) meta;
+#ifdef __linux__
+    struct mmsghdr msgs[MMSG_MAX_VLEN];
+    struct iovec iovecs[MMSG_MAX_VLEN];
+    v_sockaddr_in6 names[MMSG_MAX_VLEN];
+    for (int i = 0; i < vlen; ++i) {
+        byte* im = m + i * MMSG_META_LEN;
+        v_memset(&msgs[i], 0, sizeof(struct mmsghdr));
+        iovecs[i].iov_base = buf + i * (headroom + slotLen) + headroom;
+        iovecs[i].iov_len = ((int32_t*) im)[0];
+        msgs[i].msg_hdr.msg_name = &names[i];
+        msgs[i].msg_hdr.msg_namelen = parseMMsgMeta(im, &names[i], ipv4);
+        msgs[i].msg_hdr.msg_iov = &iovecs[i];
+        msgs[i].msg_hdr.msg_iovlen = 1;
+    }
+    int res = sendmmsg(fd, msgs, vlen, 0);
+    if (res < 0) {
+        if (errno == V_EAGAIN || errno == V_EWOULDBLOCK) {
+            env->return_ = 0;
+            return 0;
+        }
+        return throwIOExceptionBasedOnErrno(env);
+    }
+    env->return_ = res;
+    return 0;
+#else
+    // no sendmmsg, send one by one
+    int n = 0;
+    for (; n < vlen; ++n) {
+        byte* im = m + n * MMSG_META_LEN;
+        v_sockaddr_in6 name;
+        int nameLen = parseMMsgMeta(im, &name, ipv4);
+        int res = v_sendto(fd, buf + n * (headroom + slotLen) + headroom, ((int32_t*) im)[0], 0, (v_sockaddr*) &name, nameLen);
+        if (res < 0) {
+            if (errno == V_EAGAIN || errno == V_EWOULDBLOCK || n > 0) {
+                break;
+            }
+            return throwIOExceptionBasedOnErrno(env);
+        }
+    }
+    env->return_ = n;
+    return 0;
+#endif
+}
+
 JNIEXPORT int JNICALL Java_io_vproxy_vfd_posix_PosixNative_currentTimeMillis
   (PNIEnv_long* env) {
     v_timeval tv;
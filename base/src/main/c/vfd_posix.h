@@ -139,7 +139,7 @@
     #endif
 
     void j2cSockAddrIPv4(v_sockaddr_in* name, int32_t addrHostOrder, uint16_t port);
-    int j2cSockAddrIPv6(v_sockaddr_in6* name, char* fullAddrCharArray, uint16_t port);
+    void j2cSockAddrIPv6(v_sockaddr_in6* name, int32_t addr0, int32_t addr1, int32_t addr2, int32_t addr3, uint16_t port);
 
     #include <errno.h>
     #ifndef EWOULDBLOCK
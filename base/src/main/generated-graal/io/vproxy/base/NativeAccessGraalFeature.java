@@ -380,7 +380,7 @@ public class NativeAccessGraalFeature implements org.graalvm.nativeimage.hosted.
         }
 
         /* Java_io_vproxy_vfd_posix_PosixNative_bindIPv6 */
-        RuntimeForeignAccess.registerForDowncall(PanamaUtils.buildFunctionDescriptor(int.class /* fd */, String.class /* fullAddr */, int.class /* port */), PanamaHack.getCriticalOption());
+        RuntimeForeignAccess.registerForDowncall(PanamaUtils.buildFunctionDescriptor(int.class /* fd */, int.class /* addr0 */, int.class /* addr1 */, int.class /* addr2 */, int.class /* addr3 */, int.class /* port */), PanamaHack.getCriticalOption());
         RuntimeReflection.registerAllConstructors(java.io.IOException.class);
         for (var CONS : java.io.IOException.class.getConstructors()) {
             RuntimeReflection.register(CONS);
@@ -408,7 +408,7 @@ public class NativeAccessGraalFeature implements org.graalvm.nativeimage.hosted.
         }
 
         /* Java_io_vproxy_vfd_posix_PosixNative_connectIPv6 */
-        RuntimeForeignAccess.registerForDowncall(PanamaUtils.buildFunctionDescriptor(int.class /* fd */, String.class /* fullAddr */, int.class /* port */), PanamaHack.getCriticalOption());
+        RuntimeForeignAccess.registerForDowncall(PanamaUtils.buildFunctionDescriptor(int.class /* fd */, int.class /* addr0 */, int.class /* addr1 */, int.class /* addr2 */, int.class /* addr3 */, int.class /* port */), PanamaHack.getCriticalOption());
         RuntimeReflection.registerAllConstructors(java.io.IOException.class);
         for (var CONS : java.io.IOException.class.getConstructors()) {
             RuntimeReflection.register(CONS);
@@ -498,6 +498,34 @@ public class NativeAccessGraalFeature implements org.graalvm.nativeimage.hosted.
             RuntimeReflection.register(CONS);
         }
 
+        /* Java_io_vproxy_vfd_posix_PosixNative_readv */
+        RuntimeForeignAccess.registerForDowncall(PanamaUtils.buildFunctionDescriptor(int.class /* fd */, MemorySegment.class /* iov */, int.class /* iovcnt */), PanamaHack.getCriticalOption());
+        RuntimeReflection.registerAllConstructors(java.io.IOException.class);
+        for (var CONS : java.io.IOException.class.getConstructors()) {
+            RuntimeReflection.register(CONS);
+        }
+
+        /* Java_io_vproxy_vfd_posix_PosixNative_writev */
+        RuntimeForeignAccess.registerForDowncall(PanamaUtils.buildFunctionDescriptor(int.class /* fd */, MemorySegment.class /* iov */, int.class /* iovcnt */), PanamaHack.getCriticalOption());
+        RuntimeReflection.registerAllConstructors(java.io.IOException.class);
+        for (var CONS : java.io.IOException.class.getConstructors()) {
+            RuntimeReflection.register(CONS);
+        }
+
+        /* Java_io_vproxy_vfd_posix_PosixNative_pipe2 */
+        RuntimeForeignAccess.registerForDowncall(PanamaUtils.buildFunctionDescriptor(PNIBuf.class /* fds */), PanamaHack.getCriticalOption());
+        RuntimeReflection.registerAllConstructors(java.io.IOException.class);
+        for (var CONS : java.io.IOException.class.getConstructors()) {
+            RuntimeReflection.register(CONS);
+        }
+
+        /* Java_io_vproxy_vfd_posix_PosixNative_splice */
+        RuntimeForeignAccess.registerForDowncall(PanamaUtils.buildFunctionDescriptor(int.class /* fdIn */, int.class /* fdOut */, int.class /* len */), PanamaHack.getCriticalOption());
+        RuntimeReflection.registerAllConstructors(java.io.IOException.class);
+        for (var CONS : java.io.IOException.class.getConstructors()) {
+            RuntimeReflection.register(CONS);
+        }
+
         /* Java_io_vproxy_vfd_posix_PosixNative_sendtoIPv4 */
         RuntimeForeignAccess.registerForDowncall(PanamaUtils.buildFunctionDescriptor(int.class /* fd */, ByteBuffer.class /* directBuffer */, int.class /* off */, int.class /* len */, int.class /* addrHostOrder */, int.class /* port */), PanamaHack.getCriticalOption());
         RuntimeReflection.registerAllConstructors(java.io.IOException.class);
@@ -506,7 +534,7 @@ public class NativeAccessGraalFeature implements org.graalvm.nativeimage.hosted.
         }
 
         /* Java_io_vproxy_vfd_posix_PosixNative_sendtoIPv6 */
-        RuntimeForeignAccess.registerForDowncall(PanamaUtils.buildFunctionDescriptor(int.class /* fd */, ByteBuffer.class /* directBuffer */, int.class /* off */, int.class /* len */, String.class /* fullAddr */, int.class /* port */), PanamaHack.getCriticalOption());
+        RuntimeForeignAccess.registerForDowncall(PanamaUtils.buildFunctionDescriptor(int.class /* fd */, ByteBuffer.class /* directBuffer */, int.class /* off */, int.class /* len */, int.class /* addr0 */, int.class /* addr1 */, int.class /* addr2 */, int.class /* addr3 */, int.class /* port */), PanamaHack.getCriticalOption());
         RuntimeReflection.registerAllConstructors(java.io.IOException.class);
         for (var CONS : java.io.IOException.class.getConstructors()) {
             RuntimeReflection.register(CONS);
@@ -526,6 +554,27 @@ public class NativeAccessGraalFeature implements org.graalvm.nativeimage.hosted.
             RuntimeReflection.register(CONS);
         }
 
+        /* Java_io_vproxy_vfd_posix_PosixNative_recvfromIPv6Bin */
+        RuntimeForeignAccess.registerForDowncall(PanamaUtils.buildFunctionDescriptor(int.class /* fd */, ByteBuffer.class /* directBuffer */, int.class /* off */, int.class /* len */, MemoryLayout.class /* io.vproxy.vfd.posix.UDPRecvResultIPv6BinST.LAYOUT.getClass() */ /* result */), PanamaHack.getCriticalOption());
+        RuntimeReflection.registerAllConstructors(java.io.IOException.class);
+        for (var CONS : java.io.IOException.class.getConstructors()) {
+            RuntimeReflection.register(CONS);
+        }
+
+        /* Java_io_vproxy_vfd_posix_PosixNative_recvmmsg */
+        RuntimeForeignAccess.registerForDowncall(PanamaUtils.buildFunctionDescriptor(int.class /* fd */, ByteBuffer.class /* directBuffer */, int.class /* headroom */, int.class /* slotLen */, ByteBuffer.class /* meta */, int.class /* vlen */, boolean.class /* ipv4 */), PanamaHack.getCriticalOption());
+        RuntimeReflection.registerAllConstructors(java.io.IOException.class);
+        for (var CONS : java.io.IOException.class.getConstructors()) {
+            RuntimeReflection.register(CONS);
+        }
+
+        /* Java_io_vproxy_vfd_posix_PosixNative_sendmmsg */
+        RuntimeForeignAccess.registerForDowncall(PanamaUtils.buildFunctionDescriptor(int.class /* fd */, ByteBuffer.class /* directBuffer */, int.class /* headroom */, int.class /* slotLen */, ByteBuffer.class /* meta */, int.class /* vlen */, boolean.class /* ipv4 */), PanamaHack.getCriticalOption());
+        RuntimeReflection.registerAllConstructors(java.io.IOException.class);
+        for (var CONS : java.io.IOException.class.getConstructors()) {
+            RuntimeReflection.register(CONS);
+        }
+
         /* Java_io_vproxy_vfd_posix_PosixNative_currentTimeMillis */
         RuntimeForeignAccess.registerForDowncall(PanamaUtils.buildFunctionDescriptor(), PanamaHack.getCriticalOption());
 
@@ -685,4 +734,4 @@ public class NativeAccessGraalFeature implements org.graalvm.nativeimage.hosted.
     }
 }
 // metadata.generator-version: pni 22.0.0.20
-// sha256:a3f45507001a8b424ea5961244d78065cd208ed0d5b6b86a0a429d79f4809e02
+// sha256:8dcadda6d2039625e674e7629353bb9c16d287cd84b3734db76055914d07d127
@@ -455,13 +455,13 @@ public class PosixNative {
         }
     }
 
-    private static final MethodHandle bindIPv6MH = PanamaUtils.lookupPNIFunction(new PNILinkOptions().setCritical(true), "Java_io_vproxy_vfd_posix_PosixNative_bindIPv6", int.class /* fd */, String.class /* fullAddr */, int.class /* port */);
+    private static final MethodHandle bindIPv6MH = PanamaUtils.lookupPNIFunction(new PNILinkOptions().setCritical(true), "Java_io_vproxy_vfd_posix_PosixNative_bindIPv6", int.class /* fd */, int.class /* addr0 */, int.class /* addr1 */, int.class /* addr2 */, int.class /* addr3 */, int.class /* port */);
 
-    public void bindIPv6(PNIEnv ENV, int fd, PNIString fullAddr, int port) throws java.io.IOException {
+    public void bindIPv6(PNIEnv ENV, int fd, int addr0, int addr1, int addr2, int addr3, int port) throws java.io.IOException {
         ENV.reset();
         int ERR;
         try {
-            ERR = (int) bindIPv6MH.invokeExact(ENV.MEMORY, fd, (MemorySegment) (fullAddr == null ? MemorySegment.NULL : fullAddr.MEMORY), port);
+            ERR = (int) bindIPv6MH.invokeExact(ENV.MEMORY, fd, addr0, addr1, addr2, addr3, port);
         } catch (Throwable THROWABLE) {
             throw PanamaUtils.convertInvokeExactException(THROWABLE);
         }
@@ -520,13 +520,13 @@ public class PosixNative {
         }
     }
 
-    private static final MethodHandle connectIPv6MH = PanamaUtils.lookupPNIFunction(new PNILinkOptions().setCritical(true), "Java_io_vproxy_vfd_posix_PosixNative_connectIPv6", int.class /* fd */, String.class /* fullAddr */, int.class /* port */);
+    private static final MethodHandle connectIPv6MH = PanamaUtils.lookupPNIFunction(new PNILinkOptions().setCritical(true), "Java_io_vproxy_vfd_posix_PosixNative_connectIPv6", int.class /* fd */, int.class /* addr0 */, int.class /* addr1 */, int.class /* addr2 */, int.class /* addr3 */, int.class /* port */);
 
-    public void connectIPv6(PNIEnv ENV, int fd, PNIString fullAddr, int port) throws java.io.IOException {
+    public void connectIPv6(PNIEnv ENV, int fd, int addr0, int addr1, int addr2, int addr3, int port) throws java.io.IOException {
         ENV.reset();
         int ERR;
         try {
-            ERR = (int) connectIPv6MH.invokeExact(ENV.MEMORY, fd, (MemorySegment) (fullAddr == null ? MemorySegment.NULL : fullAddr.MEMORY), port);
+            ERR = (int) connectIPv6MH.invokeExact(ENV.MEMORY, fd, addr0, addr1, addr2, addr3, port);
         } catch (Throwable THROWABLE) {
             throw PanamaUtils.convertInvokeExactException(THROWABLE);
         }
@@ -743,6 +743,75 @@ public class PosixNative {
         return ENV.returnInt();
     }
 
+    private static final MethodHandle readvMH = PanamaUtils.lookupPNIFunction(new PNILinkOptions().setCritical(true), "Java_io_vproxy_vfd_posix_PosixNative_readv", int.class /* fd */, MemorySegment.class /* iov */, int.class /* iovcnt */);
+
+    public int readv(PNIEnv ENV, int fd, MemorySegment iov, int iovcnt) throws java.io.IOException {
+        ENV.reset();
+        int ERR;
+        try {
+            ERR = (int) readvMH.invokeExact(ENV.MEMORY, fd, (MemorySegment) (iov == null ? MemorySegment.NULL : iov), iovcnt);
+        } catch (Throwable THROWABLE) {
+            throw PanamaUtils.convertInvokeExactException(THROWABLE);
+        }
+        if (ERR != 0) {
+            ENV.throwIf(java.io.IOException.class);
+            ENV.throwLast();
+        }
+        return ENV.returnInt();
+    }
+
+    private static final MethodHandle writevMH = PanamaUtils.lookupPNIFunction(new PNILinkOptions().setCritical(true), "Java_io_vproxy_vfd_posix_PosixNative_writev", int.class /* fd */, MemorySegment.class /* iov */, int.class /* iovcnt */);
+
+    public int writev(PNIEnv ENV, int fd, MemorySegment iov, int iovcnt) throws java.io.IOException {
+        ENV.reset();
+        int ERR;
+        try {
+            ERR = (int) writevMH.invokeExact(ENV.MEMORY, fd, (MemorySegment) (iov == null ? MemorySegment.NULL : iov), iovcnt);
+        } catch (Throwable THROWABLE) {
+            throw PanamaUtils.convertInvokeExactException(THROWABLE);
+        }
+        if (ERR != 0) {
+            ENV.throwIf(java.io.IOException.class);
+            ENV.throwLast();
+        }
+        return ENV.returnInt();
+    }
+
+    private static final MethodHandle pipe2MH = PanamaUtils.lookupPNIFunction(new PNILinkOptions().setCritical(true), "Java_io_vproxy_vfd_posix_PosixNative_pipe2", PNIBuf.class /* fds */);
+
+    public void pipe2(PNIEnv ENV, IntArray fds) throws java.io.IOException {
+        ENV.reset();
+        try (var POOLED = Allocator.ofPooled()) {
+            int ERR;
+            try {
+                ERR = (int) pipe2MH.invokeExact(ENV.MEMORY, PNIBuf.memoryOf(POOLED, fds));
+            } catch (Throwable THROWABLE) {
+                throw PanamaUtils.convertInvokeExactException(THROWABLE);
+            }
+            if (ERR != 0) {
+                ENV.throwIf(java.io.IOException.class);
+                ENV.throwLast();
+            }
+        }
+    }
+
+    private static final MethodHandle spliceMH = PanamaUtils.lookupPNIFunction(new PNILinkOptions().setCritical(true), "Java_io_vproxy_vfd_posix_PosixNative_splice", int.class /* fdIn */, int.class /* fdOut */, int.class /* len */);
+
+    public int splice(PNIEnv ENV, int fdIn, int fdOut, int len) throws java.io.IOException {
+        ENV.reset();
+        int ERR;
+        try {
+            ERR = (int) spliceMH.invokeExact(ENV.MEMORY, fdIn, fdOut, len);
+        } catch (Throwable THROWABLE) {
+            throw PanamaUtils.convertInvokeExactException(THROWABLE);
+        }
+        if (ERR != 0) {
+            ENV.throwIf(java.io.IOException.class);
+            ENV.throwLast();
+        }
+        return ENV.returnInt();
+    }
+
     private static final MethodHandle sendtoIPv4MH = PanamaUtils.lookupPNIFunction(new PNILinkOptions().setCritical(true), "Java_io_vproxy_vfd_posix_PosixNative_sendtoIPv4", int.class /* fd */, ByteBuffer.class /* directBuffer */, int.class /* off */, int.class /* len */, int.class /* addrHostOrder */, int.class /* port */);
 
     public int sendtoIPv4(PNIEnv ENV, int fd, ByteBuffer directBuffer, int off, int len, int addrHostOrder, int port) throws java.io.IOException {
@@ -760,13 +829,13 @@ public class PosixNative {
         return ENV.returnInt();
     }
 
-    private static final MethodHandle sendtoIPv6MH = PanamaUtils.lookupPNIFunction(new PNILinkOptions().setCritical(true), "Java_io_vproxy_vfd_posix_PosixNative_sendtoIPv6", int.class /* fd */, ByteBuffer.class /* directBuffer */, int.class /* off */, int.class /* len */, String.class /* fullAddr */, int.class /* port */);
+    private static final MethodHandle sendtoIPv6MH = PanamaUtils.lookupPNIFunction(new PNILinkOptions().setCritical(true), "Java_io_vproxy_vfd_posix_PosixNative_sendtoIPv6", int.class /* fd */, ByteBuffer.class /* directBuffer */, int.class /* off */, int.class /* len */, int.class /* addr0 */, int.class /* addr1 */, int.class /* addr2 */, int.class /* addr3 */, int.class /* port */);
 
-    public int sendtoIPv6(PNIEnv ENV, int fd, ByteBuffer directBuffer, int off, int len, PNIString fullAddr, int port) throws java.io.IOException {
+    public int sendtoIPv6(PNIEnv ENV, int fd, ByteBuffer directBuffer, int off, int len, int addr0, int addr1, int addr2, int addr3, int port) throws java.io.IOException {
         ENV.reset();
         int ERR;
         try {
-            ERR = (int) sendtoIPv6MH.invokeExact(ENV.MEMORY, fd, PanamaUtils.format(directBuffer), off, len, (MemorySegment) (fullAddr == null ? MemorySegment.NULL : fullAddr.MEMORY), port);
+            ERR = (int) sendtoIPv6MH.invokeExact(ENV.MEMORY, fd, PanamaUtils.format(directBuffer), off, len, addr0, addr1, addr2, addr3, port);
         } catch (Throwable THROWABLE) {
             throw PanamaUtils.convertInvokeExactException(THROWABLE);
         }
@@ -813,6 +882,57 @@ public class PosixNative {
         return RESULT == null ? null : new io.vproxy.vfd.posix.UDPRecvResultIPv6ST(RESULT);
     }
 
+    private static final MethodHandle recvfromIPv6BinMH = PanamaUtils.lookupPNIFunction(new PNILinkOptions().setCritical(true), "Java_io_vproxy_vfd_posix_PosixNative_recvfromIPv6Bin", int.class /* fd */, ByteBuffer.class /* directBuffer */, int.class /* off */, int.class /* len */, io.vproxy.vfd.posix.UDPRecvResultIPv6BinST.LAYOUT.getClass() /* result */);
+
+    public boolean recvfromIPv6Bin(PNIEnv ENV, int fd, ByteBuffer directBuffer, int off, int len, io.vproxy.vfd.posix.UDPRecvResultIPv6BinST result) throws java.io.IOException {
+        ENV.reset();
+        int ERR;
+        try {
+            ERR = (int) recvfromIPv6BinMH.invokeExact(ENV.MEMORY, fd, PanamaUtils.format(directBuffer), off, len, (MemorySegment) (result == null ? MemorySegment.NULL : result.MEMORY));
+        } catch (Throwable THROWABLE) {
+            throw PanamaUtils.convertInvokeExactException(THROWABLE);
+        }
+        if (ERR != 0) {
+            ENV.throwIf(java.io.IOException.class);
+            ENV.throwLast();
+        }
+        return ENV.returnBool();
+    }
+
+    private static final MethodHandle recvmmsgMH = PanamaUtils.lookupPNIFunction(new PNILinkOptions().setCritical(true), "Java_io_vproxy_vfd_posix_PosixNative_recvmmsg", int.class /* fd */, ByteBuffer.class /* directBuffer */, int.class /* headroom */, int.class /* slotLen */, ByteBuffer.class /* meta */, int.class /* vlen */, boolean.class /* ipv4 */);
+
+    public int recvmmsg(PNIEnv ENV, int fd, ByteBuffer directBuffer, int headroom, int slotLen, ByteBuffer meta, int vlen, boolean ipv4) throws java.io.IOException {
+        ENV.reset();
+        int ERR;
+        try {
+            ERR = (int) recvmmsgMH.invokeExact(ENV.MEMORY, fd, PanamaUtils.format(directBuffer), headroom, slotLen, PanamaUtils.format(meta), vlen, ipv4);
+        } catch (Throwable THROWABLE) {
+            throw PanamaUtils.convertInvokeExactException(THROWABLE);
+        }
+        if (ERR != 0) {
+            ENV.throwIf(java.io.IOException.class);
+            ENV.throwLast();
+        }
+        return ENV.returnInt();
+    }
+
+    private static final MethodHandle sendmmsgMH = PanamaUtils.lookupPNIFunction(new PNILinkOptions().setCritical(true), "Java_io_vproxy_vfd_posix_PosixNative_sendmmsg", int.class /* fd */, ByteBuffer.class /* directBuffer */, int.class /* headroom */, int.class /* slotLen */, ByteBuffer.class /* meta */, int.class /* vlen */, boolean.class /* ipv4 */);
+
+    public int sendmmsg(PNIEnv ENV, int fd, ByteBuffer directBuffer, int headroom, int slotLen, ByteBuffer meta, int vlen, boolean ipv4) throws java.io.IOException {
+        ENV.reset();
+        int ERR;
+        try {
+            ERR = (int) sendmmsgMH.invokeExact(ENV.MEMORY, fd, PanamaUtils.format(directBuffer), headroom, slotLen, PanamaUtils.format(meta), vlen, ipv4);
+        } catch (Throwable THROWABLE) {
+            throw PanamaUtils.convertInvokeExactException(THROWABLE);
+        }
+        if (ERR != 0) {
+            ENV.throwIf(java.io.IOException.class);
+            ENV.throwLast();
+        }
+        return ENV.returnInt();
+    }
+
     private static final MethodHandle currentTimeMillisMH = PanamaUtils.lookupPNIFunction(new PNILinkOptions().setCritical(true), "Java_io_vproxy_vfd_posix_PosixNative_currentTimeMillis");
 
     public long currentTimeMillis(PNIEnv ENV) {
@@ -898,4 +1018,4 @@ public class PosixNative {
     }
 }
 // metadata.generator-version: pni 21.0.0.20
-// sha256:1354207c51a455b700abc53bbb2aaeec9608ccee9941bc38fe11d66626b6e1c3
+// sha256:bae476feb368cce42845f05caf50bfa934c57001e2a68a365d9b5caf3af9203e
@@ -0,0 +1,239 @@
+package io.vproxy.vfd.posix;
+
+import io.vproxy.pni.*;
+import io.vproxy.pni.hack.*;
+import io.vproxy.pni.array.*;
+import java.lang.foreign.*;
+import java.lang.invoke.*;
+import java.nio.ByteBuffer;
+
+public class UDPRecvResultIPv6BinST extends AbstractNativeObject implements NativeObject {
+    public static final MemoryLayout LAYOUT = MemoryLayout.structLayout(
+        ValueLayout.JAVA_INT.withName("ip0"),
+        ValueLayout.JAVA_INT.withName("ip1"),
+        ValueLayout.JAVA_INT.withName("ip2"),
+        ValueLayout.JAVA_INT.withName("ip3"),
+        ValueLayout.JAVA_SHORT.withName("port"),
+        MemoryLayout.sequenceLayout(2L, ValueLayout.JAVA_BYTE) /* padding */,
+        ValueLayout.JAVA_INT.withName("len")
+    ).withByteAlignment(4);
+    public final MemorySegment MEMORY;
+
+    @Override
+    public MemorySegment MEMORY() {
+        return MEMORY;
+    }
+
+    private static final VarHandleW ip0VH = VarHandleW.of(
+        LAYOUT.varHandle(
+            MemoryLayout.PathElement.groupElement("ip0")
+        )
+    );
+
+    public int getIp0() {
+        return ip0VH.getInt(MEMORY);
+    }
+
+    public void setIp0(int ip0) {
+        ip0VH.set(MEMORY, ip0);
+    }
+
+    private static final VarHandleW ip1VH = VarHandleW.of(
+        LAYOUT.varHandle(
+            MemoryLayout.PathElement.groupElement("ip1")
+        )
+    );
+
+    public int getIp1() {
+        return ip1VH.getInt(MEMORY);
+    }
+
+    public void setIp1(int ip1) {
+        ip1VH.set(MEMORY, ip1);
+    }
+
+    private static final VarHandleW ip2VH = VarHandleW.of(
+        LAYOUT.varHandle(
+            MemoryLayout.PathElement.groupElement("ip2")
+        )
+    );
+
+    public int getIp2() {
+        return ip2VH.getInt(MEMORY);
+    }
+
+    public void setIp2(int ip2) {
+        ip2VH.set(MEMORY, ip2);
+    }
+
+    private static final VarHandleW ip3VH = VarHandleW.of(
+        LAYOUT.varHandle(
+            MemoryLayout.PathElement.groupElement("ip3")
+        )
+    );
+
+    public int getIp3() {
+        return ip3VH.getInt(MEMORY);
+    }
+
+    public void setIp3(int ip3) {
+        ip3VH.set(MEMORY, ip3);
+    }
+
+    private static final VarHandleW portVH = VarHandleW.of(
+        LAYOUT.varHandle(
+            MemoryLayout.PathElement.groupElement("port")
+        )
+    );
+
+    public short getPort() {
+        return portVH.getShort(MEMORY);
+    }
+
+    public void setPort(short port) {
+        portVH.set(MEMORY, port);
+    }
+
+    private static final VarHandleW lenVH = VarHandleW.of(
+        LAYOUT.varHandle(
+            MemoryLayout.PathElement.groupElement("len")
+        )
+    );
+
+    public int getLen() {
+        return lenVH.getInt(MEMORY);
+    }
+
+    public void setLen(int len) {
+        lenVH.set(MEMORY, len);
+    }
+
+    public UDPRecvResultIPv6BinST(MemorySegment MEMORY) {
+        MEMORY = MEMORY.reinterpret(LAYOUT.byteSize());
+        this.MEMORY = MEMORY;
+        long OFFSET = 0;
+        OFFSET += ValueLayout.JAVA_INT_UNALIGNED.byteSize();
+        OFFSET += ValueLayout.JAVA_INT_UNALIGNED.byteSize();
+        OFFSET += ValueLayout.JAVA_INT_UNALIGNED.byteSize();
+        OFFSET += ValueLayout.JAVA_INT_UNALIGNED.byteSize();
+        OFFSET += ValueLayout.JAVA_SHORT_UNALIGNED.byteSize();
+        OFFSET += 2; /* padding */
+        OFFSET += ValueLayout.JAVA_INT_UNALIGNED.byteSize();
+    }
+
+    public UDPRecvResultIPv6BinST(Allocator ALLOCATOR) {
+        this(ALLOCATOR.allocate(LAYOUT));
+    }
+
+    @Override
+    public void toString(StringBuilder SB, int INDENT, java.util.Set<NativeObjectTuple> VISITED, boolean CORRUPTED_MEMORY) {
+        if (!VISITED.add(new NativeObjectTuple(this))) {
+            SB.append("<...>@").append(Long.toString(MEMORY.address(), 16));
+            return;
+        }
+        SB.append("UDPRecvResultIPv6BinST{\n");
+        {
+            SB.append(" ".repeat(INDENT + 4)).append("ip0 => ");
+            SB.append(getIp0());
+        }
+        SB.append(",\n");
+        {
+            SB.append(" ".repeat(INDENT + 4)).append("ip1 => ");
+            SB.append(getIp1());
+        }
+        SB.append(",\n");
+        {
+            SB.append(" ".repeat(INDENT + 4)).append("ip2 => ");
+            SB.append(getIp2());
+        }
+        SB.append(",\n");
+        {
+            SB.append(" ".repeat(INDENT + 4)).append("ip3 => ");
+            SB.append(getIp3());
+        }
+        SB.append(",\n");
+        {
+            SB.append(" ".repeat(INDENT + 4)).append("port => ");
+            SB.append(getPort());
+        }
+        SB.append(",\n");
+        {
+            SB.append(" ".repeat(INDENT + 4)).append("len => ");
+            SB.append(getLen());
+        }
+        SB.append("\n");
+        SB.append(" ".repeat(INDENT)).append("}@").append(Long.toString(MEMORY.address(), 16));
+    }
+
+    public static class Array extends RefArray<UDPRecvResultIPv6BinST> {
+        public Array(MemorySegment buf) {
+            super(buf, UDPRecvResultIPv6BinST.LAYOUT);
+        }
+
+        public Array(Allocator allocator, long len) {
+            super(allocator, UDPRecvResultIPv6BinST.LAYOUT, len);
+        }
+
+        public Array(PNIBuf buf) {
+            super(buf, UDPRecvResultIPv6BinST.LAYOUT);
+        }
+
+        @Override
+        protected void elementToString(io.vproxy.vfd.posix.UDPRecvResultIPv6BinST ELEM, StringBuilder SB, int INDENT, java.util.Set<NativeObjectTuple> VISITED, boolean CORRUPTED_MEMORY) {
+            ELEM.toString(SB, INDENT, VISITED, CORRUPTED_MEMORY);
+        }
+
+        @Override
+        protected String toStringTypeName() {
+            return "UDPRecvResultIPv6BinST.Array";
+        }
+
+        @Override
+        protected UDPRecvResultIPv6BinST construct(MemorySegment seg) {
+            return new UDPRecvResultIPv6BinST(seg);
+        }
+
+        @Override
+        protected MemorySegment getSegment(UDPRecvResultIPv6BinST value) {
+            return value.MEMORY;
+        }
+    }
+
+    public static class Func extends PNIFunc<UDPRecvResultIPv6BinST> {
+        private Func(io.vproxy.pni.CallSite<UDPRecvResultIPv6BinST> func) {
+            super(func);
+        }
+
+        private Func(io.vproxy.pni.CallSite<UDPRecvResultIPv6BinST> func, Options opts) {
+            super(func, opts);
+        }
+
+        private Func(MemorySegment MEMORY) {
+            super(MEMORY);
+        }
+
+        public static Func of(io.vproxy.pni.CallSite<UDPRecvResultIPv6BinST> func) {
+            return new Func(func);
+        }
+
+        public static Func of(io.vproxy.pni.CallSite<UDPRecvResultIPv6BinST> func, Options opts) {
+            return new Func(func, opts);
+        }
+
+        public static Func of(MemorySegment MEMORY) {
+            return new Func(MEMORY);
+        }
+
+        @Override
+        protected String toStringTypeName() {
+            return "UDPRecvResultIPv6BinST.Func";
+        }
+
+        @Override
+        protected UDPRecvResultIPv6BinST construct(MemorySegment seg) {
+            return new UDPRecvResultIPv6BinST(seg);
+        }
+    }
+}
+// metadata.generator-version: pni 21.0.0.20
+// sha256:793713d25055434f709cc285772e80c49969c313a52686640423257d823f5bdc
@@ -6,6 +6,7 @@ import io.vproxy.base.util.Utils;
 import io.vproxy.base.util.log.ProbeType;
 
 import java.io.File;
+import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -28,6 +29,11 @@ public class Config {
     // the maximum expected size of a udp packet
     public static final int udpMtu = 65536;
 
+    // max length of each datagram received in batch by udp server socks, see ServerDatagramFD
+    // the batch buffers are preallocated, longer datagrams are truncated
+    // -Dvproxy.UdpServerSlotLen=4096
+    public static final int udpServerSlotLen;
+
     // the recommended min payload length
     // also, see Processor.PROXY_ZERO_COPY_THRESHOLD
     public static final int recommendedMinPayloadLength = 1200;
@@ -111,6 +117,72 @@ public class Config {
     public static final boolean dhcpGetDnsListEnabled;
     public static final Predicate<String> dhcpGetDnsListNics;
 
+    // whether to relay plain tcp proxy traffic with splice(2) instead of copying through user space buffers
+    // only takes effect on linux with the posix vfd impl
+    // -Dvproxy.SpliceProxy=true
+    public static final boolean spliceProxy;
+
+    // whether plain tcp proxy connections only hold buffer memory while bytes are in flight
+    // the memory is taken from the pool of the event loop, see PooledRingBuffer
+    // -Dvproxy.PooledProxyBuffers=true
+    public static final boolean pooledProxyBuffers;
+
+    // max bytes of idle buffer memory kept by the ring buffer pool of each event loop
+    // -Dvproxy.RingBufferPoolMaxFreeBytes=67108864
+    public static final int ringBufferPoolMaxFreeBytes;
+
+    // capacity of the array queue holding tasks submitted via SelectorEventLoop#nextTick
+    // tasks exceeding the capacity are held in an unbounded fallback queue
+    // -Dvproxy.EventLoopTaskQueueCapacity=4096
+    public static final int eventLoopTaskQueueCapacity;
+
+    // whether the vswitch node graph handles packets in vectors (up to 256 packets per node at a time)
+    // instead of running packets one by one through the whole node chain
+    // -Dvproxy.VswitchVectorMode=true
+    public static final boolean vswitchVectorMode;
+
+    // default number of event loops (including the one owning the ifaces) used by one vswitch to handle packets
+    // vxlan socks are bound once per event loop with SO_REUSEPORT, packets of other ifaces are steered by flow hash
+    // 1 means no sharding
+    // -Dvproxy.VswitchShards=4
+    public static final int vswitchShards;
+
+    // size of the lookup table of maglev server groups, must be a prime (rounded up to the next prime otherwise)
+    // the table size is fixed, so that adding or removing servers never remaps flows by resizing the table
+    // the table should be at least 100 times the count of servers in one group, or the balance degrades
+    // -Dvproxy.MaglevTableSize=65537
+    public static final int maglevTableSize;
+
+    // whether to measure busy/poll time, events, timers and slow callbacks of each event loop, see LoopInspection
+    // -Dvproxy.EventLoopInspection=true
+    public static final boolean eventLoopInspection;
+
+    // event loop callbacks running longer than this are recorded as slow, and the loop thread stack is sampled
+    // only takes effect when EventLoopInspection is enabled
+    // -Dvproxy.EventLoopSlowCallbackMillis=50
+    public static final int eventLoopSlowCallbackMillis;
+
+    // number of threads running delegated tasks of ssl engines, default is the number of cpu cores
+    // -Dvproxy.SslTaskThreads=4
+    public static final int sslTaskThreads;
+
+    // max count of ssl delegated tasks waiting for a thread, handshakes are rejected when exceeded
+    // -Dvproxy.SslTaskQueueCapacity=4096
+    public static final int sslTaskQueueCapacity;
+
+    // max count of sessions cached for resumption by each server side ssl context (each cert-key)
+    // -Dvproxy.SslSessionCacheSize=20480
+    public static final int sslSessionCacheSize;
+
+    // seconds for a cached ssl session to be resumable
+    // -Dvproxy.SslSessionTimeout=86400
+    public static final int sslSessionTimeout;
+
+    // bytes of the receive window of each stream multiplexed by StreamedFDHandler,
+    // only takes effect when the remote side supports flow control
+    // -Dvproxy.StreamedFdWindow=1048576
+    public static final int streamedFdWindow;
+
     static {
         appClass = Utils.getSystemProperty("deploy");
         String probeConf = Utils.getSystemProperty("probe", "");
@@ -143,6 +215,26 @@ public class Config {
             dhcpGetDnsListEnabled = true;
             dhcpGetDnsListNics = set::contains;
         }
+
+        spliceProxy = "true".equals(Utils.getSystemProperty("splice_proxy", "false"));
+        pooledProxyBuffers = "true".equals(Utils.getSystemProperty("pooled_proxy_buffers", "false"));
+        ringBufferPoolMaxFreeBytes = Integer.parseInt(Utils.getSystemProperty("ring_buffer_pool_max_free_bytes", "" + (64 * 1024 * 1024)));
+        eventLoopTaskQueueCapacity = Integer.parseInt(Utils.getSystemProperty("event_loop_task_queue_capacity", "4096"));
+        vswitchVectorMode = "true".equals(Utils.getSystemProperty("vswitch_vector_mode", "false"));
+        vswitchShards = Math.max(1, Integer.parseInt(Utils.getSystemProperty("vswitch_shards", "1")));
+        udpServerSlotLen = Math.min(udpMtu, Math.max(512, Integer.parseInt(Utils.getSystemProperty("udp_server_slot_len", "4096"))));
+        int maglevSize = Math.max(3, Integer.parseInt(Utils.getSystemProperty("maglev_table_size", "65537")));
+        if (!BigInteger.valueOf(maglevSize).isProbablePrime(32)) {
+            maglevSize = BigInteger.valueOf(maglevSize).nextProbablePrime().intValueExact();
+        }
+        maglevTableSize = maglevSize;
+        eventLoopInspection = "true".equals(Utils.getSystemProperty("event_loop_inspection", "false"));
+        eventLoopSlowCallbackMillis = Math.max(1, Integer.parseInt(Utils.getSystemProperty("event_loop_slow_callback_millis", "50")));
+        sslTaskThreads = Math.max(1, Integer.parseInt(Utils.getSystemProperty("ssl_task_threads", "" + Runtime.getRuntime().availableProcessors())));
+        sslTaskQueueCapacity = Math.max(1, Integer.parseInt(Utils.getSystemProperty("ssl_task_queue_capacity", "4096")));
+        sslSessionCacheSize = Math.max(0, Integer.parseInt(Utils.getSystemProperty("ssl_session_cache_size", "20480")));
+        sslSessionTimeout = Math.max(0, Integer.parseInt(Utils.getSystemProperty("ssl_session_timeout", "86400")));
+        streamedFdWindow = Math.max(16384, Integer.parseInt(Utils.getSystemProperty("streamed_fd_window", "1048576")));
     }
 
     public static boolean supportReusePortLB() {
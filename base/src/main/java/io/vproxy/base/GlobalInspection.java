@@ -2,8 +2,10 @@ package io.vproxy.base;
 
 import io.vproxy.base.prometheus.Counter;
 import io.vproxy.base.prometheus.Gauge;
+import io.vproxy.base.prometheus.GaugeF;
 import io.vproxy.base.prometheus.Metric;
 import io.vproxy.base.prometheus.Metrics;
+import io.vproxy.base.selector.LoopInspection;
 import io.vproxy.base.selector.SelectorEventLoop;
 import io.vproxy.base.selector.wrap.FDInspection;
 import io.vproxy.base.selector.wrap.VirtualFD;
@@ -47,6 +49,8 @@ public class GlobalInspection {
     private final Counter sslUnwrapTaskCount;
     private final Counter sslUnwrapTaskTimeMillisTotal;
     private final Gauge threadNumberCurrent;
+    private final Counter eventLoopWakeupCount;
+    private final Counter eventLoopWakeupCoalescedCount;
 
     private final ConcurrentHashSet<SelectorEventLoop> runningLoops = new ConcurrentHashSet<>();
     private final ConcurrentHashSet<VProxyThread> runningThreads = new ConcurrentHashSet<>();
@@ -91,6 +95,23 @@ public class GlobalInspection {
             .appendAll(extraLabels));
         metrics.add(threadNumberCurrent);
 
+        eventLoopWakeupCount = new Counter("event_loop_wakeup_count", new AppendableMap<>()
+            .appendAll(extraLabels));
+        metrics.add(eventLoopWakeupCount);
+
+        eventLoopWakeupCoalescedCount = new Counter("event_loop_wakeup_coalesced_count", new AppendableMap<>()
+            .appendAll(extraLabels));
+        metrics.add(eventLoopWakeupCoalescedCount);
+
+        metrics.add(new GaugeF("event_loop_task_queue_depth_current", new AppendableMap<>()
+            .appendAll(extraLabels), () -> {
+            long n = 0;
+            for (var loop : runningLoops) {
+                n += loop.getRunOnLoopEventsCount();
+            }
+            return n;
+        }));
+
         metrics.registerHelpMessage("direct_memory_bytes_current", "Current allocated direct memory in bytes");
         metrics.registerHelpMessage("direct_memory_allocate_count", "Total count of how many times the direct memory is allocated");
         metrics.registerHelpMessage("direct_memory_free_count", "Total count of how many times the direct memory is freed");
@@ -99,6 +120,32 @@ public class GlobalInspection {
         metrics.registerHelpMessage("ssl_unwrap_task_count", "Total count of how many times ssl unwrap requires executing a task");
         metrics.registerHelpMessage("ssl_unwrap_task_time_millis_total", "Total time cost for tasks required by ssl unwrapping");
         metrics.registerHelpMessage("thread_number_current", "The number of current running threads");
+        metrics.registerHelpMessage("event_loop_wakeup_count", "Total count of how many times the selector of an event loop is woken up");
+        metrics.registerHelpMessage("event_loop_wakeup_coalesced_count", "Total count of wakeups skipped because a wakeup is already pending");
+        metrics.registerHelpMessage("event_loop_task_queue_depth_current", "Current count of tasks waiting to run on all event loops");
+        metrics.registerHelpMessage("server_connect_time_micros", "Histogram of time cost for connecting to the backend server in microseconds");
+        metrics.registerHelpMessage("server_health_check_time_micros", "Histogram of time cost for health checks of the backend server in microseconds");
+        metrics.registerHelpMessage("tcp_lb_ssl_handshake_time_micros", "Histogram of time cost for tls handshakes of frontend connections in microseconds");
+        metrics.registerHelpMessage("tcp_lb_request_time_micros", "Histogram of time cost from receiving a request to finishing the response in microseconds");
+        metrics.registerHelpMessage("dns_resolve_time_micros", "Histogram of time cost for resolving domain names in microseconds");
+        metrics.registerHelpMessage("event_loop_busy_micros_total", "Total time an event loop spent outside of polling in microseconds");
+        metrics.registerHelpMessage("event_loop_poll_wait_micros_total", "Total time an event loop spent waiting in polling in microseconds");
+        metrics.registerHelpMessage("event_loop_utilization_percent_current", "Percentage of busy time of an event loop in the last second");
+        metrics.registerHelpMessage("event_loop_polls_total", "Total count of how many times an event loop polls");
+        metrics.registerHelpMessage("event_loop_events_total", "Total count of fired events returned by polling of an event loop");
+        metrics.registerHelpMessage("event_loop_tasks_pending_current", "Current count of tasks waiting to run on an event loop");
+        metrics.registerHelpMessage("event_loop_timers_pending_current", "Current count of timers waiting to fire on an event loop");
+        metrics.registerHelpMessage("event_loop_timers_fired_total", "Total count of timers fired on an event loop");
+        metrics.registerHelpMessage("event_loop_slow_callbacks_total", "Total count of callbacks running longer than the slow callback threshold on an event loop");
+        metrics.registerHelpMessage("ssl_task_queue_wait_time_micros", "Histogram of time ssl delegated tasks wait for a thread in microseconds");
+        metrics.registerHelpMessage("ssl_task_time_micros", "Histogram of time cost for running ssl delegated tasks in microseconds");
+        metrics.registerHelpMessage("ssl_task_rejected_count", "Total count of ssl handshakes rejected because the ssl task queue is full");
+        metrics.registerHelpMessage("ssl_task_queue_depth_current", "Current count of ssl delegated tasks waiting for a thread");
+        metrics.registerHelpMessage("ssl_session_resumed_count", "Total count of server side ssl handshakes which resumed a cached session or a session ticket");
+        metrics.registerHelpMessage("ssl_session_full_handshake_count", "Total count of server side ssl handshakes which did not resume a session");
+        metrics.registerHelpMessage("connection_pool_hit_count", "Total count of connections retrieved from the sharded connection pool");
+        metrics.registerHelpMessage("connection_pool_miss_count", "Total count of retrievals which found no idle connections in the sharded connection pool");
+        metrics.registerHelpMessage("connection_pool_wait_time_micros", "Histogram of time cost from requesting to receiving the result of the sharded connection pool in microseconds");
     }
 
     private Map<String, String> getExtraLabels() {
@@ -161,6 +208,14 @@ public class GlobalInspection {
         sslUnwrapTaskTimeMillisTotal.incr(costMillis);
     }
 
+    public void eventLoopWakeup() {
+        eventLoopWakeupCount.incr(1);
+    }
+
+    public void eventLoopWakeupCoalesced() {
+        eventLoopWakeupCoalescedCount.incr(1);
+    }
+
     public Runnable wrapThread(Runnable r) {
         return () -> {
             GraalUtils.setThread();
@@ -188,6 +243,14 @@ public class GlobalInspection {
         return metrics.toString();
     }
 
+    /**
+     * @return statistics, slowest callbacks and sampled stacks of event loops,
+     * empty if event loop inspection is not enabled
+     */
+    public String getEventLoopInspection() {
+        return LoopInspection.report();
+    }
+
     public String getStackTraces() {
         var threads = new HashSet<>(runningThreads);
         StringBuilder sb = new StringBuilder();
@@ -168,6 +168,9 @@ public class EventLoopGroup implements IEventLoopGroup {
         if (this.annotations.EventLoopGroup_PreferPoll) {
             opts.preferPoll = true;
         }
+        if (this.annotations.EventLoopGroup_TimeWheel) {
+            opts.timeWheel = true;
+        }
         if (annotations.EventLoop_CoreAffinity != -1) {
             opts.coreAffinity = annotations.EventLoop_CoreAffinity;
         }
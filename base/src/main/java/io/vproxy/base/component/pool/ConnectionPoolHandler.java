@@ -2,6 +2,7 @@ package io.vproxy.base.component.pool;
 
 import io.vproxy.base.connection.ConnectableConnection;
 import io.vproxy.base.connection.NetEventLoop;
+import io.vproxy.vfd.IPPort;
 
 public interface ConnectionPoolHandler {
     // NOTE: the user code in ConnectableConnectionHandler
@@ -9,6 +10,12 @@ public interface ConnectionPoolHandler {
     // AND: user code should add the connection into loop
     ConnectableConnection provide(NetEventLoop loop);
 
+    // used by ShardedConnectionPool to keep min idle connections of the target
+    // the returned connection must be connecting to the target
+    default ConnectableConnection provide(NetEventLoop loop, IPPort target) {
+        return null;
+    }
+
     // NOTE: the handler should consume all data in the inBuffer
     // otherwise the connection will be considered invalid
     void keepaliveReadable(ConnectableConnection conn);
@@ -9,6 +9,10 @@ public class ConnectionPoolParams {
     public int idleTimeoutInPool = -1;
     public int idleTimeoutOutOfPool = -1;
 
+    // only used by ShardedConnectionPool, counted per target per event loop
+    public int minIdle = 0;
+    public int maxIdle = -1; // -1 means same as capacity
+
     public ConnectionPoolParams() {
     }
 
@@ -41,4 +45,14 @@ public class ConnectionPoolParams {
         this.idleTimeoutOutOfPool = idleTimeoutOutOfPool;
         return this;
     }
+
+    public ConnectionPoolParams setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+        return this;
+    }
+
+    public ConnectionPoolParams setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+        return this;
+    }
 }
@@ -1,21 +1,34 @@
 package io.vproxy.base.component.pool;
 
 import io.vproxy.base.connection.ConnectableConnection;
+import io.vproxy.base.connection.Connection;
 import io.vproxy.base.util.Logger;
 
+import java.util.function.Consumer;
+
 public class PoolCallback {
-    private final ConnectionPool pool;
+    private final Consumer<Connection> removeConnection;
+    private final Consumer<ConnectableConnection> handshakeDone;
 
     public PoolCallback(ConnectionPool pool) {
-        this.pool = pool;
+        this(pool::removeConnection, pool::handshakeDone);
+    }
+
+    public PoolCallback(ShardedConnectionPool pool) {
+        this(pool::removeConnection, pool::handshakeDone);
+    }
+
+    private PoolCallback(Consumer<Connection> removeConnection, Consumer<ConnectableConnection> handshakeDone) {
+        this.removeConnection = removeConnection;
+        this.handshakeDone = handshakeDone;
     }
 
     public void connectionError(ConnectableConnection conn) {
         assert Logger.lowLevelDebug("connection error " + conn);
-        pool.removeConnection(conn);
+        removeConnection.accept(conn);
     }
 
     public void handshakeDone(ConnectableConnection conn) {
-        pool.handshakeDone(conn);
+        handshakeDone.accept(conn);
     }
 }
@@ -0,0 +1,480 @@
+package io.vproxy.base.component.pool;
+
+import io.vproxy.base.GlobalInspection;
+import io.vproxy.base.component.elgroup.EventLoopAttach;
+import io.vproxy.base.component.elgroup.EventLoopWrapper;
+import io.vproxy.base.connection.*;
+import io.vproxy.base.prometheus.Counter;
+import io.vproxy.base.prometheus.Histogram;
+import io.vproxy.base.prometheus.Metric;
+import io.vproxy.base.selector.PeriodicEvent;
+import io.vproxy.base.selector.SelectorEventLoop;
+import io.vproxy.base.util.LogType;
+import io.vproxy.base.util.Logger;
+import io.vproxy.base.util.anno.ThreadSafe;
+import io.vproxy.base.util.exception.AlreadyExistException;
+import io.vproxy.base.util.exception.ClosedException;
+import io.vproxy.base.util.exception.NotFoundException;
+import io.vproxy.vfd.IPPort;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * A connection pool keyed by target, with one sub pool for each event loop retrieving connections.<br>
+ * The sub pool of an event loop is only accessed on that loop,
+ * so retrieving or storing a connection on the caller's loop is an O(1) operation without switching threads.<br>
+ * Idle connections of a target are reused in LIFO order,
+ * the recently used ones stay warm and the cold ones are left to time out.<br>
+ * {@link ConnectionPoolParams#minIdle} and {@link ConnectionPoolParams#maxIdle} are counted per target per event loop.
+ * Filling to min idle requires the handler to implement {@link ConnectionPoolHandler#provide(NetEventLoop, IPPort)},
+ * a target is known to the sub pool after it's retrieved or stored on the loop for the first time.<br>
+ * The sub pool is dropped when its loop closes: immediately for loops of an event loop group,
+ * or when another loop creates its sub pool for the other loops.
+ */
+public class ShardedConnectionPool {
+    private final class Shard implements EventLoopAttach {
+        final SelectorEventLoop selectorLoop;
+        final NetEventLoop loop;
+        final Map<IPPort, Target> targets = new HashMap<>();
+        final PeriodicEvent keepaliveEvent;
+
+        Shard(SelectorEventLoop selectorLoop) {
+            this.selectorLoop = selectorLoop;
+            this.loop = selectorLoop.ensureNetEventLoop();
+            if (keepaliveInterval > 0) {
+                keepaliveEvent = selectorLoop.period(keepaliveInterval, this::keepalive);
+            } else {
+                keepaliveEvent = null;
+            }
+            if (loop instanceof EventLoopWrapper w) {
+                try {
+                    w.attachResource(this);
+                } catch (AlreadyExistException | ClosedException e) {
+                    Logger.shouldNotHappen("attach sub pool of " + alias + " to " + w + " failed", e);
+                }
+            }
+        }
+
+        Target target(IPPort addr) {
+            return targets.computeIfAbsent(addr, a -> new Target(this, a));
+        }
+
+        private void keepalive() {
+            for (Target t : targets.values()) {
+                // copy because the keepalive may close the connection
+                for (ConnectableConnection conn : new ArrayList<>(t.idle)) {
+                    assert Logger.lowLevelDebug("try to run keepalive for " + conn);
+                    handler.keepalive(conn);
+                }
+            }
+        }
+
+        @Override
+        public String id() {
+            return "ShardedConnectionPool:" + alias;
+        }
+
+        @Override
+        public void onClose() {
+            shards.remove(selectorLoop, this);
+            close();
+        }
+
+        void close() {
+            if (keepaliveEvent != null) {
+                keepaliveEvent.cancel();
+            }
+            for (Target t : targets.values()) {
+                t.close();
+            }
+            targets.clear();
+            if (loop instanceof EventLoopWrapper w) {
+                try {
+                    w.detachResource(this);
+                } catch (NotFoundException ignore) {
+                    // already detached when the loop closed
+                }
+            }
+        }
+    }
+
+    private final class Target implements ConnectableConnectionHandler {
+        final Shard shard;
+        final IPPort addr;
+        // the tail is the most recently stored one
+        final ArrayDeque<ConnectableConnection> idle = new ArrayDeque<>();
+        final Set<ConnectableConnection> handshaking = new HashSet<>();
+        boolean isPendingProviding = false;
+
+        Target(Shard shard, IPPort addr) {
+            this.shard = shard;
+            this.addr = addr;
+        }
+
+        void add(ConnectableConnection conn) {
+            if (conn.getEventLoop() != null) {
+                conn.getEventLoop().removeConnection(conn);
+            }
+            if (idleTimeoutInPool > 0) {
+                conn.setTimeout(idleTimeoutInPool);
+            }
+            try {
+                shard.loop.addConnectableConnection(conn, null, this);
+            } catch (IOException e) {
+                Logger.error(LogType.EVENT_LOOP_ADD_FAIL, "register connection into the pool failed", e);
+                conn.close();
+                return;
+            }
+            idle.addLast(conn);
+        }
+
+        void remove(Connection conn) {
+            if (!handshaking.remove(conn)) {
+                idle.remove(conn);
+            }
+        }
+
+        void close() {
+            // copy because the closed callback removes the connection
+            var conns = new ArrayList<ConnectableConnection>(idle);
+            conns.addAll(handshaking);
+            idle.clear();
+            handshaking.clear();
+            for (ConnectableConnection conn : conns) {
+                conn.close();
+            }
+        }
+
+        @Override
+        public void connected(ConnectableConnectionHandlerContext ctx) {
+            // ignore the event
+        }
+
+        @Override
+        public void readable(ConnectionHandlerContext ctx) {
+            assert Logger.lowLevelDebug("the pooled connection " + ctx.connection + " is receiving data");
+            handler.keepaliveReadable((ConnectableConnection) ctx.connection);
+            if (!ctx.connection.isClosed() && ctx.connection.getInBuffer().used() != 0) {
+                Logger.error(LogType.IMPROPER_USE, "the user code did not consume all data in the inBuffer");
+                ctx.connection.close(true);
+            }
+        }
+
+        @Override
+        public void writable(ConnectionHandlerContext ctx) {
+            // ignore the event
+        }
+
+        @Override
+        public void exception(ConnectionHandlerContext ctx, IOException err) {
+            Logger.error(LogType.CONN_ERROR, "pooled connection " + ctx.connection + " got exception", err);
+        }
+
+        @Override
+        public void remoteClosed(ConnectionHandlerContext ctx) {
+            ctx.connection.close();
+            closed(ctx);
+        }
+
+        @Override
+        public void closed(ConnectionHandlerContext ctx) {
+            Logger.warn(LogType.CONN_ERROR, "pooled connection " + ctx.connection + " closed");
+            remove(ctx.connection);
+            fill(this);
+        }
+
+        @Override
+        public void removed(ConnectionHandlerContext ctx) {
+            // maybe it's removed from the pool
+        }
+    }
+
+    private volatile boolean isClosed = false;
+    private final String alias;
+    private final ConnectionPoolHandler handler;
+    private final ConcurrentHashMap<SelectorEventLoop, Shard> shards = new ConcurrentHashMap<>();
+    private final int minIdle;
+    private final int maxIdle;
+    private final int keepaliveInterval;
+    private final int idleTimeoutInPool;
+    private final int idleTimeoutOutOfPool;
+
+    private final Counter hitCount;
+    private final Counter missCount;
+    private final Histogram waitTime;
+
+    public ShardedConnectionPool(String alias, ConnectionPoolParams params) {
+        this(alias, params, null);
+    }
+
+    public ShardedConnectionPool(String alias, ConnectionPoolParams params,
+                                 ConnectionPoolHandlerProvider handlerProvider) {
+        if (handlerProvider == null) {
+            if (params.minIdle != 0 || params.keepaliveInterval >= 0)
+                throw new IllegalArgumentException(
+                    "minIdle must be 0, keepaliveInterval must be -1 if handlerProvider not specified");
+            handlerProvider = _ -> SimpleConnectionPoolHandler.get();
+        }
+        var maxIdle = params.maxIdle;
+        if (maxIdle < 0) {
+            maxIdle = params.capacity;
+        }
+        if (maxIdle <= 0)
+            throw new IllegalArgumentException("maxIdle or capacity must be > 0");
+        if (params.minIdle < 0 || params.minIdle > maxIdle)
+            throw new IllegalArgumentException("minIdle must be in [0, maxIdle]");
+        this.alias = alias;
+        this.maxIdle = maxIdle;
+        this.minIdle = params.minIdle;
+        this.keepaliveInterval = params.keepaliveInterval;
+        this.idleTimeoutInPool = params.idleTimeoutInPool;
+        this.idleTimeoutOutOfPool = params.idleTimeoutOutOfPool;
+        this.handler = handlerProvider.provide(new ConnectionPoolHandlerProvider.ProvideParams(
+            new PoolCallback(this)
+        ));
+
+        var labels = Map.of("connection_pool", alias);
+        hitCount = GlobalInspection.getInstance().addMetric("connection_pool_hit_count", labels, Counter::new);
+        missCount = GlobalInspection.getInstance().addMetric("connection_pool_miss_count", labels, Counter::new);
+        waitTime = GlobalInspection.getInstance().addMetric("connection_pool_wait_time_micros", labels, Histogram::new);
+    }
+
+    // must be called on the loop
+    private Shard shard(SelectorEventLoop loop) {
+        Shard shard = shards.get(loop);
+        if (shard != null) {
+            return shard;
+        }
+        // a new loop is joining, it's a good chance to drop sub pools of closed loops
+        // which are not attached to any event loop group
+        for (var entry : shards.entrySet()) {
+            Shard s = entry.getValue();
+            if (s.selectorLoop.isClosed() && shards.remove(entry.getKey(), s)) {
+                assert Logger.lowLevelDebug("drop sub pool of closed loop " + s.selectorLoop);
+                s.close();
+            }
+        }
+        return shards.computeIfAbsent(loop, Shard::new);
+    }
+
+    // must be called on the loop of the connection
+    private Target lookup(Connection conn) {
+        NetEventLoop loop = conn.getEventLoop();
+        SelectorEventLoop selectorLoop = loop == null ? SelectorEventLoop.current() : loop.getSelectorEventLoop();
+        if (selectorLoop == null) {
+            return null;
+        }
+        Shard shard = shards.get(selectorLoop);
+        if (shard == null) {
+            return null;
+        }
+        return shard.targets.get(conn.getRemote());
+    }
+
+    private void fill(Target t) {
+        if (isClosed) {
+            assert Logger.lowLevelDebug("the pool is already closed, do not fill");
+            return;
+        }
+        if (t.idle.size() + t.handshaking.size() >= minIdle) {
+            assert Logger.lowLevelDebug("no need to fill " + t.addr);
+            return;
+        }
+        if (t.isPendingProviding) {
+            assert Logger.lowLevelDebug("the pool is pending providing for " + t.addr + ", so do nothing for now");
+            return;
+        }
+
+        ConnectableConnection conn = handler.provide(t.shard.loop, t.addr);
+        if (conn == null) {
+            // do not retry, the handler may never provide for this target (e.g. unsupported protocol),
+            // filling will be triggered again when a connection is retrieved or removed
+            assert Logger.lowLevelDebug("the user code refuse to provide a connection to the pool");
+            return;
+        } else if (conn.getEventLoop() == null) {
+            Logger.error(LogType.IMPROPER_USE, "user code did not register the conn to event loop");
+            conn.close(true);
+        } else if (conn.getEventLoop() != t.shard.loop) {
+            Logger.error(LogType.IMPROPER_USE, "user code did not register the conn to the caller's event loop");
+            conn.close(true);
+        } else if (!conn.getRemote().equals(t.addr)) {
+            Logger.error(LogType.IMPROPER_USE, "user code provided a conn to " + conn.getRemote() + " instead of " + t.addr);
+            conn.close(true);
+        } else {
+            assert Logger.lowLevelDebug("new connection provided, add to pool");
+            if (idleTimeoutInPool > 0) {
+                conn.setTimeout(idleTimeoutInPool);
+            }
+            t.handshaking.add(conn);
+        }
+
+        // same as ConnectionPool, do not make too many connections at the same time
+        t.shard.selectorLoop.delay(1_000, () -> {
+            t.isPendingProviding = false;
+            fill(t);
+        });
+        t.isPendingProviding = true;
+    }
+
+    void handshakeDone(ConnectableConnection conn) {
+        Logger.trace(LogType.ALERT, "handshake done for pooled connection: " + conn);
+        Target t = lookup(conn);
+        if (t == null || !t.handshaking.remove(conn)) {
+            Logger.error(LogType.IMPROPER_USE, "the connection " + conn + " is not handshaking in the pool");
+            return;
+        }
+        if (isClosed) {
+            conn.close();
+            return;
+        }
+        t.add(conn);
+    }
+
+    void removeConnection(Connection conn) {
+        assert Logger.lowLevelDebug("connection removed: " + conn);
+        Target t = lookup(conn);
+        conn.close();
+        if (t != null) {
+            t.remove(conn);
+            fill(t);
+        }
+    }
+
+    /**
+     * Retrieve an idle connection to the target from the sub pool of the current loop.
+     * Must be called on an event loop, use {@link #get(SelectorEventLoop, IPPort, Consumer)} on other threads.
+     */
+    public void get(IPPort target, Consumer<ConnectableConnection> cb) {
+        SelectorEventLoop loop = SelectorEventLoop.current();
+        if (loop == null) {
+            throw new IllegalStateException("not called on an event loop, use get(SelectorEventLoop, IPPort, Consumer) instead");
+        }
+        get(loop, target, cb);
+    }
+
+    /**
+     * Retrieve an idle connection to the target from the sub pool of <code>callerLoop</code>.
+     * The callback is called on <code>callerLoop</code>, directly if already on it.
+     * The connection passed to the callback is removed from the loop, or null if no idle connections.
+     */
+    @ThreadSafe
+    public void get(SelectorEventLoop callerLoop, IPPort target, Consumer<ConnectableConnection> cb) {
+        Objects.requireNonNull(callerLoop);
+        Objects.requireNonNull(target);
+        long begin = System.nanoTime();
+        callerLoop.runOnLoop(() -> {
+            ConnectableConnection conn = poll(callerLoop, target);
+            waitTime.record((System.nanoTime() - begin) / 1_000);
+            cb.accept(conn);
+        });
+    }
+
+    private ConnectableConnection poll(SelectorEventLoop loop, IPPort target) {
+        if (isClosed) {
+            missCount.incr(1);
+            return null;
+        }
+        Target t = shard(loop).target(target);
+        ConnectableConnection conn = t.idle.pollLast();
+        if (conn == null) {
+            missCount.incr(1);
+            fill(t);
+            return null;
+        }
+        hitCount.incr(1);
+        t.shard.loop.removeConnection(conn);
+        if (idleTimeoutOutOfPool > 0) {
+            conn.setTimeout(idleTimeoutOutOfPool);
+        }
+        assert Logger.lowLevelDebug("pooled connection retrieved: " + conn);
+        fill(t);
+        return conn;
+    }
+
+    /**
+     * Store the connection into the sub pool of the loop which the connection is registered on,
+     * or the current loop if the connection is not registered.
+     */
+    @ThreadSafe
+    public void store(ConnectableConnection conn) {
+        Objects.requireNonNull(conn);
+        NetEventLoop loop = conn.getEventLoop();
+        SelectorEventLoop selectorLoop = loop == null ? SelectorEventLoop.current() : loop.getSelectorEventLoop();
+        if (selectorLoop == null) {
+            Logger.error(LogType.IMPROPER_USE, "cannot determine which loop to store " + conn + " into");
+            conn.close();
+            return;
+        }
+        store(selectorLoop, conn);
+    }
+
+    @ThreadSafe
+    public void store(SelectorEventLoop loop, ConnectableConnection conn) {
+        Objects.requireNonNull(loop);
+        Objects.requireNonNull(conn);
+        if (isClosed) {
+            assert Logger.lowLevelDebug("the pool is already closed, cannot store");
+            conn.close();
+            return;
+        }
+        if (conn.getEventLoop() != null && conn.getEventLoop().getSelectorEventLoop() != loop) {
+            assert Logger.lowLevelDebug("in another loop, must be removed before adding ...");
+            conn.getEventLoop().removeConnection(conn);
+        }
+        if (conn.isClosed()) {
+            assert Logger.lowLevelDebug("connection is closed, cannot add");
+            return;
+        }
+        loop.runOnLoop(() -> {
+            if (isClosed) {
+                assert Logger.lowLevelDebug("the pool is already closed, cannot store");
+                conn.close();
+                return;
+            }
+            if (conn.isClosed()) {
+                assert Logger.lowLevelDebug("connection is closed, cannot add");
+                return;
+            }
+            Target t = shard(loop).target(conn.getRemote());
+            if (t.idle.size() >= maxIdle) {
+                assert Logger.lowLevelDebug("max idle reached for " + t.addr + ", cannot add");
+                conn.close();
+                return;
+            }
+            t.add(conn);
+        });
+    }
+
+    public long getHitCount() {
+        return hitCount.longValue();
+    }
+
+    public long getMissCount() {
+        return missCount.longValue();
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    @ThreadSafe
+    public void close() {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        for (Shard shard : shards.values()) {
+            if (shard.selectorLoop.isClosed()) {
+                shard.close();
+            } else {
+                shard.selectorLoop.runOnLoop(shard::close);
+            }
+        }
+        for (Metric m : List.of(hitCount, missCount, waitTime)) {
+            GlobalInspection.getInstance().removeMetric(m);
+        }
+    }
+}
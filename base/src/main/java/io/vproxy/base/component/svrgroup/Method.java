@@ -3,5 +3,8 @@ package io.vproxy.base.component.svrgroup;
 public enum Method {
     wrr,
     wlc,
-    source, // consistent hashing with source ip address
+    source, // hashing with source ip address
+    maglev, // consistent hashing with source ip address, using maglev lookup table
+    ketama, // consistent hashing with source ip address, using ketama ring
+    p2c, // power of two choices, considering connect cost and connections
 }
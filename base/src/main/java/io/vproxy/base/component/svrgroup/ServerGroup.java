@@ -1,6 +1,8 @@
 package io.vproxy.base.component.svrgroup;
 
+import io.vproxy.base.Config;
 import io.vproxy.base.GlobalEvents;
+import io.vproxy.base.GlobalInspection;
 import io.vproxy.base.component.check.*;
 import io.vproxy.base.component.elgroup.EventLoopAttach;
 import io.vproxy.base.component.elgroup.EventLoopGroup;
@@ -9,6 +11,7 @@ import io.vproxy.base.component.elgroup.EventLoopWrapper;
 import io.vproxy.base.connection.ConnCloseHandler;
 import io.vproxy.base.connection.Connection;
 import io.vproxy.base.connection.NetFlowRecorder;
+import io.vproxy.base.prometheus.Histogram;
 import io.vproxy.base.util.Annotations;
 import io.vproxy.base.util.LogType;
 import io.vproxy.base.util.Logger;
@@ -16,10 +19,12 @@ import io.vproxy.base.util.coll.ConcurrentHashSet;
 import io.vproxy.base.util.exception.AlreadyExistException;
 import io.vproxy.base.util.exception.ClosedException;
 import io.vproxy.base.util.exception.NotFoundException;
+import io.vproxy.base.util.functional.ConsumerEx;
 import io.vproxy.vfd.*;
 
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
@@ -70,6 +75,8 @@ public class ServerGroup {
                 if (hcCost.size() > 10) {
                     hcCost.removeFirst();
                 }
+                recordConnectCost(result.cost * 1_000_000);
+                healthCheckTime.record(result.cost * 1_000);
             }
 
             @Override
@@ -126,6 +133,15 @@ public class ServerGroup {
         private final LongAdder fromRemoteBytes = new LongAdder();
         private final LongAdder toRemoteBytes = new LongAdder();
 
+        // ewma of connect cost in nanoseconds, -1 means no samples yet
+        // updated from multiple event loops without locking,
+        // losing a sample when racing is acceptable
+        private volatile long connectCostEWMA = -1;
+
+        // shared with the replaced server because they have the same labels
+        final Histogram connectTime;
+        final Histogram healthCheckTime;
+
         private final ConcurrentHashSet<Connection> connMap = new ConcurrentHashSet<>();
 
         public Object data; // the data field, not used by this lib
@@ -141,6 +157,17 @@ public class ServerGroup {
             this.server = server;
             this.weight = initialWeight;
             this.toLogicDelete = toLogicDelete;
+
+            if (toLogicDelete != null) {
+                this.connectTime = toLogicDelete.connectTime;
+                this.healthCheckTime = toLogicDelete.healthCheckTime;
+            } else {
+                var labels = Map.of("server_group", ServerGroup.this.alias, "server", alias);
+                this.connectTime = GlobalInspection.getInstance().addMetric(
+                    "server_connect_time_micros", labels, Histogram::new);
+                this.healthCheckTime = GlobalInspection.getInstance().addMetric(
+                    "server_health_check_time_micros", labels, Histogram::new);
+            }
         }
 
         // --- START statistics ---
@@ -204,6 +231,35 @@ public class ServerGroup {
             return hcDownReason;
         }
 
+        void recordConnectCost(long nanos) {
+            long old = connectCostEWMA;
+            if (old < 0) {
+                connectCostEWMA = nanos;
+            } else {
+                connectCostEWMA = old + ((nanos - old) >> CONNECT_COST_EWMA_SHIFT);
+            }
+        }
+
+        void connectionSucceeded(long costNanos) {
+            recordConnectCost(costNanos);
+            connectTime.record(costNanos / 1_000);
+        }
+
+        void recordConnectFailure() {
+            // doubled on consecutive failures, but a connect never costs more than the health check timeout,
+            // otherwise the server could hardly be chosen again after it recovers
+            long penalty = Math.max(connectCostEWMA * 2, CONNECT_FAILURE_PENALTY_NANOS);
+            long max = healthCheckConfig.timeout * 1_000_000L;
+            recordConnectCost(Math.min(penalty, max));
+        }
+
+        /**
+         * @return ewma of the connect cost in nanoseconds, or -1 if not measured yet
+         */
+        public long getConnectCostEWMA() {
+            return connectCostEWMA;
+        }
+
         void start() {
             if (el != null)
                 return;
@@ -350,6 +406,11 @@ public class ServerGroup {
     private ArrayList<ServerHandle> servers = new ArrayList<>(0);
     private final CopyOnWriteArraySet<ServerListener> serverListeners = new CopyOnWriteArraySet<>();
     private Annotations annotations = new Annotations();
+    // increased when annotations of any server group change, indexes built from the annotations compare with it
+    private static final AtomicLong annotationsVersion = new AtomicLong();
+    // guarded by `this`, see beginUpdate() and commit()
+    private int updateDepth = 0;
+    private boolean resetPending = false;
 
     // START fields for WRR
     static class WRR {
@@ -410,6 +471,42 @@ public class ServerGroup {
     private SOURCE _sourceIPv6;
     // END fields for SOURCE
 
+    // START fields for MAGLEV
+    static class MAGLEV {
+        final int[] table; // slot -> index of servers
+        final ArrayList<ServerHandle> servers;
+
+        MAGLEV(int[] table, ArrayList<ServerHandle> servers) {
+            this.table = table;
+            this.servers = servers;
+        }
+    }
+
+    private MAGLEV _maglev;
+    private MAGLEV _maglevIPv4;
+    private MAGLEV _maglevIPv6;
+    // END fields for MAGLEV
+
+    // START fields for KETAMA
+    static class KETAMA {
+        static final int POINTS_PER_SERVER = 160; // for the server with max weight
+
+        final int[] points; // sorted, sign bit flipped to compare as unsigned
+        final int[] owners; // point index -> index of servers
+        final ArrayList<ServerHandle> servers;
+
+        KETAMA(int[] points, int[] owners, ArrayList<ServerHandle> servers) {
+            this.points = points;
+            this.owners = owners;
+            this.servers = servers;
+        }
+    }
+
+    private KETAMA _ketama;
+    private KETAMA _ketamaIPv4;
+    private KETAMA _ketamaIPv6;
+    // END fields for KETAMA
+
     public ServerGroup(String alias,
                        EventLoopGroup eventLoopGroup,
                        HealthCheckConfig healthCheckConfig,
@@ -434,6 +531,12 @@ public class ServerGroup {
             return wlcNext();
         } else if (method == Method.source) {
             return sourceHashGet(source.getAddress());
+        } else if (method == Method.maglev) {
+            return maglevGet(_maglev, source.getAddress());
+        } else if (method == Method.ketama) {
+            return ketamaGet(_ketama, source.getAddress());
+        } else if (method == Method.p2c) {
+            return p2cNext(_wlc);
         } else {
             Logger.shouldNotHappen("unsupported method " + method);
             // use wrr instead
@@ -448,6 +551,12 @@ public class ServerGroup {
             return wlcNextIPv4();
         } else if (method == Method.source) {
             return sourceHashGetIPv4(source.getAddress());
+        } else if (method == Method.maglev) {
+            return maglevGet(_maglevIPv4, source.getAddress());
+        } else if (method == Method.ketama) {
+            return ketamaGet(_ketamaIPv4, source.getAddress());
+        } else if (method == Method.p2c) {
+            return p2cNext(_wlcIPv4);
         } else {
             Logger.shouldNotHappen("unsupported method " + method);
             // use wrr instead
@@ -462,6 +571,12 @@ public class ServerGroup {
             return wlcNextIPv6();
         } else if (method == Method.source) {
             return sourceHashGetIPv6(source.getAddress());
+        } else if (method == Method.maglev) {
+            return maglevGet(_maglevIPv6, source.getAddress());
+        } else if (method == Method.ketama) {
+            return ketamaGet(_ketamaIPv6, source.getAddress());
+        } else if (method == Method.p2c) {
+            return p2cNext(_wlcIPv6);
         } else {
             Logger.shouldNotHappen("unsupported method " + method);
             // use wrr instead
@@ -497,6 +612,92 @@ public class ServerGroup {
         return sourceHashGet(source, idx + 1, recurse + 1);
     }
 
+    // the max slots to probe when the selected server is unhealthy
+    // the servers list will be scanned if still not found
+    private static final int CONSISTENT_HASH_PROBE_LIMIT = 32;
+
+    /*
+     * Maglev: A Fast and Reliable Software Network Load Balancer
+     * https://research.google/pubs/pub44824/
+     *
+     * Each server generates a permutation of the table slots from its (offset, skip),
+     * servers take turns to claim their next preferred empty slot until the table is full.
+     * When one of N servers is removed, only about 1/N of the slots are re-assigned.
+     */
+
+    private SvrHandleConnector maglevGet(MAGLEV maglev, IP source) {
+        int[] table = maglev.table;
+        if (table.length == 0)
+            return null;
+
+        long hash = hashIP(source);
+        int slot = (int) ((hash >>> 1) % table.length);
+        for (int i = 0; i < CONSISTENT_HASH_PROBE_LIMIT; ++i) {
+            ServerHandle h = maglev.servers.get(table[slot]);
+            if (h.healthy)
+                return h.makeConnector();
+            // use the next slot, which is usually owned by another server
+            ++slot;
+            if (slot == table.length) {
+                slot = 0;
+            }
+        }
+        return firstHealthy(maglev.servers, table[slot]);
+    }
+
+    private SvrHandleConnector ketamaGet(KETAMA ketama, IP source) {
+        int[] points = ketama.points;
+        if (points.length == 0)
+            return null;
+
+        int point = ((int) hashIP(source)) ^ Integer.MIN_VALUE;
+        int idx = Arrays.binarySearch(points, point);
+        if (idx < 0) {
+            idx = -idx - 1; // the insertion point, which is the first point greater than the hash
+        }
+        for (int i = 0; i < CONSISTENT_HASH_PROBE_LIMIT; ++i) {
+            if (idx >= points.length) {
+                idx = 0; // it's a ring
+            }
+            ServerHandle h = ketama.servers.get(ketama.owners[idx]);
+            if (h.healthy)
+                return h.makeConnector();
+            ++idx;
+        }
+        return firstHealthy(ketama.servers, ketama.owners[idx % points.length]);
+    }
+
+    private static SvrHandleConnector firstHealthy(ArrayList<ServerHandle> servers, int start) {
+        int size = servers.size();
+        for (int i = 0; i < size; ++i) {
+            ServerHandle h = servers.get((start + i) % size);
+            if (h.healthy)
+                return h.makeConnector();
+        }
+        return null;
+    }
+
+    private static long hashIP(IP ip) {
+        if (ip instanceof IPv4) {
+            return fmix64(((IPv4) ip).getIPv4Value() & 0xffffffffL);
+        } else {
+            IPv6 v6 = (IPv6) ip;
+            long high = ((long) v6.getIPv6Value0() << 32) | (v6.getIPv6Value1() & 0xffffffffL);
+            long low = ((long) v6.getIPv6Value2() << 32) | (v6.getIPv6Value3() & 0xffffffffL);
+            return fmix64(fmix64(high) ^ low);
+        }
+    }
+
+    // the finalization mix of murmur3
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
     /*
      * WLC algorithm:
      * copied from http://kb.linuxvirtualserver.org/wiki/Weighted_Least-Connection_Scheduling
@@ -582,6 +783,59 @@ public class ServerGroup {
         // return null;
     }
 
+    /*
+     * P2C: the power of two choices
+     *
+     * Randomly pick two servers, and use the one with lower score:
+     *   score = ewma(connect cost) * (connections + 1) / weight
+     * The servers list of WLC is reused because they share the same server set.
+     * Only volatile reads and ThreadLocalRandom are used, so it's safe to be called from any event loop.
+     */
+
+    private static final int CONNECT_COST_EWMA_SHIFT = 3; // alpha = 1/8
+    private static final long CONNECT_FAILURE_PENALTY_NANOS = 1_000_000_000L;
+    private static final int P2C_RETRY_LIMIT = 8;
+
+    private SvrHandleConnector p2cNext(WLC wlc) {
+        ArrayList<ServerHandle> servers = wlc.servers;
+        int n = servers.size();
+        if (n == 0)
+            return null;
+        if (n == 1) {
+            ServerHandle h = servers.get(0);
+            return h.healthy ? h.makeConnector() : null;
+        }
+
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        for (int i = 0; i < P2C_RETRY_LIMIT; ++i) {
+            int aIdx = rand.nextInt(n);
+            int bIdx = rand.nextInt(n - 1);
+            if (bIdx >= aIdx) {
+                ++bIdx; // make sure a != b
+            }
+            ServerHandle a = servers.get(aIdx);
+            ServerHandle b = servers.get(bIdx);
+            if (a.healthy && b.healthy) {
+                return (p2cScore(a) <= p2cScore(b) ? a : b).makeConnector();
+            } else if (a.healthy) {
+                return a.makeConnector();
+            } else if (b.healthy) {
+                return b.makeConnector();
+            }
+        }
+        return firstHealthy(servers, rand.nextInt(n));
+    }
+
+    private static double p2cScore(ServerHandle h) {
+        long cost = h.connectCostEWMA;
+        // not measured yet, let it have a try
+        // use 1 instead of 0 to let the connections count take effect
+        if (cost < 0) {
+            cost = 1;
+        }
+        return ((double) cost) * (h.connectionCount() + 1) / h.weight;
+    }
+
     private SvrHandleConnector wrrNext() {
         return wrrNext(this._wrr, 0);
     }
@@ -613,10 +867,69 @@ public class ServerGroup {
             return wrrNext(wrr, recursion + 1);
     }
 
-    private void resetMethodRelatedFields() {
-        wrrReset();
-        wlcReset();
-        sourceReset();
+    /**
+     * Start a batch of modifications.<br>
+     * The method related fields (wrr sequence, wlc lists, source/maglev/ketama tables)
+     * will not be rebuilt until the outermost {@link #commit()} is called,
+     * so adding or removing n servers in a batch only rebuilds these fields once.<br>
+     * The servers are still added/removed immediately, only the balancing lags until commit.
+     * Calls can be nested, and each call must be paired with a {@link #commit()}, see {@link #update(ConsumerEx)}.
+     */
+    public synchronized void beginUpdate() {
+        ++updateDepth;
+    }
+
+    public synchronized void commit() {
+        if (updateDepth == 0) {
+            throw new IllegalStateException("commit() without beginUpdate() on server-group " + alias);
+        }
+        --updateDepth;
+        if (updateDepth == 0 && resetPending) {
+            resetPending = false;
+            doResetMethodRelatedFields();
+        }
+    }
+
+    /**
+     * Run <code>f</code> between {@link #beginUpdate()} and {@link #commit()},
+     * the modifications are committed even if <code>f</code> throws.
+     */
+    public <EX extends Throwable> void update(ConsumerEx<ServerGroup, EX> f) throws EX {
+        beginUpdate();
+        try {
+            f.accept(this);
+        } finally {
+            commit();
+        }
+    }
+
+    private synchronized void resetMethodRelatedFields() {
+        if (updateDepth > 0) {
+            resetPending = true;
+            return;
+        }
+        doResetMethodRelatedFields();
+    }
+
+    private void doResetMethodRelatedFields() {
+        doResetMethodRelatedFields(method);
+    }
+
+    // only fields of the current method are maintained,
+    // fields of other methods are outdated and rebuilt in setMethod(...)
+    private void doResetMethodRelatedFields(Method method) {
+        if (method == Method.wlc || method == Method.p2c) {
+            wlcReset();
+        } else if (method == Method.source) {
+            sourceReset();
+        } else if (method == Method.maglev) {
+            maglevReset();
+        } else if (method == Method.ketama) {
+            ketamaReset();
+        } else {
+            // wrr, and unsupported methods which use wrr instead
+            wrrReset();
+        }
     }
 
     private int gcd(int a, int b) {
@@ -654,21 +967,154 @@ public class ServerGroup {
         int g = svrs.size() > 1
             ? gcd(svrs.get(0).weight, svrs.get(1).weight)
             : svrs.get(0).weight;
-        LinkedList<Integer> seqList = new LinkedList<>();
+        int len = 0;
+        for (ServerHandle s : svrs) {
+            len += s.weight / g;
+        }
+        int[] seq = new int[len];
+        int idx = 0;
         for (int sIdx = 0; sIdx < svrs.size(); sIdx++) {
             ServerHandle s = svrs.get(sIdx);
             int w = s.weight;
             int times = w / g;
             for (int i = 0; i < times; ++i) {
-                seqList.add(sIdx);
+                seq[idx++] = sIdx;
+            }
+        }
+        return new SOURCE(seq, svrs);
+    }
+
+    // sort by alias (then address) to make sure instances with the same config generate the same table
+    private static ArrayList<ServerHandle> consistentHashServers(List<ServerHandle> servers) {
+        //noinspection FuseStreamOperations
+        ArrayList<ServerHandle> svrs = new ArrayList<>(servers.stream().filter(s -> s.weight > 0).collect(Collectors.toList()));
+        svrs.sort(Comparator.<ServerHandle, String>comparing(s -> s.alias)
+            .thenComparing(s -> s.server.formatToIPPortString()));
+        return svrs;
+    }
+
+    // fnv-1a
+    private static long hashString(String s) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); ++i) {
+            hash ^= s.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return fmix64(hash);
+    }
+
+    private void maglevReset() {
+        _maglev = maglevReset(servers);
+        _maglevIPv4 = maglevReset(servers.stream().filter(s -> s.server.getAddress() instanceof IPv4).collect(Collectors.toList()));
+        _maglevIPv6 = maglevReset(servers.stream().filter(s -> s.server.getAddress() instanceof IPv6).collect(Collectors.toList()));
+    }
+
+    private MAGLEV maglevReset(List<ServerHandle> servers) {
+        ArrayList<ServerHandle> svrs = consistentHashServers(servers);
+        int n = svrs.size();
+        if (n == 0) {
+            return new MAGLEV(new int[0], svrs);
+        }
+        // the table size never changes with the servers, otherwise most flows would be remapped
+        int m = Config.maglevTableSize;
+        if (n * 100L > m) {
+            Logger.warn(LogType.ALERT, "server-group " + alias + " has " + n + " servers, " +
+                "the maglev table size " + m + " should be at least 100 times of the servers count, " +
+                "see -Dvproxy.MaglevTableSize");
+        }
+
+        int[] pos = new int[n]; // the next preferred slot of each server
+        int[] skip = new int[n];
+        int[] weight = new int[n];
+        int[] credit = new int[n];
+        int maxWeight = 0;
+        for (int i = 0; i < n; ++i) {
+            ServerHandle s = svrs.get(i);
+            long h = hashString(s.alias);
+            pos[i] = (int) ((h >>> 1) % m);
+            skip[i] = (int) ((fmix64(h ^ 0x9e3779b97f4a7c15L) >>> 1) % (m - 1)) + 1;
+            weight[i] = s.weight;
+            if (s.weight > maxWeight) {
+                maxWeight = s.weight;
+            }
+        }
+
+        int[] table = new int[m];
+        Arrays.fill(table, -1);
+        int filled = 0;
+        while (true) {
+            for (int i = 0; i < n; ++i) {
+                // servers with bigger weight take more turns
+                credit[i] += weight[i];
+                while (credit[i] >= maxWeight) {
+                    credit[i] -= maxWeight;
+                    int slot = pos[i];
+                    while (table[slot] >= 0) {
+                        slot = nextMaglevSlot(slot, skip[i], m);
+                    }
+                    table[slot] = i;
+                    pos[i] = nextMaglevSlot(slot, skip[i], m);
+                    if (++filled == m) {
+                        return new MAGLEV(table, svrs);
+                    }
+                }
             }
         }
-        int[] seq = new int[seqList.size()];
+    }
+
+    private static int nextMaglevSlot(int slot, int skip, int m) {
+        int next = slot + skip; // skip < m, so it will not overflow
+        if (next >= m) {
+            next -= m;
+        }
+        return next;
+    }
+
+    private void ketamaReset() {
+        _ketama = ketamaReset(servers);
+        _ketamaIPv4 = ketamaReset(servers.stream().filter(s -> s.server.getAddress() instanceof IPv4).collect(Collectors.toList()));
+        _ketamaIPv6 = ketamaReset(servers.stream().filter(s -> s.server.getAddress() instanceof IPv6).collect(Collectors.toList()));
+    }
+
+    private KETAMA ketamaReset(List<ServerHandle> servers) {
+        ArrayList<ServerHandle> svrs = consistentHashServers(servers);
+        if (svrs.isEmpty()) {
+            return new KETAMA(new int[0], new int[0], svrs);
+        }
+        int maxWeight = 0;
+        for (ServerHandle s : svrs) {
+            if (s.weight > maxWeight) {
+                maxWeight = s.weight;
+            }
+        }
+        int total = 0;
+        int[] counts = new int[svrs.size()];
+        for (int i = 0; i < svrs.size(); ++i) {
+            int c = (int) ((long) KETAMA.POINTS_PER_SERVER * svrs.get(i).weight / maxWeight);
+            if (c == 0) {
+                c = 1;
+            }
+            counts[i] = c;
+            total += c;
+        }
+        // high 32 bits: the point, low 32 bits: the server index
+        long[] ring = new long[total];
         int idx = 0;
-        for (Integer integer : seqList) {
-            seq[idx++] = integer;
+        for (int i = 0; i < svrs.size(); ++i) {
+            long h = hashString(svrs.get(i).alias);
+            for (int j = 0; j < counts[i]; ++j) {
+                int point = ((int) fmix64(h + j * 0x9e3779b97f4a7c15L)) ^ Integer.MIN_VALUE;
+                ring[idx++] = ((long) point << 32) | i;
+            }
         }
-        return new SOURCE(seq, svrs);
+        Arrays.sort(ring);
+        int[] points = new int[total];
+        int[] owners = new int[total];
+        for (int i = 0; i < total; ++i) {
+            points[i] = (int) (ring[i] >> 32);
+            owners[i] = (int) ring[i];
+        }
+        return new KETAMA(points, owners, svrs);
     }
 
     private void wlcReset() {
@@ -701,32 +1147,12 @@ public class ServerGroup {
         if (wrr.servers.isEmpty()) {
             wrr.seq = new int[0];
         } else {
-            // calculate the seq
-            List<Integer> listSeq = new LinkedList<>();
             int[] weights = new int[wrr.servers.size()];
-            int[] original = new int[wrr.servers.size()];
-            // run calculation
-            int sum = 0;
-            for (int i = 0; i < wrr.servers.size(); i++) {
-                ServerHandle h = wrr.servers.get(i);
-                weights[i] = h.weight;
-                original[i] = h.weight;
-                sum += h.weight;
-            }
-            //noinspection Duplicates
-            while (true) {
-                int idx = maxIndex(weights);
-                listSeq.add(idx);
-                weights[idx] -= sum;
-                if (calculationEnd(weights)) {
-                    break;
-                }
-                for (int i = 0; i < weights.length; ++i) {
-                    weights[i] += original[i];
-                }
-                sum = sum(weights); // recalculate sum
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = wrr.servers.get(i).weight;
             }
-            int[] seq = new int[listSeq.size()];
+            int[] listSeq = WRRSequence.build(weights);
+            int[] seq = new int[listSeq.length];
 
             // random is for this concern:
             // if you deploy multiple instances of vproxy
@@ -737,11 +1163,8 @@ public class ServerGroup {
             // which may cause some failure
             int randStart = new Random().nextInt(seq.length);
             // the random wll only run when updating config
-            Iterator<Integer> ite = listSeq.iterator();
-            int idx = 0;
-            while (ite.hasNext()) {
-                seq[(idx + randStart) % seq.length] = ite.next();
-                ++idx;
+            for (int idx = 0; idx < listSeq.length; ++idx) {
+                seq[(idx + randStart) % seq.length] = listSeq[idx];
             }
             wrr.seq = seq;
         }
@@ -749,40 +1172,14 @@ public class ServerGroup {
         return wrr;
     }
 
-    private int sum(int[] weights) {
-        int s = 0;
-        for (int w : weights) {
-            s += w;
-        }
-        return s;
-    }
-
-    private boolean calculationEnd(int[] weights) {
-        for (int w : weights) {
-            if (w != 0)
-                return false;
-        }
-        return true;
-    }
-
-    private int maxIndex(int[] weights) {
-        int maxIdx = 0;
-        int maxVal = weights[0];
-        for (int i = 1; i < weights.length; ++i) {
-            if (weights[i] > maxVal) {
-                maxVal = weights[i];
-                maxIdx = i;
-            }
+    public synchronized void setMethod(Method method) {
+        if (this.method == method) {
+            return;
         }
-        return maxIdx;
-    }
-
-    public void setMethod(Method method) {
-        boolean needReload = this.method != method;
+        // build the fields before switching, so that next(...) never sees fields of the new method missing
+        // when updating in batch, the pending modifications are still applied on commit
+        doResetMethodRelatedFields(method);
         this.method = method;
-        if (needReload) {
-            resetMethodRelatedFields();
-        }
     }
 
     public Method getMethod() {
@@ -806,11 +1203,16 @@ public class ServerGroup {
         return annotations;
     }
 
+    public static long getAnnotationsVersion() {
+        return annotationsVersion.get();
+    }
+
     public void setAnnotations(Annotations annotations) {
         if (annotations == null) {
             annotations = new Annotations();
         }
         this.annotations = annotations;
+        annotationsVersion.incrementAndGet();
 
         // set hc client annotations
         annotatedHcConfig.set(annotations);
@@ -926,6 +1328,11 @@ public class ServerGroup {
             throw new NotFoundException("server in server-group " + ServerGroup.this.alias, alias);
         servers = newLs;
         resetMethodRelatedFields();
+        for (ServerHandle c : ls) {
+            if (c.alias.equals(alias)) {
+                releaseMetrics(c);
+            }
+        }
 
         assert Logger.lowLevelDebug("server removed " + alias + " from " + this.alias);
     }
@@ -950,6 +1357,7 @@ public class ServerGroup {
             // only replace servers when found
             servers = newLs;
             resetMethodRelatedFields();
+            releaseMetrics(h);
         }
 
         assert Logger.lowLevelDebug("server handle removed " + h.alias + "(" + h.sid + ") from " + this.alias);
@@ -964,10 +1372,23 @@ public class ServerGroup {
         }
         for (ServerHandle s : ls) {
             s.stop();
+            releaseMetrics(s);
             assert Logger.lowLevelDebug("server removed " + s.alias + " from " + this.alias);
         }
     }
 
+    // the metrics are shared by the handles replacing each other,
+    // so only remove them when no handle is using them
+    private void releaseMetrics(ServerHandle h) {
+        for (ServerHandle s : servers) {
+            if (s.connectTime == h.connectTime) {
+                return;
+            }
+        }
+        GlobalInspection.getInstance().removeMetric(h.connectTime);
+        GlobalInspection.getInstance().removeMetric(h.healthCheckTime);
+    }
+
     public void destroy() {
         clear();
         try {
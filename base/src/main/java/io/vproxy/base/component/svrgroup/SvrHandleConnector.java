@@ -33,9 +33,15 @@ public class SvrHandleConnector extends Connector {
     @Override
     public void connectionFailed() {
         // accelerate the down process
+        serverHandle.recordConnectFailure();
         serverHandle.healthCheckClient.manuallyDownOnce();
     }
 
+    @Override
+    public void connectionSucceeded(long costNanos) {
+        serverHandle.connectionSucceeded(costNanos);
+    }
+
     public String getHostName() {
         String hostname = serverHandle.hostName;
         if (hostname == null) {
@@ -0,0 +1,73 @@
+package io.vproxy.base.component.svrgroup;
+
+/**
+ * Build the weighted round robin sequence in O(n + total weight) with primitive arrays.<br>
+ * Weights are divided by their gcd, so the sequence length is <code>sum(weights) / gcd</code>,
+ * and index <code>i</code> appears exactly <code>weights[i] / gcd</code> times.<br>
+ * The k-th (0 based) occurrence of index <code>i</code> is placed around the ideal position
+ * <code>(2k + 1) * len / (2 * w[i])</code>, so occurrences of each index are spread evenly.
+ * Positions are ordered with a counting sort, and entries in the same bucket keep the order of the indexes.
+ */
+public final class WRRSequence {
+    private WRRSequence() {
+    }
+
+    /**
+     * @param weights weights, all of them should be greater than 0
+     * @return the sequence of indexes of the weights array
+     */
+    public static int[] build(int[] weights) {
+        if (weights.length == 0) {
+            return new int[0];
+        }
+        int g = 0;
+        for (int w : weights) {
+            if (w <= 0) {
+                throw new IllegalArgumentException("weight should be greater than 0, but got " + w);
+            }
+            g = gcd(g, w);
+        }
+        long total = 0;
+        for (int w : weights) {
+            total += w / g;
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("total weight is too large: " + total + " (gcd=" + g + ")");
+        }
+        int len = (int) total;
+
+        // count entries in each bucket
+        int[] bucketStart = new int[len + 1];
+        for (int w : weights) {
+            int times = w / g;
+            for (int k = 0; k < times; ++k) {
+                ++bucketStart[bucket(k, times, len) + 1];
+            }
+        }
+        for (int b = 0; b < len; ++b) {
+            bucketStart[b + 1] += bucketStart[b];
+        }
+        // place entries
+        int[] seq = new int[len];
+        for (int i = 0; i < weights.length; ++i) {
+            int times = weights[i] / g;
+            for (int k = 0; k < times; ++k) {
+                seq[bucketStart[bucket(k, times, len)]++] = i;
+            }
+        }
+        return seq;
+    }
+
+    private static int bucket(int k, int times, int len) {
+        return (int) ((2L * k + 1) * len / (2L * times));
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -16,6 +16,8 @@ import java.net.StandardSocketOptions;
 
 public class ConnectableConnection extends Connection {
     Connector connector; // maybe null, only for recording purpose, will not be used by the connection lib
+    private final long connectBeginNanos = System.nanoTime();
+    private boolean connectedRecorded = false;
 
     public Connector getConnector() {
         return connector;
@@ -97,6 +99,16 @@ public class ConnectableConnection extends Connection {
         super(channel, remote, null, opts, inBuffer, outBuffer);
     }
 
+    void recordConnected() {
+        if (connectedRecorded) {
+            return;
+        }
+        connectedRecorded = true;
+        if (connector != null) {
+            connector.connectionSucceeded(System.nanoTime() - connectBeginNanos);
+        }
+    }
+
     // generate the id if not specified in constructor
     void regenId() {
         if (local != null) {
@@ -97,7 +97,7 @@ public class Connection implements NetFlowRecorder {
                     }
 
                     try {
-                        int write = getOutBuffer().writeTo(channel);
+                        int write = getOutBuffer().writeToVectored(channel);
                         assert Logger.lowLevelDebug("wrote " + write + " bytes to " + Connection.this);
                         if (write > 0) {
                             incToRemoteBytes(write); // record net flow, it's writing, so is "to remote"
@@ -36,6 +36,12 @@ public class Connector {
         // do nothing in default implementation
     }
 
+    // the lib alerts that the connection is established
+    // costNanos is the time from connect() to connection established
+    public void connectionSucceeded(@SuppressWarnings("unused") long costNanos) {
+        // do nothing in default implementation
+    }
+
     // provide a event loop
     public NetEventLoop loop() {
         return null; // default: do not provide
@@ -140,6 +140,7 @@ public class NetEventLoop {
         doAddConnection(connection, ops, ctx, handlerForConnectableConnection);
 
         if (fireConnected) {
+            connection.recordConnected();
             try {
                 handler.connected(ctx);
             } catch (Throwable t) {
@@ -333,7 +334,7 @@ class HandlerForConnection implements Handler<SocketFD> {
         assert Logger.lowLevelDebug("before calling storeBytesFrom: inBuffer.used() = " + cctx.connection.getInBuffer().used());
         int read;
         try {
-            read = cctx.connection.getInBuffer().storeBytesFrom(ctx.getChannel());
+            read = cctx.connection.getInBuffer().storeBytesFromVectored(ctx.getChannel());
         } catch (IOException e) {
             NetEventLoopUtils.callExceptionEvent(cctx, e);
             return;
@@ -361,6 +362,12 @@ class HandlerForConnection implements Handler<SocketFD> {
         }
         if (read == 0) { // libae will reach here when every connection connects
             assert Logger.lowLevelDebug("read nothing, the event should not be fired");
+            if (cctx.connection.getInBuffer().free() == 0) {
+                // the buffer may find out it's full only after trying to read, e.g. SpliceRingBuffer
+                // READ will be added back when the buffer becomes writable
+                assert Logger.lowLevelDebug("the inBuffer is full now, remove READ event " + cctx.connection);
+                ctx.rmOps(EventSet.read());
+            }
             return;
         }
 
@@ -424,7 +431,7 @@ class HandlerForConnection implements Handler<SocketFD> {
         }
         int write;
         try {
-            write = cctx.connection.getOutBuffer().writeTo(ctx.getChannel());
+            write = cctx.connection.getOutBuffer().writeToVectored(ctx.getChannel());
         } catch (IOException e) {
             NetEventLoopUtils.callExceptionEvent(cctx, e);
             return;
@@ -479,6 +486,8 @@ class HandlerForConnectableConnection extends HandlerForConnection {
         cctx.connection.regenId();
         if (!connected) {
             Logger.shouldNotHappen("the connection is not connected, should not fire the event");
+        } else {
+            cctx.connection.recordConnected();
         }
 
         // user might want to write some data in the callback
@@ -1,6 +1,8 @@
 package io.vproxy.base.dns;
 
+import io.vproxy.base.GlobalInspection;
 import io.vproxy.base.connection.NetEventLoop;
+import io.vproxy.base.prometheus.Histogram;
 import io.vproxy.base.selector.SelectorEventLoop;
 import io.vproxy.base.util.LogType;
 import io.vproxy.base.util.Logger;
@@ -135,12 +137,15 @@ public abstract class AbstractResolver implements Resolver {
     public int ttl = 60000;
     final ConcurrentMap<String, Cache> cacheMap = new ConcurrentHashMap<>();
     final CopyOnWriteArraySet<ResolveListener> resolveListeners = new CopyOnWriteArraySet<>();
+    private final Histogram resolveTime;
 
     protected AbstractResolver(String alias, FDs fds) throws IOException {
         // currently we only use java standard lib to resolve the address
         // so this loop is only used for handling events for now
         this.alias = alias;
         this.loop = new NetEventLoop(SelectorEventLoop.open(fds));
+        this.resolveTime = GlobalInspection.getInstance().addMetric(
+            "dns_resolve_time_micros", Map.of("resolver", alias), Histogram::new);
         // java resolve process will block the thread
         // so we start a new thread only for resolving
         // it will make a callback when resolve completed
@@ -159,9 +164,11 @@ public abstract class AbstractResolver implements Resolver {
     abstract protected void getAllByName(String domain, Callback<IP[], UnknownHostException> cb);
 
     private void doResolve(ResolveTask task) {
+        long begin = System.nanoTime();
         getAllByName(task.host, new Callback<>() {
             @Override
             protected void onSucceeded(IP[] addresses) {
+                resolveTime.record((System.nanoTime() - begin) / 1_000);
                 // record
                 if (addresses.length > 0) {
                     Cache cache = new Cache(AbstractResolver.this, task.host, addresses);
@@ -191,6 +198,7 @@ public abstract class AbstractResolver implements Resolver {
 
             @Override
             protected void onFailed(UnknownHostException err) {
+                resolveTime.record((System.nanoTime() - begin) / 1_000);
                 task.cb.failed(err);
             }
         });
@@ -319,5 +327,6 @@ public abstract class AbstractResolver implements Resolver {
     public void stop() throws IOException {
         loop.getSelectorEventLoop().close();
         clearCache();
+        GlobalInspection.getInstance().removeMetric(resolveTime);
     }
 }
@@ -54,6 +54,18 @@ public class Hint {
         );
     }
 
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
     private static String formatHost(String s) {
         if (s == null) {
             return null;
@@ -117,6 +129,16 @@ public class Hint {
             }
         }
 
+        return matchLevel(annoHost, annoPort, annoUri);
+    }
+
+    /**
+     * @param annoHost the ServerGroup_HintHost annotation, might be null
+     * @param annoPort the ServerGroup_HintPort annotation, might be 0
+     * @param annoUri  the ServerGroup_HintUri annotation, might be null
+     * @return match level, 0 for not matching
+     */
+    public int matchLevel(String annoHost, int annoPort, String annoUri) {
         if (annoHost == null && annoPort == 0 && annoUri == null) {
             return 0;
         }
@@ -133,7 +155,7 @@ public class Hint {
         if (annoHost != null && this.host != null) {
             if (this.host.equals(annoHost)) { // exact match
                 hostLevel = HOST_EXACT_MATCH;
-            } else if (this.host.endsWith("." + annoHost)) { // input value is a sub domain name of the hint
+            } else if (isSubDomainOf(this.host, annoHost)) { // input value is a sub domain name of the hint
                 hostLevel = HOST_SUFFIX_MATCH;
             } else if (annoHost.equals("*")) { // the annotation is a wildcard
                 hostLevel = HOST_WILDCARD_MATCH;
@@ -159,6 +181,12 @@ public class Hint {
         return level;
     }
 
+    // same as host.endsWith("." + domain) but does not allocate
+    private static boolean isSubDomainOf(String host, String domain) {
+        int dotIndex = host.length() - domain.length() - 1;
+        return dotIndex >= 0 && host.charAt(dotIndex) == '.' && host.endsWith(domain);
+    }
+
     @Override
     public String toString() {
         return "Hint{" +
@@ -0,0 +1,311 @@
+package io.vproxy.base.processor;
+
+import io.vproxy.base.util.Annotations;
+import io.vproxy.base.util.thread.VProxyThread;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Index of values annotated with hint host/port/uri, for searching the value which best matches a {@link Hint}.<br>
+ * The result is the same as checking {@link Hint#matchLevel(Annotations...)} of all values in order
+ * and taking the first one with the highest level, but only the values which might match are checked:
+ * <ul>
+ * <li>hosts are stored in a trie in reversed order, walking the trie with the reversed input host
+ * finds the exact matching host and all parent domains</li>
+ * <li>uris are stored in a trie, walking the trie with the input uri finds all prefixes</li>
+ * <li>wildcard hosts and uris are stored separately</li>
+ * </ul>
+ * Values matching the host always win against values only matching the uri,
+ * so the uri trie is checked only when nothing matches the host.
+ * The match level (including the port) is calculated for each candidate by the {@link Hint} itself.<br>
+ * The index is immutable and thread safe, build a new one when values or annotations change.
+ * Recent results are cached per event loop.
+ *
+ * @param <T> value type
+ */
+public class HintIndex<T> {
+    private final Object[] values;
+    private final String[] hosts;
+    private final int[] ports;
+    private final String[] uris;
+    private final Node reversedHosts;
+    private final int[] wildcardHosts;
+    private final Node uriPrefixes;
+    private final int[] wildcardUris;
+
+    private HintIndex(Builder<T> builder) {
+        int size = builder.values.size();
+        values = builder.values.toArray();
+        hosts = builder.hosts.toArray(new String[0]);
+        ports = new int[size];
+        uris = builder.uris.toArray(new String[0]);
+        reversedHosts = new Node();
+        uriPrefixes = new Node();
+        var wildcardHosts = new ArrayList<Integer>();
+        var wildcardUris = new ArrayList<Integer>();
+        for (int i = 0; i < size; ++i) {
+            ports[i] = builder.ports.get(i);
+            String host = hosts[i];
+            if (host != null) {
+                if (host.equals("*")) {
+                    wildcardHosts.add(i);
+                }
+                var n = reversedHosts;
+                for (int p = host.length() - 1; p >= 0; --p) {
+                    n = n.getOrCreate(host.charAt(p));
+                }
+                n.addEntry(i);
+            }
+            String uri = uris[i];
+            if (uri != null) {
+                if (uri.equals("*")) {
+                    wildcardUris.add(i);
+                }
+                var n = uriPrefixes;
+                for (int p = 0; p < uri.length(); ++p) {
+                    n = n.getOrCreate(uri.charAt(p));
+                }
+                n.addEntry(i);
+            }
+        }
+        this.wildcardHosts = wildcardHosts.stream().mapToInt(i -> i).toArray();
+        this.wildcardUris = wildcardUris.stream().mapToInt(i -> i).toArray();
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * @return the best matching value, or null if nothing matches
+     */
+    public T search(Hint hint) {
+        int idx;
+        var cache = Cache.current();
+        if (cache == null) {
+            idx = searchIndex(hint);
+        } else {
+            idx = cache.get(this, hint);
+            if (idx == Cache.MISS) {
+                idx = searchIndex(hint);
+                cache.put(this, hint, idx);
+            }
+        }
+        if (idx < 0) {
+            return null;
+        }
+        //noinspection unchecked
+        return (T) values[idx];
+    }
+
+    // the best candidate is encoded as (level << 32) | (Integer.MAX_VALUE - index)
+    // so that the one with the highest level and then the lowest index has the biggest value
+    private int searchIndex(Hint hint) {
+        long best = 0;
+
+        String host = hint.getHost();
+        if (host != null) {
+            var n = reversedHosts;
+            if (host.isEmpty() || host.charAt(host.length() - 1) == '.') {
+                best = check(best, n.entries, hint);
+            }
+            for (int p = host.length() - 1; p >= 0; --p) {
+                n = n.get(host.charAt(p));
+                if (n == null) {
+                    break;
+                }
+                // exact match, or a parent domain
+                if (p == 0 || host.charAt(p - 1) == '.') {
+                    best = check(best, n.entries, hint);
+                }
+            }
+            best = check(best, wildcardHosts, hint);
+            if (best != 0) {
+                return Integer.MAX_VALUE - (int) best;
+            }
+        }
+
+        String uri = hint.getUri();
+        if (uri != null) {
+            var n = uriPrefixes;
+            best = check(best, n.entries, hint);
+            for (int p = 0; p < uri.length(); ++p) {
+                n = n.get(uri.charAt(p));
+                if (n == null) {
+                    break;
+                }
+                best = check(best, n.entries, hint);
+            }
+            best = check(best, wildcardUris, hint);
+        }
+
+        if (best == 0) {
+            return -1;
+        }
+        return Integer.MAX_VALUE - (int) best;
+    }
+
+    private long check(long best, int[] entries, Hint hint) {
+        for (int i : entries) {
+            int level = hint.matchLevel(hosts[i], ports[i], uris[i]);
+            if (level == 0) {
+                continue;
+            }
+            long v = ((long) level << 32) | (Integer.MAX_VALUE - i);
+            if (v > best) {
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public String toString() {
+        return "HintIndex{size=" + values.length + "}";
+    }
+
+    private static final class Node {
+        private static final char[] EMPTY_KEYS = new char[0];
+        private static final Node[] EMPTY_CHILDREN = new Node[0];
+        private static final int[] EMPTY_ENTRIES = new int[0];
+
+        // sorted
+        private char[] keys = EMPTY_KEYS;
+        private Node[] children = EMPTY_CHILDREN;
+        private int[] entries = EMPTY_ENTRIES;
+
+        Node get(char c) {
+            int idx = Arrays.binarySearch(keys, c);
+            if (idx < 0) {
+                return null;
+            }
+            return children[idx];
+        }
+
+        Node getOrCreate(char c) {
+            int idx = Arrays.binarySearch(keys, c);
+            if (idx >= 0) {
+                return children[idx];
+            }
+            idx = -idx - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, idx);
+            System.arraycopy(children, 0, newChildren, 0, idx);
+            newKeys[idx] = c;
+            Node n = new Node();
+            newChildren[idx] = n;
+            System.arraycopy(keys, idx, newKeys, idx + 1, keys.length - idx);
+            System.arraycopy(children, idx, newChildren, idx + 1, children.length - idx);
+            keys = newKeys;
+            children = newChildren;
+            return n;
+        }
+
+        void addEntry(int i) {
+            entries = Arrays.copyOf(entries, entries.length + 1);
+            entries[entries.length - 1] = i;
+        }
+    }
+
+    public static final class Builder<T> {
+        private final List<T> values = new ArrayList<>();
+        private final List<String> hosts = new ArrayList<>();
+        private final List<Integer> ports = new ArrayList<>();
+        private final List<String> uris = new ArrayList<>();
+
+        /**
+         * The annotations are checked in order, the first present hint host/port/uri is used,
+         * same as {@link Hint#matchLevel(Annotations...)}
+         */
+        public Builder<T> add(T value, Annotations... annosArray) {
+            String annoHost = null;
+            int annoPort = 0;
+            String annoUri = null;
+            for (Annotations a : annosArray) {
+                if (annoHost == null) {
+                    annoHost = a.ServerGroup_HintHost;
+                }
+                if (annoPort == 0) {
+                    annoPort = a.ServerGroup_HintPort;
+                }
+                if (annoUri == null) {
+                    annoUri = a.ServerGroup_HintUri;
+                }
+            }
+            return add(value, annoHost, annoPort, annoUri);
+        }
+
+        public Builder<T> add(T value, String annoHost, int annoPort, String annoUri) {
+            values.add(value);
+            hosts.add(annoHost);
+            ports.add(annoPort);
+            uris.add(annoUri);
+            return this;
+        }
+
+        public HintIndex<T> build() {
+            return new HintIndex<>(this);
+        }
+    }
+
+    /**
+     * A small direct mapped cache of recent search results, owned by an event loop thread.
+     */
+    public static final class Cache {
+        private static final int SIZE = 256;
+        static final int MISS = -2;
+
+        private final HintIndex<?>[] owners = new HintIndex[SIZE];
+        private final String[] hosts = new String[SIZE];
+        private final int[] ports = new int[SIZE];
+        private final String[] uris = new String[SIZE];
+        private final int[] results = new int[SIZE];
+
+        private Cache() {
+        }
+
+        static Cache current() {
+            var variable = VProxyThread.current();
+            if (variable.loop == null) {
+                return null;
+            }
+            var cache = variable.hintIndexCache;
+            if (cache == null) {
+                cache = new Cache();
+                variable.hintIndexCache = cache;
+            }
+            return cache;
+        }
+
+        private static int slot(Hint hint) {
+            int h = Objects.hashCode(hint.getHost());
+            h = h * 31 + hint.getPort();
+            h = h * 31 + Objects.hashCode(hint.getUri());
+            return (h ^ (h >>> 16)) & (SIZE - 1);
+        }
+
+        int get(HintIndex<?> owner, Hint hint) {
+            int slot = slot(hint);
+            if (owners[slot] == owner
+                && ports[slot] == hint.getPort()
+                && Objects.equals(hosts[slot], hint.getHost())
+                && Objects.equals(uris[slot], hint.getUri())) {
+                return results[slot];
+            }
+            return MISS;
+        }
+
+        void put(HintIndex<?> owner, Hint hint, int result) {
+            int slot = slot(hint);
+            owners[slot] = owner;
+            hosts[slot] = hint.getHost();
+            ports[slot] = hint.getPort();
+            uris[slot] = hint.getUri();
+            results[slot] = result;
+        }
+    }
+}
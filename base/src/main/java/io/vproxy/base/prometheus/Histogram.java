@@ -0,0 +1,173 @@
+package io.vproxy.base.prometheus;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A log-linear histogram of non-negative long values, e.g. latency in microseconds.<br>
+ * Each power of 2 is split into {@link #SUB_BUCKETS} linear buckets, so the relative error is at most 1/8,
+ * and the memory is fixed by the max exponent.<br>
+ * The counters are kept in one array split into a few cache line aligned stripes, a thread always records
+ * into the stripe picked by its id, so event loops rarely contend with each other, and the memory of a
+ * histogram doesn't grow with the count of threads. The stripes are summed up when the metric is read.<br>
+ * The prometheus {@code _bucket} lines are exported on powers of 2, which are boundaries of the internal buckets,
+ * so the cumulative counts are exact.
+ */
+public class Histogram extends Metric {
+    private static final int SUB_BUCKET_BITS = 3;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    public static final int DEFAULT_MAX_EXPONENT = 26; // 2^26 micros is about 67 seconds
+
+    private static final int STRIPES = Math.min(4, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()));
+    private static final int LONGS_PER_CACHE_LINE = 8;
+
+    private final int maxExponent;
+    private final int bucketCount; // the last bucket holds values > 2^maxExponent
+    private final int stripeLen; // [0, bucketCount) are buckets, [bucketCount] is the sum, padded to cache lines
+    private final AtomicLongArray data;
+
+    public Histogram(String metric, Map<String, String> labels) {
+        this(metric, labels, DEFAULT_MAX_EXPONENT);
+    }
+
+    public Histogram(String metric, Map<String, String> labels, int maxExponent) {
+        super(metric, labels);
+        if (maxExponent <= SUB_BUCKET_BITS || maxExponent > 62) {
+            throw new IllegalArgumentException("maxExponent " + maxExponent + " out of range (" + SUB_BUCKET_BITS + ", 62]");
+        }
+        this.maxExponent = maxExponent;
+        this.bucketCount = bucketIndex(1L << maxExponent) + 2;
+        this.stripeLen = (bucketCount + 1 + LONGS_PER_CACHE_LINE - 1) / LONGS_PER_CACHE_LINE * LONGS_PER_CACHE_LINE;
+        // one more cache line in front, so the first stripe doesn't share a line with the array header
+        this.data = new AtomicLongArray(LONGS_PER_CACHE_LINE + STRIPES * stripeLen);
+    }
+
+    private static int stripeOf(Thread t) {
+        long h = t.threadId() * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (STRIPES - 1);
+    }
+
+    // buckets are (lower, upper], values 0 and 1 are in bucket 0
+    static int bucketIndex(long value) {
+        long v = value - 1;
+        if (v < SUB_BUCKETS) {
+            return v < 0 ? 0 : (int) v;
+        }
+        int e = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (e - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return ((e - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + sub;
+    }
+
+    // the max value of the bucket
+    static long bucketUpperBound(int idx) {
+        if (idx < SUB_BUCKETS) {
+            return idx + 1;
+        }
+        int e = (idx >> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        int sub = idx & (SUB_BUCKETS - 1);
+        long lower = ((long) (SUB_BUCKETS + sub)) << (e - SUB_BUCKET_BITS);
+        return lower + (1L << (e - SUB_BUCKET_BITS));
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        int idx = value > (1L << maxExponent) ? bucketCount - 1 : bucketIndex(value);
+        int base = LONGS_PER_CACHE_LINE + stripeOf(Thread.currentThread()) * stripeLen;
+        data.getAndIncrement(base + idx);
+        data.getAndAdd(base + bucketCount, value);
+    }
+
+    private long[] snapshot() {
+        long[] ret = new long[bucketCount + 1];
+        for (int s = 0; s < STRIPES; ++s) {
+            int base = LONGS_PER_CACHE_LINE + s * stripeLen;
+            for (int i = 0; i < ret.length; ++i) {
+                ret[i] += data.get(base + i);
+            }
+        }
+        return ret;
+    }
+
+    public long count() {
+        long[] snapshot = snapshot();
+        long n = 0;
+        for (int i = 0; i < bucketCount; ++i) {
+            n += snapshot[i];
+        }
+        return n;
+    }
+
+    public long sum() {
+        long n = 0;
+        for (int s = 0; s < STRIPES; ++s) {
+            n += data.get(LONGS_PER_CACHE_LINE + s * stripeLen + bucketCount);
+        }
+        return n;
+    }
+
+    /**
+     * @param quantile 0 to 1
+     * @return upper bound of the bucket where the quantile falls in, -1 if no values recorded,
+     * or {@link Long#MAX_VALUE} if it exceeds the max value
+     */
+    public long valueAtQuantile(double quantile) {
+        long[] snapshot = snapshot();
+        long total = 0;
+        for (int i = 0; i < bucketCount; ++i) {
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long n = 0;
+        for (int i = 0; i < bucketCount - 1; ++i) {
+            n += snapshot[i];
+            if (n >= rank) {
+                return bucketUpperBound(i);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String type() {
+        return "histogram";
+    }
+
+    @Override
+    public String value() {
+        return "" + count();
+    }
+
+    @Override
+    protected void format(StringBuilder sb) {
+        long[] snapshot = snapshot();
+        long cumulative = 0;
+        int idx = 0;
+        for (int e = SUB_BUCKET_BITS; e <= maxExponent; ++e) {
+            long le = 1L << e;
+            while (bucketUpperBound(idx) <= le) {
+                cumulative += snapshot[idx];
+                ++idx;
+            }
+            sb.append(metric).append("_bucket");
+            appendLabels(sb, "le", "\"" + le + "\"");
+            sb.append(" ").append(cumulative).append("\n");
+        }
+        cumulative += snapshot[bucketCount - 1];
+        sb.append(metric).append("_bucket");
+        appendLabels(sb, "le", "\"+Inf\"");
+        sb.append(" ").append(cumulative).append("\n");
+
+        sb.append(metric).append("_sum");
+        appendLabels(sb, null, null);
+        sb.append(" ").append(snapshot[bucketCount]).append("\n");
+
+        sb.append(metric).append("_count");
+        appendLabels(sb, null, null);
+        sb.append(" ").append(cumulative).append("\n");
+    }
+}
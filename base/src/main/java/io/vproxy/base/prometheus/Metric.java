@@ -27,4 +27,35 @@ public abstract class Metric {
     abstract public String type();
 
     abstract public String value();
+
+    protected void format(StringBuilder sb) {
+        sb.append(metric);
+        appendLabels(sb, null, null);
+        sb.append(" ").append(value()).append("\n");
+    }
+
+    /**
+     * @param extraKey   an additional label appended after the metric's own labels, may be null
+     * @param extraValue the formatted (quoted) value of the additional label
+     */
+    protected void appendLabels(StringBuilder sb, String extraKey, String extraValue) {
+        sb.append("{");
+        boolean isFirst = true;
+        for (String key : labelKeys) {
+            if (isFirst) {
+                isFirst = false;
+            } else {
+                sb.append(",");
+            }
+            // the value is already formatted (quoted)
+            sb.append(key).append("=").append(labels.get(key));
+        }
+        if (extraKey != null) {
+            if (!isFirst) {
+                sb.append(",");
+            }
+            sb.append(extraKey).append("=").append(extraValue);
+        }
+        sb.append("}");
+    }
 }
@@ -48,20 +48,7 @@ public class Metrics {
                 sb.append("# TYPE ").append(metric.metric).append(" ").append(metric.type()).append("\n");
             }
             lastMetricName = metric.metric;
-            sb.append(metric.metric).append("{");
-            {
-                boolean isFirst = true;
-                for (String key : metric.labelKeys) {
-                    if (isFirst) {
-                        isFirst = false;
-                    } else {
-                        sb.append(",");
-                    }
-                    // the value is already formatted (quoted)
-                    sb.append(key).append("=").append(metric.labels.get(key));
-                }
-            }
-            sb.append("}").append(" ").append(metric.value()).append("\n");
+            metric.format(sb);
         }
         return sb.toString();
     }
@@ -0,0 +1,311 @@
+package io.vproxy.base.selector;
+
+import io.vproxy.base.Config;
+import io.vproxy.base.GlobalInspection;
+import io.vproxy.base.prometheus.GaugeF;
+import io.vproxy.base.prometheus.Metric;
+import io.vproxy.base.util.LogType;
+import io.vproxy.base.util.Logger;
+import io.vproxy.base.util.coll.ConcurrentHashSet;
+import io.vproxy.base.util.display.TableBuilder;
+import io.vproxy.base.util.thread.VProxyThread;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Statistics of one event loop, only created when {@link Config#eventLoopInspection} is enabled.<br>
+ * The counters are written by the loop thread only and published to readers once per window,
+ * so recording neither allocates nor contends.<br>
+ * A watchdog thread samples the stack of the loop thread when a callback
+ * is running longer than {@link Config#eventLoopSlowCallbackMillis}.
+ */
+public class LoopInspection {
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+    private static final int SLOWEST_COUNT = 8;
+
+    private static final ConcurrentHashSet<LoopInspection> running = new ConcurrentHashSet<>();
+    private static boolean watchdogStarted = false;
+
+    public static final class SlowCallback {
+        public final long costNanos;
+        public final String handler;
+        public final String target; // may be null
+        public final long timestamp;
+
+        SlowCallback(long costNanos, String handler, String target, long timestamp) {
+            this.costNanos = costNanos;
+            this.handler = handler;
+            this.target = target;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private final long slowNanos = Config.eventLoopSlowCallbackMillis * 1_000_000L;
+    private volatile Thread thread;
+    private String name;
+    private final List<Metric> metrics = new ArrayList<>();
+
+    // only accessed by the loop thread
+    private long pollBegin;
+    private long pollEnd = 0; // 0 means not polled yet
+    private long busyNanos;
+    private long waitNanos;
+    private long polls;
+    private long events;
+    private long timersFired;
+    private long slowCallbacks;
+    private long windowBegin;
+    private long windowBusyNanos;
+    private long windowWaitNanos;
+
+    // published to readers
+    private volatile long pubBusyMicros;
+    private volatile long pubWaitMicros;
+    private volatile long pubPolls;
+    private volatile long pubEvents;
+    private volatile long pubTimersFired;
+    private volatile long pubSlowCallbacks;
+    private volatile int utilizationPercent;
+    private volatile int timersPending;
+
+    // begin of the running callback, 0 when no callback is running
+    private volatile long callbackBegin = 0;
+    private long lastSampledBegin = 0; // only accessed by the watchdog
+    private volatile String lastSampledStack = null;
+
+    private final SlowCallback[] slowest = new SlowCallback[SLOWEST_COUNT]; // guarded by itself
+
+    LoopInspection() {
+    }
+
+    void start(SelectorEventLoop loop, Thread thread) {
+        this.thread = thread;
+        this.name = thread.getName();
+        windowBegin = System.nanoTime();
+
+        var labels = Map.of("event_loop", name);
+        addMetric("event_loop_busy_micros_total", labels, () -> pubBusyMicros);
+        addMetric("event_loop_poll_wait_micros_total", labels, () -> pubWaitMicros);
+        addMetric("event_loop_utilization_percent_current", labels, () -> (long) utilizationPercent);
+        addMetric("event_loop_polls_total", labels, () -> pubPolls);
+        addMetric("event_loop_events_total", labels, () -> pubEvents);
+        addMetric("event_loop_tasks_pending_current", labels, () -> (long) loop.getRunOnLoopEventsCount());
+        addMetric("event_loop_timers_pending_current", labels, () -> (long) timersPending);
+        addMetric("event_loop_timers_fired_total", labels, () -> pubTimersFired);
+        addMetric("event_loop_slow_callbacks_total", labels, () -> pubSlowCallbacks);
+
+        running.add(this);
+        startWatchdog();
+    }
+
+    private void addMetric(String metric, Map<String, String> labels, Supplier<Long> f) {
+        metrics.add(GlobalInspection.getInstance().addMetric(metric, labels, (m, l) -> new GaugeF(m, l, f)));
+    }
+
+    void stop() {
+        running.remove(this);
+        for (var m : metrics) {
+            GlobalInspection.getInstance().removeMetric(m);
+        }
+        metrics.clear();
+        thread = null;
+    }
+
+    /**
+     * @return the begin time to be passed to {@link #endCallback}, or 0 if the callback is not measured
+     * (nested in another callback or not running on the loop thread)
+     */
+    long beginCallback() {
+        if (callbackBegin != 0 || Thread.currentThread() != thread) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        callbackBegin = now;
+        return now;
+    }
+
+    void endCallback(long begin, Object handler, Object target) {
+        if (begin == 0) {
+            return;
+        }
+        callbackBegin = 0;
+        long cost = System.nanoTime() - begin;
+        if (cost >= slowNanos) {
+            slowCallback(cost, handler, target);
+        }
+    }
+
+    private void slowCallback(long cost, Object handler, Object target) {
+        ++slowCallbacks;
+        synchronized (slowest) {
+            int min = 0;
+            for (int i = 0; i < slowest.length; ++i) {
+                if (slowest[i] == null) {
+                    min = i;
+                    break;
+                }
+                if (slowest[i].costNanos < slowest[min].costNanos) {
+                    min = i;
+                }
+            }
+            if (slowest[min] == null || slowest[min].costNanos < cost) {
+                slowest[min] = new SlowCallback(cost, handler.getClass().getName(),
+                    target == null ? null : target.toString(), System.currentTimeMillis());
+            }
+        }
+    }
+
+    void beforePoll() {
+        long now = System.nanoTime();
+        if (pollEnd != 0) {
+            long busy = now - pollEnd;
+            busyNanos += busy;
+            windowBusyNanos += busy;
+        }
+        pollBegin = now;
+    }
+
+    void afterPoll(int selected) {
+        long now = System.nanoTime();
+        long wait = now - pollBegin;
+        waitNanos += wait;
+        windowWaitNanos += wait;
+        pollEnd = now;
+        ++polls;
+        events += selected;
+
+        if (now - windowBegin < WINDOW_NANOS) {
+            return;
+        }
+        long total = windowBusyNanos + windowWaitNanos;
+        utilizationPercent = total == 0 ? 0 : (int) (windowBusyNanos * 100 / total);
+        pubBusyMicros = busyNanos / 1_000;
+        pubWaitMicros = waitNanos / 1_000;
+        pubPolls = polls;
+        pubEvents = events;
+        pubTimersFired = timersFired;
+        pubSlowCallbacks = slowCallbacks;
+        windowBegin = now;
+        windowBusyNanos = 0;
+        windowWaitNanos = 0;
+    }
+
+    void timers(int fired, int pending) {
+        timersFired += fired;
+        timersPending = pending;
+    }
+
+    private static synchronized void startWatchdog() {
+        if (watchdogStarted) {
+            return;
+        }
+        watchdogStarted = true;
+        long period = Math.max(1, Config.eventLoopSlowCallbackMillis / 2);
+        var t = VProxyThread.create(() -> {
+            //noinspection InfiniteLoopStatement
+            while (true) {
+                try {
+                    //noinspection BusyWait
+                    Thread.sleep(period);
+                } catch (InterruptedException ignore) {
+                }
+                long now = System.nanoTime();
+                for (var i : running) {
+                    i.check(now);
+                }
+            }
+        }, "event-loop-watchdog");
+        t.thread().setDaemon(true);
+        t.start();
+    }
+
+    private void check(long now) {
+        long begin = callbackBegin;
+        if (begin == 0 || begin == lastSampledBegin || now - begin < slowNanos) {
+            return;
+        }
+        Thread t = thread;
+        if (t == null) {
+            return;
+        }
+        var stack = t.getStackTrace();
+        if (callbackBegin != begin) {
+            return; // the callback finished when sampling
+        }
+        lastSampledBegin = begin;
+
+        StringBuilder sb = new StringBuilder();
+        for (var s : stack) {
+            sb.append("\tat ").append(s).append("\n");
+        }
+        String str = sb.toString();
+        lastSampledStack = str;
+        Logger.warn(LogType.ALERT, "event loop " + name + " is running a callback for more than "
+            + ((now - begin) / 1_000_000) + "ms:\n" + str);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getUtilizationPercent() {
+        return utilizationPercent;
+    }
+
+    /**
+     * @return count of slow callbacks, published once per second
+     */
+    public long getSlowCallbacks() {
+        return pubSlowCallbacks;
+    }
+
+    /**
+     * @return the slowest callbacks, the slowest first
+     */
+    public List<SlowCallback> getSlowestCallbacks() {
+        SlowCallback[] arr;
+        synchronized (slowest) {
+            arr = Arrays.stream(slowest).filter(e -> e != null).toArray(SlowCallback[]::new);
+        }
+        Arrays.sort(arr, Comparator.comparingLong((SlowCallback e) -> e.costNanos).reversed());
+        return Arrays.asList(arr);
+    }
+
+    public String getLastSampledStack() {
+        return lastSampledStack;
+    }
+
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        for (var i : running) {
+            sb.append(i.name)
+                .append(" utilization=").append(i.utilizationPercent).append("%")
+                .append(" polls=").append(i.pubPolls)
+                .append(" events=").append(i.pubEvents)
+                .append(" timers-pending=").append(i.timersPending)
+                .append(" slow-callbacks=").append(i.pubSlowCallbacks)
+                .append("\n");
+            var slow = i.getSlowestCallbacks();
+            if (!slow.isEmpty()) {
+                TableBuilder table = new TableBuilder();
+                table.tr().td("COST-MILLIS").td("HANDLER").td("TARGET").td("TIMESTAMP");
+                for (var e : slow) {
+                    table.tr().td("" + (e.costNanos / 1_000_000)).td(e.handler)
+                        .td(e.target == null ? "" : e.target).td("" + e.timestamp);
+                }
+                sb.append(table);
+            }
+            var stack = i.lastSampledStack;
+            if (stack != null) {
+                sb.append("last sampled stack:\n").append(stack);
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+}
@@ -11,8 +11,10 @@ import io.vproxy.base.util.Logger;
 import io.vproxy.base.util.anno.Blocking;
 import io.vproxy.base.util.anno.ThreadSafe;
 import io.vproxy.base.util.callback.Callback;
+import io.vproxy.base.util.coll.MPSCArrayQueue;
 import io.vproxy.base.util.coll.Tuple;
 import io.vproxy.base.util.promise.Promise;
+import io.vproxy.base.util.ringbuffer.RingBufferPool;
 import io.vproxy.base.util.thread.VProxyThread;
 import io.vproxy.base.util.time.TimeQueue;
 import io.vproxy.vfd.*;
@@ -24,6 +26,8 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ClosedSelectorException;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 @SuppressWarnings("rawtypes")
@@ -60,8 +64,13 @@ public class SelectorEventLoop implements AutoCloseable {
     public final WrappedSelector selector;
     public final FDs fds;
     private final InitOptions initOptions;
-    private final TimeQueue<Runnable> timeQueue = TimeQueue.create();
-    private final ConcurrentLinkedQueue<Runnable> runOnLoopEvents = new ConcurrentLinkedQueue<>();
+    private final TimeQueue<Runnable> timeQueue;
+    private final MPSCArrayQueue<Runnable> runOnLoopEvents = new MPSCArrayQueue<>(Config.eventLoopTaskQueueCapacity);
+    // tasks are stored here only when runOnLoopEvents is full
+    private final ConcurrentLinkedQueue<Runnable> runOnLoopEventsOverflow = new ConcurrentLinkedQueue<>();
+    private final Consumer<Runnable> tryRunnableFunc = this::tryRunnable;
+    // set when selector.wakeup() is called, cleared by the loop thread before handling tasks
+    private final AtomicBoolean wakeupPending = new AtomicBoolean(false);
 
     private final Lock channelRegisteringLock = Lock.create();
     private final ConcurrentLinkedQueue<AddFdData> channelsToBeRegisteredStep1 = new ConcurrentLinkedQueue<>();
@@ -70,6 +79,7 @@ public class SelectorEventLoop implements AutoCloseable {
     private final HandlerContext ctxReuse0 = new HandlerContext(this); // always reuse the ctx object
     private final HandlerContext ctxReuse1 = new HandlerContext(this);
     private volatile Thread runningThread;
+    private final LoopInspection inspection;
 
     // these locks are a little tricky
     // see comments in loop() and close()
@@ -86,6 +96,8 @@ public class SelectorEventLoop implements AutoCloseable {
         public boolean preferPoll = false;
         public long coreAffinity = -1;
         public int epfd = 0;
+        public boolean timeWheel = false;
+        public boolean inspection = Config.eventLoopInspection;
 
         public InitOptions() {
         }
@@ -94,6 +106,8 @@ public class SelectorEventLoop implements AutoCloseable {
             this.preferPoll = opts.preferPoll;
             this.coreAffinity = opts.coreAffinity;
             this.epfd = opts.epfd;
+            this.timeWheel = opts.timeWheel;
+            this.inspection = opts.inspection;
         }
     }
 
@@ -108,6 +122,8 @@ public class SelectorEventLoop implements AutoCloseable {
         this.fds = fds;
         CLOSE_LOCK = Lock.create();
         this.initOptions = new InitOptions(opts);
+        this.timeQueue = opts.timeWheel ? TimeQueue.createTimeWheel() : TimeQueue.create();
+        this.inspection = opts.inspection ? new LoopInspection() : null;
     }
 
     private NetEventLoop netEventLoop = null;
@@ -152,12 +168,16 @@ public class SelectorEventLoop implements AutoCloseable {
     }
 
     private void tryRunnable(Runnable r) {
+        long begin = inspection == null ? 0 : inspection.beginCallback();
         try {
             r.run();
         } catch (Throwable t) {
             // we cannot throw the error, just log
             Logger.error(LogType.IMPROPER_USE, "exception thrown in nextTick event ", t);
         }
+        if (inspection != null) {
+            inspection.endCallback(begin, r, null);
+        }
     }
 
     private void handleNonSelectEvents() {
@@ -191,14 +211,27 @@ public class SelectorEventLoop implements AutoCloseable {
     }
 
     private void handleRunOnLoopEvents() {
-        int len = runOnLoopEvents.size();
         // only run available events when entering this function
-        for (int i = 0; i < len; ++i) {
-            Runnable r = runOnLoopEvents.poll();
+        // measure the overflow queue before the array:
+        // an event submitted after the array is measured might be put into the overflow queue when the array is full,
+        // measuring in the other order would run it before older events left in the array
+        int overflowLen = runOnLoopEventsOverflow.isEmpty() ? 0 : runOnLoopEventsOverflow.size();
+        int len = runOnLoopEvents.size();
+        runOnLoopEvents.drain(tryRunnableFunc, len);
+        for (int i = 0; i < overflowLen; ++i) {
+            Runnable r = runOnLoopEventsOverflow.poll();
             tryRunnable(r);
         }
     }
 
+    private boolean hasRunOnLoopEvents() {
+        return !runOnLoopEvents.isEmpty() || !runOnLoopEventsOverflow.isEmpty();
+    }
+
+    public int getRunOnLoopEventsCount() {
+        return runOnLoopEvents.size() + (runOnLoopEventsOverflow.isEmpty() ? 0 : runOnLoopEventsOverflow.size());
+    }
+
     private void handleTimeEvents() {
         List<Runnable> toRun = new LinkedList<>();
         while (timeQueue.nextTime(Config.currentTimestamp) == 0) {
@@ -208,6 +241,9 @@ public class SelectorEventLoop implements AutoCloseable {
         for (Runnable r : toRun) {
             tryRunnable(r);
         }
+        if (inspection != null) {
+            inspection.timers(toRun.size(), timeQueue.size());
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -228,6 +264,7 @@ public class SelectorEventLoop implements AutoCloseable {
                     Logger.error(LogType.CONN_ERROR, "channel is closed but still firing: fd = " + channel + ", event = " + key.ready() + ", attachment = " + ctxReuse0.attachment);
                 } // else the channel is closed in another fd handler and removed from loop, this is ok and no need to report
             } else {
+                long begin = inspection == null ? 0 : inspection.beginCallback();
                 EventSet readyOps = key.ready();
                 // handle read first because it's most likely to happen
                 if (readyOps.have(Event.READABLE)) {
@@ -267,6 +304,9 @@ public class SelectorEventLoop implements AutoCloseable {
                         }
                     }
                 }
+                if (inspection != null) {
+                    inspection.endCallback(begin, handler, channel);
+                }
             }
         }
     }
@@ -309,6 +349,8 @@ public class SelectorEventLoop implements AutoCloseable {
 
             // handle some non select events
             Config.currentTimestamp = fds.currentTimeMillis();
+            // clear the flag before handling, tasks added after this point will wake up the selector again
+            wakeupPending.set(false);
             handleNonSelectEvents();
         }
         // here we do not lock select()
@@ -316,11 +358,14 @@ public class SelectorEventLoop implements AutoCloseable {
 
         int maxSleepMillis = runBeforePoll();
 
+        if (inspection != null) {
+            inspection.beforePoll();
+        }
         final Collection<SelectedEntry> selected;
         try {
-            if (timeQueue.isEmpty() && runOnLoopEvents.isEmpty() && maxSleepMillis < 0) {
+            if (timeQueue.isEmpty() && !hasRunOnLoopEvents() && maxSleepMillis < 0) {
                 selected = selector.select(); // let it sleep
-            } else if (!runOnLoopEvents.isEmpty()) {
+            } else if (hasRunOnLoopEvents()) {
                 selected = selector.selectNow(); // immediately return when tasks registered into the loop
             } else if (!channelsToBeRegisteredStep1.isEmpty() || !channelsToBeRegisteredStep2.isEmpty()) {
                 selected = selector.selectNow(); // immediately return when channels are going to be registered
@@ -336,10 +381,16 @@ public class SelectorEventLoop implements AutoCloseable {
                 }
             }
         } catch (IOException | ClosedSelectorException e) {
+            if (inspection != null) {
+                inspection.afterPoll(0);
+            }
             // let's ignore this exception and continue
             // if it's closed, the next loop will not run
             return 0;
         }
+        if (inspection != null) {
+            inspection.afterPoll(selected.size());
+        }
 
         if (runAfterPoll()) {
             Logger.warn(LogType.ALERT, "event loop terminates because afterPoll callback returns true");
@@ -387,6 +438,9 @@ public class SelectorEventLoop implements AutoCloseable {
         // set thread
         runningThread = Thread.currentThread();
         GlobalInspection.getInstance().registerSelectorEventLoop(this);
+        if (inspection != null) {
+            inspection.start(this, runningThread);
+        }
         VProxyThread.current().loop = this;
         // run
         while (selector.isOpen()) {
@@ -395,10 +449,15 @@ public class SelectorEventLoop implements AutoCloseable {
             }
         }
         GlobalInspection.getInstance().deregisterSelectorEventLoop(this);
+        if (inspection != null) {
+            inspection.stop();
+        }
         runningThread = null; // it's not running now, set to null
         VProxyThread.current().loop = null; // remove from thread local
         // do the final release
         release();
+        // buffers released after this are not pooled, drop the free ones
+        RingBufferPool.removeCurrent();
     }
 
     private boolean needWake() {
@@ -406,12 +465,21 @@ public class SelectorEventLoop implements AutoCloseable {
     }
 
     private void wakeup() {
+        // only the first wakeup after the loop starts handling events needs to reach the selector
+        if (wakeupPending.get() || !wakeupPending.compareAndSet(false, true)) {
+            GlobalInspection.getInstance().eventLoopWakeupCoalesced();
+            return;
+        }
+        GlobalInspection.getInstance().eventLoopWakeup();
         selector.wakeup();
     }
 
     @ThreadSafe
     public void nextTick(Runnable r) {
-        runOnLoopEvents.add(r);
+        // keep the order of tasks from the same thread when the array queue is full
+        if (!runOnLoopEventsOverflow.isEmpty() || !runOnLoopEvents.offer(r)) {
+            runOnLoopEventsOverflow.add(r);
+        }
         if (!needWake())
             return; // we do not need to wakeup because it's not started or is already waken up
         wakeup(); // wake the selector because new event is added
@@ -436,7 +504,11 @@ public class SelectorEventLoop implements AutoCloseable {
         TimerEvent e = new TimerEvent(this);
         // timeQueue is not thread safe
         // modify it in the event loop's thread
-        nextTick(() -> e.setEvent(timeQueue.add(Config.currentTimestamp, timeout, r)));
+        if (Thread.currentThread() == runningThread) {
+            e.setEvent(timeQueue.add(Config.currentTimestamp, timeout, r));
+        } else {
+            nextTick(() -> e.setEvent(timeQueue.add(Config.currentTimestamp, timeout, r)));
+        }
         return e;
     }
 
@@ -592,6 +664,13 @@ public class SelectorEventLoop implements AutoCloseable {
         return ((RegisterData) selector.attachment(channel)).att;
     }
 
+    /**
+     * @return statistics of this loop, or null if {@link InitOptions#inspection} is not enabled
+     */
+    public LoopInspection getInspection() {
+        return inspection;
+    }
+
     public Thread getRunningThread() {
         return runningThread;
     }
@@ -27,6 +27,10 @@ public class TimerEvent {
         canceled = true;
         if (event == null)
             return;
-        eventLoop.nextTick(event::removeSelf);
+        if (eventLoop.getRunningThread() == Thread.currentThread()) {
+            event.removeSelf(); // already on the event loop
+        } else {
+            eventLoop.nextTick(event::removeSelf);
+        }
     }
 }
@@ -22,10 +22,16 @@ public class H2StreamedFDHandler extends StreamedFDHandler {
     private static final byte TYPE_SETTINGS = 0x4;
     private static final byte TYPE_PING = 0x6;
     private static final byte TYPE_GOAWAY = 0x7;
+    private static final byte TYPE_WINDOW_UPDATE = 0x8;
     private static final List<Byte> validTypes = Arrays.asList(
-        TYPE_DATA, TYPE_HEADER, TYPE_PING, TYPE_GOAWAY // TYPE_SETTINGS is not valid after handshaking
+        TYPE_DATA, TYPE_HEADER, TYPE_PING, TYPE_GOAWAY, TYPE_WINDOW_UPDATE // TYPE_SETTINGS is not valid after handshaking
     );
-    private static final List<Byte> validTypesWithPayload = Arrays.asList(TYPE_DATA, TYPE_GOAWAY, TYPE_PING);
+    private static final List<Byte> validTypesWithPayload = Arrays.asList(TYPE_DATA, TYPE_GOAWAY, TYPE_PING, TYPE_WINDOW_UPDATE);
+
+    // PING carrying this data announces the receive window of the sender:
+    // data(64) + window(32) + reserved(32)
+    // old versions only respond an ACK with the same data, so flow control is disabled when the ACK is received
+    private static final long FLOW_CONTROL_PING_DATA = 0x766670726f787946L; // "vfproxyF"
 
     private static final byte FLAG_CLOSE_STREAM = 0x1;
     private static final byte FLAG_ACK = 0x1;
@@ -49,6 +55,21 @@ public class H2StreamedFDHandler extends StreamedFDHandler {
             .concat(ByteArray.allocate(8).int64(0, data));
     }
 
+    private static ByteArray getFlowControlPing(int window) {
+        return HEAD.copy()
+            .int24(0, 16)
+            .set(3, TYPE_PING)
+            .concat(ByteArray.allocate(16).int64(0, FLOW_CONTROL_PING_DATA).int32(8, window));
+    }
+
+    private static ByteArray getWindowUpdate(int streamId, int increment) {
+        return HEAD.copy()
+            .int24(0, 4)
+            .set(3, TYPE_WINDOW_UPDATE)
+            .int32(5, streamId)
+            .concat(ByteArray.allocate(4).int32(0, increment & 0x7fffffff));
+    }
+
     @SuppressWarnings("SameParameterValue")
     private static ByteArray getGoAway(int lastStreamId, int errorCode, String msg) {
         byte[] bytes = msg.getBytes();
@@ -223,8 +244,30 @@ public class H2StreamedFDHandler extends StreamedFDHandler {
                 }
                 boolean isAck = ((flag & FLAG_ACK) == FLAG_ACK);
                 long kId = array.int64(HEAD.length());
+                if (kId == FLOW_CONTROL_PING_DATA) {
+                    if (isAck) {
+                        flowControlAckReceived();
+                    } else if (len >= 16) {
+                        int window = array.int32(HEAD.length() + 8);
+                        if (window <= 0) {
+                            throw new IOException("invalid flow control window: " + window);
+                        }
+                        flowControlReceived(window);
+                    }
+                    return HEAD.length() + len;
+                }
                 keepaliveReceived(kId, isAck);
                 return HEAD.length() + len;
+            case TYPE_WINDOW_UPDATE:
+                if (len != 4) {
+                    throw new IOException("invalid window update frame, len=" + len);
+                }
+                int increment = array.int32(HEAD.length()) & 0x7fffffff;
+                if (increment == 0) {
+                    throw new IOException("invalid window update increment: 0");
+                }
+                windowUpdateReceived(streamId, increment);
+                return HEAD.length() + len;
             default:
                 throw new IOException("invalid frame type: " + type);
         }
@@ -282,6 +325,16 @@ public class H2StreamedFDHandler extends StreamedFDHandler {
         return getPing(kId, isAck);
     }
 
+    @Override
+    protected ByteArray flowControlMessage(int window) {
+        return getFlowControlPing(window);
+    }
+
+    @Override
+    protected ByteArray formatWindowUpdate(int streamId, int increment) {
+        return getWindowUpdate(streamId, increment);
+    }
+
     private int streamId = 1;
 
     @Override
@@ -16,6 +16,7 @@ import java.io.IOException;
 import java.net.SocketOption;
 import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.LinkedList;
 
@@ -38,6 +39,19 @@ public class StreamedFD implements SocketFD, VirtualFD {
     final MirrorDataFactory readingMirrorDataFactory;
     final MirrorDataFactory writingMirrorDataFactory;
 
+    // the following fields are maintained by the handler
+    // frames waiting to be written into the real fd
+    final Deque<ByteArray> messagesToWrite = new ArrayDeque<>();
+    int messagesToWriteBytes = 0;
+    // deficit round robin
+    int deficit = 0;
+    boolean scheduled = false;
+    // flow control, counted in payload bytes
+    long sentBytes = 0;
+    long creditReceived = 0;
+    long receivedNotCredited = 0;
+    int consumedNotCredited = 0;
+
     public enum State {
         none(LogLevel.DEBUG.color, false),
         syn_sent(LogLevel.WARN.color, false),
@@ -148,7 +162,7 @@ public class StreamedFD implements SocketFD, VirtualFD {
             return;
         }
         if (this.state != State.established && newState == State.established) {
-            if (handler.writableLen() > 0) {
+            if (handler.canSend(this)) {
                 setWritable();
             }
         } else if (newState == State.fin_recv || newState == State.dead) {
@@ -243,6 +257,9 @@ public class StreamedFD implements SocketFD, VirtualFD {
 
         int posBefore = dst.position();
         int n = Utils.writeFromFIFOQueueToBuffer(readableBuffers, dst);
+        if (n > 0) {
+            handler.dataConsumed(this, n);
+        }
 
         if (readingMirrorDataFactory.isEnabled()) {
             mirrorRead(dst, posBefore);
@@ -20,6 +20,8 @@ import io.vproxy.vmirror.MirrorDataFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -276,6 +278,8 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
     private void handshakeDone() {
         handshakeTimeout.cancel();
         state = 2;
+        // announce the receive window, the remote side echoes it back if it doesn't support flow control
+        addMessageToWrite(flowControlMessage(Config.streamedFdWindow));
         readyCallback.accept(fd);
     }
 
@@ -407,25 +411,34 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
             Logger.shouldNotHappen("server should not fire writable in state = " + state);
         } else if (state == 1) {
             // everything wrote
-            // update state
-            handshakeDone();
-            // add readable and remove writable
+            // remove writable
             unwatchWritable("serverWritable");
             // no need to add op_read because it's unnecessary to be removed for servers
+            // update state, messages may be added and writable is watched again
+            handshakeDone();
         }
         // else will not be called
     }
 
+    // control messages, always sent before data of the streams
     private final Deque<ByteArray> messagesToWrite = new LinkedList<>();
+    private int messagesToWriteBytes = 0;
+    // streams with messages to write, served with deficit round robin
+    private final Deque<StreamedFD> scheduledStreams = new ArrayDeque<>();
+    private int streamMessagesToWriteBytes = 0;
+
+    // bytes a stream may send in one round
+    private static final int DRR_QUANTUM = 16384;
+    // max bytes of messages queued for one stream
+    private static final int STREAM_QUEUE_LIMIT = 65536;
+    // max payload of one PSH message
+    private static final int MAX_PSH_PAYLOAD = 16384;
 
     int writableLen() {
-        int hold = 0;
+        int hold = messagesToWriteBytes + streamMessagesToWriteBytes;
         if (cachedMessageToWrite != null) {
             hold += cachedMessageToWrite.used();
         }
-        for (ByteArray b : messagesToWrite) {
-            hold += b.length();
-        }
 
         int canWrite = fd.writableLen();
         if (canWrite > hold) {
@@ -435,23 +448,53 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
         }
     }
 
-    private void checkAndCancelWritable() {
-        if (writableLen() <= 0) {
-            fdMap.values().forEach(StreamedFD::cancelWritable);
-            // also we should watch when we can write
-            watchWritable("checkAndCancelWritable");
+    boolean canSend(StreamedFD fd) {
+        return fd.messagesToWriteBytes < STREAM_QUEUE_LIMIT && sendWindow(fd) > 0;
+    }
+
+    private void updateWritable(StreamedFD fd) {
+        if (fd.getState() != StreamedFD.State.established && fd.getState() != StreamedFD.State.fin_recv) {
+            return;
+        }
+        if (canSend(fd)) {
+            fd.setWritable();
+        } else {
+            fd.cancelWritable();
         }
     }
 
-    private void checkAndSetWritableForEstablished() {
-        if (writableLen() > 0) {
-            fdMap.values().forEach(fd -> {
-                if (fd.getState() == StreamedFD.State.established) {
-                    fd.setWritable();
-                }
-            });
-            // no need to watch inside writable because this writable is set
-            unwatchWritable("writable");
+    private ByteArray pollMessageToWrite() {
+        ByteArray arr = messagesToWrite.poll();
+        if (arr != null) {
+            messagesToWriteBytes -= arr.length();
+            return arr;
+        }
+        while (true) {
+            StreamedFD sfd = scheduledStreams.peek();
+            if (sfd == null) {
+                return null;
+            }
+            arr = sfd.messagesToWrite.peek();
+            assert arr != null;
+            if (arr.length() > sfd.deficit) {
+                // the stream used up its quantum, move it to the end of the round
+                scheduledStreams.poll();
+                scheduledStreams.add(sfd);
+                sfd.deficit += DRR_QUANTUM;
+                continue;
+            }
+            sfd.messagesToWrite.poll();
+            sfd.deficit -= arr.length();
+            sfd.messagesToWriteBytes -= arr.length();
+            streamMessagesToWriteBytes -= arr.length();
+            if (sfd.messagesToWrite.isEmpty()) {
+                scheduledStreams.poll();
+                sfd.scheduled = false;
+                sfd.deficit = 0;
+            }
+            // space released in the queue of the stream
+            updateWritable(sfd);
+            return arr;
         }
     }
 
@@ -465,9 +508,7 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
                     return;
                 } else if (n == 0) {
                     // still got data to send
-                    // so the inside fd is not writable, we cancel writable event for the streamedFD
                     // wait for the next writable event
-                    checkAndCancelWritable();
                     return;
                 }
                 // fall through
@@ -482,17 +523,10 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
             }
             assert state == 2 || state == -1;
 
-            // something wrote, so check whether writable and
-            // set writable for all fds that's established
-            checkAndSetWritableForEstablished();
-            checkAndCancelWritable();
-            // note: after writing a packet into arq-udp, the writableLen might become smaller
-            // the free space we use to calculate is based on mtu and packet overhead
-            // but the fed packet is usually smaller than mtu, so free space is consumed,
-            // writableLen will be smaller
-
-            ByteArray arr = messagesToWrite.poll();
+            ByteArray arr = pollMessageToWrite();
             if (arr == null) {
+                // nothing to write
+                unwatchWritable("writable");
                 return;
             }
             cachedMessageToWrite = ByteArrayChannel.fromFull(arr);
@@ -586,10 +620,107 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
         }
         StreamedFD sfd = fdMap.get(streamId);
         assert sfd != null;
+        if (flowControl != FLOW_CONTROL_DISABLED) {
+            sfd.receivedNotCredited += data.length();
+            // the remote side might have been using its own window before receiving ours
+            if (flowControl == FLOW_CONTROL_ENABLED && sfd.receivedNotCredited > Math.max(Config.streamedFdWindow, peerWindow)) {
+                Logger.error(LogType.INVALID_EXTERNAL_DATA, "stream " + streamId + " received " + sfd.receivedNotCredited + " bytes exceeding the window, reset it");
+                sfd.setState(StreamedFD.State.dead);
+                sfd.setRst();
+                removeStream(streamId);
+                dropStreamMessages(sfd);
+                addMessageToWrite(formatRST(streamId));
+                return false;
+            }
+        }
         sfd.inputData(data);
         return true;
     }
 
+    private static final int FLOW_CONTROL_UNKNOWN = 0;
+    private static final int FLOW_CONTROL_ENABLED = 1;
+    private static final int FLOW_CONTROL_DISABLED = 2; // the remote side doesn't support flow control
+    private int flowControl = FLOW_CONTROL_UNKNOWN;
+    private int peerWindow = 0;
+
+    abstract protected ByteArray flowControlMessage(int window);
+
+    abstract protected ByteArray formatWindowUpdate(int streamId, int increment);
+
+    private long sendWindow(StreamedFD fd) {
+        if (flowControl == FLOW_CONTROL_DISABLED) {
+            return Long.MAX_VALUE;
+        }
+        // assume the remote side uses the same window before knowing it
+        int window = flowControl == FLOW_CONTROL_ENABLED ? peerWindow : Config.streamedFdWindow;
+        return window + fd.creditReceived - fd.sentBytes;
+    }
+
+    @MethodForImplementation
+    protected final void flowControlReceived(int window) {
+        if (flowControl != FLOW_CONTROL_UNKNOWN) {
+            assert Logger.lowLevelDebug("flow control is already negotiated on " + fd + ": " + flowControl);
+            return;
+        }
+        assert Logger.lowLevelDebug("flow control enabled on " + fd + " with window " + window);
+        flowControl = FLOW_CONTROL_ENABLED;
+        peerWindow = window;
+        for (StreamedFD sfd : new ArrayList<>(fdMap.values())) {
+            sendWindowUpdate(sfd);
+            updateWritable(sfd);
+        }
+    }
+
+    @MethodForImplementation
+    protected final void flowControlAckReceived() {
+        if (flowControl != FLOW_CONTROL_UNKNOWN) {
+            assert Logger.lowLevelDebug("flow control is already negotiated on " + fd + ": " + flowControl);
+            return;
+        }
+        assert Logger.lowLevelDebug("flow control disabled on " + fd + " because the remote side doesn't support it");
+        flowControl = FLOW_CONTROL_DISABLED;
+        for (StreamedFD sfd : new ArrayList<>(fdMap.values())) {
+            updateWritable(sfd);
+        }
+    }
+
+    @MethodForImplementation
+    protected final boolean windowUpdateReceived(int streamId, int increment) {
+        StreamedFD sfd = fdMap.get(streamId);
+        if (sfd == null) {
+            assert Logger.lowLevelDebug("calling windowUpdateReceived on non-existing stream: " + streamId);
+            return false;
+        }
+        sfd.creditReceived += increment;
+        updateWritable(sfd);
+        return true;
+    }
+
+    @MethodForStreamedFD
+    final void dataConsumed(StreamedFD fd, int n) {
+        if (flowControl == FLOW_CONTROL_DISABLED) {
+            return;
+        }
+        fd.consumedNotCredited += n;
+        // credits are sent in batches, and only when the remote side is known to understand them
+        if (flowControl == FLOW_CONTROL_ENABLED && fd.consumedNotCredited >= Config.streamedFdWindow / 2) {
+            sendWindowUpdate(fd);
+        }
+    }
+
+    private void sendWindowUpdate(StreamedFD fd) {
+        if (fd.consumedNotCredited == 0) {
+            return;
+        }
+        if (fdMap.get(fd.streamId) != fd || fd.getState() == StreamedFD.State.fin_recv) {
+            // the remote side will not send data anymore
+            return;
+        }
+        addMessageToWrite(formatWindowUpdate(fd.streamId, fd.consumedNotCredited));
+        fd.receivedNotCredited -= fd.consumedNotCredited;
+        fd.consumedNotCredited = 0;
+    }
+
     abstract protected ByteArray formatSYNACK(int streamId);
 
     @MethodForImplementation
@@ -624,11 +755,11 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
                 return false;
             }
         }
-        sfd.setState(StreamedFD.State.established);
         if (!client) {
-            // need to send syn-ack
-            addMessageToWrite(formatSYNACK(streamId));
+            // need to send syn-ack, before any data of the stream
+            addStreamMessageToWrite(sfd, formatSYNACK(streamId));
         }
+        sfd.setState(StreamedFD.State.established);
         return true;
     }
 
@@ -680,6 +811,8 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
         }
         sfd.setState(StreamedFD.State.dead);
         sfd.setRst();
+        // data not sent yet is useless
+        dropStreamMessages(sfd);
         // need to send RST back
         addMessageToWrite(formatRST(streamId));
         return true;
@@ -707,8 +840,8 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
         assert Logger.lowLevelNetDebug("addMessageToWrite");
         assert Logger.lowLevelNetDebugPrintBytes(arr.toJavaArray());
         messagesToWrite.add(arr);
+        messagesToWriteBytes += arr.length();
         watchWritable("addMessageToWrite");
-        checkAndCancelWritable();
     }
 
     private void pushMessageToWrite(ByteArray arr) {
@@ -716,8 +849,35 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
             return;
         }
         messagesToWrite.push(arr);
+        messagesToWriteBytes += arr.length();
         watchWritable("pushMessageToWrite");
-        checkAndCancelWritable();
+    }
+
+    private void addStreamMessageToWrite(StreamedFD fd, ByteArray arr) {
+        if (arr == null || arr.length() == 0) {
+            return;
+        }
+        assert Logger.lowLevelNetDebug("addStreamMessageToWrite");
+        assert Logger.lowLevelNetDebugPrintBytes(arr.toJavaArray());
+        fd.messagesToWrite.add(arr);
+        fd.messagesToWriteBytes += arr.length();
+        streamMessagesToWriteBytes += arr.length();
+        if (!fd.scheduled) {
+            fd.scheduled = true;
+            scheduledStreams.add(fd);
+        }
+        watchWritable("addStreamMessageToWrite");
+    }
+
+    private void dropStreamMessages(StreamedFD fd) {
+        streamMessagesToWriteBytes -= fd.messagesToWriteBytes;
+        fd.messagesToWrite.clear();
+        fd.messagesToWriteBytes = 0;
+        fd.deficit = 0;
+        if (fd.scheduled) {
+            fd.scheduled = false;
+            scheduledStreams.remove(fd);
+        }
     }
 
     abstract protected ByteArray formatPSH(int streamId, ByteArray data);
@@ -737,19 +897,24 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
             assert Logger.lowLevelDebug("nothing to be sent, return 0");
             return 0;
         }
-        int len = Math.min(writableLen(), src.limit() - src.position());
+        long len = Math.min(src.limit() - src.position(), STREAM_QUEUE_LIMIT - fd.messagesToWriteBytes);
+        len = Math.min(len, sendWindow(fd));
         if (len <= 0) {
             // cannot write
             assert Logger.lowLevelDebug("cannot write, return 0");
-            checkAndCancelWritable();
+            fd.cancelWritable();
             return 0;
         }
-        byte[] data = Utils.allocateByteArray(len);
+        byte[] data = Utils.allocateByteArray((int) len);
         src.get(data);
-        // append to the last of the queue
-        addMessageToWrite(formatPSH(fd.streamId, ByteArray.from(data)));
-        checkAndCancelWritable();
-        return len;
+        // append to the last of the queue of the stream
+        ByteArray arr = ByteArray.from(data);
+        for (int off = 0; off < data.length; off += MAX_PSH_PAYLOAD) {
+            addStreamMessageToWrite(fd, formatPSH(fd.streamId, arr.sub(off, Math.min(MAX_PSH_PAYLOAD, data.length - off))));
+        }
+        fd.sentBytes += len;
+        updateWritable(fd);
+        return (int) len;
     }
 
     abstract protected ByteArray formatFIN(int streamId);
@@ -762,8 +927,8 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
         if (fd.getState() == StreamedFD.State.dead) {
             throw new IOException(fd + " is already closed");
         }
-        // append to the last of the queue
-        addMessageToWrite(formatFIN(fd.streamId));
+        // append to the last of the queue of the stream
+        addStreamMessageToWrite(fd, formatFIN(fd.streamId));
 
         switch (fd.getState()) {
             case none:
@@ -830,7 +995,7 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
             return;
         }
         // only send keepalive message if it's in idle
-        if (cachedMessageToWrite == null && messagesToWrite.isEmpty() && (Config.currentTimestamp - lastReadableTimestamp) > 5_000) {
+        if (cachedMessageToWrite == null && messagesToWrite.isEmpty() && scheduledStreams.isEmpty() && (Config.currentTimestamp - lastReadableTimestamp) > 5_000) {
             // send keepalive message
             long kId = ++nextKeepaliveId;
             // record with a timeout
@@ -902,8 +1067,8 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
         if (fd.getState() != StreamedFD.State.none) {
             throw new IOException("syn of " + fd + " is already sent");
         }
-        // append syn to the last of the queue
-        addMessageToWrite(formatSYN(fd.streamId));
+        // append syn to the last of the queue of the stream
+        addStreamMessageToWrite(fd, formatSYN(fd.streamId));
         fd.setState(StreamedFD.State.syn_sent);
 
         if (fd.writingMirrorDataFactory.isEnabled()) {
@@ -921,6 +1086,8 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
         if (fd.getState() == StreamedFD.State.dead) {
             throw new IOException(fd + " is already closed");
         }
+        // data not sent yet is useless
+        dropStreamMessages(fd);
         // append rst to the last of the queue
         addMessageToWrite(formatRST(fd.streamId));
         if (fd.getState() != StreamedFD.State.real_closed) {
@@ -959,9 +1126,17 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
         for (TimerEvent e : keepaliveTimeouts.values()) {
             e.cancel();
         }
+        for (StreamedFD streamedFD : scheduledStreams) {
+            streamedFD.messagesToWrite.clear();
+            streamedFD.messagesToWriteBytes = 0;
+            streamedFD.scheduled = false;
+        }
         cachedMessageToWrite = null;
         cachedReceivedMessage = null;
         messagesToWrite.clear();
+        messagesToWriteBytes = 0;
+        scheduledStreams.clear();
+        streamMessagesToWriteBytes = 0;
         fdMap.clear();
         keepaliveTimeouts.clear();
         if (statisticsFdMapCount != null) {
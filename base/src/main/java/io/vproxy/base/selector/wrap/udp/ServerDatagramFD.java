@@ -34,7 +34,7 @@ public final class ServerDatagramFD implements FD, ServerSocketFD, WritableAware
     private final SelectorEventLoop loop;
     private final WrappedSelector selector;
 
-    private final ByteBuffer buf = Utils.allocateByteBuffer(Config.udpMtu); // enough for any udp packet
+    private final DatagramBatch batch = new DatagramBatch(8, Config.udpServerSlotLen);
     private final Deque<VirtualDatagramFD> acceptQ = new LinkedList<>();
     private final Map<IPPort, VirtualDatagramFD> acceptMap = new HashMap<>();
     private final Map<IPPort, VirtualDatagramFD> conns = new HashMap<>();
@@ -71,15 +71,14 @@ public final class ServerDatagramFD implements FD, ServerSocketFD, WritableAware
     @Override
     public VirtualDatagramFD accept() throws IOException {
         while (true) {
-            try {
-                IPPort addr = server.receive(buf);
-                if (addr == null) {
-                    // no data for now
-                    break;
+            int n = server.receiveBatch(batch);
+            for (int i = 0; i < n; ++i) {
+                IPPort addr = batch.address(i);
+                ByteBuffer buf = batch.get(i);
+                if (buf.limit() == batch.slotLen) {
+                    assert Logger.lowLevelDebug("datagram from " + addr + " might be truncated to " + batch.slotLen + " bytes, see -Dvproxy.UdpServerSlotLen");
                 }
 
-                buf.flip();
-
                 boolean fireReadable = false;
                 VirtualDatagramFD fd;
                 if (conns.containsKey(addr)) {
@@ -105,10 +104,10 @@ public final class ServerDatagramFD implements FD, ServerSocketFD, WritableAware
                 if (fireReadable) {
                     fd.setReadable();
                 }
-            } finally {
-                // reset buf
-                buf.limit(buf.capacity());
-                buf.position(0);
+            }
+            if (n < batch.slots) {
+                // no data for now
+                break;
             }
         }
 
@@ -20,6 +20,7 @@ public enum AnnotationKeys {
 
     EventLoopGroup_PreferPoll("vproxy/event-loop-group-prefer-poll"),
     EventLoopGroup_UseMsQuic("vproxy/event-loop-group-use-msquic"),
+    EventLoopGroup_TimeWheel("vproxy/event-loop-group-time-wheel"),
     EventLoop_CoreAffinity("vproxy/event-loop-core-affinity"),
 
     Owner("vproxy.internal/owner"),
@@ -18,6 +18,7 @@ public class Annotations {
     public final String ServerGroup_HCDnsDomain;
     public final boolean EventLoopGroup_PreferPoll;
     public final boolean EventLoopGroup_UseMsQuic;
+    public final boolean EventLoopGroup_TimeWheel;
     public final long EventLoop_CoreAffinity;
     public final String owner;
     public final boolean nosave;
@@ -129,6 +130,9 @@ public class Annotations {
         {
             EventLoopGroup_UseMsQuic = "true".equals(annotations.get(AnnotationKeys.EventLoopGroup_UseMsQuic.name));
         }
+        {
+            EventLoopGroup_TimeWheel = "true".equals(annotations.get(AnnotationKeys.EventLoopGroup_TimeWheel.name));
+        }
         {
             long coreAffinity = -1;
             String str = annotations.get(AnnotationKeys.EventLoop_CoreAffinity.name);
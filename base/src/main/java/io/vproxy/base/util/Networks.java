@@ -1,6 +1,7 @@
 package io.vproxy.base.util;
 
 import io.vproxy.base.util.functional.ConsumerEx;
+import io.vproxy.base.util.net.LPMTable;
 import io.vproxy.vfd.IP;
 import io.vproxy.vfd.IPv4;
 import io.vproxy.vfd.IPv6;
@@ -11,9 +12,20 @@ import java.util.List;
 import java.util.Map;
 import java.util.function.Predicate;
 
+/**
+ * Rules indexed by networks.<br>
+ * The rules are grouped by mask for modification and iteration,
+ * and {@link #lookup(IP)} uses {@link LPMTable}s compiled from the rules.
+ * The modifying methods only mark the tables stale, so adding rules one by one stays cheap.
+ * The first lookup after a modification rebuilds the stale tables under the monitor
+ * and publishes them as an immutable snapshot,
+ * other lookups take no lock and allocate nothing.
+ */
 public class Networks<R extends Networks.Rule> {
     private final List<V4RulesGroupedByMask> v4Rules = new ArrayList<>(32);
     private final List<V6RulesGroupedByMask> v6Rules = new ArrayList<>(128);
+    // marked stale by the modifying methods, and replaced by the first lookup after that
+    private volatile Compiled compiled = new Compiled(null, null, false, false);
 
     public interface Rule {
     }
@@ -46,65 +58,116 @@ public class Networks<R extends Networks.Rule> {
     }
 
     public R lookup(IP ip) {
+        var compiled = this.compiled;
+        if (compiled.v4Stale || compiled.v6Stale) {
+            compiled = recompile();
+        }
         if (ip instanceof IPv4) {
-            var res = cast(lookupV4((IPv4) ip));
+            int v4 = ((IPv4) ip).getIPv4Value();
+            var res = compiled.lookupV4(v4);
             if (res == null) {
-                var v6 = ip.to6();
-                if (v6 != null) {
-                    res = cast(lookupV6(v6));
-                }
+                // try the v4-mapped v6 address
+                res = compiled.lookupV6(0, 0, 0xffff, v4);
             }
-            return res;
+            return cast(res);
         } else if (ip instanceof IPv6) {
-            var res = cast(lookupV6((IPv6) ip));
-            if (res == null) {
-                var v4 = ip.to4();
-                if (v4 != null) {
-                    res = cast(lookupV4(v4));
-                }
+            var v6 = (IPv6) ip;
+            var res = compiled.lookupV6(v6.getIPv6Value0(), v6.getIPv6Value1(), v6.getIPv6Value2(), v6.getIPv6Value3());
+            if (res == null && (v6.isV4MappedV6Address() || v6.isV4CompatibleV6Address())) {
+                res = compiled.lookupV4(v6.getIPv6Value3());
             }
-            return res;
+            return cast(res);
         } else {
             throw new IllegalArgumentException("unexpected ip " + ip);
         }
     }
 
-    private Rule lookupV4(IPv4 ip) {
-        //noinspection ForLoopReplaceableByForEach
-        for (int i = 0, size = v4Rules.size(); i < size; ++i) {
-            var rules = v4Rules.get(i);
-            var v4 = ip.maskValue(rules.mask);
-            var rule = rules.rules.get(v4);
-            if (rule != null) {
-                return rule;
+    // must be called with the monitor held
+    private void markStale(boolean v4Modified, boolean v6Modified) {
+        var old = this.compiled;
+        if ((!v4Modified || old.v4Stale) && (!v6Modified || old.v6Stale)) {
+            return;
+        }
+        this.compiled = new Compiled(old.v4, old.v6, old.v4Stale || v4Modified, old.v6Stale || v6Modified);
+    }
+
+    private synchronized Compiled recompile() {
+        var old = this.compiled;
+        if (!old.v4Stale && !old.v6Stale) { // already rebuilt by another thread
+            return old;
+        }
+        var compiled = new Compiled(
+            old.v4Stale ? compileV4() : old.v4,
+            old.v6Stale ? compileV6() : old.v6,
+            false, false);
+        this.compiled = compiled;
+        return compiled;
+    }
+
+    private LPMTable<Rule> compileV4() {
+        LPMTable<Rule> v4 = null;
+        if (!v4Rules.isEmpty()) {
+            var builder = new LPMTable.Builder<Rule>(32);
+            for (var rules : v4Rules) {
+                for (var entry : rules.rules.entrySet()) {
+                    builder.add(entry.getKey(), rules.mask, entry.getValue());
+                }
             }
+            v4 = builder.build();
         }
-        return null;
+        return v4;
     }
 
-    private Rule lookupV6(IPv6 ip) {
-        //noinspection ForLoopReplaceableByForEach
-        for (int i = 0, size = v6Rules.size(); i < size; ++i) {
-            var rules = v6Rules.get(i);
-            var v6 = ip.maskValues(rules.mask);
-            var rule = rules.rules.get(v6);
-            if (rule != null) {
-                return rule;
+    private LPMTable<Rule> compileV6() {
+        LPMTable<Rule> v6 = null;
+        if (!v6Rules.isEmpty()) {
+            var builder = new LPMTable.Builder<Rule>(128);
+            for (var rules : v6Rules) {
+                for (var entry : rules.rules.entrySet()) {
+                    var k = entry.getKey();
+                    builder.add(k.value0, k.value1, k.value2, k.value3, rules.mask, entry.getValue());
+                }
             }
+            v6 = builder.build();
         }
-        return null;
+        return v6;
     }
 
-    public R add(Network net, R rule) {
+    public synchronized R add(Network net, R rule) {
         if (net instanceof NetworkV4) {
-            return cast(addV4(net, rule));
+            var ret = addV4(net, rule);
+            markStale(true, false);
+            return cast(ret);
         } else if (net instanceof NetworkV6) {
-            return cast(addV6(net, rule));
+            var ret = addV6(net, rule);
+            markStale(false, true);
+            return cast(ret);
         } else {
             throw new IllegalArgumentException("unexpected network " + net);
         }
     }
 
+    /**
+     * add rules in bulk
+     */
+    public synchronized void addAll(Map<? extends Network, ? extends R> rules) {
+        boolean v4Modified = false;
+        boolean v6Modified = false;
+        for (var entry : rules.entrySet()) {
+            var net = entry.getKey();
+            if (net instanceof NetworkV4) {
+                addV4(net, entry.getValue());
+                v4Modified = true;
+            } else if (net instanceof NetworkV6) {
+                addV6(net, entry.getValue());
+                v6Modified = true;
+            } else {
+                throw new IllegalArgumentException("unexpected network " + net);
+            }
+        }
+        markStale(v4Modified, v6Modified);
+    }
+
     private Rule addV4(Network net, R rule) {
         int mask = net.getMask();
         V4RulesGroupedByMask group = null;
@@ -149,11 +212,19 @@ public class Networks<R extends Networks.Rule> {
         return group.rules.put(((IPv6) net.getIp()).getIPv6Values(), rule);
     }
 
-    public R remove(Network net) {
+    public synchronized R remove(Network net) {
         if (net instanceof NetworkV4) {
-            return cast(removeV4(net));
+            var ret = removeV4(net);
+            if (ret != null) {
+                markStale(true, false);
+            }
+            return cast(ret);
         } else if (net instanceof NetworkV6) {
-            return cast(removeV6(net));
+            var ret = removeV6(net);
+            if (ret != null) {
+                markStale(false, true);
+            }
+            return cast(ret);
         } else {
             throw new IllegalArgumentException("unexpected network " + net);
         }
@@ -208,7 +279,7 @@ public class Networks<R extends Networks.Rule> {
         }
     }
 
-    public R removeBy(Predicate<R> f) {
+    public synchronized R removeBy(Predicate<R> f) {
         for (var iter = v4Rules.iterator(); iter.hasNext(); ) {
             V4RulesGroupedByMask rules = iter.next();
             for (var iterator = rules.rules.values().iterator(); iterator.hasNext(); ) {
@@ -218,6 +289,7 @@ public class Networks<R extends Networks.Rule> {
                     if (rules.rules.isEmpty()) {
                         iter.remove();
                     }
+                    markStale(true, false);
                     return cast(rule);
                 }
             }
@@ -231,6 +303,7 @@ public class Networks<R extends Networks.Rule> {
                     if (rules.rules.isEmpty()) {
                         iter.remove();
                     }
+                    markStale(false, true);
                     return cast(rule);
                 }
             }
@@ -244,6 +317,35 @@ public class Networks<R extends Networks.Rule> {
         return res;
     }
 
+    private static final class Compiled {
+        final LPMTable<Rule> v4;
+        final LPMTable<Rule> v6;
+        // the rules are modified after the table is built
+        final boolean v4Stale;
+        final boolean v6Stale;
+
+        private Compiled(LPMTable<Rule> v4, LPMTable<Rule> v6, boolean v4Stale, boolean v6Stale) {
+            this.v4 = v4;
+            this.v6 = v6;
+            this.v4Stale = v4Stale;
+            this.v6Stale = v6Stale;
+        }
+
+        Rule lookupV4(int ip) {
+            if (v4 == null) {
+                return null;
+            }
+            return v4.lookup(ip);
+        }
+
+        Rule lookupV6(int ip0, int ip1, int ip2, int ip3) {
+            if (v6 == null) {
+                return null;
+            }
+            return v6.lookup(ip0, ip1, ip2, ip3);
+        }
+    }
+
     private static final class V4RulesGroupedByMask {
         final int mask;
         final Map<Integer, Rule> rules = new HashMap<>();
@@ -64,6 +64,24 @@ public interface RingBuffer {
 
     int writeTo(WritableByteStream channel, int maxBytesToWrite) throws IOException;
 
+    /**
+     * Same as {@link #storeBytesFrom(ReadableByteStream)},
+     * but the implementation may fill all free regions with one
+     * {@link ReadableByteStream#read(ByteBuffer[], int, int)} call.
+     */
+    default int storeBytesFromVectored(ReadableByteStream channel) throws IOException {
+        return storeBytesFrom(channel);
+    }
+
+    /**
+     * Same as {@link #writeTo(WritableByteStream)},
+     * but the implementation may write all readable regions (e.g. both parts of a wrapped buffer,
+     * or chained buffers) with one {@link WritableByteStream#write(ByteBuffer[], int, int)} call.
+     */
+    default int writeToVectored(WritableByteStream channel) throws IOException {
+        return writeTo(channel);
+    }
+
     default int writeTo(RingBuffer buffer) {
         return writeTo(buffer, Integer.MAX_VALUE);
     }
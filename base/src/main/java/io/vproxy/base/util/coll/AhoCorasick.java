@@ -0,0 +1,145 @@
+package io.vproxy.base.util.coll;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton for finding which of many patterns occur in a text in one pass.<br>
+ * Each pattern carries an int id, and the automaton reports the smallest id of the patterns found,
+ * which can be used as the priority of rules.<br>
+ * The automaton is immutable after built, so it can be shared between threads.
+ */
+public class AhoCorasick {
+    public static final int NO_MATCH = Integer.MAX_VALUE;
+    public static final int ROOT = 0;
+
+    // children of each state, keys are sorted for binary search
+    private final char[][] keys;
+    private final int[][] next;
+    private final int[] fail;
+    // min id of patterns ending at this state or any state on its fail chain
+    private final int[] out;
+
+    public static class Builder {
+        private final List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        private final List<Integer> ids = new ArrayList<>();
+
+        public Builder() {
+            newState();
+        }
+
+        private int newState() {
+            children.add(new TreeMap<>());
+            ids.add(NO_MATCH);
+            return children.size() - 1;
+        }
+
+        public Builder add(String pattern, int id) {
+            if (id < 0 || id == NO_MATCH)
+                throw new IllegalArgumentException("invalid id " + id);
+            int state = ROOT;
+            for (int i = 0; i < pattern.length(); ++i) {
+                char c = pattern.charAt(i);
+                Integer n = children.get(state).get(c);
+                if (n == null) {
+                    n = newState();
+                    children.get(state).put(c, n);
+                }
+                state = n;
+            }
+            ids.set(state, Math.min(ids.get(state), id));
+            return this;
+        }
+
+        public AhoCorasick build() {
+            return new AhoCorasick(this);
+        }
+    }
+
+    private AhoCorasick(Builder builder) {
+        int size = builder.children.size();
+        keys = new char[size][];
+        next = new int[size][];
+        fail = new int[size];
+        out = new int[size];
+        for (int i = 0; i < size; ++i) {
+            var m = builder.children.get(i);
+            keys[i] = new char[m.size()];
+            next[i] = new int[m.size()];
+            int j = 0;
+            for (var e : m.entrySet()) {
+                keys[i][j] = e.getKey();
+                next[i][j] = e.getValue();
+                ++j;
+            }
+            out[i] = builder.ids.get(i);
+        }
+
+        // bfs, so the fail state is always handled before the state itself
+        int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        for (int child : next[ROOT]) {
+            fail[child] = ROOT;
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            out[state] = Math.min(out[state], out[fail[state]]);
+            for (int i = 0; i < keys[state].length; ++i) {
+                char c = keys[state][i];
+                int child = next[state][i];
+                int f = fail[state];
+                int n;
+                while ((n = child(f, c)) < 0 && f != ROOT) {
+                    f = fail[f];
+                }
+                fail[child] = n < 0 ? ROOT : n;
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    private int child(int state, char c) {
+        int idx = Arrays.binarySearch(keys[state], c);
+        return idx < 0 ? -1 : next[state][idx];
+    }
+
+    /**
+     * @return the state after consuming <code>c</code>, start from {@link #ROOT}
+     */
+    public int step(int state, char c) {
+        while (true) {
+            int n = child(state, c);
+            if (n >= 0) {
+                return n;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = fail[state];
+        }
+    }
+
+    /**
+     * @return min id of patterns which end at the state, or {@link #NO_MATCH}
+     */
+    public int output(int state) {
+        return out[state];
+    }
+
+    /**
+     * @return min id of patterns found in the text, or {@link #NO_MATCH}
+     */
+    public int minMatch(CharSequence text) {
+        int state = ROOT;
+        int min = out[ROOT];
+        for (int i = 0; i < text.length(); ++i) {
+            state = step(state, text.charAt(i));
+            min = Math.min(min, out[state]);
+        }
+        return min;
+    }
+}
@@ -0,0 +1,123 @@
+package io.vproxy.base.util.coll;
+
+import io.vproxy.base.util.Utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A bounded array backed queue for multiple producers and one single consumer.<br>
+ * Producers claim a slot by increasing the producer index with CAS, then publish the element into the slot.
+ * The consumer clears the slot and moves the consumer index forward, so no node is allocated for each element.<br>
+ * {@link #offer(Object)} returns false when the queue is full, it's up to the caller to decide what to do.<br>
+ * Only {@link #poll()} and {@link #drain(Consumer, int)} are restricted to the consumer thread.
+ *
+ * @param <E> element type
+ */
+public class MPSCArrayQueue<E> {
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLong producerIndex = new AtomicLong();
+    private final AtomicLong consumerIndex = new AtomicLong();
+
+    public MPSCArrayQueue(int capacityHint) {
+        if (capacityHint <= 0) {
+            throw new IllegalArgumentException("capacity should be greater than 0, but got " + capacityHint);
+        }
+        this.capacity = Utils.minPow2GreaterThan(capacityHint);
+        this.mask = capacity - 1;
+        this.buffer = new AtomicReferenceArray<>(capacity);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long cIdx = consumerIndex.get();
+        long pIdx;
+        do {
+            pIdx = producerIndex.get();
+            if (pIdx - cIdx >= capacity) {
+                // the cached consumer index might be stale, read again
+                cIdx = consumerIndex.get();
+                if (pIdx - cIdx >= capacity) {
+                    return false;
+                }
+            }
+        } while (!producerIndex.compareAndSet(pIdx, pIdx + 1));
+        buffer.setRelease((int) (pIdx & mask), e);
+        return true;
+    }
+
+    /**
+     * Must be called on the consumer thread.
+     */
+    public E poll() {
+        long cIdx = consumerIndex.getPlain();
+        int offset = (int) (cIdx & mask);
+        E e = buffer.getAcquire(offset);
+        if (e == null) {
+            if (cIdx == producerIndex.get()) {
+                return null; // empty
+            }
+            // the slot is claimed but the element is not published yet
+            do {
+                Thread.onSpinWait();
+                e = buffer.getAcquire(offset);
+            } while (e == null);
+        }
+        buffer.setPlain(offset, null);
+        // release: producers reading the index must see the cleared slot
+        consumerIndex.setRelease(cIdx + 1);
+        return e;
+    }
+
+    /**
+     * Must be called on the consumer thread.
+     *
+     * @return count of elements passed to the consumer
+     */
+    public int drain(Consumer<E> consumer, int limit) {
+        int n = 0;
+        while (n < limit) {
+            E e = poll();
+            if (e == null) {
+                break;
+            }
+            ++n;
+            consumer.accept(e);
+        }
+        return n;
+    }
+
+    /**
+     * @return approximate count of elements in the queue
+     */
+    public int size() {
+        long cIdx = consumerIndex.get();
+        long pIdx = producerIndex.get();
+        long size = pIdx - cIdx;
+        if (size < 0) {
+            return 0;
+        }
+        if (size > capacity) {
+            return capacity;
+        }
+        return (int) size;
+    }
+
+    public boolean isEmpty() {
+        return consumerIndex.get() == producerIndex.get();
+    }
+
+    @Override
+    public String toString() {
+        return "MPSCArrayQueue(capacity=" + capacity + ", size=" + size() + ")";
+    }
+}
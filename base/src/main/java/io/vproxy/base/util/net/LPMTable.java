@@ -0,0 +1,363 @@
+package io.vproxy.base.util.net;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable longest prefix match table, built with {@link Builder}.<br>
+ * It's a path compressed multibit trie with leaf pushing, all nodes are stored in one int array.
+ * The root node consumes the first <code>rootStride</code> bits, and each following node consumes
+ * <code>stride</code> bits: 8 for 32 bits keys and 4 for 128 bits keys.<br>
+ * An entry is either a leaf (0 for no match, or index of the value + 1), or a child node (-(offset + 1)).<br>
+ * A child node starts with a header: the count of skipped bits, the leaf to return when the skipped bits
+ * do not match, and the key words which the skipped bits are compared with. A chain of nodes which
+ * only has one branch is collapsed into one node this way, so long prefixes (e.g. ipv6 /64 or /128)
+ * take one or two small nodes instead of one node per stride.<br>
+ * With rootStride = 24, the ipv4 table is the well known DIR-24-8 layout.<br>
+ * A lookup reads at most <code>1 + (bits - rootStride) / stride</code> nodes, takes no lock and allocates nothing.
+ * Modifying the table is done by building a new one.
+ *
+ * @param <T> value type
+ */
+public final class LPMTable<T> {
+    private final int bits;
+    private final int rootStride;
+    private final int stride;
+    private final int header;
+    private final int[] table;
+    private final Object[] values;
+
+    private LPMTable(int bits, int rootStride, int stride, int[] table, Object[] values) {
+        this.bits = bits;
+        this.rootStride = rootStride;
+        this.stride = stride;
+        this.header = headerLen(bits);
+        this.table = table;
+        this.values = values;
+    }
+
+    // skip | default leaf | key words
+    private static int headerLen(int bits) {
+        return 2 + bits / 32;
+    }
+
+    public static int strideFor(int bits) {
+        return bits == 32 ? 8 : 4;
+    }
+
+    /**
+     * lookup with 32 bits key
+     */
+    public T lookup(int v) {
+        int e = table[v >>> (32 - rootStride)];
+        int off = rootStride;
+        while (e < 0) {
+            int p = -e - 1;
+            int skip = table[p];
+            if (skip != 0) {
+                if (((v ^ table[p + 2]) & rangeMask(off, skip)) != 0) {
+                    return value(table[p + 1]);
+                }
+                off += skip;
+            }
+            e = table[p + header + ((v >>> (32 - stride - off)) & ((1 << stride) - 1))];
+            off += stride;
+        }
+        return value(e);
+    }
+
+    /**
+     * lookup with 128 bits key
+     */
+    public T lookup(int w0, int w1, int w2, int w3) {
+        int e = table[w0 >>> (32 - rootStride)];
+        int off = rootStride;
+        while (e < 0) {
+            int p = -e - 1;
+            int skip = table[p];
+            if (skip != 0) {
+                if (!skippedBitsMatch(p + 2, off, skip, w0, w1, w2, w3)) {
+                    return value(table[p + 1]);
+                }
+                off += skip;
+            }
+            int w = word(off >>> 5, w0, w1, w2, w3);
+            e = table[p + header + ((w >>> (32 - stride - (off & 31))) & ((1 << stride) - 1))];
+            off += stride;
+        }
+        return value(e);
+    }
+
+    private boolean skippedBitsMatch(int keyPos, int off, int skip, int w0, int w1, int w2, int w3) {
+        int end = off + skip;
+        while (off < end) {
+            int i = off >>> 5;
+            int n = Math.min(end, (i + 1) * 32) - off;
+            if (((word(i, w0, w1, w2, w3) ^ table[keyPos + i]) & rangeMask(off & 31, n)) != 0) {
+                return false;
+            }
+            off += n;
+        }
+        return true;
+    }
+
+    private static int word(int i, int w0, int w1, int w2, int w3) {
+        switch (i) {
+            case 0:
+                return w0;
+            case 1:
+                return w1;
+            case 2:
+                return w2;
+            default:
+                return w3;
+        }
+    }
+
+    // mask of bits [off, off + n) in a 32 bits word, n > 0
+    private static int rangeMask(int off, int n) {
+        return (-1 >>> off) & (-1 << (32 - off - n));
+    }
+
+    private T value(int e) {
+        if (e == 0) {
+            return null;
+        }
+        //noinspection unchecked
+        return (T) values[e - 1];
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public long memoryBytes() {
+        return (long) table.length * 4;
+    }
+
+    @Override
+    public String toString() {
+        return "LPMTable{" +
+            "bits=" + bits +
+            ", rootStride=" + rootStride +
+            ", stride=" + stride +
+            ", size=" + values.length +
+            ", entries=" + table.length +
+            '}';
+    }
+
+    /**
+     * Choose the stride of the root node by the count of prefixes,
+     * a larger root node uses more memory but requires fewer memory accesses.
+     */
+    public static int rootStrideFor(int bits, int prefixCount) {
+        if (prefixCount < 256) {
+            return 8;
+        }
+        if (bits == 32 && prefixCount >= 65536) {
+            return 24;
+        }
+        return 16;
+    }
+
+    public static final class Builder<T> {
+        private final int bits;
+        private final List<Prefix<T>> prefixes = new ArrayList<>();
+
+        public Builder(int bits) {
+            if (bits != 32 && bits != 128) {
+                throw new IllegalArgumentException("bits should be 32 or 128, but got " + bits);
+            }
+            this.bits = bits;
+        }
+
+        public Builder<T> add(int v, int len, T value) {
+            if (bits != 32) {
+                throw new IllegalArgumentException("this builder is for " + bits + " bits keys");
+            }
+            return add(new int[]{v}, len, value);
+        }
+
+        public Builder<T> add(int w0, int w1, int w2, int w3, int len, T value) {
+            if (bits != 128) {
+                throw new IllegalArgumentException("this builder is for " + bits + " bits keys");
+            }
+            return add(new int[]{w0, w1, w2, w3}, len, value);
+        }
+
+        private Builder<T> add(int[] words, int len, T value) {
+            if (len < 0 || len > bits) {
+                throw new IllegalArgumentException("prefix length should be between [0," + bits + "], but got " + len);
+            }
+            if (value == null) {
+                throw new NullPointerException("value");
+            }
+            for (int i = 0; i < words.length; ++i) {
+                int remaining = len - i * 32;
+                if (remaining <= 0) {
+                    words[i] = 0;
+                } else if (remaining < 32) {
+                    words[i] &= -1 << (32 - remaining);
+                }
+            }
+            prefixes.add(new Prefix<>(words, len, value));
+            return this;
+        }
+
+        public LPMTable<T> build() {
+            return build(rootStrideFor(bits, prefixes.size()));
+        }
+
+        public LPMTable<T> build(int rootStride) {
+            int stride = strideFor(bits);
+            if (rootStride <= 0 || rootStride >= 32 || rootStride % stride != 0) {
+                throw new IllegalArgumentException("invalid root stride " + rootStride);
+            }
+            // shorter prefixes first, so longer ones overwrite the expanded entries
+            var sorted = new ArrayList<>(prefixes);
+            sorted.sort((a, b) -> a.len - b.len);
+            Object[] values = new Object[sorted.size()];
+            for (int i = 0; i < sorted.size(); ++i) {
+                var p = sorted.get(i);
+                values[i] = p.value;
+                p.leaf = i + 1;
+            }
+            var ctx = new BuildContext(bits, rootStride, stride);
+            ctx.buildRoot(sorted);
+            return new LPMTable<>(bits, rootStride, stride, Arrays.copyOf(ctx.table, ctx.used), values);
+        }
+    }
+
+    private static final class Prefix<T> {
+        final int[] words;
+        final int len;
+        final T value;
+        int leaf;
+
+        Prefix(int[] words, int len, T value) {
+            this.words = words;
+            this.len = len;
+            this.value = value;
+        }
+    }
+
+    private static final class BuildContext {
+        final int bits;
+        final int rootStride;
+        final int stride;
+        final int header;
+        int[] table;
+        int used;
+
+        BuildContext(int bits, int rootStride, int stride) {
+            this.bits = bits;
+            this.rootStride = rootStride;
+            this.stride = stride;
+            this.header = headerLen(bits);
+            this.table = new int[(1 << rootStride) + 16 * (header + (1 << stride))];
+            this.used = 1 << rootStride;
+        }
+
+        private static int extract(int[] words, int off, int n) {
+            int w = words[off >>> 5];
+            return (w >>> (32 - (off & 31) - n)) & ((1 << n) - 1);
+        }
+
+        // the first bit in [from, limit) where a and b differ, or limit
+        private static int firstDiff(int[] a, int[] b, int from, int limit) {
+            for (int i = from >>> 5; i * 32 < limit; ++i) {
+                int x = a[i] ^ b[i];
+                if (i * 32 < from) {
+                    x &= -1 >>> (from & 31);
+                }
+                if (x != 0) {
+                    return Math.min(limit, i * 32 + Integer.numberOfLeadingZeros(x));
+                }
+            }
+            return limit;
+        }
+
+        private int alloc(int n) {
+            int base = used;
+            if (base + n > table.length) {
+                table = Arrays.copyOf(table, Math.max(table.length * 2, base + n));
+            }
+            used += n;
+            return base;
+        }
+
+        void buildRoot(List<? extends Prefix<?>> prefixes) {
+            fill(0, 0, rootStride, prefixes, 0);
+        }
+
+        /**
+         * @param prefixes prefixes which match the path to this node and are longer than off, sorted by length
+         * @param inherited the leaf pushed down from the parent
+         * @return the entry for the parent
+         */
+        private int build(List<? extends Prefix<?>> prefixes, int off, int inherited) {
+            if (prefixes.isEmpty()) {
+                return inherited;
+            }
+            // skip the bits shared by all prefixes, no prefix may end inside the skipped bits
+            var first = prefixes.get(0);
+            int limit = first.len - 1; // sorted by length, the first one is the shortest
+            int common = limit;
+            for (int i = 1; i < prefixes.size() && common > off; ++i) {
+                common = firstDiff(first.words, prefixes.get(i).words, off, common);
+            }
+            int skip = Math.max(0, (common - off) / stride * stride);
+
+            int node = alloc(header + (1 << stride));
+            table[node] = skip;
+            table[node + 1] = inherited;
+            if (skip != 0) {
+                System.arraycopy(first.words, 0, table, node + 2, first.words.length);
+            }
+            fill(node + header, off + skip, stride, prefixes, inherited);
+            return -node - 1;
+        }
+
+        private void fill(int base, int off, int n, List<? extends Prefix<?>> prefixes, int inherited) {
+            int slots = 1 << n;
+            Arrays.fill(table, base, base + slots, inherited);
+            int end = off + n;
+            List<List<Prefix<?>>> children = null;
+            for (var p : prefixes) {
+                if (p.len <= end) {
+                    // expand the prefix, longer ones come later and overwrite it
+                    int idx = extract(p.words, off, n);
+                    int span = 1 << (end - p.len);
+                    int start = idx & ~(span - 1);
+                    Arrays.fill(table, base + start, base + start + span, p.leaf);
+                } else {
+                    if (children == null) {
+                        children = new ArrayList<>(slots);
+                        for (int i = 0; i < slots; ++i) {
+                            children.add(null);
+                        }
+                    }
+                    int idx = extract(p.words, off, n);
+                    var ls = children.get(idx);
+                    if (ls == null) {
+                        ls = new ArrayList<>();
+                        children.set(idx, ls);
+                    }
+                    ls.add(p);
+                }
+            }
+            if (children == null) {
+                return;
+            }
+            for (int i = 0; i < slots; ++i) {
+                var ls = children.get(i);
+                if (ls == null) {
+                    continue;
+                }
+                int e = build(ls, end, table[base + i]);
+                table[base + i] = e;
+            }
+        }
+    }
+}
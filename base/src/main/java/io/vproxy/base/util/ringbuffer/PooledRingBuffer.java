@@ -0,0 +1,189 @@
+package io.vproxy.base.util.ringbuffer;
+
+import io.vproxy.base.util.Utils;
+import io.vproxy.vfd.ReadableByteStream;
+import io.vproxy.vfd.WritableByteStream;
+
+import java.io.IOException;
+
+/**
+ * A ring buffer which only holds memory while it has bytes in it.<br>
+ * The memory is taken from the {@link RingBufferPool} of current event loop when bytes are stored,
+ * and returned to the pool as soon as all bytes are written out.<br>
+ * It's designed for connections which are idle most of the time, e.g. websocket and long polling.
+ */
+public class PooledRingBuffer extends AbstractRingBuffer {
+    private final int cap;
+    private SimpleRingBuffer attached;
+    private boolean cleaned = false;
+
+    private PooledRingBuffer(int cap) {
+        this.cap = cap;
+    }
+
+    public static PooledRingBuffer allocate(int cap) {
+        return new PooledRingBuffer(cap);
+    }
+
+    private void ensureBufferAvailable() {
+        if (cleaned) {
+            throw new IllegalStateException("this buffer is already cleaned");
+        }
+    }
+
+    private void detachIfEmpty() {
+        if (attached != null && attached.used() == 0) {
+            var buf = attached;
+            attached = null;
+            RingBufferPool.release(buf);
+        }
+    }
+
+    @Override
+    public int storeBytesFrom(ReadableByteStream channel) throws IOException {
+        return store(channel, false);
+    }
+
+    @Override
+    public int storeBytesFromVectored(ReadableByteStream channel) throws IOException {
+        return store(channel, true);
+    }
+
+    private int store(ReadableByteStream channel, boolean vectored) throws IOException {
+        ensureBufferAvailable();
+        if (attached == null) {
+            attached = RingBufferPool.acquire(cap);
+        }
+        boolean triggerReadable = attached.used() == 0;
+        int n;
+        try {
+            n = vectored ? attached.storeBytesFromVectored(channel) : attached.storeBytesFrom(channel);
+        } finally {
+            // nothing read, e.g. EAGAIN
+            detachIfEmpty();
+        }
+        if (n > 0 && triggerReadable) {
+            trigger(true);
+        }
+        return n;
+    }
+
+    @Override
+    public int writeTo(WritableByteStream channel, int maxBytesToWrite) throws IOException {
+        ensureBufferAvailable();
+        if (attached == null) {
+            return 0;
+        }
+        boolean triggerWritable = attached.free() == 0;
+        int n;
+        try {
+            n = attached.writeTo(channel, maxBytesToWrite);
+        } finally {
+            detachIfEmpty();
+        }
+        if (n > 0 && triggerWritable) {
+            trigger(false);
+        }
+        return n;
+    }
+
+    @Override
+    public int writeToVectored(WritableByteStream channel) throws IOException {
+        ensureBufferAvailable();
+        if (attached == null) {
+            return 0;
+        }
+        boolean triggerWritable = attached.free() == 0;
+        int n;
+        try {
+            n = attached.writeToVectored(channel);
+        } finally {
+            detachIfEmpty();
+        }
+        if (n > 0 && triggerWritable) {
+            trigger(false);
+        }
+        return n;
+    }
+
+    // the handlers may operate on this buffer again
+    private void trigger(boolean readable) {
+        boolean outermost = !isOperating();
+        if (outermost) {
+            setOperating(true);
+        }
+        try {
+            if (readable) {
+                triggerReadable();
+            } else {
+                triggerWritable();
+            }
+        } finally {
+            if (outermost) {
+                setOperating(false);
+            }
+        }
+    }
+
+    @Override
+    public int free() {
+        return cap - used();
+    }
+
+    @Override
+    public int used() {
+        if (attached == null) {
+            return 0;
+        }
+        return attached.used();
+    }
+
+    @Override
+    public int capacity() {
+        return cap;
+    }
+
+    @Override
+    public byte[] getBytes() {
+        if (attached == null) {
+            return Utils.allocateByteArray(0);
+        }
+        return attached.getBytes();
+    }
+
+    public boolean isAttached() {
+        return attached != null;
+    }
+
+    @Override
+    public void clean() {
+        if (cleaned)
+            return;
+        cleaned = true;
+        if (attached != null) {
+            var buf = attached;
+            attached = null;
+            RingBufferPool.release(buf);
+        }
+    }
+
+    @Override
+    public void clear() {
+        ensureBufferAvailable();
+        if (attached == null) {
+            return;
+        }
+        boolean triggerWritable = attached.free() == 0;
+        var buf = attached;
+        attached = null;
+        RingBufferPool.release(buf);
+        if (triggerWritable) {
+            trigger(false);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PooledRingBuffer(cap=" + cap + ", used=" + used() + (attached == null ? ", detached" : "") + ")";
+    }
+}
@@ -7,6 +7,8 @@ import io.vproxy.vfd.ReadableByteStream;
 import io.vproxy.vfd.WritableByteStream;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class ProxyOutputRingBuffer extends AbstractRingBuffer {
     private class DefaultBufferETHandler implements RingBufferETHandler {
@@ -78,6 +80,7 @@ public class ProxyOutputRingBuffer extends AbstractRingBuffer {
     }
 
     protected ProxyInfo proxyHandle = null;
+    private ByteBuffer[] regionArray;
 
     protected ProxyOutputRingBuffer(SimpleRingBuffer defaultBuffer) {
         this.defaultBuffer = defaultBuffer;
@@ -141,6 +144,56 @@ public class ProxyOutputRingBuffer extends AbstractRingBuffer {
         }
     }
 
+    /**
+     * Write bytes in the defaultBuffer and the proxied buffer with one gathering call.<br>
+     * Falls back to {@link #writeTo(WritableByteStream)} if the proxied buffer does not expose its regions.
+     */
+    @Override
+    public int writeToVectored(WritableByteStream channel) throws IOException {
+        if (proxyHandle == null) {
+            return defaultBuffer.writeToVectored(channel);
+        }
+        if (!(proxyHandle.rb instanceof SimpleRingBuffer proxyRB)) {
+            return writeTo(channel);
+        }
+        if (regionArray == null) {
+            regionArray = new ByteBuffer[4];
+        }
+        int defaultUsed = proxyHandle.enabled ? 0 : defaultBuffer.used();
+        int cnt = 0;
+        if (defaultUsed > 0) {
+            cnt = defaultBuffer.readableRegions(regionArray, 0, Integer.MAX_VALUE);
+        }
+        cnt += proxyRB.readableRegions(regionArray, cnt, proxyHandle.len);
+        if (cnt < 2) {
+            Arrays.fill(regionArray, null);
+            return writeTo(channel);
+        }
+        int n;
+        try {
+            n = channel.write(regionArray, 0, cnt);
+        } finally {
+            Arrays.fill(regionArray, null);
+        }
+
+        int fromDefault = Math.min(n, defaultUsed);
+        defaultBuffer.consumeReadable(fromDefault);
+        if (!proxyHandle.enabled && defaultBuffer.used() == 0) {
+            assert Logger.lowLevelDebug("wrote all data from defaultBuffer, switch to proxy mode");
+            proxyHandle.enabled = true;
+        }
+        int fromProxy = n - fromDefault;
+        if (fromProxy > 0) {
+            proxyRB.consumeReadable(fromProxy);
+            proxyHandle.len -= fromProxy;
+            if (proxyHandle.len == 0) {
+                proxyHandle.proxyDone();
+                proxyHandle = null;
+            }
+        }
+        return n;
+    }
+
     @Override
     public int free() {
         return cap - used();
@@ -0,0 +1,222 @@
+package io.vproxy.base.util.ringbuffer;
+
+import io.vproxy.base.Config;
+import io.vproxy.base.GlobalInspection;
+import io.vproxy.base.prometheus.Counter;
+import io.vproxy.base.prometheus.GaugeF;
+import io.vproxy.base.util.ByteBufferEx;
+import io.vproxy.base.util.Logger;
+import io.vproxy.base.util.thread.VProxyThread;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per event loop pool of ring buffers, used by {@link PooledRingBuffer}.<br>
+ * Buffers are cut from slabs of direct memory, a slab is allocated when the free list of the size is empty.<br>
+ * Each event loop thread owns one pool, so no locking is required.
+ * Threads without an event loop do not have a pool, buffers are allocated and released directly (fallback).
+ * A buffer is always accounted in the pool which allocated it, even if it's released on another thread,
+ * but only the owner pool puts it back to the free list.
+ * The pool is removed with its free list when the event loop exits, see {@link #removeCurrent()}.
+ */
+public class RingBufferPool {
+    private static final int SLAB_BYTES = 1024 * 1024;
+    private static final int MAX_BUFFERS_PER_SLAB = 64;
+
+    private static final Set<RingBufferPool> pools = ConcurrentHashMap.newKeySet();
+
+    private static final Counter hitCount = GlobalInspection.getInstance().addMetric(
+        "ring_buffer_pool_hit_count",
+        Map.of(),
+        Counter::new);
+    private static final Counter missCount = GlobalInspection.getInstance().addMetric(
+        "ring_buffer_pool_miss_count",
+        Map.of(),
+        Counter::new);
+    private static final Counter fallbackCount = GlobalInspection.getInstance().addMetric(
+        "ring_buffer_pool_fallback_count",
+        Map.of(),
+        Counter::new);
+
+    static {
+        GlobalInspection.getInstance().registerHelpMessage(
+            "ring_buffer_pool_hit_count",
+            "Total times that a pooled ring buffer is attached with a buffer from the free list"
+        );
+        GlobalInspection.getInstance().registerHelpMessage(
+            "ring_buffer_pool_miss_count",
+            "Total times that a new slab is allocated because the free list is empty"
+        );
+        GlobalInspection.getInstance().registerHelpMessage(
+            "ring_buffer_pool_fallback_count",
+            "Total times that a buffer is allocated or released outside of any event loop pool"
+        );
+        GlobalInspection.getInstance().registerHelpMessage(
+            "ring_buffer_pool_free_bytes_current",
+            "Current bytes of idle buffers held by all event loop pools"
+        );
+        GlobalInspection.getInstance().registerHelpMessage(
+            "ring_buffer_pool_attached_count_current",
+            "Current count of buffers attached to connections"
+        );
+        GlobalInspection.getInstance().addMetric(
+            "ring_buffer_pool_free_bytes_current",
+            Map.of(),
+            (m, l) -> new GaugeF(m, l, () -> {
+                long n = 0;
+                for (var p : pools) {
+                    n += p.freeBytes;
+                }
+                return n;
+            }));
+        GlobalInspection.getInstance().addMetric(
+            "ring_buffer_pool_attached_count_current",
+            Map.of(),
+            (m, l) -> new GaugeF(m, l, () -> {
+                long n = 0;
+                for (var p : pools) {
+                    n += p.attached.get();
+                }
+                return n;
+            }));
+    }
+
+    private final Map<Integer, ArrayDeque<SimpleRingBuffer>> freeLists = new HashMap<>();
+    private final int maxFreeBytes;
+    // only modified by the owner thread, read by the metrics
+    private volatile long freeBytes = 0;
+    // buffers may be released on other threads
+    private final AtomicLong attached = new AtomicLong();
+
+    private RingBufferPool(int maxFreeBytes) {
+        this.maxFreeBytes = maxFreeBytes;
+    }
+
+    /**
+     * @return the pool of current event loop, or null if not running in an event loop
+     */
+    public static RingBufferPool current() {
+        var variable = VProxyThread.current();
+        if (variable.loop == null) {
+            return null;
+        }
+        var pool = variable.ringBufferPool;
+        if (pool == null) {
+            pool = new RingBufferPool(Config.ringBufferPoolMaxFreeBytes);
+            variable.ringBufferPool = pool;
+            pools.add(pool);
+        }
+        return pool;
+    }
+
+    /**
+     * Remove the pool of current thread and drop its free buffers, called when the event loop exits.
+     * Buffers still attached are accounted in the removed pool, and dropped when released.
+     */
+    public static void removeCurrent() {
+        var variable = VProxyThread.current();
+        var pool = variable.ringBufferPool;
+        if (pool == null) {
+            return;
+        }
+        variable.ringBufferPool = null;
+        pools.remove(pool);
+        pool.freeLists.clear();
+        pool.freeBytes = 0;
+    }
+
+    static SimpleRingBuffer acquire(int cap) {
+        var pool = current();
+        if (pool == null) {
+            fallbackCount.incr(1);
+            return SimpleRingBuffer.allocateDirect(cap);
+        }
+        return pool.doAcquire(cap);
+    }
+
+    static void release(SimpleRingBuffer buf) {
+        if (buf.used() != 0) {
+            // released while still holding data, e.g. the connection is closed
+            buf.resetCursors();
+        }
+        if (!(buf instanceof SlabRingBuffer slab)) {
+            buf.clean();
+            return;
+        }
+        slab.owner.attached.decrementAndGet();
+        var pool = current();
+        if (pool == null) {
+            // the slab memory is reclaimed by gc when all buffers of the slab are dropped
+            fallbackCount.incr(1);
+            return;
+        }
+        if (pool != slab.owner) {
+            // the free list is not thread safe, drop the buffer
+            return;
+        }
+        pool.doRelease(slab);
+    }
+
+    private SimpleRingBuffer doAcquire(int cap) {
+        attached.incrementAndGet();
+        var ls = freeLists.get(cap);
+        if (ls != null) {
+            var buf = ls.pollLast();
+            if (buf != null) {
+                freeBytes -= cap;
+                hitCount.incr(1);
+                return buf;
+            }
+        }
+        missCount.incr(1);
+        if (cap >= SLAB_BYTES) {
+            return new SlabRingBuffer(this, ByteBuffer.allocateDirect(cap));
+        }
+        int n = Math.min(SLAB_BYTES / cap, MAX_BUFFERS_PER_SLAB);
+        assert Logger.lowLevelDebug("allocating slab for ring buffers: cap=" + cap + ", count=" + n);
+        var slab = ByteBuffer.allocateDirect(cap * n);
+        if (ls == null) {
+            ls = new ArrayDeque<>(n);
+            freeLists.put(cap, ls);
+        }
+        for (int i = 1; i < n; ++i) {
+            ls.addLast(new SlabRingBuffer(this, slab.slice(i * cap, cap)));
+        }
+        freeBytes += (long) cap * (n - 1);
+        return new SlabRingBuffer(this, slab.slice(0, cap));
+    }
+
+    private void doRelease(SimpleRingBuffer buf) {
+        int cap = buf.capacity();
+        if (freeBytes + cap > maxFreeBytes) {
+            // drop the buffer, it will be reclaimed by gc with the slab
+            return;
+        }
+        freeLists.computeIfAbsent(cap, k -> new ArrayDeque<>()).addLast(buf);
+        freeBytes += cap;
+    }
+
+    public long getFreeBytes() {
+        return freeBytes;
+    }
+
+    public long getAttached() {
+        return attached.get();
+    }
+
+    // the memory is owned by the slab, never clean it separately
+    private static final class SlabRingBuffer extends SimpleRingBuffer {
+        final RingBufferPool owner;
+
+        SlabRingBuffer(RingBufferPool owner, ByteBuffer slice) {
+            super(false, new ByteBufferEx(slice), 0, 0);
+            this.owner = owner;
+        }
+    }
+}
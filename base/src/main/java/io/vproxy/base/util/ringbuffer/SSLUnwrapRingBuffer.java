@@ -1,11 +1,10 @@
 package io.vproxy.base.util.ringbuffer;
 
-import io.vproxy.base.GlobalInspection;
 import io.vproxy.base.selector.SelectorEventLoop;
 import io.vproxy.base.util.*;
 import io.vproxy.base.util.nio.ByteArrayChannel;
 import io.vproxy.base.util.ringbuffer.ssl.SSL;
-import io.vproxy.base.util.thread.VProxyThread;
+import io.vproxy.base.util.ringbuffer.ssl.SSLTaskExecutor;
 import io.vproxy.dep.tlschannel.impl.impl.TlsExplorer;
 import io.vproxy.vfd.IPPort;
 import io.vproxy.vfd.NetworkFD;
@@ -36,6 +35,7 @@ public class SSLUnwrapRingBuffer extends AbstractUnwrapByteBufferRingBuffer impl
 
     // only used when resume if resumer not specified
     private SelectorEventLoop lastLoop = null;
+    private SSLTaskExecutor taskExecutor = SSLTaskExecutor.getInstance();
 
     private final MirrorDataFactory plainMirrorDataFactory;
     private final MirrorDataFactory encryptedMirrorDataFactory;
@@ -158,6 +158,10 @@ public class SSLUnwrapRingBuffer extends AbstractUnwrapByteBufferRingBuffer impl
         return sni;
     }
 
+    public void setTaskExecutor(SSLTaskExecutor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+    }
+
     @Override
     public int storeBytesFrom(ReadableByteStream channel) throws IOException {
         int n = 0;
@@ -189,6 +193,7 @@ public class SSLUnwrapRingBuffer extends AbstractUnwrapByteBufferRingBuffer impl
         }
         engine = ssl.sslEngineBuilder.build(ctx);
         pair.engine = engine;
+        pair.setSessionStats(ssl.sslContextHolder.getSessionStats(ctx));
 
         ByteArrayChannel chnl = ByteArrayChannel.from(buf.array(), 0, n, 0);
         int n2 = super.storeBytesFrom(chnl);
@@ -333,16 +338,17 @@ public class SSLUnwrapRingBuffer extends AbstractUnwrapByteBufferRingBuffer impl
         if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
             assert result.getStatus() == SSLEngineResult.Status.OK;
         } else {
-            unwrapHandshake(result);
+            unwrapHandshake(result, errored, ex);
         }
     }
 
-    private void unwrapHandshake(SSLEngineResult result) {
+    private void unwrapHandshake(SSLEngineResult result, boolean[] errored, IOException[] ex) {
         assert Logger.lowLevelDebug("unwrapHandshake: " + result);
 
         SSLEngineResult.HandshakeStatus status = result.getHandshakeStatus();
         if (status == SSLEngineResult.HandshakeStatus.FINISHED) {
             assert Logger.lowLevelDebug("handshake finished");
+            pair.handshakeFinished();
             // should call the wrapper to send data (if any present)
             resumeGeneralWrap();
             return;
@@ -353,16 +359,7 @@ public class SSLUnwrapRingBuffer extends AbstractUnwrapByteBufferRingBuffer impl
                 lastLoop = SelectorEventLoop.current();
                 assert Logger.lowLevelDebug("resumer not specified, so we use the current event loop: " + lastLoop);
             }
-            VProxyThread.create(() -> {
-                assert Logger.lowLevelDebug("TASK begins");
-                Runnable r;
-                long begin = System.currentTimeMillis();
-                while ((r = engine.getDelegatedTask()) != null) {
-                    r.run();
-                }
-                long end = System.currentTimeMillis();
-                GlobalInspection.getInstance().sslUnwrapTask(end - begin);
-
+            boolean accepted = taskExecutor.runDelegatedTasks(engine, () -> {
                 assert Logger.lowLevelDebug("ssl engine returns " + engine.getHandshakeStatus() + " after task");
                 if (engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
                     resumeGeneralWrap();
@@ -373,7 +370,14 @@ public class SSLUnwrapRingBuffer extends AbstractUnwrapByteBufferRingBuffer impl
                 } else {
                     resumeGeneralUnwrap();
                 }
-            }, "ssl-unwrap-task").start();
+            });
+            if (!accepted) {
+                // shed the handshake instead of queueing more work
+                // not logged, it happens in bursts, see the ssl_task_rejected_count metric
+                assert Logger.lowLevelDebug("ssl task queue is full, reject the handshake");
+                errored[0] = true;
+                ex[0] = new IOException("ssl task queue is full");
+            }
             return;
         }
         if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
@@ -85,6 +85,19 @@ public class SSLUtils {
         return new SSLBufferPair(unwrap, wrap);
     }
 
+    // server ssl info
+    // use callback function as resumer
+    // no mirror address info
+    // DO NOT USE THIS EXCEPT FOR TESTING
+    public static SSLBufferPair genbufForServer(SSL ssl,
+                                                ByteBufferRingBuffer input,
+                                                ByteBufferRingBuffer output,
+                                                Consumer<Runnable> resumer) {
+        SSLWrapRingBuffer wrap = new SSLWrapRingBuffer(output, IPPort::bindAnyAddress, IPPort::bindAnyAddress);
+        SSLUnwrapRingBuffer unwrap = new SSLUnwrapRingBuffer(input, ssl, resumer, wrap, IPPort::bindAnyAddress, IPPort::bindAnyAddress);
+        return new SSLBufferPair(unwrap, wrap);
+    }
+
     // do not run resumer
     // use remote address to mirror
     public static SSLBufferPair genbuf(SSLEngine engine,
@@ -1,6 +1,8 @@
 package io.vproxy.base.util.ringbuffer;
 
+import io.vproxy.base.prometheus.Histogram;
 import io.vproxy.base.util.*;
+import io.vproxy.base.util.ringbuffer.ssl.SSLContextHolder;
 import io.vproxy.vfd.IPPort;
 import io.vproxy.vfd.NetworkFD;
 import io.vproxy.vmirror.MirrorDataFactory;
@@ -26,6 +28,12 @@ public class SSLWrapRingBuffer extends AbstractWrapByteBufferRingBuffer implemen
     private final MirrorDataFactory plainMirrorDataFactory;
     private final MirrorDataFactory encryptedMirrorDataFactory;
 
+    private boolean handshakeDone = false;
+    private Histogram handshakeTime; // may be null
+    private long handshakeBeginNanos;
+    private SSLContextHolder.SessionStats sessionStats; // may be null
+    private long sessionStatsBeginMillis;
+
     // for client
     SSLWrapRingBuffer(ByteBufferRingBuffer plainBytesBuffer,
                       SSLEngine engine,
@@ -245,12 +253,40 @@ public class SSLWrapRingBuffer extends AbstractWrapByteBufferRingBuffer implemen
         }
     }
 
+    /**
+     * Record the handshake time into the histogram in microseconds, counting from now.
+     */
+    public void setHandshakeTime(Histogram handshakeTime) {
+        this.handshakeTime = handshakeTime;
+        this.handshakeBeginNanos = System.nanoTime();
+    }
+
+    void setSessionStats(SSLContextHolder.SessionStats sessionStats) {
+        this.sessionStats = sessionStats;
+        this.sessionStatsBeginMillis = System.currentTimeMillis();
+    }
+
+    // the FINISHED status may be observed by either the wrap or the unwrap buffer
+    void handshakeFinished() {
+        if (handshakeDone) {
+            return;
+        }
+        handshakeDone = true;
+        if (handshakeTime != null) {
+            handshakeTime.record((System.nanoTime() - handshakeBeginNanos) / 1_000);
+        }
+        if (sessionStats != null) {
+            sessionStats.record(engine, sessionStatsBeginMillis);
+        }
+    }
+
     private void wrapHandshake(SSLEngineResult result) {
         assert Logger.lowLevelDebug("wrapHandshake: " + result);
 
         SSLEngineResult.HandshakeStatus status = result.getHandshakeStatus();
         if (status == SSLEngineResult.HandshakeStatus.FINISHED) {
             assert Logger.lowLevelDebug("handshake finished");
+            handshakeFinished();
             return;
         }
         if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
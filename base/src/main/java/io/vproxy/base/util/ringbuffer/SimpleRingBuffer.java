@@ -10,6 +10,7 @@ import java.io.IOException;
 import java.lang.foreign.MemorySegment;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -45,6 +46,12 @@ public class SimpleRingBuffer implements RingBuffer, ByteBufferRingBuffer {
     private final Set<RingBufferETHandler> handlerToAdd = new HashSet<>();
     private final Set<RingBufferETHandler> handlerToRemove = new HashSet<>();
 
+    // views of the buffer for vectored operations, re-created when the buffer changes
+    private ByteBufferEx regionsOwner;
+    private ByteBuffer region0;
+    private ByteBuffer region1;
+    private ByteBuffer[] regionArray;
+
     public static SimpleRingBuffer allocateDirect(int cap) {
         return new SimpleRingBuffer(true, DirectMemoryUtils.allocateDirectBuffer(cap), 0, 0);
     }
@@ -429,6 +436,176 @@ public class SimpleRingBuffer implements RingBuffer, ByteBufferRingBuffer {
         }
     }
 
+    @Override
+    public int storeBytesFromVectored(ReadableByteStream channel) throws IOException {
+        if (!ePosIsAfterSPos || sPos == 0) {
+            // free space is continuous
+            return storeBytesFrom(channel);
+        }
+        if (regionArray == null) {
+            regionArray = new ByteBuffer[2];
+        }
+        int cnt = writableRegions(regionArray, 0);
+        int n;
+        try {
+            n = channel.read(regionArray, 0, cnt);
+        } finally {
+            Arrays.fill(regionArray, null);
+        }
+        if (n < 0) {
+            return -1;
+        }
+        commitWritable(n);
+        return n;
+    }
+
+    @Override
+    public int writeToVectored(WritableByteStream channel) throws IOException {
+        if (ePosIsAfterSPos) {
+            // bytes are continuous
+            return writeTo(channel);
+        }
+        if (regionArray == null) {
+            regionArray = new ByteBuffer[2];
+        }
+        int cnt = readableRegions(regionArray, 0, Integer.MAX_VALUE);
+        int n;
+        try {
+            n = channel.write(regionArray, 0, cnt);
+        } finally {
+            Arrays.fill(regionArray, null);
+        }
+        consumeReadable(n);
+        return n;
+    }
+
+    private void ensureRegions() {
+        ensureBufferAvailable();
+        if (regionsOwner != buffer) {
+            regionsOwner = buffer;
+            region0 = buffer.realBuffer().duplicate();
+            region1 = buffer.realBuffer().duplicate();
+        }
+    }
+
+    /**
+     * Put views of the readable bytes into <code>bufs</code> starting from <code>off</code>.<br>
+     * The views are only valid until the buffer is operated again.
+     *
+     * @return count of views, 0 to 2
+     */
+    int readableRegions(ByteBuffer[] bufs, int off, int maxBytes) {
+        ensureRegions();
+        int lim = Math.min(retrieveLimit(), maxBytes);
+        if (lim <= 0) {
+            return 0;
+        }
+        region0.limit(sPos + lim).position(sPos);
+        bufs[off] = region0;
+        maxBytes -= lim;
+        if (ePosIsAfterSPos || maxBytes == 0 || ePos == 0) {
+            return 1;
+        }
+        region1.limit(Math.min(ePos, maxBytes)).position(0);
+        bufs[off + 1] = region1;
+        return 2;
+    }
+
+    /**
+     * Put views of the free space into <code>bufs</code> starting from <code>off</code>.<br>
+     * The views are only valid until the buffer is operated again.
+     *
+     * @return count of views, 0 to 2
+     */
+    int writableRegions(ByteBuffer[] bufs, int off) {
+        ensureRegions();
+        int lim = storeLimit();
+        if (lim == 0) {
+            return 0;
+        }
+        region0.limit(ePos + lim).position(ePos);
+        bufs[off] = region0;
+        if (!ePosIsAfterSPos || sPos == 0) {
+            return 1;
+        }
+        region1.limit(sPos).position(0);
+        bufs[off + 1] = region1;
+        return 2;
+    }
+
+    /**
+     * Mark <code>n</code> bytes retrieved from {@link #readableRegions(ByteBuffer[], int, int)} as consumed
+     */
+    void consumeReadable(int n) {
+        if (n <= 0) {
+            return;
+        }
+        if (operatingBuffer) {
+            throw new IllegalStateException("this buffer is operating");
+        }
+        if (n > used()) {
+            throw new IllegalArgumentException("consuming " + n + " bytes but only " + used() + " bytes in the buffer");
+        }
+        boolean firstOperator = isFirstOperate();
+        boolean triggerWritable = free() == 0;
+        try {
+            int lim = retrieveLimit();
+            int step = Math.min(n, lim);
+            sPos += step;
+            if (sPos == cap) {
+                sPos = 0;
+                ePosIsAfterSPos = true;
+            }
+            sPos += n - step;
+            if (used() == 0) {
+                resetCursors();
+            }
+        } finally {
+            if (triggerWritable) {
+                assert Logger.lowLevelNetDebug("trigger writable for " + handler.size() + " times");
+                for (RingBufferETHandler aHandler : handler) {
+                    aHandler.writableET();
+                }
+            }
+            resetFirst(firstOperator);
+        }
+    }
+
+    /**
+     * Mark <code>n</code> bytes stored into {@link #writableRegions(ByteBuffer[], int)} as committed
+     */
+    void commitWritable(int n) {
+        if (n <= 0) {
+            return;
+        }
+        if (operatingBuffer) {
+            throw new IllegalStateException("this buffer is operating");
+        }
+        if (n > free()) {
+            throw new IllegalArgumentException("committing " + n + " bytes but only " + free() + " bytes free");
+        }
+        boolean firstOperator = isFirstOperate();
+        boolean triggerReadable = used() == 0;
+        try {
+            int lim = storeLimit();
+            int step = Math.min(n, lim);
+            ePos += step;
+            if (ePos == cap) {
+                ePos = 0;
+                ePosIsAfterSPos = false;
+            }
+            ePos += n - step;
+        } finally {
+            if (triggerReadable) {
+                assert Logger.lowLevelNetDebug("trigger readable for " + handler.size() + " times");
+                for (RingBufferETHandler aHandler : handler) {
+                    aHandler.readableET();
+                }
+            }
+            resetFirst(firstOperator);
+        }
+    }
+
     @Override
     public boolean canDefragment() {
         return sPos != 0;
@@ -0,0 +1,206 @@
+package io.vproxy.base.util.ringbuffer;
+
+import io.vproxy.base.util.Logger;
+import io.vproxy.base.util.OS;
+import io.vproxy.vfd.FDProvider;
+import io.vproxy.vfd.ReadableByteStream;
+import io.vproxy.vfd.WritableByteStream;
+import io.vproxy.vfd.posix.Posix;
+import io.vproxy.vfd.posix.PosixFD;
+import io.vproxy.vfd.posix.PosixFDs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A ring buffer backed by a kernel pipe.<br>
+ * Bytes are moved from one socket into the pipe and from the pipe into another socket with splice(2),
+ * so the payload never enters user space.<br>
+ * Only posix fds can be used as the source or destination of this buffer,
+ * and only the plain tcp proxy uses it: the content cannot be inspected.
+ */
+public class SpliceRingBuffer extends AbstractRingBuffer {
+    // the default pipe size on linux
+    private static final int PIPE_CAPACITY = 16 * 4096;
+
+    private final Posix posix;
+    private final int readFd;
+    private final int writeFd;
+    private int used = 0;
+    // the pipe may run out of slots before PIPE_CAPACITY bytes are stored,
+    // which is reported by splice, the buffer is full until some bytes are taken out
+    private boolean outOfSlots = false;
+    private boolean cleaned = false;
+
+    private SpliceRingBuffer(Posix posix, int readFd, int writeFd) {
+        this.posix = posix;
+        this.readFd = readFd;
+        this.writeFd = writeFd;
+    }
+
+    public static boolean isSupported() {
+        return OS.isLinux() && FDProvider.get().getProvided() instanceof PosixFDs;
+    }
+
+    public static boolean canSplice(Object channel) {
+        return channel instanceof PosixFD;
+    }
+
+    public static SpliceRingBuffer allocate() throws IOException {
+        if (!isSupported()) {
+            throw new IOException("splice is not supported");
+        }
+        Posix posix = ((PosixFDs) FDProvider.get().getProvided()).posix;
+        int[] fds = posix.pipe2();
+        return new SpliceRingBuffer(posix, fds[0], fds[1]);
+    }
+
+    private void ensureBufferAvailable() {
+        if (cleaned) {
+            throw new IllegalStateException("this buffer is already cleaned");
+        }
+    }
+
+    private static int fdOf(Object channel) throws IOException {
+        if (!canSplice(channel)) {
+            throw new IOException("splice requires a posix fd, but got " + channel);
+        }
+        return ((PosixFD) channel).getFD();
+    }
+
+    @Override
+    public int storeBytesFrom(ReadableByteStream channel) throws IOException {
+        ensureBufferAvailable();
+        int fd = fdOf(channel);
+        int lim = free();
+        if (lim == 0) {
+            return 0;
+        }
+        boolean triggerReadable = used == 0;
+        int n = posix.splice(fd, writeFd, lim);
+        if (n == -1) {
+            return n; // EOF
+        }
+        if (n == -2) {
+            assert Logger.lowLevelDebug("the pipe is out of slots with " + used + " bytes, mark the buffer full");
+            outOfSlots = true;
+            return 0;
+        }
+        if (n == 0) {
+            return 0;
+        }
+        used += n;
+
+        if (triggerReadable) {
+            trigger(true);
+        }
+        return n;
+    }
+
+    @Override
+    public int writeTo(WritableByteStream channel, int maxBytesToWrite) throws IOException {
+        ensureBufferAvailable();
+        int fd = fdOf(channel);
+        int len = Math.min(used, maxBytesToWrite);
+        if (len == 0) {
+            return 0;
+        }
+        boolean triggerWritable = free() == 0;
+        int n = posix.splice(readFd, fd, len);
+        if (n <= 0) {
+            // -1 means the pipe is closed, which should not happen
+            return 0;
+        }
+        used -= n;
+        outOfSlots = false;
+
+        if (triggerWritable) {
+            trigger(false);
+        }
+        return n;
+    }
+
+    // the handlers may operate on this buffer again, e.g. the quick write of the other connection
+    private void trigger(boolean readable) {
+        boolean outermost = !isOperating();
+        if (outermost) {
+            setOperating(true);
+        }
+        try {
+            if (readable) {
+                triggerReadable();
+            } else {
+                triggerWritable();
+            }
+        } finally {
+            if (outermost) {
+                setOperating(false);
+            }
+        }
+    }
+
+    @Override
+    public int free() {
+        if (outOfSlots) {
+            return 0;
+        }
+        return PIPE_CAPACITY - used;
+    }
+
+    @Override
+    public int used() {
+        return used;
+    }
+
+    @Override
+    public int capacity() {
+        return PIPE_CAPACITY;
+    }
+
+    @Override
+    public void clean() {
+        if (cleaned)
+            return;
+        cleaned = true;
+        try {
+            posix.close(readFd);
+        } catch (IOException e) {
+            assert Logger.lowLevelDebug("closing pipe read fd " + readFd + " failed: " + e);
+        }
+        try {
+            posix.close(writeFd);
+        } catch (IOException e) {
+            assert Logger.lowLevelDebug("closing pipe write fd " + writeFd + " failed: " + e);
+        }
+    }
+
+    @Override
+    public void clear() {
+        ensureBufferAvailable();
+        if (used == 0) {
+            return;
+        }
+        boolean triggerWritable = free() == 0;
+        ByteBuffer buf = ByteBuffer.allocateDirect(Math.min(used, 4096));
+        try {
+            while (used != 0) {
+                int n = posix.read(readFd, buf, 0, Math.min(used, buf.capacity()));
+                if (n <= 0) {
+                    break;
+                }
+                used -= n;
+            }
+        } catch (IOException e) {
+            Logger.shouldNotHappen("draining the pipe failed", e);
+        }
+        outOfSlots = false;
+        if (triggerWritable) {
+            trigger(false);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SpliceRingBuffer(" + readFd + "<-" + writeFd + ", used=" + used + (outOfSlots ? ", out-of-slots" : "") + ")";
+    }
+}
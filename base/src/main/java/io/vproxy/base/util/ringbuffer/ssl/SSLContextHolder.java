@@ -1,8 +1,13 @@
 package io.vproxy.base.util.ringbuffer.ssl;
 
+import io.vproxy.base.Config;
+import io.vproxy.base.GlobalInspection;
+import io.vproxy.base.prometheus.Counter;
 import io.vproxy.base.util.Logger;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSessionContext;
 import java.security.cert.CertificateParsingException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
@@ -12,12 +17,75 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class SSLContextHolder {
+    // shared by contexts with the same name, e.g. contexts built from the same cert-key for different tcp-lbs
+    private static final Map<String, SessionStats> sessionStatsMap = new ConcurrentHashMap<>();
+
+    /**
+     * Counts of server side handshakes which resumed a session and which did not.
+     */
+    public static class SessionStats {
+        private final Counter resumed;
+        private final Counter full;
+
+        private SessionStats(String name) {
+            resumed = GlobalInspection.getInstance().addMetric("ssl_session_resumed_count",
+                Map.of("cert_key", name), Counter::new);
+            full = GlobalInspection.getInstance().addMetric("ssl_session_full_handshake_count",
+                Map.of("cert_key", name), Counter::new);
+        }
+
+        /**
+         * @param handshakeBeginMillis when the engine is created.
+         *                             a session created before the handshake began must be resumed
+         */
+        public void record(SSLEngine engine, long handshakeBeginMillis) {
+            if (engine.getSession().getCreationTime() < handshakeBeginMillis) {
+                resumed.incr(1);
+            } else {
+                full.incr(1);
+            }
+        }
+
+        public long getResumed() {
+            return resumed.longValue();
+        }
+
+        public long getFull() {
+            return full.longValue();
+        }
+
+        private void destroy() {
+            GlobalInspection.getInstance().removeMetric(resumed);
+            GlobalInspection.getInstance().removeMetric(full);
+        }
+    }
+
+    /**
+     * @return resumption stats recorded with the name, or null if not recorded
+     */
+    public static SessionStats findSessionStats(String name) {
+        return sessionStatsMap.get(name);
+    }
+
+    /**
+     * Drop the resumption stats recorded with the name and remove their metrics,
+     * should be called when the cert-key with the name is removed
+     */
+    public static void removeSessionStats(String name) {
+        var stats = sessionStatsMap.remove(name);
+        if (stats != null) {
+            stats.destroy();
+        }
+    }
+
     private static class Holder {
         final SSLContext sslContext;
         final CertHolder[] certs;
+        final SessionStats sessionStats; // may be null
 
-        private Holder(SSLContext sslContext, X509Certificate[] certs) {
+        private Holder(SSLContext sslContext, X509Certificate[] certs, SessionStats sessionStats) {
             this.sslContext = sslContext;
+            this.sessionStats = sessionStats;
             this.certs = new CertHolder[certs.length];
             for (int i = 0; i < certs.length; ++i) {
                 this.certs[i] = new CertHolder(certs[i]);
@@ -44,7 +112,33 @@ public class SSLContextHolder {
     // quickAccess stores SNI to the corresponding SSLContext
 
     public void add(SSLContext sslContext, X509Certificate[] certs) {
-        holders.add(new Holder(sslContext, certs));
+        add(sslContext, certs, null);
+    }
+
+    /**
+     * @param name used as the label of the session resumption metrics, null for not recording
+     */
+    public void add(SSLContext sslContext, X509Certificate[] certs, String name) {
+        // the server side session cache is kept by the context, so each cert-key has its own lru cache
+        SSLSessionContext sessions = sslContext.getServerSessionContext();
+        if (sessions != null) {
+            sessions.setSessionCacheSize(Config.sslSessionCacheSize);
+            sessions.setSessionTimeout(Config.sslSessionTimeout);
+        }
+        SessionStats stats = name == null ? null : sessionStatsMap.computeIfAbsent(name, SessionStats::new);
+        holders.add(new Holder(sslContext, certs, stats));
+    }
+
+    /**
+     * @return resumption stats of the context, or null if not recorded
+     */
+    public SessionStats getSessionStats(SSLContext sslContext) {
+        for (Holder h : holders) {
+            if (h.sslContext == sslContext) {
+                return h.sessionStats;
+            }
+        }
+        return null;
     }
 
     public SSLContext choose(String sni) {
@@ -0,0 +1,120 @@
+package io.vproxy.base.util.ringbuffer.ssl;
+
+import io.vproxy.base.Config;
+import io.vproxy.base.GlobalInspection;
+import io.vproxy.base.prometheus.Counter;
+import io.vproxy.base.prometheus.GaugeF;
+import io.vproxy.base.prometheus.Histogram;
+import io.vproxy.base.prometheus.Metric;
+import io.vproxy.base.util.LogType;
+import io.vproxy.base.util.Logger;
+import io.vproxy.base.util.thread.VProxyThread;
+
+import javax.net.ssl.SSLEngine;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs delegated tasks of ssl engines, which are mostly the cpu heavy handshake computations.<br>
+ * The threads and the waiting queue are bounded by {@link Config#sslTaskThreads} and {@link Config#sslTaskQueueCapacity},
+ * tasks are rejected when the queue is full, so a handshake storm cannot create unbounded threads.<br>
+ * The threads are platform threads and never time out,
+ * the tasks do not block so virtual threads would not help.
+ */
+public class SSLTaskExecutor {
+    private static final SSLTaskExecutor inst = new SSLTaskExecutor("default", Config.sslTaskThreads, Config.sslTaskQueueCapacity);
+
+    public static SSLTaskExecutor getInstance() {
+        return inst;
+    }
+
+    private final ThreadPoolExecutor pool;
+    private final Histogram queueWaitTime;
+    private final Histogram taskTime;
+    private final Counter rejectedCount;
+    private final List<Metric> metrics = new ArrayList<>();
+
+    /**
+     * Use {@link #getInstance()} unless a separate pool is required, e.g. in tests.
+     *
+     * @param name used as the <code>executor</code> label of the metrics
+     */
+    public SSLTaskExecutor(String name, int threads, int queueCapacity) {
+        var threadIndex = new AtomicInteger();
+        var threadPrefix = name.equals("default") ? "ssl-task-" : "ssl-task-" + name + "-";
+        pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            r -> {
+                var t = VProxyThread.create(r, threadPrefix + threadIndex.incrementAndGet()).thread();
+                t.setDaemon(true);
+                return t;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+
+        var labels = Map.of("executor", name);
+        queueWaitTime = addMetric(GlobalInspection.getInstance().addMetric("ssl_task_queue_wait_time_micros", labels, Histogram::new));
+        taskTime = addMetric(GlobalInspection.getInstance().addMetric("ssl_task_time_micros", labels, Histogram::new));
+        rejectedCount = addMetric(GlobalInspection.getInstance().addMetric("ssl_task_rejected_count", labels, Counter::new));
+        addMetric(GlobalInspection.getInstance().addMetric("ssl_task_queue_depth_current", labels,
+            (m, l) -> new GaugeF(m, l, () -> (long) pool.getQueue().size())));
+    }
+
+    private <T extends Metric> T addMetric(T m) {
+        metrics.add(m);
+        return m;
+    }
+
+    /**
+     * Run all delegated tasks of the engine in the pool.
+     *
+     * @param done called in the pool thread after the tasks are done
+     * @return false if the pool is saturated, the tasks are not run and <code>done</code> will not be called
+     */
+    public boolean runDelegatedTasks(SSLEngine engine, Runnable done) {
+        long enqueue = System.nanoTime();
+        try {
+            pool.execute(() -> {
+                long begin = System.nanoTime();
+                queueWaitTime.record((begin - enqueue) / 1_000);
+                Runnable r;
+                try {
+                    while ((r = engine.getDelegatedTask()) != null) {
+                        r.run();
+                    }
+                } catch (Throwable t) {
+                    // the engine will report the failure when resumed
+                    Logger.error(LogType.SSL_ERROR, "running delegated task of ssl engine failed", t);
+                }
+                long end = System.nanoTime();
+                taskTime.record((end - begin) / 1_000);
+                GlobalInspection.getInstance().sslUnwrapTask((end - begin) / 1_000_000);
+                done.run();
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incr(1);
+            return false;
+        }
+        return true;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.longValue();
+    }
+
+    /**
+     * Stop the threads and remove the metrics, the default instance should never be shut down
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+        for (var m : metrics) {
+            GlobalInspection.getInstance().removeMetric(m);
+        }
+        metrics.clear();
+    }
+}
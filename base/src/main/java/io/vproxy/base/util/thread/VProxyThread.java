@@ -1,7 +1,9 @@
 package io.vproxy.base.util.thread;
 
+import io.vproxy.base.processor.HintIndex;
 import io.vproxy.base.selector.SelectorEventLoop;
 import io.vproxy.base.util.Logger;
+import io.vproxy.base.util.ringbuffer.RingBufferPool;
 import io.vproxy.pni.Allocator;
 import io.vproxy.pni.PNIEnv;
 import io.vproxy.pni.array.IntArray;
@@ -11,6 +13,7 @@ import vjson.parser.ObjectParser;
 import vjson.parser.StringParser;
 import vjson.util.StringDictionary;
 
+import java.lang.foreign.MemorySegment;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BooleanSupplier;
@@ -70,6 +73,9 @@ public interface VProxyThread {
         public StringParser threadLocalStringParserJavaObject;
         public StringDictionary threadLocalKeyDictionary;
 
+        public RingBufferPool ringBufferPool;
+        public HintIndex.Cache hintIndexCache;
+
         public static final int XDPChunk_arrayLen = 2048;
         private final Allocator XDPChunkAllocator = Allocator.ofConfined();
         public final IntArray XDPIdxPtr = new IntArray(XDPChunkAllocator, 1);
@@ -77,6 +83,10 @@ public interface VProxyThread {
 
         private PNIEnv pniEnv;
 
+        // (int64 address, int64 len) pairs for readv/writev
+        public static final int IOVecs_maxCount = 64;
+        private MemorySegment ioVecs;
+
         public String debugInfo;
 
         public PNIEnv getEnv() {
@@ -86,6 +96,13 @@ public interface VProxyThread {
             return pniEnv;
         }
 
+        public MemorySegment getIOVecs() {
+            if (ioVecs == null) {
+                ioVecs = Allocator.ofConfined().allocate(IOVecs_maxCount * 16L);
+            }
+            return ioVecs;
+        }
+
         public void newUuidDebugInfo() {
             assert ((BooleanSupplier) (() -> {
                 if (Logger.debugOn()) {
@@ -1,12 +1,17 @@
 package io.vproxy.base.util.time;
 
 import io.vproxy.base.util.time.impl.TimeQueueImpl;
+import io.vproxy.base.util.time.impl.TimeWheelImpl;
 
 public interface TimeQueue<T> {
     static <T> TimeQueue<T> create() {
         return new TimeQueueImpl<>();
     }
 
+    static <T> TimeQueue<T> createTimeWheel() {
+        return new TimeWheelImpl<>();
+    }
+
     TimeElem<T> add(long current, int timeout, T elem);
 
     /**
@@ -16,6 +21,8 @@ public interface TimeQueue<T> {
 
     boolean isEmpty();
 
+    int size();
+
     /**
      * @param current current timestamp millis
      * @return time left to the nearest timeout, or 0 if the timeout event triggers, must not < 0, Integer.MAX_VALUE means no timer event
@@ -6,7 +6,7 @@ import io.vproxy.base.util.time.TimeQueue;
 import java.util.PriorityQueue;
 
 public class TimeQueueImpl<T> implements TimeQueue<T> {
-    final PriorityQueue<TimeElemImpl<T>> queue = new PriorityQueue<>((a, b) -> (int) (a.triggerTime - b.triggerTime));
+    final PriorityQueue<TimeElemImpl<T>> queue = new PriorityQueue<>((a, b) -> Long.compare(a.triggerTime, b.triggerTime));
 
     @Override
     public TimeElem<T> add(long currentTimestamp, int timeout, T elem) {
@@ -28,12 +28,22 @@ public class TimeQueueImpl<T> implements TimeQueue<T> {
         return queue.isEmpty();
     }
 
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
     @Override
     public int nextTime(long currentTimestamp) {
         TimeElemImpl<T> elem = queue.peek();
         if (elem == null)
             return Integer.MAX_VALUE;
         long triggerTime = elem.triggerTime;
-        return Math.max((int) (triggerTime - currentTimestamp), 0);
+        long delta = triggerTime - currentTimestamp;
+        if (delta <= 0)
+            return 0;
+        if (delta >= Integer.MAX_VALUE)
+            return Integer.MAX_VALUE - 1; // Integer.MAX_VALUE means no timer event
+        return (int) delta;
     }
 }
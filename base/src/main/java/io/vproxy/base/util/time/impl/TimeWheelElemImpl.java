@@ -0,0 +1,30 @@
+package io.vproxy.base.util.time.impl;
+
+import io.vproxy.base.util.time.TimeElem;
+
+public class TimeWheelElemImpl<T> implements TimeElem<T> {
+    public final long triggerTime;
+    public final T elem;
+    private final TimeWheelImpl<T> wheel;
+
+    // the intrusive linked list, bucket is null when the element is not in the wheel
+    TimeWheelImpl.Bucket<T> bucket;
+    TimeWheelElemImpl<T> prev;
+    TimeWheelElemImpl<T> next;
+
+    TimeWheelElemImpl(long triggerTime, T elem, TimeWheelImpl<T> wheel) {
+        this.triggerTime = triggerTime;
+        this.elem = elem;
+        this.wheel = wheel;
+    }
+
+    @Override
+    public T get() {
+        return elem;
+    }
+
+    @Override
+    public void removeSelf() {
+        wheel.remove(this);
+    }
+}
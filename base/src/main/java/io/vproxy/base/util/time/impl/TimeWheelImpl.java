@@ -0,0 +1,266 @@
+package io.vproxy.base.util.time.impl;
+
+import io.vproxy.base.util.time.TimeElem;
+import io.vproxy.base.util.time.TimeQueue;
+
+/**
+ * Hashed hierarchical timing wheel, one tick is one millisecond.<br>
+ * Level 0 has 256 slots and each slot holds exactly one tick,
+ * level 1 to 4 have 64 slots each, which covers 2^32 millis in total.<br>
+ * Elements in higher levels are moved (cascaded) to lower levels when the lower level wraps around.<br>
+ * Adding and removing are O(1), expired elements are moved into the expired list in batch per tick.<br>
+ * Not thread safe, should only be used on the event loop.
+ */
+public class TimeWheelImpl<T> implements TimeQueue<T> {
+    private static final int LEVEL0_BITS = 8;
+    private static final int LEVEL0_SIZE = 1 << LEVEL0_BITS;
+    private static final int LEVEL0_MASK = LEVEL0_SIZE - 1;
+    private static final int LEVELN_BITS = 6;
+    private static final int LEVELN_SIZE = 1 << LEVELN_BITS;
+    private static final int LEVELN_MASK = LEVELN_SIZE - 1;
+    private static final int LEVELS = 5;
+
+    static final class Bucket<T> {
+        final int level; // -1 for the expired list
+        TimeWheelElemImpl<T> head;
+        TimeWheelElemImpl<T> tail;
+
+        Bucket(int level) {
+            this.level = level;
+        }
+    }
+
+    private final Bucket<T>[][] wheel;
+    private final int[] levelCount = new int[LEVELS];
+    private final Bucket<T> expired = new Bucket<>(-1);
+    private int size = 0;
+    private long currentTick = -1; // the last tick handled, -1 means not initialized
+
+    public TimeWheelImpl() {
+        //noinspection unchecked
+        wheel = new Bucket[LEVELS][];
+        for (int level = 0; level < LEVELS; ++level) {
+            int slots = level == 0 ? LEVEL0_SIZE : LEVELN_SIZE;
+            //noinspection unchecked
+            wheel[level] = new Bucket[slots];
+            for (int i = 0; i < slots; ++i) {
+                wheel[level][i] = new Bucket<>(level);
+            }
+        }
+    }
+
+    @Override
+    public TimeElem<T> add(long currentTimestamp, int timeout, T elem) {
+        if (currentTick == -1) {
+            currentTick = currentTimestamp;
+        }
+        TimeWheelElemImpl<T> e = new TimeWheelElemImpl<>(currentTimestamp + timeout, elem, this);
+        place(e);
+        ++size;
+        return e;
+    }
+
+    private void place(TimeWheelElemImpl<T> e) {
+        long trigger = e.triggerTime;
+        long delta = trigger - currentTick;
+        if (delta <= 0) {
+            append(expired, e);
+            return;
+        }
+        if (delta < LEVEL0_SIZE) {
+            append(wheel[0][(int) (trigger & LEVEL0_MASK)], e);
+            return;
+        }
+        for (int level = 1; level < LEVELS; ++level) {
+            int shift = LEVEL0_BITS + (level - 1) * LEVELN_BITS;
+            if (delta < (1L << (shift + LEVELN_BITS)) || level == LEVELS - 1) {
+                // when the timeout is too large to fit in the last level,
+                // it will be cascaded earlier and re-placed into the last level again
+                append(wheel[level][(int) ((trigger >>> shift) & LEVELN_MASK)], e);
+                return;
+            }
+        }
+    }
+
+    private void append(Bucket<T> bucket, TimeWheelElemImpl<T> e) {
+        e.bucket = bucket;
+        e.next = null;
+        e.prev = bucket.tail;
+        if (bucket.tail == null) {
+            bucket.head = e;
+        } else {
+            bucket.tail.next = e;
+        }
+        bucket.tail = e;
+        if (bucket.level >= 0) {
+            ++levelCount[bucket.level];
+        }
+    }
+
+    private void unlink(TimeWheelElemImpl<T> e) {
+        Bucket<T> bucket = e.bucket;
+        if (e.prev == null) {
+            bucket.head = e.next;
+        } else {
+            e.prev.next = e.next;
+        }
+        if (e.next == null) {
+            bucket.tail = e.prev;
+        } else {
+            e.next.prev = e.prev;
+        }
+        if (bucket.level >= 0) {
+            --levelCount[bucket.level];
+        }
+        e.bucket = null;
+        e.prev = null;
+        e.next = null;
+    }
+
+    void remove(TimeWheelElemImpl<T> e) {
+        if (e.bucket == null) {
+            return; // already polled or removed
+        }
+        unlink(e);
+        --size;
+    }
+
+    private void advance(long currentTimestamp) {
+        if (currentTick == -1 || size == 0) {
+            if (currentTimestamp > currentTick) {
+                currentTick = currentTimestamp;
+            }
+            return;
+        }
+        while (currentTick < currentTimestamp) {
+            if (isWheelEmpty()) {
+                // only expired elements
+                currentTick = currentTimestamp;
+                return;
+            }
+            if (levelCount[0] == 0) {
+                // nothing in level 0, jump to the last tick before the next cascading
+                long lastTickOfRound = currentTick | LEVEL0_MASK;
+                if (lastTickOfRound >= currentTimestamp) {
+                    currentTick = currentTimestamp;
+                    return;
+                }
+                currentTick = lastTickOfRound;
+            }
+            ++currentTick;
+            int idx = (int) (currentTick & LEVEL0_MASK);
+            if (idx == 0) {
+                cascade(1);
+            }
+            moveAll(wheel[0][idx]);
+        }
+    }
+
+    private boolean isWheelEmpty() {
+        for (int c : levelCount) {
+            if (c != 0)
+                return false;
+        }
+        return true;
+    }
+
+    private void cascade(int level) {
+        if (level >= LEVELS) {
+            return;
+        }
+        int shift = LEVEL0_BITS + (level - 1) * LEVELN_BITS;
+        int idx = (int) ((currentTick >>> shift) & LEVELN_MASK);
+        if (idx == 0) {
+            cascade(level + 1);
+        }
+        if (levelCount[level] == 0) {
+            return;
+        }
+        moveAll(wheel[level][idx]);
+    }
+
+    // move all elements in the bucket to where they should be
+    private void moveAll(Bucket<T> bucket) {
+        // detach the list first, elements may be placed into the same bucket again
+        TimeWheelElemImpl<T> e = bucket.head;
+        bucket.head = null;
+        bucket.tail = null;
+        while (e != null) {
+            TimeWheelElemImpl<T> next = e.next;
+            --levelCount[bucket.level];
+            e.bucket = null;
+            e.prev = null;
+            e.next = null;
+            place(e);
+            e = next;
+        }
+    }
+
+    /**
+     * retrieving expired elements is O(1),
+     * however if no element expires, this method has to scan the whole wheel to find the nearest one
+     */
+    @Override
+    public T poll() {
+        TimeWheelElemImpl<T> e = expired.head;
+        if (e == null) {
+            e = findNearest();
+            if (e == null)
+                return null;
+        }
+        unlink(e);
+        --size;
+        return e.elem;
+    }
+
+    private TimeWheelElemImpl<T> findNearest() {
+        TimeWheelElemImpl<T> nearest = null;
+        for (int level = 0; level < LEVELS; ++level) {
+            if (levelCount[level] == 0)
+                continue;
+            for (Bucket<T> bucket : wheel[level]) {
+                for (var e = bucket.head; e != null; e = e.next) {
+                    if (nearest == null || e.triggerTime < nearest.triggerTime) {
+                        nearest = e;
+                    }
+                }
+            }
+        }
+        return nearest;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * the returned value might be less than the real nearest timeout,
+     * when nothing is in level 0, the time left to the next cascading is returned
+     */
+    @Override
+    public int nextTime(long currentTimestamp) {
+        advance(currentTimestamp);
+        if (size == 0)
+            return Integer.MAX_VALUE;
+        if (expired.head != null)
+            return 0;
+        int idx = (int) (currentTick & LEVEL0_MASK);
+        int ticksLeft;
+        if (levelCount[0] == 0) {
+            ticksLeft = LEVEL0_SIZE - idx;
+        } else {
+            ticksLeft = 1;
+            while (wheel[0][(idx + ticksLeft) & LEVEL0_MASK].head == null) {
+                ++ticksLeft;
+            }
+        }
+        // currentTick might be a little behind the currentTimestamp when it's updated by add()
+        return (int) Math.max(currentTick + ticksLeft - currentTimestamp, 0);
+    }
+}
@@ -0,0 +1,215 @@
+package io.vproxy.vfd;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Preallocated slots for receiving or sending multiple datagrams in one call.<br>
+ * Each slot holds one datagram with its length and remote address.<br>
+ * A slot may be preceded by some headroom, so that headers can be prepended in place.<br>
+ * The batch is expected to be reused, it's not thread safe.
+ */
+public class DatagramBatch {
+    public static final int MAX_SLOTS = 256;
+    // int32 len | int32 port | 16 bytes address, see io_vproxy_vfd_posix_GeneralPosix.c
+    public static final int META_LEN = 24;
+
+    public final int slots;
+    public final int slotLen;
+    // free bytes before each slot
+    public final int headroom;
+    private final ByteBuffer data;
+    private final ByteBuffer meta;
+    private final ByteBuffer[] slotBuffers;
+    // decoded addresses, kept to avoid allocating when datagrams come from the same remote
+    private final IPPort[] addresses;
+    private int count = 0;
+    private boolean ipv4 = true;
+
+    public DatagramBatch(int slots, int slotLen) {
+        this(slots, slotLen, 0);
+    }
+
+    public DatagramBatch(int slots, int slotLen, int headroom) {
+        if (slots <= 0 || slots > MAX_SLOTS) {
+            throw new IllegalArgumentException("slots should be in (0, " + MAX_SLOTS + "], but got " + slots);
+        }
+        if (slotLen <= 0) {
+            throw new IllegalArgumentException("slotLen should be greater than 0, but got " + slotLen);
+        }
+        if (headroom < 0) {
+            throw new IllegalArgumentException("headroom should not be negative, but got " + headroom);
+        }
+        this.slots = slots;
+        this.slotLen = slotLen;
+        this.headroom = headroom;
+        this.data = ByteBuffer.allocateDirect(slots * (headroom + slotLen));
+        this.meta = ByteBuffer.allocateDirect(slots * META_LEN).order(ByteOrder.nativeOrder());
+        this.slotBuffers = new ByteBuffer[slots];
+        for (int i = 0; i < slots; ++i) {
+            slotBuffers[i] = data.slice(slotOffset(i), slotLen);
+        }
+        this.addresses = new IPPort[slots];
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public boolean isIPv4() {
+        return ipv4;
+    }
+
+    public void reset() {
+        count = 0;
+    }
+
+    /**
+     * @return the content of the i-th datagram, position = 0 and limit = length
+     */
+    public ByteBuffer get(int i) {
+        checkIndex(i);
+        return slotBuffers[i].limit(length(i)).position(0);
+    }
+
+    /**
+     * @return offset of the i-th slot in the raw data, the headroom is right before it
+     */
+    public int slotOffset(int i) {
+        return i * (headroom + slotLen) + headroom;
+    }
+
+    public int length(int i) {
+        checkIndex(i);
+        return meta.getInt(i * META_LEN);
+    }
+
+    public IPPort address(int i) {
+        checkIndex(i);
+        int off = i * META_LEN;
+        int port = meta.getInt(off + 4);
+        IPPort cached = addresses[i];
+        if (ipv4) {
+            int ip = meta.getInt(off + 8);
+            if (cached != null && cached.getPort() == port
+                && cached.getAddress() instanceof IPv4 v4 && v4.getIPv4Value() == ip) {
+                return cached;
+            }
+            cached = new IPPort(IP.from(IP.ipv4Int2Bytes(ip)), port);
+        } else {
+            // the address is in network byte order
+            int ip0 = ipv6Int(off + 8);
+            int ip1 = ipv6Int(off + 12);
+            int ip2 = ipv6Int(off + 16);
+            int ip3 = ipv6Int(off + 20);
+            if (cached != null && cached.getPort() == port
+                && cached.getAddress() instanceof IPv6 v6
+                && v6.getIPv6Value0() == ip0 && v6.getIPv6Value1() == ip1
+                && v6.getIPv6Value2() == ip2 && v6.getIPv6Value3() == ip3) {
+                return cached;
+            }
+            cached = new IPPort(IP.fromIPv6(ip0, ip1, ip2, ip3), port);
+        }
+        addresses[i] = cached;
+        return cached;
+    }
+
+    private int ipv6Int(int off) {
+        int n = meta.getInt(off);
+        return meta.order() == ByteOrder.BIG_ENDIAN ? n : Integer.reverseBytes(n);
+    }
+
+    /**
+     * append a datagram to be sent
+     *
+     * @return false if the batch is full
+     */
+    public boolean add(ByteBuffer src, IPPort remote) {
+        if (count == slots) {
+            return false;
+        }
+        boolean isV4 = remote.getAddress() instanceof IPv4;
+        if (count == 0) {
+            ipv4 = isV4;
+        } else if (ipv4 != isV4) {
+            throw new IllegalArgumentException("cannot mix ipv4 and ipv6 addresses in one batch: " + remote);
+        }
+        int len = src.limit() - src.position();
+        if (len > slotLen) {
+            throw new IllegalArgumentException("datagram too large: " + len + " > " + slotLen);
+        }
+        int i = count;
+        ByteBuffer slot = slotBuffers[i].limit(slotLen).position(0);
+        slot.put(src);
+        writeMeta(i, len, remote);
+        ++count;
+        return true;
+    }
+
+    private void writeMeta(int i, int len, IPPort remote) {
+        int off = i * META_LEN;
+        meta.putInt(off, len);
+        meta.putInt(off + 4, remote.getPort());
+        if (remote.getAddress() instanceof IPv4 v4) {
+            meta.putInt(off + 8, v4.getIPv4Value());
+        } else {
+            meta.put(off + 8, remote.getAddress().getAddress());
+        }
+        addresses[i] = remote;
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("index " + i + " out of bounds for count " + count);
+        }
+    }
+
+    // the following methods are used by DatagramFD implementations
+
+    public ByteBuffer getRawData() {
+        return data;
+    }
+
+    public ByteBuffer getRawMeta() {
+        return meta;
+    }
+
+    /**
+     * @return the i-th slot for receiving, position = 0 and limit = slotLen
+     */
+    public ByteBuffer slotForReceiving(int i) {
+        return slotBuffers[i].limit(slotLen).position(0);
+    }
+
+    public void setReceived(int i, int len, IPPort remote) {
+        if (i != count) {
+            throw new IllegalArgumentException("datagrams should be received in order, expecting " + count + ", but got " + i);
+        }
+        boolean isV4 = remote.getAddress() instanceof IPv4;
+        if (count == 0) {
+            ipv4 = isV4;
+        } else if (ipv4 != isV4) {
+            throw new IllegalArgumentException("cannot mix ipv4 and ipv6 addresses in one batch: " + remote);
+        }
+        writeMeta(i, len, remote);
+        ++count;
+    }
+
+    public void setReceived(int count, boolean ipv4) {
+        if (count < 0 || count > slots) {
+            throw new IllegalArgumentException("count " + count + " out of range [0, " + slots + "]");
+        }
+        this.count = count;
+        this.ipv4 = ipv4;
+    }
+
+    @Override
+    public String toString() {
+        return "DatagramBatch{" +
+            "slots=" + slots +
+            ", slotLen=" + slotLen +
+            ", headroom=" + headroom +
+            ", count=" + count +
+            '}';
+    }
+}
@@ -1,9 +1,46 @@
 package io.vproxy.vfd;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public interface DatagramFD extends AbstractDatagramFD<IPPort> {
     default void ensureDummyFD() throws IOException {
         bind(new IPPort("0.0.0.0", 0));
     }
+
+    /**
+     * Receive datagrams into the batch until no more datagrams available or the batch is full.<br>
+     * The batch is reset before receiving.
+     *
+     * @return the number of received datagrams, 0 if nothing received
+     */
+    default int receiveBatch(DatagramBatch batch) throws IOException {
+        batch.reset();
+        for (int i = 0; i < batch.slots; ++i) {
+            ByteBuffer slot = batch.slotForReceiving(i);
+            IPPort remote = receive(slot);
+            if (remote == null) {
+                break;
+            }
+            batch.setReceived(i, slot.position(), remote);
+        }
+        return batch.count();
+    }
+
+    /**
+     * Send all datagrams in the batch.
+     *
+     * @return the number of sent datagrams, which might be less than batch.count() when the socket is not writable
+     */
+    default int sendBatch(DatagramBatch batch) throws IOException {
+        int n = batch.count();
+        for (int i = 0; i < n; ++i) {
+            ByteBuffer buf = batch.get(i);
+            int len = buf.limit();
+            if (len != 0 && send(buf, batch.address(i)) == 0) {
+                return i;
+            }
+        }
+        return n;
+    }
 }
@@ -86,6 +86,15 @@ public abstract class IP implements ToByteArray {
         return new IPv6(hostname, bytes);
     }
 
+    /**
+     * @param value0 the first 4 bytes of the address as an int, the same as {@link IPv6#getIPv6Value0()}
+     */
+    public static IPv6 fromIPv6(int value0, int value1, int value2, int value3) {
+        return new IPv6(null, ByteArray.allocate(16)
+            .int32(0, value0).int32(4, value1).int32(8, value2).int32(12, value3)
+            .toJavaArray());
+    }
+
     public static IPv6 fromIPv6(String ip) {
         return fromIPv6(null, ip);
     }
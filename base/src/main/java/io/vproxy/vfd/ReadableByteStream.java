@@ -9,4 +9,35 @@ public interface ReadableByteStream {
     default int readBlocking(ByteBuffer dst) throws IOException {
         return read(dst);
     }
+
+    /**
+     * Scatter read into <code>dsts[off, off+len)</code>.<br>
+     * The default implementation reads the buffers one by one,
+     * implementations may override it to read with one system call (e.g. readv).
+     *
+     * @return bytes read, or -1 for EOF if nothing is read
+     */
+    default int read(ByteBuffer[] dsts, int off, int len) throws IOException {
+        return readSequentially(this, dsts, off, len);
+    }
+
+    static int readSequentially(ReadableByteStream stream, ByteBuffer[] dsts, int off, int len) throws IOException {
+        int total = 0;
+        for (int i = off; i < off + len; ++i) {
+            ByteBuffer dst = dsts[i];
+            int expected = dst.limit() - dst.position();
+            if (expected == 0) {
+                continue;
+            }
+            int n = stream.read(dst);
+            if (n < 0) {
+                return total == 0 ? -1 : total;
+            }
+            total += n;
+            if (n < expected) {
+                break;
+            }
+        }
+        return total;
+    }
 }
@@ -5,4 +5,32 @@ import java.nio.ByteBuffer;
 
 public interface WritableByteStream {
     int write(ByteBuffer src) throws IOException;
+
+    /**
+     * Gather write from <code>srcs[off, off+len)</code>.<br>
+     * The default implementation writes the buffers one by one,
+     * implementations may override it to write with one system call (e.g. writev).
+     *
+     * @return bytes written
+     */
+    default int write(ByteBuffer[] srcs, int off, int len) throws IOException {
+        return writeSequentially(this, srcs, off, len);
+    }
+
+    static int writeSequentially(WritableByteStream stream, ByteBuffer[] srcs, int off, int len) throws IOException {
+        int total = 0;
+        for (int i = off; i < off + len; ++i) {
+            ByteBuffer src = srcs[i];
+            int expected = src.limit() - src.position();
+            if (expected == 0) {
+                continue;
+            }
+            int n = stream.write(src);
+            total += n;
+            if (n < expected) {
+                break;
+            }
+        }
+        return total;
+    }
 }
@@ -60,6 +60,16 @@ public class SocketChannelFD extends ChannelFD implements SocketFD {
         return channel.write(src);
     }
 
+    @Override
+    public int read(ByteBuffer[] dsts, int off, int len) throws IOException {
+        return (int) channel.read(dsts, off, len);
+    }
+
+    @Override
+    public int write(ByteBuffer[] srcs, int off, int len) throws IOException {
+        return (int) channel.write(srcs, off, len);
+    }
+
     @Override
     public SocketChannel getChannel() {
         return channel;
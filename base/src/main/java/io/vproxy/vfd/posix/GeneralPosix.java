@@ -4,6 +4,7 @@ import io.vproxy.base.util.thread.VProxyThread;
 import io.vproxy.pni.Allocator;
 import io.vproxy.pni.PNIString;
 import io.vproxy.pni.array.IntArray;
+import io.vproxy.vfd.IPv6;
 import io.vproxy.vfd.TapInfo;
 
 import java.io.IOException;
@@ -177,11 +178,9 @@ public class GeneralPosix implements Posix {
     }
 
     @Override
-    public void bindIPv6(int fd, String fullAddr, int port) throws IOException {
-        try (var allocator = Allocator.ofPooled()) {
-            PosixNative.get().bindIPv6(VProxyThread.current().getEnv(),
-                fd, new PNIString(allocator, fullAddr), port);
-        }
+    public void bindIPv6(int fd, IPv6 addr, int port) throws IOException {
+        PosixNative.get().bindIPv6(VProxyThread.current().getEnv(),
+            fd, addr.getIPv6Value0(), addr.getIPv6Value1(), addr.getIPv6Value2(), addr.getIPv6Value3(), port);
     }
 
     @Override
@@ -204,11 +203,9 @@ public class GeneralPosix implements Posix {
     }
 
     @Override
-    public void connectIPv6(int fd, String fullAddr, int port) throws IOException {
-        try (var allocator = Allocator.ofPooled()) {
-            PosixNative.get().connectIPv6(VProxyThread.current().getEnv(),
-                fd, new PNIString(allocator, fullAddr), port);
-        }
+    public void connectIPv6(int fd, IPv6 addr, int port) throws IOException {
+        PosixNative.get().connectIPv6(VProxyThread.current().getEnv(),
+            fd, addr.getIPv6Value0(), addr.getIPv6Value1(), addr.getIPv6Value2(), addr.getIPv6Value3(), port);
     }
 
     @Override
@@ -301,6 +298,33 @@ public class GeneralPosix implements Posix {
             fd, directBuffer, off, len);
     }
 
+    @Override
+    public int readv(int fd, MemorySegment iov, int iovcnt) throws IOException {
+        return PosixNative.get().readv(VProxyThread.current().getEnv(),
+            fd, iov, iovcnt);
+    }
+
+    @Override
+    public int writev(int fd, MemorySegment iov, int iovcnt) throws IOException {
+        return PosixNative.get().writev(VProxyThread.current().getEnv(),
+            fd, iov, iovcnt);
+    }
+
+    @Override
+    public int[] pipe2() throws IOException {
+        try (var allocator = Allocator.ofPooled()) {
+            var arr = new IntArray(allocator, 2);
+            PosixNative.get().pipe2(VProxyThread.current().getEnv(), arr);
+            return new int[]{arr.get(0), arr.get(1)};
+        }
+    }
+
+    @Override
+    public int splice(int fdIn, int fdOut, int len) throws IOException {
+        return PosixNative.get().splice(VProxyThread.current().getEnv(),
+            fdIn, fdOut, len);
+    }
+
     @Override
     public int sendtoIPv4(int fd, ByteBuffer directBuffer, int off, int len, int addrHostOrder, int port) throws IOException {
         return PosixNative.get().sendtoIPv4(VProxyThread.current().getEnv(),
@@ -308,11 +332,10 @@ public class GeneralPosix implements Posix {
     }
 
     @Override
-    public int sendtoIPv6(int fd, ByteBuffer directBuffer, int off, int len, String fullAddr, int port) throws IOException {
-        try (var allocator = Allocator.ofPooled()) {
-            return PosixNative.get().sendtoIPv6(VProxyThread.current().getEnv(),
-                fd, directBuffer, off, len, new PNIString(allocator, fullAddr), port);
-        }
+    public int sendtoIPv6(int fd, ByteBuffer directBuffer, int off, int len, IPv6 addr, int port) throws IOException {
+        return PosixNative.get().sendtoIPv6(VProxyThread.current().getEnv(),
+            fd, directBuffer, off, len,
+            addr.getIPv6Value0(), addr.getIPv6Value1(), addr.getIPv6Value2(), addr.getIPv6Value3(), port);
     }
 
     @Override
@@ -335,6 +358,24 @@ public class GeneralPosix implements Posix {
         }
     }
 
+    @Override
+    public boolean recvfromIPv6(int fd, ByteBuffer directBuffer, int off, int len, UDPRecvResultIPv6BinST result) throws IOException {
+        return PosixNative.get().recvfromIPv6Bin(VProxyThread.current().getEnv(),
+            fd, directBuffer, off, len, result);
+    }
+
+    @Override
+    public int recvmmsg(int fd, ByteBuffer directBuffer, int headroom, int slotLen, ByteBuffer meta, int vlen, boolean ipv4) throws IOException {
+        return PosixNative.get().recvmmsg(VProxyThread.current().getEnv(),
+            fd, directBuffer, headroom, slotLen, meta, vlen, ipv4);
+    }
+
+    @Override
+    public int sendmmsg(int fd, ByteBuffer directBuffer, int headroom, int slotLen, ByteBuffer meta, int vlen, boolean ipv4) throws IOException {
+        return PosixNative.get().sendmmsg(VProxyThread.current().getEnv(),
+            fd, directBuffer, headroom, slotLen, meta, vlen, ipv4);
+    }
+
     @Override
     public long currentTimeMillis() {
         return PosixNative.get().currentTimeMillis(VProxyThread.current().getEnv());
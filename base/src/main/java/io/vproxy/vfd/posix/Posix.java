@@ -1,5 +1,6 @@
 package io.vproxy.vfd.posix;
 
+import io.vproxy.vfd.IPv6;
 import io.vproxy.vfd.TapInfo;
 
 import java.io.IOException;
@@ -63,7 +64,7 @@ public interface Posix {
 
     void bindIPv4(int fd, int addrHostOrder, int port) throws IOException;
 
-    void bindIPv6(int fd, String fullAddr, int port) throws IOException;
+    void bindIPv6(int fd, IPv6 addr, int port) throws IOException;
 
     void bindUnixDomainSocket(int fd, String path) throws IOException;
 
@@ -71,7 +72,7 @@ public interface Posix {
 
     void connectIPv4(int fd, int addrHostOrder, int port) throws IOException;
 
-    void connectIPv6(int fd, String fullAddr, int port) throws IOException;
+    void connectIPv6(int fd, IPv6 addr, int port) throws IOException;
 
     void connectUDS(int fd, String sock) throws IOException;
 
@@ -97,14 +98,35 @@ public interface Posix {
 
     int write(int fd, ByteBuffer directBuffer, int off, int len) throws IOException;
 
+    // iov: (int64 address, int64 len) pairs
+    int readv(int fd, MemorySegment iov, int iovcnt) throws IOException;
+
+    int writev(int fd, MemorySegment iov, int iovcnt) throws IOException;
+
+    int[] pipe2() throws IOException;
+
+    // returns -1 on EOF of fdIn, -2 if fdOut is full, 0 if fdIn has nothing to read
+    int splice(int fdIn, int fdOut, int len) throws IOException;
+
     int sendtoIPv4(int fd, ByteBuffer directBuffer, int off, int len, int addrHostOrder, int port) throws IOException;
 
-    int sendtoIPv6(int fd, ByteBuffer directBuffer, int off, int len, String fullAddr, int port) throws IOException;
+    int sendtoIPv6(int fd, ByteBuffer directBuffer, int off, int len, IPv6 addr, int port) throws IOException;
 
     UDPRecvResult recvfromIPv4(int fd, ByteBuffer directBuffer, int off, int len) throws IOException;
 
     UDPRecvResult recvfromIPv6(int fd, ByteBuffer directBuffer, int off, int len) throws IOException;
 
+    /**
+     * receive into a caller owned struct without allocating
+     *
+     * @return false if nothing received
+     */
+    boolean recvfromIPv6(int fd, ByteBuffer directBuffer, int off, int len, UDPRecvResultIPv6BinST result) throws IOException;
+
+    int recvmmsg(int fd, ByteBuffer directBuffer, int headroom, int slotLen, ByteBuffer meta, int vlen, boolean ipv4) throws IOException;
+
+    int sendmmsg(int fd, ByteBuffer directBuffer, int headroom, int slotLen, ByteBuffer meta, int vlen, boolean ipv4) throws IOException;
+
     long currentTimeMillis();
 
     boolean tapNonBlockingSupported() throws IOException;
@@ -1,5 +1,6 @@
 package io.vproxy.vfd.posix;
 
+import io.vproxy.pni.Allocator;
 import io.vproxy.vfd.*;
 
 import java.io.IOException;
@@ -7,6 +8,8 @@ import java.nio.ByteBuffer;
 
 public class PosixDatagramFD extends PosixInetNetworkFD implements DatagramFD {
     private boolean bond = false;
+    private UDPRecvResultIPv6BinST ipv6RecvResult;
+    private IPPort lastIPv6Remote;
 
     public PosixDatagramFD(Posix posix) {
         super(posix);
@@ -48,8 +51,7 @@ public class PosixDatagramFD extends PosixInetNetworkFD implements DatagramFD {
             fd = posix.createIPv6UdpFD();
             finishConfigAfterFDCreated();
             ipv4 = false;
-            String ipv6 = ((IPv6) l4addr.getAddress()).formatToIPStringWithoutBrackets();
-            posix.bindIPv6(fd, ipv6, port);
+            posix.bindIPv6(fd, (IPv6) l4addr.getAddress(), port);
         } else {
             throw new IOException("unknown l3addr " + l4addr.getAddress());
         }
@@ -99,8 +101,7 @@ public class PosixDatagramFD extends PosixInetNetworkFD implements DatagramFD {
                 int ip = IP.ipv4Bytes2Int(remote.getAddress().getAddress());
                 n = posix.sendtoIPv4(fd, directBuffer, off, len, ip, port);
             } else {
-                String ip = ((IPv6) remote.getAddress()).formatToIPStringWithoutBrackets();
-                n = posix.sendtoIPv6(fd, directBuffer, off, len, ip, port);
+                n = posix.sendtoIPv6(fd, directBuffer, off, len, (IPv6) remote.getAddress(), port);
             }
         } finally {
             if (needCopy) { // src was fully read
@@ -135,20 +136,26 @@ public class PosixDatagramFD extends PosixInetNetworkFD implements DatagramFD {
             directBuffer = getDirectBufferForReading(len).realBuffer();
             needCopy = true;
         }
-        VSocketAddress l4addr;
+        IPPort remote;
         int n = 0;
         try {
-            UDPRecvResult tup;
             if (ipv4) {
-                tup = posix.recvfromIPv4(fd, directBuffer, off, len);
+                UDPRecvResult tup = posix.recvfromIPv4(fd, directBuffer, off, len);
+                if (tup == null) { // nothing received
+                    return null;
+                }
+                remote = tup.address.toIPPort();
+                n = tup.len;
             } else {
-                tup = posix.recvfromIPv6(fd, directBuffer, off, len);
-            }
-            if (tup == null) { // nothing received
-                return null;
+                if (ipv6RecvResult == null) {
+                    ipv6RecvResult = new UDPRecvResultIPv6BinST(Allocator.ofAuto());
+                }
+                if (!posix.recvfromIPv6(fd, directBuffer, off, len, ipv6RecvResult)) { // nothing received
+                    return null;
+                }
+                remote = ipv6Remote(ipv6RecvResult);
+                n = ipv6RecvResult.getLen();
             }
-            l4addr = tup.address;
-            n = tup.len;
         } finally {
             if (n > 0) {
                 if (needCopy) {
@@ -160,6 +167,60 @@ public class PosixDatagramFD extends PosixInetNetworkFD implements DatagramFD {
             }
             resetDirectBufferForReading();
         }
-        return l4addr.toIPPort();
+        return remote;
+    }
+
+    // datagrams usually come from a few peers, reuse the last object if possible
+    private IPPort ipv6Remote(UDPRecvResultIPv6BinST res) {
+        int port = res.getPort() & 0xffff;
+        IPPort last = lastIPv6Remote;
+        if (last != null && last.getPort() == port) {
+            IPv6 ip = (IPv6) last.getAddress();
+            if (ip.getIPv6Value0() == res.getIp0() && ip.getIPv6Value1() == res.getIp1()
+                && ip.getIPv6Value2() == res.getIp2() && ip.getIPv6Value3() == res.getIp3()) {
+                return last;
+            }
+        }
+        last = new IPPort(IP.fromIPv6(res.getIp0(), res.getIp1(), res.getIp2(), res.getIp3()), port);
+        lastIPv6Remote = last;
+        return last;
+    }
+
+    @Override
+    public int receiveBatch(DatagramBatch batch) throws IOException {
+        checkFD();
+        checkNotClosed();
+        if (!bond) {
+            throw new IOException("not bond");
+        }
+        batch.reset();
+        int n = posix.recvmmsg(fd, batch.getRawData(), batch.headroom, batch.slotLen, batch.getRawMeta(), batch.slots, ipv4);
+        batch.setReceived(n, ipv4);
+        return n;
+    }
+
+    @Override
+    public int sendBatch(DatagramBatch batch) throws IOException {
+        if (connected) {
+            throw new IOException("this fd is already connected");
+        }
+        checkNotClosed();
+        int count = batch.count();
+        if (count == 0) {
+            return 0;
+        }
+        if (fd == -1) {
+            if (batch.isIPv4()) {
+                fd = createIPv4FD();
+                ipv4 = true;
+            } else {
+                fd = createIPv6FD();
+                ipv4 = false;
+            }
+        }
+        if (ipv4 != batch.isIPv4()) {
+            throw new IOException("unsupported address family for this fd: " + (batch.isIPv4() ? "ipv4" : "ipv6"));
+        }
+        return posix.sendmmsg(fd, batch.getRawData(), batch.headroom, batch.slotLen, batch.getRawMeta(), count, ipv4);
     }
 }
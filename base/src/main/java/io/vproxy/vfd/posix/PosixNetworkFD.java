@@ -1,6 +1,12 @@
 package io.vproxy.vfd.posix;
 
+import io.vproxy.base.util.thread.VProxyThread;
+import io.vproxy.vfd.ReadableByteStream;
+import io.vproxy.vfd.WritableByteStream;
+
 import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.nio.ByteBuffer;
 
 public class PosixNetworkFD extends PosixFD {
@@ -43,4 +49,66 @@ public class PosixNetworkFD extends PosixFD {
 
         return utilWrite(src, (buf, off, len) -> posix.write(fd, buf, off, len));
     }
+
+    /**
+     * @return false if the buffers cannot be passed to readv/writev directly
+     */
+    private static boolean fillIOVecs(MemorySegment iov, ByteBuffer[] bufs, int off, int len) {
+        if (len > VProxyThread.VProxyThreadVariable.IOVecs_maxCount) {
+            return false;
+        }
+        for (int i = 0; i < len; ++i) {
+            var buf = bufs[off + i];
+            if (!buf.isDirect()) {
+                return false;
+            }
+            // the segment starts from position of the buffer
+            var seg = MemorySegment.ofBuffer(buf);
+            iov.set(ValueLayout.JAVA_LONG, i * 16L, seg.address());
+            iov.set(ValueLayout.JAVA_LONG, i * 16L + 8, seg.byteSize());
+        }
+        return true;
+    }
+
+    private static void advance(ByteBuffer[] bufs, int off, int len, int n) {
+        for (int i = off; i < off + len && n > 0; ++i) {
+            var buf = bufs[i];
+            int step = Math.min(n, buf.limit() - buf.position());
+            buf.position(buf.position() + step);
+            n -= step;
+        }
+    }
+
+    // only used by stream sockets, one datagram cannot be split into multiple buffers
+    protected int utilReadv(ByteBuffer[] dsts, int off, int len) throws IOException {
+        checkFD();
+        checkConnected();
+        checkNotClosed();
+
+        var iov = VProxyThread.current().getIOVecs();
+        if (len <= 1 || !fillIOVecs(iov, dsts, off, len)) {
+            return ReadableByteStream.readSequentially(this::read, dsts, off, len);
+        }
+        int n = posix.readv(fd, iov, len);
+        if (n > 0) {
+            advance(dsts, off, len, n);
+        }
+        return n;
+    }
+
+    protected int utilWritev(ByteBuffer[] srcs, int off, int len) throws IOException {
+        checkFD();
+        checkConnected();
+        checkNotClosed();
+
+        var iov = VProxyThread.current().getIOVecs();
+        if (len <= 1 || !fillIOVecs(iov, srcs, off, len)) {
+            return WritableByteStream.writeSequentially(this::write, srcs, off, len);
+        }
+        int n = posix.writev(fd, iov, len);
+        if (n > 0) {
+            advance(srcs, off, len, n);
+        }
+        return n;
+    }
 }
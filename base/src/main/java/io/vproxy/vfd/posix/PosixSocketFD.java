@@ -3,6 +3,7 @@ package io.vproxy.vfd.posix;
 import io.vproxy.vfd.SocketFD;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class PosixSocketFD extends PosixInetNetworkFD implements SocketFD {
     public PosixSocketFD(Posix posix) {
@@ -16,6 +17,16 @@ public class PosixSocketFD extends PosixInetNetworkFD implements SocketFD {
         connected = true;
     }
 
+    @Override
+    public int read(ByteBuffer[] dsts, int off, int len) throws IOException {
+        return utilReadv(dsts, off, len);
+    }
+
+    @Override
+    public int write(ByteBuffer[] srcs, int off, int len) throws IOException {
+        return utilWritev(srcs, off, len);
+    }
+
     @Override
     public void shutdownOutput() throws IOException {
         checkFD();
@@ -7,6 +7,7 @@ import io.vproxy.vfd.UDSPath;
 import java.io.IOException;
 import java.net.SocketOption;
 import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
 
 public class UnixDomainSocketFD extends PosixNetworkFD implements SocketFD {
     private UDSPath local;
@@ -30,6 +31,16 @@ public class UnixDomainSocketFD extends PosixNetworkFD implements SocketFD {
         }
     }
 
+    @Override
+    public int read(ByteBuffer[] dsts, int off, int len) throws IOException {
+        return utilReadv(dsts, off, len);
+    }
+
+    @Override
+    public int write(ByteBuffer[] srcs, int off, int len) throws IOException {
+        return utilWritev(srcs, off, len);
+    }
+
     @Override
     public void connect(IPPort l4addr) throws IOException {
         if (!(l4addr instanceof UDSPath)) {
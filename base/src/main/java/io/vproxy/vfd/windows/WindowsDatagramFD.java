@@ -42,8 +42,7 @@ public class WindowsDatagramFD extends WindowsInetNetworkFD implements DatagramF
             int ipv4 = IP.ipv4Bytes2Int(l4addr.getAddress().getAddress());
             posix.connectIPv4((int) socket.fd.MEMORY.address(), ipv4, l4addr.getPort());
         } else {
-            var ipv6 = ((IPv6) l4addr.getAddress()).formatToIPStringWithoutBrackets();
-            posix.connectIPv6((int) socket.fd.MEMORY.address(), ipv6, l4addr.getPort());
+            posix.connectIPv6((int) socket.fd.MEMORY.address(), (IPv6) l4addr.getAddress(), l4addr.getPort());
         }
     }
 
@@ -89,8 +88,7 @@ public class WindowsDatagramFD extends WindowsInetNetworkFD implements DatagramF
             int fd = createIPv6FD();
             setSocket(WinSocket.ofDatagram(fd));
             finishConfigAfterFDCreated();
-            String ipv6 = ((IPv6) l4addr.getAddress()).formatToIPStringWithoutBrackets();
-            posix.bindIPv6(fd, ipv6, port);
+            posix.bindIPv6(fd, (IPv6) l4addr.getAddress(), port);
         } else {
             throw new IOException("unknown l3addr " + l4addr.getAddress());
         }
@@ -70,8 +70,7 @@ public class WindowsServerSocketFD extends WindowsFD implements ServerSocketFD {
             int fd = posix.createIPv6TcpFD();
             setSocket(WinSocket.ofServer(fd));
             finishConfigAfterFDCreated();
-            String ipv6 = ((IPv6) l4addr.getAddress()).formatToIPStringWithoutBrackets();
-            posix.bindIPv6(fd, ipv6, port);
+            posix.bindIPv6(fd, (IPv6) l4addr.getAddress(), port);
         } else {
             throw new IOException("unknown l3addr " + l4addr.getAddress());
         }
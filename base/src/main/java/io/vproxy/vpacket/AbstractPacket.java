@@ -21,6 +21,14 @@ public abstract class AbstractPacket {
         return raw.pktBuf;
     }
 
+    /**
+     * @return bytes of the packet if it's parsed from or already built into a buffer, otherwise null.
+     * The packet is not built and the checksum is not updated.
+     */
+    public final ByteArray getRawPacketIfPresent() {
+        return raw == null ? null : raw.pktBuf;
+    }
+
     public void clearAllRawPackets() {
         clearRawPacket();
     }
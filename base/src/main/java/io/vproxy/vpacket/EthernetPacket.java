@@ -96,6 +96,36 @@ public class EthernetPacket extends AbstractPacket {
         return null;
     }
 
+    /**
+     * Build an ethernet packet for an ip packet which is parsed from {@code raw}.<br>
+     * The ethernet header is written into the headroom in front of the ip packet,
+     * so bytes of the ip packet are neither copied nor serialized again.
+     * After this method succeeds, {@code raw} points to the ethernet packet.
+     *
+     * @param header dst mac, src mac and type, 14 bytes
+     * @return null if the ip packet is not backed by {@code raw} or the headroom is not enough
+     */
+    public static EthernetPacket buildInPlace(PacketDataBuffer raw, MacAddress dst, MacAddress src, ByteArray header,
+                                              AbstractIpPacket packet) {
+        if (packet.raw != raw || raw.fullbuf == null || raw.pktOff < 14) {
+            return null;
+        }
+        var ipRaw = raw.sub(0);
+        header.copyInto(raw.fullbuf, raw.pktOff - 14, 0, 14);
+        raw.pktBuf = raw.fullbuf.sub(raw.pktOff - 14, raw.pktBuf.length() + 14);
+        raw.pktOff -= 14;
+        packet.raw = ipRaw;
+
+        var ether = new EthernetPacket();
+        ether.dst = dst;
+        ether.src = src;
+        ether.type = header.uint16(12);
+        ether.packet = packet;
+        packet.recordParent(ether);
+        ether.raw = raw;
+        return ether;
+    }
+
     @Override
     protected ByteArray buildPacket(int flags) {
         ByteArray addrs = dst.bytes.copy() // dst
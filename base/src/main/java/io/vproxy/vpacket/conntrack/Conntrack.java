@@ -1,6 +1,9 @@
 package io.vproxy.vpacket.conntrack;
 
 import io.vproxy.base.selector.SelectorEventLoop;
+import io.vproxy.base.selector.TimerEvent;
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.Consts;
 import io.vproxy.base.util.LogType;
 import io.vproxy.base.util.Logger;
 import io.vproxy.vfd.IP;
@@ -25,10 +28,31 @@ public class Conntrack {
 
     private final Map<IPPort, TcpListenEntry> tcpListenEntries = new HashMap<>();
     private final Map<IPPort, UdpListenEntry> udpListenEntries = new HashMap<>();
-    // dstIPPort => srcIPPort => TcpEntry
-    // make dstIPPort to be the first key for better performance
-    private final Map<IPPort, Map<IPPort, TcpEntry>> tcpEntries = new HashMap<>();
-    private final Map<IPPort, Map<IPPort, UdpEntry>> udpEntries = new HashMap<>();
+    // (remote, local) => entry
+    // tcp entries are removed by the tcp stack, or expire in the table when they are handled by nat,
+    // udp entries may expire in the table
+    // a nat records its timeout and state in the slot of its active entry (nat._1)
+    private final FlowTable<TcpEntry> tcpEntries = new FlowTable<>(Consts.IP_PROTOCOL_TCP, e -> {
+        var nat = e.getNat();
+        if (nat != null) {
+            nat.destroy();
+        }
+    });
+    private final FlowTable<UdpEntry> udpEntries = new FlowTable<>(Consts.IP_PROTOCOL_UDP, e -> {
+        e.destroy(false);
+        var nat = e.getNat();
+        if (nat != null) {
+            nat.destroy();
+        }
+    });
+    private TimerEvent sweepTimer = null;
+    private int sweepInterval = SWEEP_INTERVAL;
+
+    private static final int SWEEP_INTERVAL = 1000;
+    // expired entries are still removed when they are looked up,
+    // so the sweep can run less frequently when the flows are long-lived
+    private static final int SWEEP_MAX_INTERVAL = 16_000;
+    private static final int SWEEP_MIN_SLOTS = 4096;
 
     private static final IP ipv4BindAny = IP.from("0.0.0.0");
     private static final IP ipv6BindAny = IP.from("::");
@@ -54,35 +78,19 @@ public class Conntrack {
     }
 
     public int countTcpEntries() {
-        int total = 0;
-        for (var map : tcpEntries.values()) {
-            total += map.size();
-        }
-        return total;
+        return tcpEntries.size();
     }
 
     public Collection<TcpEntry> listTcpEntries() {
-        List<TcpEntry> ls = new LinkedList<>();
-        for (var map : tcpEntries.values()) {
-            ls.addAll(map.values());
-        }
-        return ls;
+        return tcpEntries.values();
     }
 
     public int countUdpEntries() {
-        int total = 0;
-        for (var map : udpEntries.values()) {
-            total += map.size();
-        }
-        return total;
+        return udpEntries.size();
     }
 
     public Collection<UdpEntry> listUdpEntries() {
-        List<UdpEntry> ls = new LinkedList<>();
-        for (var map : udpEntries.values()) {
-            ls.addAll(map.values());
-        }
-        return ls;
+        return udpEntries.values();
     }
 
     public TcpListenEntry lookupTcpListen(IPPort dst) {
@@ -104,27 +112,102 @@ public class Conntrack {
     }
 
     public TcpEntry lookupTcp(AbstractIpPacket ip, TcpPacket tcp) {
-        return lookupTcp(new IPPort(ip.getSrc(), tcp.getSrcPort()), new IPPort(ip.getDst(), tcp.getDstPort()));
+        // use the raw bytes when possible, which doesn't allocate
+        var raw = ip.getRawPacketIfPresent();
+        if (raw != null && tcpEntries.isRawLookupSupported(raw, 0)) {
+            return tcpEntries.lookup(raw, 0);
+        }
+        return tcpEntries.lookup(ip.getSrc(), tcp.getSrcPort(), ip.getDst(), tcp.getDstPort());
     }
 
     public TcpEntry lookupTcp(IPPort remote, IPPort local) {
-        var map = tcpEntries.get(local);
-        if (map == null) {
-            return null;
-        }
-        return map.get(remote);
+        return tcpEntries.lookup(remote.getAddress(), remote.getPort(), local.getAddress(), local.getPort());
+    }
+
+    /**
+     * @param ipPacket raw bytes of an ip packet, the src is the remote and the dst is the local
+     * @param off      offset of the ip header
+     */
+    public TcpEntry lookupTcp(ByteArray ipPacket, int off) {
+        return tcpEntries.lookup(ipPacket, off);
     }
 
     public UdpEntry lookupUdp(AbstractIpPacket ip, UdpPacket udp) {
-        return lookupUdp(new IPPort(ip.getSrc(), udp.getSrcPort()), new IPPort(ip.getDst(), udp.getDstPort()));
+        // use the raw bytes when possible, which doesn't allocate
+        var raw = ip.getRawPacketIfPresent();
+        if (raw != null && udpEntries.isRawLookupSupported(raw, 0)) {
+            return udpEntries.lookup(raw, 0);
+        }
+        return udpEntries.lookup(ip.getSrc(), udp.getSrcPort(), ip.getDst(), udp.getDstPort());
     }
 
     public UdpEntry lookupUdp(IPPort remote, IPPort local) {
-        var map = udpEntries.get(local);
-        if (map == null) {
-            return null;
+        return udpEntries.lookup(remote.getAddress(), remote.getPort(), local.getAddress(), local.getPort());
+    }
+
+    /**
+     * @param ipPacket raw bytes of an ip packet, the src is the remote and the dst is the local
+     * @param off      offset of the ip header
+     */
+    public UdpEntry lookupUdp(ByteArray ipPacket, int off) {
+        return udpEntries.lookup(ipPacket, off);
+    }
+
+    /**
+     * Refresh the expiration of the udp entry
+     */
+    public void touchUdp(IPPort remote, IPPort local) {
+        udpEntries.touch(remote.getAddress(), remote.getPort(), local.getAddress(), local.getPort());
+    }
+
+    /**
+     * Refresh the expiration of the tcp entry
+     */
+    public void touchTcp(IPPort remote, IPPort local) {
+        tcpEntries.touch(remote.getAddress(), remote.getPort(), local.getAddress(), local.getPort());
+    }
+
+    /**
+     * Set the expiration of the tcp entry, the expire handler destroys the nat of the entry
+     *
+     * @param timeout millis, &lt;= 0 means never expire
+     */
+    public void setTcpTimeout(IPPort remote, IPPort local, int timeout) {
+        tcpEntries.setTimeout(remote.getAddress(), remote.getPort(), local.getAddress(), local.getPort(), timeout);
+        if (timeout > 0) {
+            scheduleSweep();
+        }
+    }
+
+    public long getTcpTTL(IPPort remote, IPPort local) {
+        return tcpEntries.getTTL(remote.getAddress(), remote.getPort(), local.getAddress(), local.getPort());
+    }
+
+    /**
+     * @return the state stored in the slot of the tcp entry, or -1 if the entry does not exist
+     */
+    public int getTcpState(IPPort remote, IPPort local) {
+        return tcpEntries.getState(remote.getAddress(), remote.getPort(), local.getAddress(), local.getPort());
+    }
+
+    public void setTcpState(IPPort remote, IPPort local, int state) {
+        tcpEntries.setState(remote.getAddress(), remote.getPort(), local.getAddress(), local.getPort(), state);
+    }
+
+    /**
+     * Set the expiration of the udp entry
+     *
+     * @param timeout millis, &lt;= 0 means never expire
+     */
+    public void setUdpTimeout(IPPort remote, IPPort local, int timeout) {
+        udpEntries.setTimeout(remote.getAddress(), remote.getPort(), local.getAddress(), local.getPort(), timeout);
+        if (timeout > 0) {
+            scheduleSweep();
         }
-        return map.get(remote);
+    }
+
+    public long getUdpTTL(IPPort remote, IPPort local) {
+        return udpEntries.getTTL(remote.getAddress(), remote.getPort(), local.getAddress(), local.getPort());
     }
 
     protected TcpEntry createTcpEntry(TcpListenEntry listenEntry, IPPort remote, IPPort local, long seq) {
@@ -140,9 +223,8 @@ public class Conntrack {
     }
 
     private TcpEntry createTcp(IPPort remote, IPPort local, BiFunction<IPPort, IPPort, TcpEntry> constructor) {
-        var map = tcpEntries.computeIfAbsent(local, x -> new HashMap<>());
         TcpEntry entry = constructor.apply(remote, local);
-        var old = map.put(remote, entry);
+        var old = tcpEntries.put(remote.getAddress(), remote.getPort(), local.getAddress(), local.getPort(), entry, 0);
         if (old != null) {
             Logger.error(LogType.IMPROPER_USE, "found old connection " + old + " but a new connection with the same tuple is created");
             old.destroy();
@@ -159,9 +241,8 @@ public class Conntrack {
     }
 
     public UdpEntry recordUdp(IPPort remote, IPPort local) {
-        var map = udpEntries.computeIfAbsent(local, x -> new HashMap<>());
         UdpEntry entry = createUdpEntry(remote, local);
-        var old = map.put(remote, entry);
+        var old = putUdp(entry);
         if (old != null) {
             Logger.error(LogType.IMPROPER_USE, "found old udp entry " + old + " but a new udp entry with the same tuple is created");
             old.destroy(false);
@@ -170,17 +251,46 @@ public class Conntrack {
     }
 
     public UdpEntry recordUdp(IPPort remote, IPPort local, Supplier<UdpEntry> entrySupplier) {
-        var map = udpEntries.computeIfAbsent(local, x -> new HashMap<>());
-        var old = map.get(remote);
+        var old = lookupUdp(remote, local);
         if (old == null) {
             old = entrySupplier.get();
-            map.put(remote, old);
+            putUdp(old);
         } else {
             old.update();
         }
         return old;
     }
 
+    private UdpEntry putUdp(UdpEntry entry) {
+        var old = udpEntries.put(entry.remote.getAddress(), entry.remote.getPort(), entry.local.getAddress(), entry.local.getPort(),
+            entry, entry.getTimeout());
+        if (entry.getTimeout() > 0) {
+            scheduleSweep();
+        }
+        return old;
+    }
+
+    private void scheduleSweep() {
+        if (sweepTimer != null || loop == null) {
+            return;
+        }
+        sweepTimer = loop.delay(sweepInterval, () -> {
+            sweepTimer = null;
+            // the whole table is scanned in about 8 intervals
+            int expired = udpEntries.sweep(Math.max(SWEEP_MIN_SLOTS, udpEntries.capacity() / 8))
+                + tcpEntries.sweep(Math.max(SWEEP_MIN_SLOTS, tcpEntries.capacity() / 8));
+            // back off when nothing expires, and sweep at full speed again once something does
+            if (expired == 0) {
+                sweepInterval = Math.min(sweepInterval * 2, SWEEP_MAX_INTERVAL);
+            } else {
+                sweepInterval = SWEEP_INTERVAL;
+            }
+            if (udpEntries.size() > 0 || tcpEntries.size() > 0) {
+                scheduleSweep();
+            }
+        });
+    }
+
     public TcpListenEntry listenTcp(IPPort dst, TcpListenHandler handler) {
         TcpListenEntry entry = new TcpListenEntry(dst, handler);
         var old = tcpListenEntries.put(dst, entry);
@@ -208,37 +318,33 @@ public class Conntrack {
     public void removeUdpListen(IPPort dst) {
         udpListenEntries.remove(dst);
         // remove udp entries as well
-        var map = udpEntries.remove(dst);
-        if (map != null) {
-            for (var x : map.values()) {
-                x.destroy();
+        var removed = new ArrayList<UdpEntry>();
+        udpEntries.removeIf(e -> {
+            if (e.local.equals(dst)) {
+                removed.add(e);
+                return true;
             }
+            return false;
+        });
+        for (var x : removed) {
+            x.destroy(false);
         }
     }
 
     public void removeTcp(IPPort remote, IPPort local) {
-        var map = tcpEntries.get(local);
-        if (map == null) {
-            return;
-        }
-        map.remove(remote);
-        if (map.isEmpty()) {
-            tcpEntries.remove(local);
-        }
+        tcpEntries.remove(remote.getAddress(), remote.getPort(), local.getAddress(), local.getPort());
     }
 
     public void removeUdp(IPPort remote, IPPort local) {
-        var map = udpEntries.get(local);
-        if (map == null) {
-            return;
-        }
-        map.remove(remote);
-        if (map.isEmpty()) {
-            udpEntries.remove(local);
-        }
+        udpEntries.remove(remote.getAddress(), remote.getPort(), local.getAddress(), local.getPort());
     }
 
     public void destroy() {
+        if (sweepTimer != null) {
+            sweepTimer.cancel();
+            sweepTimer = null;
+        }
+        sweepInterval = SWEEP_INTERVAL;
         for (var entry : listTcpListenEntries()) {
             entry.destroy();
             removeTcpListen(entry.listening);
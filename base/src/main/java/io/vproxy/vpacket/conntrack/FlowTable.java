@@ -0,0 +1,542 @@
+package io.vproxy.vpacket.conntrack;
+
+import io.vproxy.base.Config;
+import io.vproxy.base.GlobalInspection;
+import io.vproxy.base.prometheus.GaugeF;
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.Consts;
+import io.vproxy.vfd.IP;
+import io.vproxy.vfd.IPv4;
+import io.vproxy.vfd.IPv6;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Open addressing table of flows of one ip protocol, keyed by (src ip, src port, dst ip, dst port).<br>
+ * Keys, timestamps and a user defined state byte are stored inline in 64 bytes slots of off-heap memory,
+ * only the values are kept in an on-heap array indexed by slot, so lookups don't allocate
+ * and don't chase pointers except for the returned value.<br>
+ * An entry with a positive timeout expires when it's not touched within the timeout.
+ * Expired entries are removed lazily: when they are found by a probe, and by {@link #sweep(int)}
+ * which scans a part of the table at a time. The expire handler is called after the entry is removed.<br>
+ * The table is not thread safe, it should be used on one event loop.
+ *
+ * @param <V> value type
+ */
+public class FlowTable<V> {
+    private static final int SLOT_SIZE = 64;
+    // slot layout
+    private static final long OFF_STATUS = 0; // byte
+    private static final long OFF_FAMILY = 1; // byte, 4 or 6
+    private static final long OFF_STATE = 2; // byte, user defined
+    private static final long OFF_PORTS = 4; // int, (src port << 16) | dst port
+    private static final long OFF_HASH = 8; // int
+    private static final long OFF_TIMEOUT = 12; // int, millis, <= 0 means never expire
+    private static final long OFF_LAST_SEEN = 16; // long, millis
+    private static final long OFF_CREATED = 24; // long, millis
+    private static final long OFF_SRC = 32; // 4 ints, only the first is used for ipv4
+    private static final long OFF_DST = 48; // 4 ints
+
+    private static final byte EMPTY = 0;
+    private static final byte USED = 1;
+    private static final byte DELETED = 2;
+
+    private static final int MIN_CAPACITY = 1024;
+
+    private static final Set<FlowTable<?>> tables = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    static {
+        GlobalInspection.getInstance().registerHelpMessage(
+            "conntrack_flow_table_capacity_current",
+            "Current count of slots allocated by conntrack flow tables"
+        );
+        GlobalInspection.getInstance().registerHelpMessage(
+            "conntrack_flow_table_occupancy_current",
+            "Current count of flows recorded in conntrack flow tables"
+        );
+        for (var proto : new int[]{Consts.IP_PROTOCOL_TCP, Consts.IP_PROTOCOL_UDP}) {
+            var labels = Map.of("protocol", proto == Consts.IP_PROTOCOL_TCP ? "tcp" : "udp");
+            GlobalInspection.getInstance().addMetric(
+                "conntrack_flow_table_capacity_current",
+                labels,
+                (m, l) -> new GaugeF(m, l, () -> sum(proto, true)));
+            GlobalInspection.getInstance().addMetric(
+                "conntrack_flow_table_occupancy_current",
+                labels,
+                (m, l) -> new GaugeF(m, l, () -> sum(proto, false)));
+        }
+    }
+
+    private static long sum(int proto, boolean capacity) {
+        long n = 0;
+        synchronized (tables) {
+            for (var t : tables) {
+                if (t.proto == proto) {
+                    n += capacity ? t.capacity : t.size;
+                }
+            }
+        }
+        return n;
+    }
+
+    public final int proto;
+    private final Consumer<V> expireHandler;
+
+    private MemorySegment seg;
+    private Object[] values;
+    private int capacity; // power of 2
+    private int size;
+    private int deleted;
+    private int sweepCursor;
+
+    private final ArrayDeque<V> expired = new ArrayDeque<>();
+    private boolean handlingExpired = false;
+
+    /**
+     * @param proto         ip protocol of flows in this table
+     * @param expireHandler called with the value when an entry expires, may be null
+     */
+    public FlowTable(int proto, Consumer<V> expireHandler) {
+        this.proto = proto;
+        this.expireHandler = expireHandler;
+        init(MIN_CAPACITY);
+        tables.add(this);
+    }
+
+    private void init(int capacity) {
+        this.seg = Arena.ofAuto().allocate((long) capacity * SLOT_SIZE, SLOT_SIZE);
+        this.values = new Object[capacity];
+        this.capacity = capacity;
+        this.size = 0;
+        this.deleted = 0;
+        this.sweepCursor = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private static long now() {
+        return Config.currentTimestamp;
+    }
+
+    // ----- key helpers -----
+
+    private static int v0(IP ip) {
+        if (ip instanceof IPv4 v4) {
+            return v4.getIPv4Value();
+        }
+        return ((IPv6) ip).getIPv6Value0();
+    }
+
+    private static int v1(IP ip) {
+        return ip instanceof IPv6 v6 ? v6.getIPv6Value1() : 0;
+    }
+
+    private static int v2(IP ip) {
+        return ip instanceof IPv6 v6 ? v6.getIPv6Value2() : 0;
+    }
+
+    private static int v3(IP ip) {
+        return ip instanceof IPv6 v6 ? v6.getIPv6Value3() : 0;
+    }
+
+    private static int family(IP ip) {
+        return ip instanceof IPv4 ? 4 : 6;
+    }
+
+    private static int hash(int family, int s0, int s1, int s2, int s3, int d0, int d1, int d2, int d3, int ports) {
+        int h = family;
+        h = h * 31 + s0;
+        h = h * 31 + s1;
+        h = h * 31 + s2;
+        h = h * 31 + s3;
+        h = h * 31 + d0;
+        h = h * 31 + d1;
+        h = h * 31 + d2;
+        h = h * 31 + d3;
+        h = h * 31 + ports;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private boolean keyEquals(long base, int family, int s0, int s1, int s2, int s3, int d0, int d1, int d2, int d3, int ports) {
+        return seg.get(ValueLayout.JAVA_INT, base + OFF_PORTS) == ports
+            && seg.get(ValueLayout.JAVA_BYTE, base + OFF_FAMILY) == family
+            && seg.get(ValueLayout.JAVA_INT, base + OFF_SRC) == s0
+            && seg.get(ValueLayout.JAVA_INT, base + OFF_DST) == d0
+            && seg.get(ValueLayout.JAVA_INT, base + OFF_SRC + 4) == s1
+            && seg.get(ValueLayout.JAVA_INT, base + OFF_SRC + 8) == s2
+            && seg.get(ValueLayout.JAVA_INT, base + OFF_SRC + 12) == s3
+            && seg.get(ValueLayout.JAVA_INT, base + OFF_DST + 4) == d1
+            && seg.get(ValueLayout.JAVA_INT, base + OFF_DST + 8) == d2
+            && seg.get(ValueLayout.JAVA_INT, base + OFF_DST + 12) == d3;
+    }
+
+    private boolean isExpired(long base, long now) {
+        int timeout = seg.get(ValueLayout.JAVA_INT, base + OFF_TIMEOUT);
+        return timeout > 0 && now - seg.get(ValueLayout.JAVA_LONG, base + OFF_LAST_SEEN) > timeout;
+    }
+
+    // return the slot index, or -1 if not found
+    private int find(int family, int s0, int s1, int s2, int s3, int d0, int d1, int d2, int d3, int ports) {
+        int h = hash(family, s0, s1, s2, s3, d0, d1, d2, d3, ports);
+        int mask = capacity - 1;
+        long now = now();
+        for (int i = h & mask, n = 0; n < capacity; i = (i + 1) & mask, ++n) {
+            long base = (long) i * SLOT_SIZE;
+            byte status = seg.get(ValueLayout.JAVA_BYTE, base + OFF_STATUS);
+            if (status == EMPTY) {
+                return -1;
+            }
+            if (status == DELETED) {
+                continue;
+            }
+            if (isExpired(base, now)) {
+                expire(i);
+                continue;
+            }
+            if (seg.get(ValueLayout.JAVA_INT, base + OFF_HASH) == h
+                && keyEquals(base, family, s0, s1, s2, s3, d0, d1, d2, d3, ports)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void expire(int slot) {
+        @SuppressWarnings("unchecked")
+        V v = (V) values[slot];
+        removeSlot(slot);
+        if (expireHandler != null) {
+            expired.add(v);
+        }
+    }
+
+    private void removeSlot(int slot) {
+        seg.set(ValueLayout.JAVA_BYTE, (long) slot * SLOT_SIZE + OFF_STATUS, DELETED);
+        values[slot] = null;
+        --size;
+        ++deleted;
+    }
+
+    // the handlers are called after the table operation is done, so they can modify the table
+    private void runExpireHandlers() {
+        if (handlingExpired || expired.isEmpty()) {
+            return;
+        }
+        handlingExpired = true;
+        try {
+            V v;
+            while ((v = expired.poll()) != null) {
+                expireHandler.accept(v);
+            }
+        } finally {
+            handlingExpired = false;
+        }
+    }
+
+    // ----- lookup -----
+
+    public V lookup(IP src, int srcPort, IP dst, int dstPort) {
+        int slot = find(family(src), v0(src), v1(src), v2(src), v3(src), v0(dst), v1(dst), v2(dst), v3(dst), (srcPort << 16) | dstPort);
+        @SuppressWarnings("unchecked")
+        V v = slot == -1 ? null : (V) values[slot];
+        runExpireHandlers();
+        return v;
+    }
+
+    /**
+     * Check whether {@link #lookup(ByteArray, int)} can handle the packet:
+     * an ipv4 packet which is not a fragment, or an ipv6 packet without extension headers,
+     * and the packet carries the protocol of this table.
+     *
+     * @param buf bytes of the ip packet
+     * @param off offset of the ip header in the buf
+     */
+    public boolean isRawLookupSupported(ByteArray buf, int off) {
+        int len = buf.length() - off;
+        if (len < 1) {
+            return false;
+        }
+        int version = (buf.uint8(off) >> 4) & 0xf;
+        if (version == 4) {
+            if (len < 20) {
+                return false;
+            }
+            int ihl = (buf.uint8(off) & 0xf) * 4;
+            // the ports are only present in the first fragment,
+            // and a first fragment (MF set) must not be matched with its following fragments either
+            return ihl >= 20 && len >= ihl + 4
+                && buf.uint8(off + 9) == proto
+                && (buf.uint16(off + 6) & 0x3fff) == 0;
+        } else if (version == 6) {
+            return len >= 44 && buf.uint8(off + 6) == proto;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Lookup with the raw bytes of an ip packet, without parsing it into objects.
+     * Fragments and ipv6 extension headers are not supported, see {@link #isRawLookupSupported(ByteArray, int)}.
+     *
+     * @param buf bytes of the ip packet
+     * @param off offset of the ip header in the buf
+     * @return the value, or null if not found or the packet is not supported
+     */
+    public V lookup(ByteArray buf, int off) {
+        if (!isRawLookupSupported(buf, off)) {
+            return null;
+        }
+        int slot;
+        if (((buf.uint8(off) >> 4) & 0xf) == 4) {
+            int ihl = (buf.uint8(off) & 0xf) * 4;
+            slot = find(4,
+                buf.int32(off + 12), 0, 0, 0,
+                buf.int32(off + 16), 0, 0, 0,
+                buf.int32(off + ihl));
+        } else {
+            slot = find(6,
+                buf.int32(off + 8), buf.int32(off + 12), buf.int32(off + 16), buf.int32(off + 20),
+                buf.int32(off + 24), buf.int32(off + 28), buf.int32(off + 32), buf.int32(off + 36),
+                buf.int32(off + 40));
+        }
+        @SuppressWarnings("unchecked")
+        V v = slot == -1 ? null : (V) values[slot];
+        runExpireHandlers();
+        return v;
+    }
+
+    /**
+     * Refresh the last seen timestamp of the entry
+     *
+     * @return false if the entry does not exist
+     */
+    public boolean touch(IP src, int srcPort, IP dst, int dstPort) {
+        int slot = find(family(src), v0(src), v1(src), v2(src), v3(src), v0(dst), v1(dst), v2(dst), v3(dst), (srcPort << 16) | dstPort);
+        if (slot != -1) {
+            seg.set(ValueLayout.JAVA_LONG, (long) slot * SLOT_SIZE + OFF_LAST_SEEN, now());
+        }
+        runExpireHandlers();
+        return slot != -1;
+    }
+
+    /**
+     * Set the timeout of the entry and refresh its last seen timestamp
+     *
+     * @param timeout millis, &lt;= 0 means never expire
+     * @return false if the entry does not exist
+     */
+    public boolean setTimeout(IP src, int srcPort, IP dst, int dstPort, int timeout) {
+        int slot = find(family(src), v0(src), v1(src), v2(src), v3(src), v0(dst), v1(dst), v2(dst), v3(dst), (srcPort << 16) | dstPort);
+        if (slot != -1) {
+            long base = (long) slot * SLOT_SIZE;
+            seg.set(ValueLayout.JAVA_INT, base + OFF_TIMEOUT, timeout);
+            seg.set(ValueLayout.JAVA_LONG, base + OFF_LAST_SEEN, now());
+        }
+        runExpireHandlers();
+        return slot != -1;
+    }
+
+    /**
+     * @return millis before the entry expires, or -1 if the entry does not exist or never expires
+     */
+    public long getTTL(IP src, int srcPort, IP dst, int dstPort) {
+        int slot = find(family(src), v0(src), v1(src), v2(src), v3(src), v0(dst), v1(dst), v2(dst), v3(dst), (srcPort << 16) | dstPort);
+        long ttl = -1;
+        if (slot != -1) {
+            long base = (long) slot * SLOT_SIZE;
+            int timeout = seg.get(ValueLayout.JAVA_INT, base + OFF_TIMEOUT);
+            if (timeout > 0) {
+                ttl = timeout - (now() - seg.get(ValueLayout.JAVA_LONG, base + OFF_LAST_SEEN));
+            }
+        }
+        runExpireHandlers();
+        return ttl;
+    }
+
+    /**
+     * @return the user defined state of the entry, or -1 if the entry does not exist
+     */
+    public int getState(IP src, int srcPort, IP dst, int dstPort) {
+        int slot = find(family(src), v0(src), v1(src), v2(src), v3(src), v0(dst), v1(dst), v2(dst), v3(dst), (srcPort << 16) | dstPort);
+        int state = slot == -1 ? -1 : seg.get(ValueLayout.JAVA_BYTE, (long) slot * SLOT_SIZE + OFF_STATE) & 0xff;
+        runExpireHandlers();
+        return state;
+    }
+
+    public boolean setState(IP src, int srcPort, IP dst, int dstPort, int state) {
+        int slot = find(family(src), v0(src), v1(src), v2(src), v3(src), v0(dst), v1(dst), v2(dst), v3(dst), (srcPort << 16) | dstPort);
+        if (slot != -1) {
+            seg.set(ValueLayout.JAVA_BYTE, (long) slot * SLOT_SIZE + OFF_STATE, (byte) state);
+        }
+        runExpireHandlers();
+        return slot != -1;
+    }
+
+    // ----- modification -----
+
+    /**
+     * @param timeout millis, the entry expires if it's not touched within the timeout, &lt;= 0 means never expire
+     * @return the old value with the same key, which is replaced
+     */
+    public V put(IP src, int srcPort, IP dst, int dstPort, V value, int timeout) {
+        Objects.requireNonNull(value);
+        int family = family(src);
+        int s0 = v0(src), s1 = v1(src), s2 = v2(src), s3 = v3(src);
+        int d0 = v0(dst), d1 = v1(dst), d2 = v2(dst), d3 = v3(dst);
+        int ports = (srcPort << 16) | dstPort;
+        long now = now();
+
+        int slot = find(family, s0, s1, s2, s3, d0, d1, d2, d3, ports);
+        V old = null;
+        if (slot != -1) {
+            //noinspection unchecked
+            old = (V) values[slot];
+        } else {
+            if ((size + deleted + 1) * 4L > capacity * 3L) {
+                rehash(size * 4L >= capacity * 2L ? capacity * 2 : capacity);
+            }
+            int h = hash(family, s0, s1, s2, s3, d0, d1, d2, d3, ports);
+            slot = insertSlot(h);
+            long base = (long) slot * SLOT_SIZE;
+            seg.set(ValueLayout.JAVA_BYTE, base + OFF_FAMILY, (byte) family);
+            seg.set(ValueLayout.JAVA_BYTE, base + OFF_STATE, (byte) 0);
+            seg.set(ValueLayout.JAVA_INT, base + OFF_PORTS, ports);
+            seg.set(ValueLayout.JAVA_INT, base + OFF_HASH, h);
+            seg.set(ValueLayout.JAVA_LONG, base + OFF_CREATED, now);
+            seg.set(ValueLayout.JAVA_INT, base + OFF_SRC, s0);
+            seg.set(ValueLayout.JAVA_INT, base + OFF_SRC + 4, s1);
+            seg.set(ValueLayout.JAVA_INT, base + OFF_SRC + 8, s2);
+            seg.set(ValueLayout.JAVA_INT, base + OFF_SRC + 12, s3);
+            seg.set(ValueLayout.JAVA_INT, base + OFF_DST, d0);
+            seg.set(ValueLayout.JAVA_INT, base + OFF_DST + 4, d1);
+            seg.set(ValueLayout.JAVA_INT, base + OFF_DST + 8, d2);
+            seg.set(ValueLayout.JAVA_INT, base + OFF_DST + 12, d3);
+            seg.set(ValueLayout.JAVA_BYTE, base + OFF_STATUS, USED);
+            ++size;
+        }
+        long base = (long) slot * SLOT_SIZE;
+        seg.set(ValueLayout.JAVA_INT, base + OFF_TIMEOUT, timeout);
+        seg.set(ValueLayout.JAVA_LONG, base + OFF_LAST_SEEN, now);
+        values[slot] = value;
+
+        // amortize the sweeping on insertion
+        sweep(2);
+        runExpireHandlers();
+        return old;
+    }
+
+    private int insertSlot(int h) {
+        int mask = capacity - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            byte status = seg.get(ValueLayout.JAVA_BYTE, (long) i * SLOT_SIZE + OFF_STATUS);
+            if (status == EMPTY) {
+                return i;
+            }
+            if (status == DELETED) {
+                --deleted;
+                return i;
+            }
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        var oldSeg = seg;
+        var oldValues = values;
+        int oldCapacity = capacity;
+        int oldSize = size;
+        init(Math.max(newCapacity, MIN_CAPACITY));
+        for (int i = 0; i < oldCapacity; ++i) {
+            long oldBase = (long) i * SLOT_SIZE;
+            if (oldSeg.get(ValueLayout.JAVA_BYTE, oldBase + OFF_STATUS) != USED) {
+                continue;
+            }
+            int slot = insertSlot(oldSeg.get(ValueLayout.JAVA_INT, oldBase + OFF_HASH));
+            MemorySegment.copy(oldSeg, oldBase, seg, (long) slot * SLOT_SIZE, SLOT_SIZE);
+            values[slot] = oldValues[i];
+        }
+        size = oldSize;
+    }
+
+    /**
+     * @return the removed value, or null if not found
+     */
+    public V remove(IP src, int srcPort, IP dst, int dstPort) {
+        int slot = find(family(src), v0(src), v1(src), v2(src), v3(src), v0(dst), v1(dst), v2(dst), v3(dst), (srcPort << 16) | dstPort);
+        V v = null;
+        if (slot != -1) {
+            //noinspection unchecked
+            v = (V) values[slot];
+            removeSlot(slot);
+        }
+        runExpireHandlers();
+        return v;
+    }
+
+    /**
+     * Remove entries whose values match the predicate, the expire handler is not called
+     */
+    public void removeIf(Predicate<V> predicate) {
+        for (int i = 0; i < capacity; ++i) {
+            @SuppressWarnings("unchecked")
+            V v = (V) values[i];
+            if (v != null && predicate.test(v)) {
+                removeSlot(i);
+            }
+        }
+    }
+
+    /**
+     * Scan at most n slots from the last position and remove expired entries
+     *
+     * @return count of expired entries
+     */
+    public int sweep(int n) {
+        n = Math.min(n, capacity);
+        long now = now();
+        int count = 0;
+        int mask = capacity - 1;
+        for (int k = 0; k < n; ++k) {
+            int i = sweepCursor;
+            sweepCursor = (sweepCursor + 1) & mask;
+            long base = (long) i * SLOT_SIZE;
+            if (seg.get(ValueLayout.JAVA_BYTE, base + OFF_STATUS) == USED && isExpired(base, now)) {
+                expire(i);
+                ++count;
+            }
+        }
+        runExpireHandlers();
+        return count;
+    }
+
+    public List<V> values() {
+        var ls = new ArrayList<V>(size);
+        for (var v : values) {
+            if (v != null) {
+                //noinspection unchecked
+                ls.add((V) v);
+            }
+        }
+        return ls;
+    }
+
+    @Override
+    public String toString() {
+        return "FlowTable{proto=" + proto + ", size=" + size + ", capacity=" + capacity + "}";
+    }
+}
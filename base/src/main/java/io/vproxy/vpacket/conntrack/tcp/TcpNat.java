@@ -1,20 +1,20 @@
 package io.vproxy.vpacket.conntrack.tcp;
 
 import io.vproxy.base.connection.Protocol;
-import io.vproxy.base.util.Timer;
 import io.vproxy.base.util.anno.Nullable;
 import io.vproxy.base.util.coll.Tuple;
 import io.vproxy.base.util.net.SNatIPPortPool;
 import io.vproxy.vpacket.conntrack.Conntrack;
 
 public class TcpNat extends Tuple<TcpEntry, TcpEntry> {
+    private static final TcpState[] STATES = TcpState.values();
+
     @Nullable public final SNatIPPortPool pool;
     private final boolean releaseIp;
     public final Conntrack conntrack;
-    private final Timer timer;
     private final TcpTimeout timeout;
+    // the state and the expiration are stored in the flow table slot of _1
 
-    private TcpState state = TcpState.CLOSED;
     private boolean isDestroyed = false;
 
     public ProxyProtocolHelper proxyProtocolHelper = null;
@@ -33,22 +33,19 @@ public class TcpNat extends Tuple<TcpEntry, TcpEntry> {
         this.conntrack = conntrack;
         this.timeout = timeout;
 
-        this.timer = new Timer(conntrack.loop, timeout.getClose() * 1000) {
-            @Override
-            public void cancel() {
-                super.cancel();
-                destroy();
-            }
-        };
-        this.timer.start();
+        conntrack.setTcpState(_1.remote, _1.local, TcpState.CLOSED.ordinal());
+        conntrack.setTcpTimeout(_1.remote, _1.local, timeout.getClose() * 1000);
     }
 
     public TcpState getState() {
-        return state;
+        if (isDestroyed) {
+            return TcpState.CLOSED;
+        }
+        int state = conntrack.getTcpState(_1.remote, _1.local);
+        return state == -1 ? TcpState.CLOSED : STATES[state];
     }
 
     public void setState(TcpState state) {
-        this.state = state;
         if (isDestroyed) {
             return;
         }
@@ -78,18 +75,22 @@ public class TcpNat extends Tuple<TcpEntry, TcpEntry> {
                 seconds = (timeout.getTimeWait());
                 break;
         }
-        timer.setTimeout(seconds * 1000);
+        conntrack.setTcpState(_1.remote, _1.local, state.ordinal());
+        conntrack.setTcpTimeout(_1.remote, _1.local, seconds * 1000);
     }
 
     public void resetTimer() {
         if (isDestroyed) {
             return;
         }
-        timer.resetTimer();
+        conntrack.touchTcp(_1.remote, _1.local);
     }
 
     public long getTTL() {
-        return timer.getTTL();
+        if (isDestroyed) {
+            return -1;
+        }
+        return conntrack.getTcpTTL(_1.remote, _1.local);
     }
 
     public void destroy() {
@@ -98,7 +99,6 @@ public class TcpNat extends Tuple<TcpEntry, TcpEntry> {
         }
         isDestroyed = true;
 
-        timer.cancel();
         conntrack.removeTcp(_1.remote, _1.local);
         conntrack.removeTcp(_2.remote, _2.local);
 
@@ -112,8 +112,8 @@ public class TcpNat extends Tuple<TcpEntry, TcpEntry> {
         return "TcpNat{" +
             "active=" + _1.description() +
             ", passive=" + _2.description() +
-            ", state=" + state +
-            ", timer=" + timer.getTTL() +
+            ", state=" + getState() +
+            ", timer=" + getTTL() +
             ", pp=" + proxyProtocolHelper +
             '}';
     }
@@ -2,7 +2,6 @@ package io.vproxy.vpacket.conntrack.udp;
 
 import io.vproxy.base.util.LogType;
 import io.vproxy.base.util.Logger;
-import io.vproxy.base.util.Timer;
 import io.vproxy.vfd.IPPort;
 import io.vproxy.vpacket.conntrack.Conntrack;
 
@@ -15,7 +14,8 @@ public class UdpEntry {
 
     public Object userData;
 
-    protected final Timer timer;
+    // expiration is handled by the flow table of the conntrack
+    private final int timeout;
     private final Conntrack conntrack;
 
     private UdpNat nat;
@@ -31,20 +31,11 @@ public class UdpEntry {
         this.remote = remote;
         this.local = local;
         this.conntrack = conntrack;
+        this.timeout = conntrack == null ? -1 : timeout;
+    }
 
-        if (timeout == -1) {
-            this.timer = null;
-        } else {
-            this.timer = new Timer(conntrack.loop, timeout) {
-                @Override
-                public void cancel() {
-                    assert Logger.lowLevelDebug("udp entry " + remote + "/" + local + " canceled");
-                    super.cancel();
-                    destroy();
-                }
-            };
-            this.timer.start();
-        }
+    public int getTimeout() {
+        return timeout;
     }
 
     public boolean isDestroyed() {
@@ -67,8 +58,8 @@ public class UdpEntry {
             Logger.error(LogType.IMPROPER_USE, "calling update on UDPEntry while it's destroyed");
             return;
         }
-        if (timer != null) {
-            timer.resetTimer();
+        if (timeout > 0) {
+            conntrack.touchUdp(remote, local);
         }
     }
 
@@ -81,10 +72,8 @@ public class UdpEntry {
             return;
         }
         destroyed = true;
+        assert Logger.lowLevelDebug("udp entry " + remote + "/" + local + " destroyed");
 
-        if (timer != null) {
-            timer.cancel();
-        }
         if (conntrack != null && removeFromCT) {
             conntrack.removeUdp(remote, local);
         }
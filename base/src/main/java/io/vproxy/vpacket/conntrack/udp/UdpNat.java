@@ -1,7 +1,6 @@
 package io.vproxy.vpacket.conntrack.udp;
 
 import io.vproxy.base.connection.Protocol;
-import io.vproxy.base.util.Timer;
 import io.vproxy.base.util.anno.Nullable;
 import io.vproxy.base.util.coll.Tuple;
 import io.vproxy.base.util.net.SNatIPPortPool;
@@ -11,7 +10,7 @@ public class UdpNat extends Tuple<UdpEntry, UdpEntry> {
     @Nullable public final SNatIPPortPool pool;
     private final boolean releaseIp;
     public final Conntrack conntrack;
-    private final Timer timer;
+    // the expiration is stored in the flow table slot of _1
 
     private boolean isDestroyed = false;
 
@@ -28,25 +27,21 @@ public class UdpNat extends Tuple<UdpEntry, UdpEntry> {
         this.pool = pool;
         this.conntrack = conntrack;
 
-        this.timer = new Timer(conntrack.loop, timeout) {
-            @Override
-            public void cancel() {
-                super.cancel();
-                destroy();
-            }
-        };
-        this.timer.start();
+        conntrack.setUdpTimeout(_1.remote, _1.local, timeout);
     }
 
     public void resetTimer() {
         if (isDestroyed) {
             return;
         }
-        timer.resetTimer();
+        conntrack.touchUdp(_1.remote, _1.local);
     }
 
     public long getTTL() {
-        return timer.getTTL();
+        if (isDestroyed) {
+            return -1;
+        }
+        return conntrack.getUdpTTL(_1.remote, _1.local);
     }
 
     public void destroy() {
@@ -55,7 +50,6 @@ public class UdpNat extends Tuple<UdpEntry, UdpEntry> {
         }
         isDestroyed = true;
 
-        timer.cancel();
         conntrack.removeUdp(_1.remote, _1.local);
         conntrack.removeUdp(_2.remote, _2.local);
 
@@ -69,7 +63,7 @@ public class UdpNat extends Tuple<UdpEntry, UdpEntry> {
         return "UdpNat{" +
             "active=" + _1 +
             ", passive=" + _2 +
-            ", timer=" + timer.getTTL() +
+            ", timer=" + getTTL() +
             '}';
     }
 }
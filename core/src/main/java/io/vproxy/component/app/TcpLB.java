@@ -1,6 +1,7 @@
 package io.vproxy.component.app;
 
 import io.vproxy.base.Config;
+import io.vproxy.base.GlobalInspection;
 import io.vproxy.base.component.elgroup.EventLoopGroup;
 import io.vproxy.base.component.elgroup.EventLoopGroupAttach;
 import io.vproxy.base.component.elgroup.EventLoopWrapper;
@@ -8,6 +9,7 @@ import io.vproxy.base.connection.*;
 import io.vproxy.base.processor.Hint;
 import io.vproxy.base.processor.Processor;
 import io.vproxy.base.processor.ProcessorProvider;
+import io.vproxy.base.prometheus.Histogram;
 import io.vproxy.base.util.LogType;
 import io.vproxy.base.util.Logger;
 import io.vproxy.base.util.exception.AlreadyExistException;
@@ -26,6 +28,7 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -91,6 +94,9 @@ public class TcpLB {
 
     private final LBAttach attach;
 
+    private Histogram sslHandshakeTime; // null if the lb does not have a tls context
+    private final Histogram requestTime; // null if the protocol is tcp
+
     public final ConcurrentMap<ServerSock, Proxy> servers = new ConcurrentHashMap<>();
     private final LBProxyEventHandler proxyEventHandler = new LBProxyEventHandler();
 
@@ -130,6 +136,10 @@ public class TcpLB {
         this.certKeys = certKeys;
         this.securityGroup = securityGroup;
 
+        updateSslHandshakeTime();
+        this.requestTime = processor == null ? null : GlobalInspection.getInstance().addMetric(
+            "tcp_lb_request_time_micros", Map.of("tcp_lb", alias, "protocol", protocol), Histogram::new);
+
         // we do not bind or create proxy object here
         // if it's created, it should start to run
         // so create it in start() method
@@ -196,7 +206,9 @@ public class TcpLB {
             .setOutBufferSize(outBufferSize)
             .setServer(server)
             .setAcceptLoop(eventLoop)
-            .setSslContext(sslContext);
+            .setSslContext(sslContext)
+            .setSslHandshakeTime(sslHandshakeTime)
+            .setRequestTime(requestTime);
     }
 
     public void start() throws IOException {
@@ -295,6 +307,13 @@ public class TcpLB {
         } catch (NotFoundException e) {
             // ignore
         }
+
+        if (sslHandshakeTime != null) {
+            GlobalInspection.getInstance().removeMetric(sslHandshakeTime);
+        }
+        if (requestTime != null) {
+            GlobalInspection.getInstance().removeMetric(requestTime);
+        }
     }
 
     public int sessionCount() {
@@ -335,8 +354,23 @@ public class TcpLB {
     public void setCertKeys(VSSLContext sslContext, CertKey[] certKeys) {
         this.sslContext = sslContext;
         this.certKeys = certKeys;
+        updateSslHandshakeTime();
 
-        servers.forEach((k, v) -> v.config.setSslContext(sslContext));
+        var sslHandshakeTime = this.sslHandshakeTime;
+        servers.forEach((k, v) -> v.config.setSslContext(sslContext).setSslHandshakeTime(sslHandshakeTime));
+    }
+
+    // only record handshakes when the lb is serving tls
+    private void updateSslHandshakeTime() {
+        if (sslContext == null) {
+            if (sslHandshakeTime != null) {
+                GlobalInspection.getInstance().removeMetric(sslHandshakeTime);
+                sslHandshakeTime = null;
+            }
+        } else if (sslHandshakeTime == null) {
+            sslHandshakeTime = GlobalInspection.getInstance().addMetric(
+                "tcp_lb_ssl_handshake_time_micros", Map.of("tcp_lb", alias), Histogram::new);
+        }
     }
 
     public int getInBufferSize() {
@@ -638,6 +638,7 @@ class ProcessorConnectionHandler implements ConnectionHandler {
             }
             // now nothing to be handled for this connection
             if (handlingConnection.frontendByteFlow.frameEnds) {
+                recordRequestTime();
                 handlingConnection = null; // is done, set to null and go on
             } else {
                 return; // no data for now, exit the method
@@ -697,6 +698,18 @@ class ProcessorConnectionHandler implements ConnectionHandler {
     }
 
     private ByteArrayChannel chnl = null;
+    // when the first bytes of the pending request arrived, -1 if no request pending
+    private long requestBeginNanos = -1;
+
+    private void recordRequestTime() {
+        if (requestBeginNanos < 0) {
+            return;
+        }
+        if (config.requestTime != null) {
+            config.requestTime.record((System.nanoTime() - requestBeginNanos) / 1_000);
+        }
+        requestBeginNanos = -1;
+    }
 
     void readFrontend() {
         if (paused) {
@@ -712,6 +725,9 @@ class ProcessorConnectionHandler implements ConnectionHandler {
         }
 
         assert Logger.lowLevelDebug("calling readFrontend()");
+        if (requestBeginNanos < 0) {
+            requestBeginNanos = System.nanoTime();
+        }
 
         // check whether to proxy the data or to receive the data
         assert Logger.lowLevelDebug("the current mode is " + processorTODO.mode);
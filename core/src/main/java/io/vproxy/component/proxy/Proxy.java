@@ -1,5 +1,6 @@
 package io.vproxy.component.proxy;
 
+import io.vproxy.base.Config;
 import io.vproxy.base.connection.*;
 import io.vproxy.base.processor.ConnectionDelegate;
 import io.vproxy.base.processor.Processor;
@@ -14,8 +15,10 @@ import io.vproxy.base.util.callback.Callback;
 import io.vproxy.base.util.coll.ConcurrentHashSet;
 import io.vproxy.base.util.coll.Tuple;
 import io.vproxy.base.util.ringbuffer.ByteBufferRingBuffer;
+import io.vproxy.base.util.ringbuffer.PooledRingBuffer;
 import io.vproxy.base.util.ringbuffer.ProxyOutputRingBuffer;
 import io.vproxy.base.util.ringbuffer.SSLUtils;
+import io.vproxy.base.util.ringbuffer.SpliceRingBuffer;
 import io.vproxy.base.util.ringbuffer.ssl.SSL;
 import io.vproxy.base.util.ringbuffer.ssl.SSLEngineBuilder;
 import io.vproxy.vfd.SocketFD;
@@ -111,6 +114,31 @@ public class Proxy {
                 return;
             }
 
+            if (connection.getInBuffer() instanceof SpliceRingBuffer
+                && !SpliceRingBuffer.canSplice(connectableConnection.channel)) {
+                // the backend connection cannot be spliced, so fall back to normal buffers
+                // nothing is read yet, so the buffers can be replaced safely
+                assert Logger.lowLevelDebug("backend connection " + connectableConnection + " cannot be spliced, replace the buffers");
+                RingBuffer in, out;
+                if (Config.pooledProxyBuffers) {
+                    in = PooledRingBuffer.allocate(config.inBufferSize);
+                    out = PooledRingBuffer.allocate(config.outBufferSize);
+                } else {
+                    in = RingBuffer.allocateDirect(config.inBufferSize);
+                    out = RingBuffer.allocateDirect(config.outBufferSize);
+                }
+                try {
+                    connection.replaceBuffer(in, out, false, true);
+                    connectableConnection.replaceBuffer(out, in, false, false);
+                } catch (IOException e) {
+                    Logger.shouldNotHappen("replacing buffers for " + connection + " failed", e);
+                    utilCloseConnectionAndReleaseBuffers(connection);
+                    utilCloseConnection(connectableConnection);
+                    connector.close();
+                    return;
+                }
+            }
+
             Session session = new Session(connection, connectableConnection);
             ConnectableConnectionHandler handler = new SessionConnectableConnectionHandler(session);
 
@@ -302,6 +330,18 @@ public class Proxy {
             }
         }
 
+        private Tuple<RingBuffer, RingBuffer> allocateSpliceBuffers() throws IOException {
+            SpliceRingBuffer inBuffer = SpliceRingBuffer.allocate();
+            SpliceRingBuffer outBuffer;
+            try {
+                outBuffer = SpliceRingBuffer.allocate();
+            } catch (IOException e) {
+                inBuffer.clean();
+                throw e;
+            }
+            return new Tuple<>(inBuffer, outBuffer);
+        }
+
         @Override
         public Tuple<RingBuffer, RingBuffer> getIOBuffers(SocketFD channel) {
             int inBufferSize, outBufferSize;
@@ -314,6 +354,17 @@ public class Proxy {
                 inBufferSize = Math.max(config.inBufferSize, 24576);
                 outBufferSize = Math.max(config.outBufferSize, 24576);
             }
+            if (config.sslContext == null && config.connGen.type() == ConnectorGen.Type.direct
+                && Config.spliceProxy && SpliceRingBuffer.isSupported() && SpliceRingBuffer.canSplice(channel)) {
+                try {
+                    return allocateSpliceBuffers();
+                } catch (IOException e) {
+                    Logger.warn(LogType.SYS_ERROR, "allocating splice buffers failed, fall back to normal buffers: " + e);
+                }
+            }
+            if (config.sslContext == null && config.connGen.type() == ConnectorGen.Type.direct && Config.pooledProxyBuffers) {
+                return new Tuple<>(PooledRingBuffer.allocate(inBufferSize), PooledRingBuffer.allocate(outBufferSize));
+            }
             ByteBufferRingBuffer inBuffer = RingBuffer.allocateDirect(inBufferSize);
             RingBuffer outBuffer =
                 (config.connGen.type() == ConnectorGen.Type.processor && config.sslContext == null)
@@ -353,6 +404,9 @@ public class Proxy {
                 }
             }
             SSLUtils.SSLBufferPair pair = SSLUtils.genbufForServer(ssl, inBuffer, (ByteBufferRingBuffer) outBuffer, channel);
+            if (config.sslHandshakeTime != null) {
+                pair.right.setHandshakeTime(config.sslHandshakeTime);
+            }
             return new Tuple<>(pair.left, pair.right);
         }
 
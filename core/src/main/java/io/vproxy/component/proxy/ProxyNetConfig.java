@@ -5,6 +5,7 @@ import io.vproxy.base.component.elgroup.EventLoopGroup;
 import io.vproxy.base.component.svrgroup.ServerGroup;
 import io.vproxy.base.connection.NetEventLoop;
 import io.vproxy.base.connection.ServerSock;
+import io.vproxy.base.prometheus.Histogram;
 import io.vproxy.base.util.ringbuffer.ssl.VSSLContext;
 import io.vproxy.component.svrgroup.Upstream;
 
@@ -25,6 +26,9 @@ public class ProxyNetConfig {
     VSSLContext sslContext = null;
     BiConsumer<SSLEngine, SSLParameters> sslEngineManipulator = null;
 
+    Histogram sslHandshakeTime = null; // micros
+    Histogram requestTime = null; // micros, only recorded for processors
+
     public ProxyNetConfig setAcceptLoop(NetEventLoop acceptLoop) {
         this.acceptLoop = acceptLoop;
         return this;
@@ -84,6 +88,16 @@ public class ProxyNetConfig {
         return this;
     }
 
+    public ProxyNetConfig setSslHandshakeTime(Histogram sslHandshakeTime) {
+        this.sslHandshakeTime = sslHandshakeTime;
+        return this;
+    }
+
+    public ProxyNetConfig setRequestTime(Histogram requestTime) {
+        this.requestTime = requestTime;
+        return this;
+    }
+
     public NetEventLoop getAcceptLoop() {
         return acceptLoop;
     }
@@ -119,4 +133,12 @@ public class ProxyNetConfig {
     public BiConsumer<SSLEngine, SSLParameters> getSslEngineManipulator() {
         return sslEngineManipulator;
     }
+
+    public Histogram getSslHandshakeTime() {
+        return sslHandshakeTime;
+    }
+
+    public Histogram getRequestTime() {
+        return requestTime;
+    }
 }
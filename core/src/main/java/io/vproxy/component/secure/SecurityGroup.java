@@ -1,16 +1,28 @@
 package io.vproxy.component.secure;
 
+import io.vproxy.base.GlobalInspection;
 import io.vproxy.base.connection.Protocol;
+import io.vproxy.base.prometheus.Counter;
 import io.vproxy.base.util.Networks;
 import io.vproxy.base.util.exception.AlreadyExistException;
 import io.vproxy.base.util.exception.NotFoundException;
 import io.vproxy.vfd.IP;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
 
 public class SecurityGroup {
+    private static final String HIT_COUNT_METRIC = "security_group_rule_hit_count_total";
+
+    static {
+        GlobalInspection.getInstance().registerHelpMessage(HIT_COUNT_METRIC,
+            "Total count of decisions made by the security group rule");
+    }
+
     public static final String defaultName = "(allow-all)";
     public static final String defaultDenyName = "(deny-all)";
 
@@ -48,6 +60,7 @@ public class SecurityGroup {
         if (groups != null) {
             var rule = groups.lookupByPort(port);
             if (rule != null) {
+                rule.hitCount.incr(1);
                 return rule.allow;
             }
         }
@@ -61,55 +74,63 @@ public class SecurityGroup {
         return rules;
     }
 
-    public void addRule(SecurityGroupRule rule) throws AlreadyExistException {
+    public synchronized void addRule(SecurityGroupRule rule) throws AlreadyExistException {
         if (getRules().stream().anyMatch(r -> r.alias.equals(rule.alias)))
             throw new AlreadyExistException("security-group-rule in security-group " + this.alias, rule.alias);
 
-        List<SecurityGroupRule> rules;
+        Networks<SecurityGroupRules> networks;
         if (rule.protocol == Protocol.TCP) {
-            var rr = tcpRules.lookup(rule.network);
-            if (rr == null) {
-                rr = new SecurityGroupRules();
-                tcpRules.add(rule.network, rr);
-            }
-            rules = rr.rules;
+            networks = tcpRules;
         } else {
             assert rule.protocol == Protocol.UDP;
-            var rr = udpRules.lookup(rule.network);
-            if (rr == null) {
-                rr = new SecurityGroupRules();
-                udpRules.add(rule.network, rr);
+            networks = udpRules;
+        }
+        var rr = networks.lookup(rule.network);
+        if (rr != null) {
+            // check ip mask
+            for (SecurityGroupRule r : rr.rules) {
+                if (r.ipMaskMatch(rule) &&
+                    r.protocol == rule.protocol &&
+                    r.minPort == rule.minPort &&
+                    r.maxPort == rule.maxPort)
+                    throw new AlreadyExistException("security-group-rule " + r + " already exists in security-group " + this.alias);
             }
-            rules = rr.rules;
         }
-        // check ip mask
-        for (SecurityGroupRule r : rules) {
-            if (r.ipMaskMatch(rule) &&
-                r.protocol == rule.protocol &&
-                r.minPort == rule.minPort &&
-                r.maxPort == rule.maxPort)
-                throw new AlreadyExistException("security-group-rule " + r + " already exists in security-group " + this.alias);
+        rule.hitCount = GlobalInspection.getInstance().addMetric(HIT_COUNT_METRIC, Map.of(
+            "security_group", this.alias,
+            "rule", rule.alias,
+            "protocol", rule.protocol.name()
+        ), Counter::new);
+        if (rr == null) {
+            rr = new SecurityGroupRules();
+            rr.add(rule);
+            networks.add(rule.network, rr);
+        } else {
+            rr.add(rule);
         }
-        rules.add(rule);
     }
 
-    public void removeRule(String name) throws NotFoundException {
-        boolean[] removed = {false};
-        tcpRules.forEach(rr -> {
-            if (rr.rules.removeIf(r -> r.alias.equals(name))) {
-                removed[0] = true;
-            }
-        });
-        udpRules.forEach(rr -> {
-            if (rr.rules.removeIf(r -> r.alias.equals(name))) {
-                removed[0] = true;
-            }
-        });
+    public synchronized void removeRule(String name) throws NotFoundException {
+        List<SecurityGroupRule> removed = new ArrayList<>();
+        tcpRules.forEach(rr -> rr.removeIf(r -> r.alias.equals(name), removed));
+        udpRules.forEach(rr -> rr.removeIf(r -> r.alias.equals(name), removed));
         tcpRules.removeBy(rr -> rr.rules.isEmpty());
         udpRules.removeBy(rr -> rr.rules.isEmpty());
 
-        if (!removed[0])
+        if (removed.isEmpty())
             throw new NotFoundException("security-group-rule in security-group " + this.alias, name);
+        for (var r : removed) {
+            GlobalInspection.getInstance().removeMetric(r.hitCount);
+        }
+    }
+
+    /**
+     * Release resources held by the rules, should be called when the security group is removed
+     */
+    public synchronized void destroy() {
+        for (var r : getRules()) {
+            GlobalInspection.getInstance().removeMetric(r.hitCount);
+        }
     }
 
     @Override
@@ -119,16 +140,120 @@ public class SecurityGroup {
 
     private static class SecurityGroupRules implements Networks.Rule {
         public final List<SecurityGroupRule> rules = new CopyOnWriteArrayList<>();
+        // null when rules are modified, built on the next lookup
+        private volatile PortIntervals intervals = null;
+
+        synchronized void add(SecurityGroupRule rule) {
+            rules.add(rule);
+            intervals = null;
+        }
+
+        synchronized void removeIf(Predicate<SecurityGroupRule> f, List<SecurityGroupRule> removed) {
+            for (var r : rules) {
+                if (f.test(r)) {
+                    removed.add(r);
+                }
+            }
+            if (rules.removeIf(f)) {
+                intervals = null;
+            }
+        }
 
         public SecurityGroupRule lookupByPort(int port) {
-            //noinspection ForLoopReplaceableByForEach
-            for (int i = 0, size = rules.size(); i < size; ++i) {
-                var rule = rules.get(i);
-                if (rule.matchByPort(port)) {
-                    return rule;
+            var intervals = this.intervals;
+            if (intervals == null) {
+                intervals = buildIntervals();
+            }
+            return intervals.lookup(port);
+        }
+
+        private synchronized PortIntervals buildIntervals() {
+            var intervals = this.intervals;
+            if (intervals == null) {
+                intervals = PortIntervals.build(rules);
+                this.intervals = intervals;
+            }
+            return intervals;
+        }
+    }
+
+    /**
+     * Ports [0, 65535] split into sorted intervals, each interval holds the first rule matching its ports.
+     * Looking up a port is a binary search on the starting ports.
+     */
+    private static final class PortIntervals {
+        private final int[] starts;
+        private final SecurityGroupRule[] rules;
+
+        private PortIntervals(int[] starts, SecurityGroupRule[] rules) {
+            this.starts = starts;
+            this.rules = rules;
+        }
+
+        static PortIntervals build(List<SecurityGroupRule> ls) {
+            // assign each port to the first rule covering it
+            // next[p] points to the next port which is not assigned yet, so each port is visited only once
+            SecurityGroupRule[] byPort = new SecurityGroupRule[65536];
+            int[] next = new int[65537];
+            for (int i = 0; i < next.length; ++i) {
+                next[i] = i;
+            }
+            for (var rule : ls) {
+                int min = Math.max(rule.minPort, 0);
+                int max = Math.min(rule.maxPort, 65535);
+                if (min > max) {
+                    continue;
+                }
+                int p = findNext(next, min);
+                while (p <= max) {
+                    byPort[p] = rule;
+                    next[p] = p + 1;
+                    p = findNext(next, p + 1);
+                }
+            }
+            int count = 1;
+            for (int p = 1; p < 65536; ++p) {
+                if (byPort[p] != byPort[p - 1]) {
+                    ++count;
                 }
             }
-            return null;
+            int[] starts = new int[count];
+            SecurityGroupRule[] rules = new SecurityGroupRule[count];
+            rules[0] = byPort[0];
+            int idx = 0;
+            for (int p = 1; p < 65536; ++p) {
+                if (byPort[p] != byPort[p - 1]) {
+                    ++idx;
+                    starts[idx] = p;
+                    rules[idx] = byPort[p];
+                }
+            }
+            return new PortIntervals(starts, rules);
+        }
+
+        private static int findNext(int[] next, int p) {
+            int root = p;
+            while (next[root] != root) {
+                root = next[root];
+            }
+            // path compression
+            while (next[p] != root) {
+                int n = next[p];
+                next[p] = root;
+                p = n;
+            }
+            return root;
+        }
+
+        SecurityGroupRule lookup(int port) {
+            if (port < 0 || port > 65535) {
+                return null;
+            }
+            int idx = Arrays.binarySearch(starts, port);
+            if (idx < 0) {
+                idx = -idx - 2;
+            }
+            return rules[idx];
         }
     }
 }
@@ -1,6 +1,7 @@
 package io.vproxy.component.secure;
 
 import io.vproxy.base.connection.Protocol;
+import io.vproxy.base.prometheus.Counter;
 import io.vproxy.base.util.Network;
 import io.vproxy.vfd.IP;
 
@@ -11,6 +12,8 @@ public class SecurityGroupRule {
     public final int minPort;
     public final int maxPort;
     public final boolean allow;
+    // set when added into a security group
+    Counter hitCount;
 
     public SecurityGroupRule(String alias,
                              Network network,
@@ -32,6 +35,11 @@ public class SecurityGroupRule {
         return minPort <= port && port <= maxPort;
     }
 
+    public long getHitCount() {
+        var c = hitCount;
+        return c == null ? 0 : c.longValue();
+    }
+
     public boolean ipMaskMatch(SecurityGroupRule rule) {
         return this.network.equals(rule.network);
     }
@@ -90,7 +90,7 @@ public class CertKey {
         // init ctx
         ctx.init(km, null, null);
 
-        vsslContext.sslContextHolder.add(ctx, certs);
+        vsslContext.sslContextHolder.add(ctx, certs, alias);
     }
 
     public SSLContext buildSSLContext() throws Exception {
@@ -1,18 +1,19 @@
 package io.vproxy.component.svrgroup;
 
 import io.vproxy.base.component.svrgroup.ServerGroup;
+import io.vproxy.base.component.svrgroup.WRRSequence;
 import io.vproxy.base.connection.Connector;
 import io.vproxy.base.processor.Hint;
+import io.vproxy.base.processor.HintIndex;
 import io.vproxy.base.util.Annotations;
 import io.vproxy.base.util.exception.AlreadyExistException;
 import io.vproxy.base.util.exception.NotFoundException;
 import io.vproxy.vfd.IPPort;
 
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 public class Upstream {
@@ -46,6 +47,7 @@ public class Upstream {
                 annotations = new Annotations();
             }
             this.annotations = annotations;
+            modifications.incrementAndGet();
         }
     }
 
@@ -59,9 +61,25 @@ public class Upstream {
         }
     }
 
+    static class IndexedHandles {
+        final HintIndex<ServerGroupHandle> index;
+        final long modifications;
+        final long annotationsVersion;
+
+        IndexedHandles(HintIndex<ServerGroupHandle> index, long modifications, long annotationsVersion) {
+            this.index = index;
+            this.modifications = modifications;
+            this.annotationsVersion = annotationsVersion;
+        }
+    }
+
     public final String alias;
     private ArrayList<ServerGroupHandle> serverGroupHandles = new ArrayList<>(0);
     private WRR _wrr;
+    // increased when handles or their annotations change
+    private final AtomicLong modifications = new AtomicLong();
+    // rebuilt when searching if it's outdated
+    private volatile IndexedHandles hintIndex;
 
     public Upstream(String alias) {
         this.alias = alias;
@@ -79,73 +97,16 @@ public class Upstream {
         if (wrr.groups.isEmpty()) {
             wrr.seq = new int[0];
         } else {
-            // calculate the seq
-            List<Integer> listSeq = new LinkedList<>();
             int[] weights = new int[wrr.groups.size()];
-            int[] original = new int[wrr.groups.size()];
-            // run calculation
-            int sum = 0;
-            for (int i = 0; i < wrr.groups.size(); i++) {
-                ServerGroupHandle h = wrr.groups.get(i);
-                weights[i] = h.weight;
-                original[i] = h.weight;
-                sum += h.weight;
-            }
-            //noinspection Duplicates
-            while (true) {
-                int idx = maxIndex(weights);
-                listSeq.add(idx);
-                weights[idx] -= sum;
-                if (calculationEnd(weights)) {
-                    break;
-                }
-                for (int i = 0; i < weights.length; ++i) {
-                    weights[i] += original[i];
-                }
-                sum = sum(weights); // recalculate sum
-            }
-            int[] seq = new int[listSeq.size()];
-            Iterator<Integer> ite = listSeq.iterator();
-            int seqIdx = 0;
-            while (ite.hasNext()) {
-                int idx = ite.next();
-                seq[seqIdx++] = idx;
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = wrr.groups.get(i).weight;
             }
-
-            wrr.seq = seq;
+            wrr.seq = WRRSequence.build(weights);
         }
 
         _wrr = wrr;
     }
 
-    private static int sum(int[] weights) {
-        int s = 0;
-        for (int w : weights) {
-            s += w;
-        }
-        return s;
-    }
-
-    private static boolean calculationEnd(int[] weights) {
-        for (int w : weights) {
-            if (w != 0)
-                return false;
-        }
-        return true;
-    }
-
-    private static int maxIndex(int[] weights) {
-        int maxIdx = 0;
-        int maxVal = weights[0];
-        for (int i = 1; i < weights.length; ++i) {
-            if (weights[i] > maxVal) {
-                maxVal = weights[i];
-                maxIdx = i;
-            }
-        }
-        return maxIdx;
-    }
-
     public ServerGroupHandle add(ServerGroup group, int weight) throws AlreadyExistException {
         List<ServerGroupHandle> groups = serverGroupHandles;
         if (groups.stream().anyMatch(g -> g.group.equals(group)))
@@ -155,6 +116,7 @@ public class Upstream {
         ServerGroupHandle h = new ServerGroupHandle(group, weight);
         newLs.add(h);
         serverGroupHandles = newLs;
+        modifications.incrementAndGet();
         recalculateWRR();
         return h;
     }
@@ -176,6 +138,7 @@ public class Upstream {
             throw new NotFoundException("server-group in upstream " + this.alias, group.alias);
         }
         serverGroupHandles = newLs;
+        modifications.incrementAndGet();
         recalculateWRR();
     }
 
@@ -188,16 +151,26 @@ public class Upstream {
     }
 
     public ServerGroupHandle searchForGroup(Hint hint) {
-        int level = 0;
-        ServerGroupHandle lastMax = null;
+        var indexed = hintIndex;
+        if (indexed == null
+            || indexed.modifications != modifications.get()
+            || indexed.annotationsVersion != ServerGroup.getAnnotationsVersion()) {
+            indexed = buildHintIndex();
+        }
+        return indexed.index.search(hint);
+    }
+
+    private IndexedHandles buildHintIndex() {
+        // read the versions first, so modifications during building will trigger another build
+        long mods = modifications.get();
+        long version = ServerGroup.getAnnotationsVersion();
+        var builder = new HintIndex.Builder<ServerGroupHandle>();
         for (ServerGroupHandle h : serverGroupHandles) {
-            int l = hint.matchLevel(h.annotations, h.group.getAnnotations());
-            if (l > level) {
-                level = l;
-                lastMax = h;
-            }
+            builder.add(h, h.annotations, h.group.getAnnotations());
         }
-        return lastMax;
+        var indexed = new IndexedHandles(builder.build(), mods, version);
+        hintIndex = indexed;
+        return indexed;
     }
 
     public Connector seek(IPPort source, Hint hint) {
@@ -44,7 +44,10 @@ public class DNSServer {
     public final Upstream rrsets;
     public final DNSClient client;
     private Map<String, IP> hosts;
-    private final ByteBuffer buffer = Utils.allocateByteBuffer(Config.udpMtu);
+    // udp dns messages are limited to 512 bytes, or the size advertised with edns,
+    // which is at most 4096 in practice
+    private static final int MAX_UDP_MESSAGE_LEN = 4096;
+    private final DatagramBatch batch = new DatagramBatch(32, MAX_UDP_MESSAGE_LEN);
     private final ConcurrentHashSet<ResolvingInfoRecorder> resolvingInfoRecorders = new ConcurrentHashSet<>();
 
     private final ELGAttach elgAttach = new ELGAttach();
@@ -459,49 +462,53 @@ public class DNSServer {
             @Override
             public void readable(HandlerContext<DatagramFD> ctx) {
                 while (true) { // read until no packet available
-                    buffer.limit(buffer.capacity()).position(0);
-                    IPPort remote;
+                    int n;
                     try {
-                        remote = ctx.getChannel().receive(buffer);
+                        n = ctx.getChannel().receiveBatch(batch);
                     } catch (IOException e) {
                         Logger.error(LogType.CONN_ERROR, "reading data from dns sock " + ctx.getChannel() + " failed", e);
                         return;
                     }
-                    if (remote == null) {
-                        return; // nothing received
+                    for (int i = 0; i < n; ++i) {
+                        handleDatagram(batch.get(i), batch.address(i));
                     }
-                    if (!securityGroup.allow(Protocol.UDP, remote.getAddress(), remote.getPort())) {
-                        assert Logger.lowLevelDebug("remote " + remote + " rejected by security-group " + securityGroup.alias);
-                        continue;
-                    }
-                    int read = buffer.position();
-                    if (read == 0) {
-                        return;
+                    if (n < batch.slots) {
+                        return; // nothing more to receive
                     }
-                    buffer.flip();
-                    byte[] bytes = Utils.allocateByteArray(read);
-                    buffer.get(bytes);
-                    ByteArray array = ByteArray.from(bytes);
+                }
+            }
 
-                    List<DNSPacket> packets;
-                    try {
-                        packets = Formatter.parsePackets(array);
-                    } catch (InvalidDNSPacketException e) {
-                        Logger.error(LogType.INVALID_EXTERNAL_DATA, "got malformed dns packet", e);
-                        return;
+            private void handleDatagram(ByteBuffer buffer, IPPort remote) {
+                if (!securityGroup.allow(Protocol.UDP, remote.getAddress(), remote.getPort())) {
+                    assert Logger.lowLevelDebug("remote " + remote + " rejected by security-group " + securityGroup.alias);
+                    return;
+                }
+                int read = buffer.limit() - buffer.position();
+                if (read == 0) {
+                    return;
+                }
+                byte[] bytes = Utils.allocateByteArray(read);
+                buffer.get(bytes);
+                ByteArray array = ByteArray.from(bytes);
+
+                List<DNSPacket> packets;
+                try {
+                    packets = Formatter.parsePackets(array);
+                } catch (InvalidDNSPacketException e) {
+                    Logger.error(LogType.INVALID_EXTERNAL_DATA, "got malformed dns packet", e);
+                    return;
+                }
+                assert Logger.lowLevelDebug("received dns packets: " + packets);
+                for (DNSPacket p : packets) {
+                    if (p.isResponse) {
+                        Logger.error(LogType.INVALID_EXTERNAL_DATA, "received dns packet response from " + remote);
+                        continue;
                     }
-                    assert Logger.lowLevelDebug("received dns packets: " + packets);
-                    for (DNSPacket p : packets) {
-                        if (p.isResponse) {
-                            Logger.error(LogType.INVALID_EXTERNAL_DATA, "received dns packet response from " + remote);
-                            continue;
-                        }
-                        if (p.opcode != DNSPacket.Opcode.QUERY) {
-                            runRecursive(p, remote);
-                            continue;
-                        }
-                        handleRequest(p, remote);
+                    if (p.opcode != DNSPacket.Opcode.QUERY) {
+                        runRecursive(p, remote);
+                        continue;
                     }
+                    handleRequest(p, remote);
                 }
             }
 
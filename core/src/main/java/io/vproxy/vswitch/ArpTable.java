@@ -22,6 +22,12 @@ public class ArpTable {
     private final Map<IP, ArpEntry> ipMap = new HashMap<>();
     private final Map<MacAddress, Set<ArpEntry>> macMap = new HashMap<>();
 
+    // read-only copy of ipMap for other event loops (switch shards)
+    // it's republished at most once per tick by the owner loop after ipMap is modified
+    private volatile boolean snapshotEnabled = false;
+    private volatile Map<IP, ArpEntry> snapshot = Map.of();
+    private boolean publishPending = false;
+
     public ArpTable(SelectorEventLoop loop, int timeout) {
         this.loop = loop;
         this.timeout = timeout;
@@ -32,6 +38,10 @@ public class ArpTable {
     }
 
     public void record(MacAddress mac, IP ip, boolean persist) {
+        if (snapshotEnabled && SelectorEventLoop.current() != loop) {
+            loop.runOnLoop(() -> record(mac, ip, persist));
+            return;
+        }
         var entry = ipMap.get(ip);
         if (entry != null && entry.mac.equals(mac)) {
             if (persist) {
@@ -51,7 +61,7 @@ public class ArpTable {
     }
 
     public MacAddress lookup(IP ip) {
-        var entry = ipMap.get(ip);
+        var entry = snapshotEnabled && SelectorEventLoop.current() != loop ? snapshot.get(ip) : ipMap.get(ip);
         if (entry == null) {
             return null;
         }
@@ -77,6 +87,33 @@ public class ArpTable {
         this.loop = loop;
     }
 
+    /**
+     * Allow other event loops to read and record entries.
+     * Must be called on the owner loop.
+     */
+    public void enableSnapshot() {
+        snapshot = Map.copyOf(ipMap);
+        snapshotEnabled = true;
+    }
+
+    public void disableSnapshot() {
+        snapshotEnabled = false;
+        snapshot = Map.of();
+    }
+
+    private void ipMapChanged() {
+        if (!snapshotEnabled || publishPending) {
+            return;
+        }
+        publishPending = true;
+        loop.nextTick(() -> {
+            publishPending = false;
+            if (snapshotEnabled) {
+                snapshot = Map.copyOf(ipMap);
+            }
+        });
+    }
+
     public void clearCache() {
         var entries = new HashSet<>(this.entries);
         for (var entry : entries) {
@@ -112,6 +149,7 @@ public class ArpTable {
             }
             entries.add(this);
             ipMap.put(ip, this);
+            ipMapChanged();
             var set = macMap.get(mac);
             //noinspection Java8MapApi
             if (set == null) {
@@ -132,6 +170,7 @@ public class ArpTable {
 
             entries.remove(this);
             var entry = ipMap.remove(ip);
+            ipMapChanged();
             if (entry != null) {
                 var set = macMap.get(entry.mac);
                 if (set != null) {
@@ -27,6 +27,12 @@ public class MacTable {
     private final Map<MacAddress, MacEntry> macMap = new HashMap<>();
     private final Map<Iface, Set<MacEntry>> ifaceMap = new HashMap<>();
 
+    // read-only copy of macMap for other event loops (switch shards)
+    // it's republished at most once per tick by the owner loop after macMap is modified
+    private volatile boolean snapshotEnabled = false;
+    private volatile Map<MacAddress, MacEntry> snapshot = Map.of();
+    private boolean publishPending = false;
+
     public MacTable(SwitchDelegate swCtx, SelectorEventLoop loop, VirtualNetwork net, int timeout) {
         this.swCtx = swCtx;
         this.loop = loop;
@@ -39,13 +45,23 @@ public class MacTable {
     }
 
     public void record(MacAddress mac, Iface iface, boolean persist) {
+        if (snapshotEnabled && !isOwnerThread()) {
+            var entry = snapshot.get(mac);
+            if (entry != null && !persist && entry.iface.equals(iface)) {
+                // the owner loop checks the flag when the entry times out
+                entry.touchedByShard = true;
+                return;
+            }
+            loop.runOnLoop(() -> record(mac, iface, persist));
+            return;
+        }
         var entry = macMap.get(mac);
         if (entry != null && entry.iface.equals(iface)) {
             if (persist) {
                 if (entry.getTimeout() == -1) {
                     return;
                 } else {
-                    entry.cancel();
+                    entry.delete();
                 }
             } else {
                 entry.resetTimer();
@@ -58,18 +74,22 @@ public class MacTable {
     }
 
     public void disconnect(Iface iface) {
+        if (snapshotEnabled && !isOwnerThread()) {
+            loop.runOnLoop(() -> disconnect(iface));
+            return;
+        }
         var set = ifaceMap.get(iface);
         if (set == null) {
             return;
         }
         set = new HashSet<>(set);
         for (var entry : set) {
-            entry.cancel();
+            entry.delete();
         }
     }
 
     public Iface lookup(MacAddress mac) {
-        var entry = macMap.get(mac);
+        var entry = snapshotEnabled && !isOwnerThread() ? snapshot.get(mac) : macMap.get(mac);
         if (entry == null) {
             return null;
         }
@@ -80,10 +100,41 @@ public class MacTable {
         this.loop = loop;
     }
 
+    private boolean isOwnerThread() {
+        return SelectorEventLoop.current() == loop;
+    }
+
+    /**
+     * Allow other event loops to read and record entries.
+     * Must be called on the owner loop.
+     */
+    public void enableSnapshot() {
+        snapshot = Map.copyOf(macMap);
+        snapshotEnabled = true;
+    }
+
+    public void disableSnapshot() {
+        snapshotEnabled = false;
+        snapshot = Map.of();
+    }
+
+    private void macMapChanged() {
+        if (!snapshotEnabled || publishPending) {
+            return;
+        }
+        publishPending = true;
+        loop.nextTick(() -> {
+            publishPending = false;
+            if (snapshotEnabled) {
+                snapshot = Map.copyOf(macMap);
+            }
+        });
+    }
+
     public void clearCache() {
         var entries = new HashSet<>(this.entries);
         for (var entry : entries) {
-            entry.cancel();
+            entry.delete();
         }
     }
 
@@ -109,7 +160,7 @@ public class MacTable {
         if (entry == null) {
             return;
         }
-        entry.cancel();
+        entry.delete();
     }
 
     public class MacEntry extends Timer {
@@ -117,6 +168,8 @@ public class MacTable {
         public final Iface iface;
         private boolean offloaded = false;
         private int offloadedCount = 0;
+        // set when packets are received on other event loops, see record(...)
+        private volatile boolean touchedByShard = false;
 
         MacEntry(MacAddress mac, Iface iface, boolean persist) {
             super(MacTable.this.loop, persist ? -1 : timeout);
@@ -133,6 +186,7 @@ public class MacTable {
             }
             entries.add(this);
             macMap.put(mac, this);
+            macMapChanged();
             var set = ifaceMap.get(iface);
             //noinspection Java8MapApi
             if (set == null) {
@@ -189,6 +243,12 @@ public class MacTable {
             cancel(true);
         }
 
+        // remove the entry regardless of packets received on other event loops
+        void delete() {
+            touchedByShard = false;
+            cancel();
+        }
+
         public void cancel(boolean isTimeout) {
             super.cancel();
 
@@ -198,11 +258,17 @@ public class MacTable {
                     return;
                 }
             }
+            if (isTimeout && touchedByShard) {
+                touchedByShard = false;
+                start();
+                return;
+            }
 
             Logger.trace(LogType.ALERT, "mac entry " + iface.name() + " -> " + mac + " removed");
 
             entries.remove(this);
             macMap.remove(mac);
+            macMapChanged();
             var set = ifaceMap.get(iface);
             if (set != null) {
                 set.remove(this);
@@ -6,6 +6,7 @@ import io.vproxy.base.util.Logger;
 import io.vproxy.base.util.Utils;
 import io.vproxy.base.util.misc.WithUserData;
 import io.vproxy.vfd.IP;
+import io.vproxy.vfd.MacAddress;
 import io.vproxy.vpacket.*;
 import io.vproxy.vpacket.conntrack.tcp.TcpEntry;
 import io.vproxy.vpacket.conntrack.tcp.TcpNat;
@@ -15,6 +16,7 @@ import io.vproxy.vpacket.tuples.PacketFullTuple;
 import io.vproxy.vswitch.iface.Iface;
 import io.vproxy.vswitch.node.Node;
 import io.vproxy.vswitch.node.TraceDebugger;
+import io.vproxy.vswitch.util.SwitchUtils;
 
 import java.util.Collection;
 import java.util.HashMap;
@@ -97,6 +99,8 @@ public class PacketBuffer extends PacketDataBuffer implements WithUserData {
     public int internalMask;
     public int mask;
     private Map<Object, Object> userdata;
+    // the packet is created by detach() and owns its buffer
+    boolean detached = false;
 
     // fromVXLanBytes
     private PacketBuffer(Iface devin, ByteArray fullbuf, int pktOff, int pad) {
@@ -252,6 +256,26 @@ public class PacketBuffer extends PacketDataBuffer implements WithUserData {
         initPackets(false, false, true);
     }
 
+    /**
+     * Turn the ip packet into an ethernet packet by writing the ethernet header in front of the ip bytes.
+     * Only works when the ip packet is still backed by the buffer of this pkb and there's enough headroom.
+     *
+     * @param header dst mac, src mac and type, 14 bytes
+     * @return true if succeeded, false if nothing is modified
+     */
+    public boolean prependEthernetInPlace(MacAddress dst, MacAddress src, ByteArray header) {
+        if ((flags & FLAG_IP) != FLAG_IP || ipPkt == null || fullbuf == null) {
+            return false;
+        }
+        var ether = EthernetPacket.buildInPlace(this, dst, src, header, ipPkt);
+        if (ether == null) {
+            return false;
+        }
+        this.flags &= ~FLAG_IP;
+        this.pkt = ether;
+        return true;
+    }
+
     private void initPackets(boolean hasVxlan, boolean hasEther, boolean hasIp) {
         if (hasVxlan) {
             this.pkt = vxlan.getPacket();
@@ -396,6 +420,63 @@ public class PacketBuffer extends PacketDataBuffer implements WithUserData {
         return pkb;
     }
 
+    // copy the packet and its context into a new buffer
+    // the returned packet shares no memory with this one, so it can be handled by another thread
+    // while the buffer of this packet is reused
+    // return null if the packet cannot be copied
+    public PacketBuffer detach() {
+        if (pkt == null) {
+            return null;
+        }
+        if (pkt.getPacket() instanceof AbstractIpPacket && ensurePartialPacketParsed()) {
+            return null;
+        }
+        boolean withVXLan = vxlan != null && vxlan.getPacket() == pkt;
+        var bytes = withVXLan ? vxlan.getRawPacket(0) : pkt.getRawPacket(0);
+        int headroom = SwitchUtils.RCV_HEAD_PRESERVE_LEN;
+        var buf = ByteArray.allocate(headroom + bytes.length());
+        bytes.copyInto(buf, headroom, 0, bytes.length());
+
+        PacketBuffer pkb;
+        if (withVXLan) {
+            pkb = new PacketBuffer(devin, buf, headroom, 0);
+        } else {
+            pkb = new PacketBuffer(devin, vrf, buf, headroom, 0);
+        }
+        var err = pkb.init();
+        if (err == null && pkb.pkt.getPacket() instanceof AbstractIpPacket && pkb.ensurePartialPacketParsed()) {
+            err = "invalid ip packet";
+        }
+        if (err != null) {
+            assert Logger.lowLevelDebug("copying packet " + this + " failed: " + err);
+            return null;
+        }
+        pkb.detached = true;
+        pkb.vrf = vrf;
+        pkb.network = network;
+
+        pkb.next = next;
+        pkb.ifaceInput = ifaceInput;
+        pkb.devout = devout;
+        pkb.matchedIps = matchedIps;
+        pkb.tcp = tcp;
+        pkb.udp = udp;
+        pkb.tcpNat = tcpNat;
+        pkb.udpNat = udpNat;
+        pkb.fastpath = fastpath;
+        pkb.fastpathUserData = fastpathUserData;
+        pkb.devredirect = devredirect;
+        pkb.reinput = reinput;
+        pkb.assumeIfaceEnabled = assumeIfaceEnabled;
+        pkb.internalMask = internalMask;
+        pkb.mask = mask;
+        if (userdata != null) {
+            pkb.userdata = new HashMap<>(userdata);
+        }
+        pkb.debugger.setDebugOn(debugger.isDebugOn());
+        return pkb;
+    }
+
     @Override
     public Object getUserData(Object key) {
         if (userdata == null) {
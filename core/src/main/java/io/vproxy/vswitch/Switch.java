@@ -1,5 +1,6 @@
 package io.vproxy.vswitch;
 
+import io.vproxy.base.Config;
 import io.vproxy.base.component.elgroup.EventLoopGroup;
 import io.vproxy.base.component.elgroup.EventLoopGroupAttach;
 import io.vproxy.base.connection.NetEventLoop;
@@ -10,6 +11,7 @@ import io.vproxy.base.util.*;
 import io.vproxy.base.util.anno.Blocking;
 import io.vproxy.base.util.callback.BlockCallback;
 import io.vproxy.base.util.coll.IntMap;
+import io.vproxy.base.util.coll.MPSCArrayQueue;
 import io.vproxy.base.util.coll.RingQueue;
 import io.vproxy.base.util.exception.*;
 import io.vproxy.base.util.objectpool.CursorList;
@@ -27,13 +29,16 @@ import io.vproxy.vswitch.plugin.IfaceWatcher;
 import io.vproxy.vswitch.stack.conntrack.EnhancedTCPEntry;
 import io.vproxy.vswitch.stack.conntrack.EnhancedUDPEntry;
 import io.vproxy.vswitch.stack.conntrack.Fastpath;
+import io.vproxy.vswitch.util.FlowHash;
 import io.vproxy.vswitch.util.SwitchUtils;
 import io.vproxy.vswitch.util.UMemChunkByteArray;
 import io.vproxy.xdp.NativeXDP;
 import io.vproxy.xdp.UMem;
 
 import java.io.IOException;
+import java.net.StandardSocketOptions;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class Switch {
@@ -53,7 +58,11 @@ public class Switch {
     private boolean wantStart = false;
 
     private DatagramFD sock;
+    private DatagramInputHandler sockInputHandler;
+    private DatagramSendBatcher sockSender;
     private final IntMap<VirtualNetwork> networks = new IntMap<>();
+    // copy of networks for switch shards, republished when networks are added or removed
+    private volatile IntMap<VirtualNetwork> networksSnapshot = new IntMap<>();
     private final Map<Iface, IfaceTimer> ifaces = new LinkedHashMap<>();
 
     private final Map<String, UMem> umems = new HashMap<>();
@@ -112,7 +121,7 @@ public class Switch {
             throw e;
         }
 
-        initNodeGraph();
+        initNodeGraph(nodeGraph, sw, devInputNode, neighborResolveNode, ipOutputNode, l4outputNode);
     }
 
     private final DevInput devInputNode = new DevInput();
@@ -120,7 +129,9 @@ public class Switch {
     private final IPOutput ipOutputNode = new IPOutput(sw);
     private final L4Output l4outputNode = new L4Output(sw);
 
-    private void initNodeGraph() {
+    private static void initNodeGraph(NodeGraph nodeGraph, SwitchDelegate sw,
+                                      DevInput devInputNode, NeighborResolve neighborResolveNode,
+                                      IPOutput ipOutputNode, L4Output l4outputNode) {
         nodeGraph.addNode(new ArpBroadcastInput());
         nodeGraph.addNode(new ArpInput());
         nodeGraph.addNode(new BroadcastOutput(sw));
@@ -161,6 +172,7 @@ public class Switch {
             try {
                 sock.close();
                 sock = null;
+                sockReusePort = false;
             } catch (IOException e) {
                 Logger.shouldNotHappen("closing sock " + sock + " failed", e);
             }
@@ -184,6 +196,11 @@ public class Switch {
                 if (vxlanBindingAddress.getAddress().isBroadcast()) {
                     sock.ensureDummyFD();
                 } else {
+                    if (shardSocksSupported()) {
+                        // the switch shards bind their own socks to the same address
+                        sock.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                        sockReusePort = true;
+                    }
                     sock.bind(vxlanBindingAddress);
                 }
             } catch (IOException e) {
@@ -193,16 +210,335 @@ public class Switch {
         }
 
         var loop = netLoop.getSelectorEventLoop();
-        loop.add(sock, EventSet.read(), null, new DatagramInputHandler(sw));
+        sockInputHandler = new DatagramInputHandler(sw);
+        loop.add(sock, EventSet.read(), null, sockInputHandler);
+        sockSender = new DatagramSendBatcher(sock, loop);
         eventLoop = netLoop;
         refreshCacheEvent = eventLoop.getSelectorEventLoop().period(40_000, this::refreshCache);
         networks.values().forEach(t -> t.setLoop(loop));
         started = true;
+
+        initShards(netLoop);
+    }
+
+    private static final int SHARD_INBOX_CAPACITY = 4096;
+
+    // number of event loops (including the one owning the ifaces) used to handle packets
+    private int shardCount = Config.vswitchShards;
+    // whether the sock is bound with SO_REUSEPORT, so that the shards can bind their own socks
+    private boolean sockReusePort = false;
+    // extra event loops handling packets, null if the switch is not sharded
+    // only modified on the switch event loop
+    private volatile SwitchShard[] shards = null;
+    // copy of ifaces for switch shards, republished when ifaces are added or removed
+    private volatile Map<Iface, IfaceTimer> ifacesSnapshot = Map.of();
+    // packets handed back from shards to the switch event loop
+    private final MPSCArrayQueue<PacketBuffer> handoffInbox = new MPSCArrayQueue<>(SHARD_INBOX_CAPACITY);
+    private final AtomicBoolean handoffDrainScheduled = new AtomicBoolean(false);
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Set the number of event loops used to handle packets, including the one owning the ifaces.
+     * Takes effect when the switch is started next time.
+     */
+    public void setShardCount(int shardCount) {
+        this.shardCount = Math.max(1, shardCount);
+    }
+
+    /**
+     * @return packets handled by the running shards
+     */
+    public long getShardHandledPackets() {
+        var shards = this.shards;
+        if (shards == null) {
+            return 0;
+        }
+        long n = 0;
+        for (var shard : shards) {
+            n += shard.handledPackets.sum();
+        }
+        return n;
+    }
+
+    private boolean shardSocksSupported() {
+        return shardCount > 1 && Config.supportReusePortLB();
+    }
+
+    private void initShards(NetEventLoop netLoop) {
+        int count = shardCount;
+        if (count <= 1) {
+            return;
+        }
+        var loop = netLoop.getSelectorEventLoop();
+        var ls = new ArrayList<SwitchShard>();
+        for (var w : eventLoopGroup.list()) {
+            if (ls.size() + 1 >= count) {
+                break;
+            }
+            var shardLoop = w.getSelectorEventLoop();
+            if (shardLoop == loop) {
+                continue;
+            }
+            ls.add(buildShard(ls.size() + 1, shardLoop, loop));
+        }
+        if (ls.isEmpty()) {
+            Logger.warn(LogType.ALERT, "no extra event loop in " + eventLoopGroup.alias + " for sharding Switch:" + alias);
+            return;
+        }
+        var arr = ls.toArray(new SwitchShard[0]);
+        loop.runOnLoop(() -> {
+            if (eventLoop != netLoop) {
+                return; // restarted
+            }
+            for (var net : networks.values()) {
+                net.enableShardSnapshots();
+            }
+            shards = arr;
+            publishIfaces();
+            if (sockReusePort) {
+                for (var shard : arr) {
+                    shard.loop.runOnLoop(() -> openShardSock(shard));
+                }
+            }
+        });
+        Logger.alert("Switch:" + alias + " is sharded to " + (arr.length + 1) + " event loops");
+    }
+
+    private SwitchShard buildShard(int index, SelectorEventLoop shardLoop, SelectorEventLoop mainLoop) {
+        var shard = new SwitchShard(index, shardLoop, this::handoffToMainLoop, SHARD_INBOX_CAPACITY);
+        // nodes which are not shardable are never executed on the shard
+        // the functions are still forwarded to the switch event loop in case of misuse
+        var delegate = new SwitchDelegate(
+            this,
+            shard.scheduler,
+            () -> shardSockRemoved(shard, mainLoop),
+            (pkb, iface) -> sendPacketOnShard(shard, pkb, iface),
+            () -> ifacesSnapshot.keySet(),
+            vrf -> networksSnapshot.get(vrf),
+            () -> shardLoop,
+            q -> onShardPacketsArrive(shard, q),
+            iface -> mainLoop.runOnLoop(() -> utilRemoveIface(iface)),
+            iface -> {
+                throw new UnsupportedOperationException("cannot init iface on switch shards");
+            },
+            iface -> recordIfaceOnShard(iface, mainLoop)
+        );
+        initNodeGraph(shard.nodeGraph, delegate, new DevInput(), new NeighborResolve(delegate), new IPOutput(delegate), new L4Output(delegate));
+        shard.init(delegate);
+        return shard;
+    }
+
+    // called on the shard loop
+    private void openShardSock(SwitchShard shard) {
+        if (shard.isClosed() || shards == null) {
+            return;
+        }
+        DatagramFD fd;
+        try {
+            fd = FDProvider.get().openDatagramFD();
+        } catch (IOException e) {
+            Logger.error(LogType.SYS_ERROR, "creating sock for " + shard + " of Switch:" + alias + " failed", e);
+            return;
+        }
+        try {
+            fd.configureBlocking(false);
+            fd.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            fd.bind(vxlanBindingAddress);
+            shard.loop.add(fd, EventSet.read(), null, new DatagramInputHandler(shard.delegate, this::newRemoteOnShard));
+        } catch (IOException e) {
+            Logger.warn(LogType.SYS_ERROR, "binding sock for " + shard + " of Switch:" + alias + " failed, " +
+                "the shard only handles packets steered from the switch event loop", e);
+            try {
+                fd.close();
+            } catch (IOException e2) {
+                Logger.shouldNotHappen("closing sock " + fd + " failed", e2);
+            }
+            return;
+        }
+        shard.setSock(fd);
+    }
+
+    // called on shard loops
+    private void newRemoteOnShard(IPPort remote, ByteArray datagram) {
+        var netLoop = eventLoop;
+        if (netLoop == null) {
+            return;
+        }
+        // ifaces are created on the switch event loop
+        netLoop.getSelectorEventLoop().runOnLoop(() -> {
+            var handler = sockInputHandler;
+            if (handler != null) {
+                handler.inject(remote, datagram);
+            }
+        });
+    }
+
+    // called when the sock of the shard is removed from the shard loop
+    private void shardSockRemoved(SwitchShard shard, SelectorEventLoop mainLoop) {
+        if (shard.isClosed()) {
+            return; // removed by the switch
+        }
+        mainLoop.runOnLoop(() -> removeShard(shard));
+    }
+
+    // called on the switch event loop
+    private void removeShard(SwitchShard shard) {
+        var shards = this.shards;
+        if (shards == null) {
+            return;
+        }
+        var ls = new ArrayList<SwitchShard>(shards.length);
+        for (var s : shards) {
+            if (s != shard) {
+                ls.add(s);
+            }
+        }
+        if (ls.size() == shards.length) {
+            return;
+        }
+        Logger.warn(LogType.ALERT, shard + " of Switch:" + alias + " is removed");
+        if (ls.isEmpty()) {
+            cancelShards();
+        } else {
+            this.shards = ls.toArray(new SwitchShard[0]);
+        }
+        shard.close();
+    }
+
+    private void cancelShards() {
+        var shards = this.shards;
+        this.shards = null;
+        if (shards == null) {
+            return;
+        }
+        ifacesSnapshot = Map.of();
+        for (var net : networks.values()) {
+            net.disableShardSnapshots();
+        }
+        for (var shard : shards) {
+            if (shard.loop.isClosed()) {
+                shard.close();
+            } else {
+                shard.loop.runOnLoop(shard::close);
+            }
+        }
+    }
+
+    // called on the switch event loop
+    private void publishIfaces() {
+        if (shards == null) {
+            return;
+        }
+        ifacesSnapshot = Map.copyOf(ifaces);
+    }
+
+    // called on shard loops
+    private void recordIfaceOnShard(Iface iface, SelectorEventLoop mainLoop) {
+        var timer = ifacesSnapshot.get(iface);
+        if (timer != null) {
+            // the switch event loop checks the flag when the iface times out
+            timer.touchedByShard = true;
+            return;
+        }
+        mainLoop.runOnLoop(() -> recordIface(iface));
+    }
+
+    // called on shard loops
+    private void onShardPacketsArrive(SwitchShard shard, RingQueue<PacketBuffer> q) {
+        PacketBuffer pkb;
+        while ((pkb = q.poll()) != null) {
+            pkb.ifaceInput = true;
+            if (__preHandleInputPkb0(pkb, shard.delegate)) {
+                shard.received.add(pkb);
+            }
+        }
+        shard.schedule(shard.received);
+    }
+
+    // called on shard loops
+    private void sendPacketOnShard(SwitchShard shard, PacketBuffer pkb, Iface iface) {
+        if (shard.sock == null || !(iface instanceof AbstractBaseSwitchSocketIface socketIface)
+            || pkb.fastpath || !iface.getEgressFilters().isEmpty() || Mirror.isEnabled("switch")) {
+            // the iface, conntrack and packet filters are handled on the switch event loop
+            pkb.devout = iface;
+            pkb.next = shard.nodeGraph.getNode("dev-output");
+            handoffToMainLoop(pkb);
+            return;
+        }
+
+        SwitchUtils.checkAndUpdateMss(pkb, iface);
+
+        // sock based ifaces are never vlan adaptors
+        if (pkb.pkt.getVlan() == EthernetPacket.PENDING_VLAN_CODE) {
+            pkb.pkt.setVlan(EthernetPacket.NO_VLAN_CODE);
+        }
+
+        if (!pkb.assumeIfaceEnabled && iface.isDisabled()) {
+            assert Logger.lowLevelDebug("iface " + iface.name() + " is disabled, drop the packet when sending");
+            return;
+        }
+        pkb.assumeIfaceEnabled = false; // clear the state
+
+        // send via the sock of the shard, which is bound to the same address as the switch sock
+        socketIface.sendPacket(pkb, shard.sock, shard.sockSender, shard.sndBuf);
+    }
+
+    // called on shard loops
+    private boolean handoffToMainLoop(PacketBuffer pkb) {
+        var netLoop = eventLoop;
+        if (netLoop == null) {
+            assert Logger.lowLevelDebug("switch is stopped, drop the packet handed off from shard: " + pkb);
+            return true;
+        }
+        if (!pkb.detached) {
+            // the packet is backed by the receiving buffer of the shard sock, which will be reused
+            var copy = pkb.detach();
+            if (copy == null) {
+                assert Logger.lowLevelDebug("unable to copy the packet handed off from shard, drop it: " + pkb);
+                return true;
+            }
+            pkb = copy;
+        }
+        if (!handoffInbox.offer(pkb)) {
+            assert Logger.lowLevelDebug("handoff inbox is full, drop the packet: " + pkb);
+            return true;
+        }
+        if (handoffDrainScheduled.compareAndSet(false, true)) {
+            netLoop.getSelectorEventLoop().runOnLoop(this::drainHandoffInbox);
+        }
+        return true;
+    }
+
+    private final CursorList<PacketBuffer> handedOffPackets = new CursorList<>(128);
+
+    private void drainHandoffInbox() {
+        handoffDrainScheduled.set(false);
+        PacketBuffer pkb;
+        while ((pkb = handoffInbox.poll()) != null) {
+            // map to the node of the switch
+            pkb.next = nodeGraph.getNode(pkb.next.name);
+            handedOffPackets.add(pkb);
+        }
+        if (handedOffPackets.isEmpty()) {
+            return;
+        }
+        try {
+            scheduler.schedule(handedOffPackets);
+        } finally {
+            handedOffPackets.clear();
+        }
+
+        for (Iface iface : ifaces.keySet()) {
+            iface.completeTx();
+        }
     }
 
     private void cancelAllIface() {
         var set = Set.copyOf(ifaces.values());
-        set.forEach(IfaceTimer::cancel);
+        set.forEach(IfaceTimer::remove);
     }
 
     private void cancelEventLoop() {
@@ -231,6 +567,7 @@ public class Switch {
             return;
         }
         stopStack();
+        cancelShards();
         cancelEventLoop();
         cancelAllIface();
         cancelNetworks();
@@ -290,6 +627,26 @@ public class Switch {
         }
     }
 
+    public boolean isVectorMode() {
+        return scheduler.isVectorMode();
+    }
+
+    @Blocking
+    public void setVectorMode(boolean vectorMode) {
+        var netLoop = eventLoop;
+        if (netLoop == null) {
+            scheduler.setVectorMode(vectorMode);
+            return;
+        }
+        // the scheduler is only used on the loop
+        BlockCallback<Void, RuntimeException> cb = new BlockCallback<>();
+        netLoop.getSelectorEventLoop().runOnLoop(() -> {
+            scheduler.setVectorMode(vectorMode);
+            cb.succeeded();
+        });
+        cb.block();
+    }
+
     public IntMap<VirtualNetwork> getNetworks() {
         return networks;
     }
@@ -311,14 +668,31 @@ public class Switch {
         }
         VirtualNetwork t = new VirtualNetwork(sw, vrf, eventLoop, v4network, v6network, macTableTimeout, arpTableTimeout, annotations);
         networks.put(vrf, t);
+        if (shards != null) {
+            eventLoop.getSelectorEventLoop().runOnLoop(() -> {
+                if (shards != null) {
+                    t.enableShardSnapshots();
+                }
+            });
+        }
+        publishNetworks();
         return t;
     }
 
+    private void publishNetworks() {
+        var snapshot = new IntMap<VirtualNetwork>();
+        for (int vrf : networks.keySet()) {
+            snapshot.put(vrf, networks.get(vrf));
+        }
+        networksSnapshot = snapshot;
+    }
+
     public void delNetwork(int vrf) throws NotFoundException {
         VirtualNetwork t = networks.remove(vrf);
         if (t == null) {
             throw new NotFoundException("vrf", "" + vrf);
         }
+        publishNetworks();
         t.clearCache();
     }
 
@@ -357,7 +731,7 @@ public class Switch {
     private final AtomicInteger ifaceIndexes = new AtomicInteger(0); // only increases, never decreases
 
     private IfaceInitParams buildIfaceInitParams() {
-        return new IfaceInitParams(ifaceIndexes.incrementAndGet(), this, eventLoop.getSelectorEventLoop(), sock, packetCallback);
+        return new IfaceInitParams(ifaceIndexes.incrementAndGet(), this, eventLoop.getSelectorEventLoop(), sock, sockSender, packetCallback);
     }
 
     @Blocking
@@ -371,6 +745,7 @@ public class Switch {
                 timer = new IfaceTimer(loop, -1, iface);
                 timer.resetTimer();
                 ifaces.put(iface, timer);
+                publishIfaces();
             }
             cb.succeeded();
 
@@ -790,7 +1165,7 @@ public class Switch {
     private void preHandleInputPkb(PacketBuffer pkb, boolean autoReleaseChunk) {
         assert Logger.lowLevelDebug("received packet: " + pkb);
         var fullbufBackup = pkb.fullbuf;
-        if (__preHandleInputPkb0(pkb)) {
+        if (__preHandleInputPkb0(pkb, sw)) {
             packetBuffersToBeHandled.add(pkb);
             if (pkb.fullbuf != fullbufBackup) {
                 if (autoReleaseChunk) {
@@ -804,7 +1179,8 @@ public class Switch {
         }
     }
 
-    private boolean __preHandleInputPkb0(PacketBuffer pkb) {
+    // the ctx is the delegate of the switch or a shard, and decides how tables and ifaces are accessed
+    private boolean __preHandleInputPkb0(PacketBuffer pkb, SwitchDelegate ctx) {
         // execute pre handlers
         FilterResult preHandlersResult = SwitchUtils.applyFilters(pkb.devin.getPreHandlers(), UnsupportedPacketFilterHelper.instance, pkb);
         if (preHandlersResult == FilterResult.DROP) {
@@ -817,7 +1193,7 @@ public class Switch {
         }
 
         // ensure the dev is recorded
-        recordIface(pkb.devin);
+        ctx.recordIface(pkb.devin);
 
         // check whether the iface is disabled
         if (!pkb.assumeIfaceEnabled && pkb.devin.isDisabled()) {
@@ -861,7 +1237,7 @@ public class Switch {
 
         // init vrf network
         int vrf = pkb.vrf;
-        VirtualNetwork network = sw.getNetwork(vrf);
+        VirtualNetwork network = ctx.getNetwork(vrf);
         if (network == null) {
             assert Logger.lowLevelDebug("vrf not defined: " + vrf);
             return false;
@@ -1057,20 +1433,36 @@ public class Switch {
 
     private final CursorList<ByteArray> fullbufBackupList = new CursorList<>();
 
+    private final CursorList<PacketBuffer> packetBuffersNotSteered = new CursorList<>(128);
+
     private void handleInputPkb() {
-        for (var pkb : packetBuffersToBeHandled) {
+        var shards = this.shards;
+        List<PacketBuffer> ls = packetBuffersToBeHandled;
+        if (shards != null) {
+            for (var pkb : packetBuffersToBeHandled) {
+                if (steerToShard(shards, pkb)) {
+                    // the packet is copied, the umem chunk can be released
+                    fullbufBackupList.add(pkb.fullbuf);
+                } else {
+                    packetBuffersNotSteered.add(pkb);
+                }
+            }
+            ls = packetBuffersNotSteered;
+        }
+        for (var pkb : ls) {
             // the umem chunk need to be released after processing
             fullbufBackupList.add(pkb.fullbuf);
             pkb.next = devInputNode;
         }
         try {
-            scheduler.schedule(packetBuffersToBeHandled);
+            scheduler.schedule(ls);
         } finally {
             for (var b : fullbufBackupList) {
                 releaseUMemChunkIfPossible(b);
             }
             fullbufBackupList.clear();
             packetBuffersToBeHandled.clear();
+            packetBuffersNotSteered.clear();
         }
 
         for (Iface iface : ifaces.keySet()) {
@@ -1078,6 +1470,30 @@ public class Switch {
         }
     }
 
+    // only ip packets are steered, packets related to the local stack are handed back when reaching the stack nodes
+    // the input buffers are reused by ifaces, so the steered packet is a copy
+    private boolean steerToShard(SwitchShard[] shards, PacketBuffer pkb) {
+        if (sockReusePort && pkb.devin instanceof AbstractBaseSwitchSocketIface) {
+            // the kernel already spreads the remote endpoints across the socks of the switch and the shards
+            return false;
+        }
+        if (pkb.ipPkt == null || pkb.fastpath || pkb.debugger.isDebugOn() || traceCount > 0) {
+            return false;
+        }
+        if (pkb.ensurePartialPacketParsed()) {
+            return false; // let the switch drop it
+        }
+        int idx = FlowHash.select(pkb, shards.length + 1);
+        if (idx == 0) {
+            return false;
+        }
+        var copy = pkb.detach();
+        if (copy == null) {
+            return false;
+        }
+        return shards[idx - 1].offer(copy);
+    }
+
     private void onIfaceDown(Iface iface) {
         utilRemoveIface(iface);
     }
@@ -1104,6 +1520,7 @@ public class Switch {
     private void utilRemoveIface(Iface iface) {
         var timer = ifaces.remove(iface);
         if (timer != null) {
+            publishIfaces();
             timer.cancel();
         }
 
@@ -1166,6 +1583,8 @@ public class Switch {
 
     private class IfaceTimer extends Timer {
         final Iface iface;
+        // set when packets of the iface are received on switch shards, see recordIfaceOnShard(...)
+        volatile boolean touchedByShard = false;
 
         public IfaceTimer(SelectorEventLoop loop, int timeout, Iface iface) {
             super(loop, timeout);
@@ -1182,6 +1601,7 @@ public class Switch {
 
         void record() {
             if (ifaces.putIfAbsent(iface, this) == null) {
+                publishIfaces();
                 Logger.alert(iface.name() + " connected to Switch:" + alias);
                 ifaceAdded(iface);
             }
@@ -1191,8 +1611,20 @@ public class Switch {
         @Override
         public void cancel() {
             super.cancel();
+            if (touchedByShard && ifaces.get(iface) == this) {
+                // timed out, but packets are still received on switch shards
+                touchedByShard = false;
+                resetTimer();
+                return;
+            }
             utilRemoveIface(iface);
         }
+
+        // remove the iface regardless of packets received on switch shards
+        void remove() {
+            touchedByShard = false;
+            cancel();
+        }
     }
 
     private int traceCount = 0;
@@ -0,0 +1,162 @@
+package io.vproxy.vswitch;
+
+import io.vproxy.base.selector.SelectorEventLoop;
+import io.vproxy.base.util.Logger;
+import io.vproxy.base.util.Utils;
+import io.vproxy.base.util.coll.MPSCArrayQueue;
+import io.vproxy.base.util.objectpool.CursorList;
+import io.vproxy.vfd.DatagramFD;
+import io.vproxy.vswitch.iface.DatagramSendBatcher;
+import io.vproxy.vswitch.node.Node;
+import io.vproxy.vswitch.node.NodeGraph;
+import io.vproxy.vswitch.node.NodeGraphScheduler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An extra event loop handling packets of a switch.<br>
+ * The shard owns a replica of the node graph, and only runs packets through nodes which are {@link Node#shardable()}.
+ * When a packet is going to other nodes, it's handed back to the main event loop of the switch.<br>
+ * Packets reach the shard in two ways:<br>
+ * 1. the shard owns a vxlan sock bound to the switch address with SO_REUSEPORT,
+ * the kernel spreads the remote endpoints across the socks, and packets sent to sock based ifaces
+ * are sent via the same sock, so these packets never go through the main loop;<br>
+ * 2. packets received by other ifaces are steered by flow hash from the main loop.
+ */
+class SwitchShard {
+    final int index;
+    final SelectorEventLoop loop;
+    final NodeGraph nodeGraph = new NodeGraph();
+    final ShardScheduler scheduler;
+    private Node devInputNode;
+    SwitchDelegate delegate;
+
+    // null if the shard does not own a sock
+    DatagramFD sock;
+    DatagramSendBatcher sockSender;
+    final ByteBuffer sndBuf = Utils.allocateByteBuffer(2048);
+    private boolean closed = false;
+
+    private final MPSCArrayQueue<PacketBuffer> inbox;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final CursorList<PacketBuffer> draining = new CursorList<>(128);
+    // packets received by the sock of the shard
+    final CursorList<PacketBuffer> received = new CursorList<>(128);
+
+    final LongAdder handledPackets = new LongAdder();
+
+    interface Handoff {
+        // called on the shard loop, the pkb.next is a node of the shard
+        boolean handoff(PacketBuffer pkb);
+    }
+
+    static class ShardScheduler extends NodeGraphScheduler {
+        private final Handoff handoff;
+
+        ShardScheduler(NodeGraph graph, Handoff handoff) {
+            super(graph);
+            this.handoff = handoff;
+        }
+
+        @Override
+        protected boolean handoff(PacketBuffer pkb) {
+            if (pkb.next.shardable()) {
+                return false;
+            }
+            return handoff.handoff(pkb);
+        }
+    }
+
+    SwitchShard(int index, SelectorEventLoop loop, Handoff handoff, int inboxCapacity) {
+        this.index = index;
+        this.loop = loop;
+        this.scheduler = new ShardScheduler(nodeGraph, handoff);
+        this.inbox = new MPSCArrayQueue<>(inboxCapacity);
+    }
+
+    // called after the node graph is built
+    void init(SwitchDelegate delegate) {
+        this.delegate = delegate;
+        this.devInputNode = nodeGraph.getNode("dev-input");
+    }
+
+    // called on the shard loop
+    void setSock(DatagramFD sock) {
+        this.sock = sock;
+        this.sockSender = new DatagramSendBatcher(sock, loop);
+    }
+
+    // called on the main loop of the switch
+    // return false if the packet is not accepted, the caller should handle it by itself
+    boolean offer(PacketBuffer pkb) {
+        if (loop.isClosed()) {
+            return false;
+        }
+        pkb.next = devInputNode;
+        if (!inbox.offer(pkb)) {
+            assert Logger.lowLevelDebug("inbox of shard " + index + " is full");
+            return false;
+        }
+        if (drainScheduled.compareAndSet(false, true)) {
+            loop.runOnLoop(this::drain);
+        }
+        return true;
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        PacketBuffer pkb;
+        while ((pkb = inbox.poll()) != null) {
+            draining.add(pkb);
+        }
+        schedule(draining);
+    }
+
+    // called on the shard loop
+    void schedule(CursorList<PacketBuffer> pkbs) {
+        if (pkbs.isEmpty()) {
+            return;
+        }
+        handledPackets.add(pkbs.size());
+        for (var pkb : pkbs) {
+            if (pkb.next == null) {
+                pkb.next = devInputNode;
+            }
+        }
+        try {
+            scheduler.schedule(pkbs);
+        } finally {
+            pkbs.clear();
+        }
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    // called on the shard loop
+    void close() {
+        closed = true;
+        if (sock == null) {
+            return;
+        }
+        if (!loop.isClosed()) {
+            loop.remove(sock);
+        }
+        try {
+            sock.close();
+        } catch (IOException e) {
+            Logger.shouldNotHappen("closing sock " + sock + " of " + this + " failed", e);
+        }
+        sock = null;
+        sockSender = null;
+    }
+
+    @Override
+    public String toString() {
+        return "SwitchShard(" + index + ", " + loop + ")";
+    }
+}
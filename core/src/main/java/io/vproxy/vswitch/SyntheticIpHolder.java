@@ -11,14 +11,16 @@ import io.vproxy.vfd.IPv6;
 import io.vproxy.vfd.MacAddress;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class SyntheticIpHolder {
     private final Network allowedV4Network;
     private final Network allowedV6Network;
-    private final Map<IP, IPMac> ipMap = new HashMap<>();
-    private final Map<MacAddress, Set<IPMac>> macMap = new HashMap<>();
+    // concurrent maps, because the ips are read by switch shards on other event loops
+    private final Map<IP, IPMac> ipMap = new ConcurrentHashMap<>();
+    private final Map<MacAddress, Set<IPMac>> macMap = new ConcurrentHashMap<>();
 
     public SyntheticIpHolder(VirtualNetwork network) {
         allowedV4Network = network.v4network;
@@ -112,7 +114,7 @@ public class SyntheticIpHolder {
         if (oldInfo != null) {
             throw new AlreadyExistException("synthetic ip " + ip.formatToIPString() + " already exists in the requested switch");
         }
-        var set = macMap.computeIfAbsent(mac, m -> new HashSet<>());
+        var set = macMap.computeIfAbsent(mac, m -> ConcurrentHashMap.newKeySet());
         set.add(info);
         return info;
     }
@@ -78,6 +78,18 @@ public class VirtualNetwork implements WithUserData {
         arpTable.setLoop(loop);
     }
 
+    // must be called on the switch event loop
+    public void enableShardSnapshots() {
+        macTable.enableSnapshot();
+        arpTable.enableSnapshot();
+    }
+
+    // must be called on the switch event loop
+    public void disableShardSnapshots() {
+        macTable.disableSnapshot();
+        arpTable.disableSnapshot();
+    }
+
     public MacAddress lookup(IP ip) {
         var mac = arpTable.lookup(ip);
         if (mac == null) {
@@ -12,6 +12,7 @@ import java.nio.ByteBuffer;
 
 public abstract class AbstractBaseSwitchSocketIface extends Iface {
     protected DatagramFD sock;
+    protected DatagramSendBatcher sockSender;
     public final IPPort remote;
     protected final ByteBuffer sndBuf = Utils.allocateByteBuffer(2048);
 
@@ -23,11 +24,20 @@ public abstract class AbstractBaseSwitchSocketIface extends Iface {
     public void init(IfaceInitParams params) throws Exception {
         super.init(params);
         this.sock = params.sock;
+        this.sockSender = params.sockSender;
     }
 
-    @SuppressWarnings("DuplicatedCode")
     @Override
     public void sendPacket(PacketBuffer pkb) {
+        sendPacket(pkb, sock, sockSender, sndBuf);
+    }
+
+    /**
+     * Send the packet via the provided sock, used by switch shards which own their sockets.
+     * The sock should be bound to the same address as the switch sock.
+     */
+    @SuppressWarnings("DuplicatedCode")
+    public void sendPacket(PacketBuffer pkb, DatagramFD sock, DatagramSendBatcher sockSender, ByteBuffer sndBuf) {
         assert Logger.lowLevelDebug(this + ".sendPacket(" + pkb + ")");
 
         var vxlan = SwitchUtils.getOrMakeVXLanPacket(pkb);
@@ -38,11 +48,16 @@ public abstract class AbstractBaseSwitchSocketIface extends Iface {
         sndBuf.put(bytes);
         sndBuf.flip();
 
-        manipulate();
+        manipulate(sndBuf);
 
         statistics.incrTxPkts();
         statistics.incrTxBytes(sndBuf.limit() - sndBuf.position());
 
+        if (sockSender != null) {
+            // packets are flushed in batch on the next tick
+            sockSender.send(this, sndBuf, remote);
+            return;
+        }
         try {
             sock.send(sndBuf, remote);
         } catch (IOException e) {
@@ -51,7 +66,7 @@ public abstract class AbstractBaseSwitchSocketIface extends Iface {
         }
     }
 
-    protected void manipulate() {
+    protected void manipulate(ByteBuffer sndBuf) {
         // do nothing
     }
 }
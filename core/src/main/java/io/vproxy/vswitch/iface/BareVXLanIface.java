@@ -3,6 +3,7 @@ package io.vproxy.vswitch.iface;
 import io.vproxy.vfd.IPPort;
 import io.vproxy.vswitch.PacketBuffer;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 public class BareVXLanIface extends AbstractBaseSwitchSocketIface implements LocalSideVrfGetterSetter {
@@ -38,7 +39,7 @@ public class BareVXLanIface extends AbstractBaseSwitchSocketIface implements Loc
     }
 
     @Override
-    protected void manipulate() {
+    protected void manipulate(ByteBuffer sndBuf) {
         // keep reserved fields empty
         sndBuf.put(1, (byte) 0);
         sndBuf.put(2, (byte) 0);
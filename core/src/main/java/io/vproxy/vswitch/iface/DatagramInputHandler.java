@@ -6,6 +6,7 @@ import io.vproxy.base.selector.HandlerContext;
 import io.vproxy.base.util.*;
 import io.vproxy.base.util.coll.RingQueue;
 import io.vproxy.base.util.thread.VProxyThread;
+import io.vproxy.vfd.DatagramBatch;
 import io.vproxy.vfd.DatagramFD;
 import io.vproxy.vfd.IPPort;
 import io.vproxy.vswitch.PacketBuffer;
@@ -13,19 +14,41 @@ import io.vproxy.vswitch.SwitchDelegate;
 import io.vproxy.vswitch.util.SwitchUtils;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.lang.foreign.MemorySegment;
 
 public class DatagramInputHandler implements Handler<DatagramFD> {
     private static final int TOTAL_LEN = SwitchUtils.TOTAL_RCV_BUF_LEN;
     private static final int PRESERVED_LEN = SwitchUtils.RCV_HEAD_PRESERVE_LEN;
 
     private final SwitchDelegate swCtx;
-    private final ByteBuffer rcvBuf = Utils.allocateByteBuffer(TOTAL_LEN);
-    private final ByteArray raw = ByteArray.from(rcvBuf.array());
+    private static final int BATCH_SIZE = 64;
+
+    // each slot preserves some space before the packet, so packets are parsed in place
+    private final DatagramBatch batch = new DatagramBatch(BATCH_SIZE, TOTAL_LEN - PRESERVED_LEN, PRESERVED_LEN);
+    private final ByteArray[] raw = new ByteArray[BATCH_SIZE];
     private final RingQueue<PacketBuffer> rcvQ = new RingQueue<>(1);
+    private final NewRemoteHandler newRemoteHandler;
+
+    public interface NewRemoteHandler {
+        // the datagram is a copy, it's not reused by the input handler
+        void newRemote(IPPort remote, ByteArray datagram);
+    }
 
     public DatagramInputHandler(SwitchDelegate swCtx) {
+        this(swCtx, null);
+    }
+
+    /**
+     * @param newRemoteHandler when not null, datagrams from unknown bare vxlan endpoints are passed to
+     *                         the handler instead of creating new ifaces
+     */
+    public DatagramInputHandler(SwitchDelegate swCtx, NewRemoteHandler newRemoteHandler) {
         this.swCtx = swCtx;
+        this.newRemoteHandler = newRemoteHandler;
+        var seg = MemorySegment.ofBuffer(batch.getRawData());
+        for (int i = 0; i < BATCH_SIZE; ++i) {
+            raw[i] = ByteArray.from(seg.asSlice(batch.slotOffset(i) - PRESERVED_LEN, TOTAL_LEN));
+        }
     }
 
     @Override
@@ -46,37 +69,67 @@ public class DatagramInputHandler implements Handler<DatagramFD> {
     private void readable0(HandlerContext<DatagramFD> ctx) {
         DatagramFD sock = ctx.getChannel();
         while (true) {
-            VProxyThread.current().newUuidDebugInfo();
-
-            rcvBuf.limit(TOTAL_LEN).position(PRESERVED_LEN);
-            IPPort remote;
+            int n;
             try {
-                remote = sock.receive(rcvBuf);
+                n = sock.receiveBatch(batch);
             } catch (IOException e) {
                 Logger.error(LogType.CONN_ERROR, "udp sock " + ctx.getChannel() + " got error when reading", e);
                 return;
             }
-            if (rcvBuf.position() == PRESERVED_LEN) {
+            if (n == 0) {
                 break; // nothing read, quit loop
             }
-
-            var pkb = handleNetworkAndGetPKB(remote);
-            if (pkb == null) {
-                assert Logger.lowLevelDebug("no pkb provided, ignore");
-                continue;
+            for (int i = 0; i < n; ++i) {
+                handleDatagram(i);
             }
-
-            pkb.devin.statistics.incrRxPkts();
-            if (pkb.pktBuf != null) {
-                pkb.devin.statistics.incrRxBytes(pkb.pktBuf.length());
+            if (n < batch.slots) {
+                break; // the socket is drained
             }
+        }
+    }
+
+    private void handleDatagram(int i) {
+        VProxyThread.current().newUuidDebugInfo();
 
-            rcvQ.add(pkb);
-            swCtx.alertPacketsArrive(rcvQ);
+        int len = batch.length(i);
+        if (len == 0) {
+            return; // empty datagram
         }
+        IPPort remote = batch.address(i);
+
+        handleDatagram(remote, raw[i], len);
+    }
+
+    /**
+     * Handle a datagram received by another handler, see {@link NewRemoteHandler}.
+     */
+    public void inject(IPPort remote, ByteArray datagram) {
+        int len = datagram.length();
+        if (len == 0 || len > TOTAL_LEN - PRESERVED_LEN) {
+            return;
+        }
+        var buf = ByteArray.allocate(TOTAL_LEN);
+        datagram.copyInto(buf, PRESERVED_LEN, 0, len);
+        handleDatagram(remote, buf, len);
+    }
+
+    private void handleDatagram(IPPort remote, ByteArray raw, int len) {
+        var pkb = handleNetworkAndGetPKB(remote, raw, len);
+        if (pkb == null) {
+            assert Logger.lowLevelDebug("no pkb provided, ignore");
+            return;
+        }
+
+        pkb.devin.statistics.incrRxPkts();
+        if (pkb.pktBuf != null) {
+            pkb.devin.statistics.incrRxBytes(pkb.pktBuf.length());
+        }
+
+        rcvQ.add(pkb);
+        swCtx.alertPacketsArrive(rcvQ);
     }
 
-    private PacketBuffer handleNetworkAndGetPKB(IPPort remote) {
+    private PacketBuffer handleNetworkAndGetPKB(IPPort remote, ByteArray raw, int len) {
         PacketBuffer pkb;
         assert Logger.lowLevelDebug("handle vxlan packet");
         {
@@ -116,6 +169,11 @@ public class DatagramInputHandler implements Handler<DatagramFD> {
                     }
                 }
                 if (biface == null) {
+                    if (newRemoteHandler != null) {
+                        assert Logger.lowLevelDebug("pass the datagram from new remote " + remote + " to the handler");
+                        newRemoteHandler.newRemote(remote, raw.sub(PRESERVED_LEN, len).copy());
+                        return null;
+                    }
                     biface = new BareVXLanIface(remote);
                     isNewIface = true;
                 }
@@ -123,7 +181,7 @@ public class DatagramInputHandler implements Handler<DatagramFD> {
             }
 
             // try to parse into vxlan directly
-            pkb = PacketBuffer.fromVXLanBytes(iface, raw, PRESERVED_LEN, TOTAL_LEN - rcvBuf.position());
+            pkb = PacketBuffer.fromVXLanBytes(iface, raw, PRESERVED_LEN, TOTAL_LEN - PRESERVED_LEN - len);
             var err = pkb.init();
             if (err != null) {
                 assert Logger.lowLevelDebug("invalid packet for vxlan: " + err + ", drop it");
@@ -0,0 +1,90 @@
+package io.vproxy.vswitch.iface;
+
+import io.vproxy.base.selector.SelectorEventLoop;
+import io.vproxy.base.util.Logger;
+import io.vproxy.vfd.DatagramBatch;
+import io.vproxy.vfd.DatagramFD;
+import io.vproxy.vfd.IPPort;
+import io.vproxy.vfd.IPv4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Collects the datagrams sent via the switch sock in one loop round,
+ * and flushes them with one {@link DatagramFD#sendBatch(DatagramBatch)} call in the next tick.<br>
+ * Should only be used on the switch event loop.
+ */
+public class DatagramSendBatcher {
+    private static final int BATCH_SIZE = 64;
+    private static final int SLOT_LEN = 2048;
+
+    private final DatagramFD sock;
+    private final SelectorEventLoop loop;
+    private final DatagramBatch batch = new DatagramBatch(BATCH_SIZE, SLOT_LEN);
+    private final Iface[] owners = new Iface[BATCH_SIZE];
+    private boolean flushScheduled = false;
+
+    public DatagramSendBatcher(DatagramFD sock, SelectorEventLoop loop) {
+        this.sock = sock;
+        this.loop = loop;
+    }
+
+    public void send(Iface owner, ByteBuffer buf, IPPort remote) {
+        int count = batch.count();
+        if (count == BATCH_SIZE || (count != 0 && batch.isIPv4() != (remote.getAddress() instanceof IPv4))) {
+            flush();
+        }
+        if (buf.limit() - buf.position() > SLOT_LEN) {
+            assert Logger.lowLevelDebug("packet too large for the batch: " + (buf.limit() - buf.position()));
+            owner.statistics.incrTxErr();
+            return;
+        }
+        owners[batch.count()] = owner;
+        batch.add(buf, remote);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            loop.nextTick(this::flush);
+        }
+    }
+
+    public void flush() {
+        flushScheduled = false;
+        int count = batch.count();
+        if (count == 0) {
+            return;
+        }
+        int sent = 0;
+        try {
+            while (sent < count) {
+                int n = sendFrom(sent);
+                if (n == 0) {
+                    break; // the sock is not writable, drop the rest like a single send does
+                }
+                sent += n;
+            }
+        } catch (IOException e) {
+            assert Logger.lowLevelDebug("sending packets via " + sock + " failed: " + e);
+        }
+        for (int i = sent; i < count; ++i) {
+            owners[i].statistics.incrTxErr();
+        }
+        for (int i = 0; i < count; ++i) {
+            owners[i] = null;
+        }
+        batch.reset();
+    }
+
+    private int sendFrom(int start) throws IOException {
+        if (start == 0) {
+            return sock.sendBatch(batch);
+        }
+        // rarely happens: only part of the batch was sent
+        // send the rest one by one
+        ByteBuffer buf = batch.get(start);
+        if (sock.send(buf, batch.address(start)) == 0) {
+            return 0;
+        }
+        return 1;
+    }
+}
@@ -9,17 +9,20 @@ public class IfaceInitParams {
     public final Switch sw;
     public final SelectorEventLoop loop;
     public final DatagramFD sock;
+    public final DatagramSendBatcher sockSender;
     public final PacketCallback callback;
 
     public IfaceInitParams(int ifaceIndex,
                            Switch sw,
                            SelectorEventLoop loop,
                            DatagramFD sock,
+                           DatagramSendBatcher sockSender,
                            PacketCallback callback) {
         this.ifaceIndex = ifaceIndex;
         this.sw = sw;
         this.loop = loop;
         this.sock = sock;
+        this.sockSender = sockSender;
         this.callback = callback;
     }
 
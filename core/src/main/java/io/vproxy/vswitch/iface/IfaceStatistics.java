@@ -1,21 +1,24 @@
 package io.vproxy.vswitch.iface;
 
+import java.util.concurrent.atomic.LongAdder;
+
 public class IfaceStatistics {
-    private long rxPkts;
-    private long txPkts;
-    private long rxBytes;
-    private long txBytes;
-    private long rxErr;
-    private long txErr;
+    // the counters are updated by switch shards on different event loops
+    private final LongAdder rxPkts = new LongAdder();
+    private final LongAdder txPkts = new LongAdder();
+    private final LongAdder rxBytes = new LongAdder();
+    private final LongAdder txBytes = new LongAdder();
+    private final LongAdder rxErr = new LongAdder();
+    private final LongAdder txErr = new LongAdder();
 
-    private long txCsumSkip;
+    private final LongAdder txCsumSkip = new LongAdder();
 
     public void incrRxPkts() {
         incrRxPkts(1);
     }
 
     public void incrRxPkts(long rxPkts) {
-        this.rxPkts += rxPkts;
+        this.rxPkts.add(rxPkts);
     }
 
     public void incrTxPkts() {
@@ -23,15 +26,15 @@ public class IfaceStatistics {
     }
 
     public void incrTxPkts(long txPkts) {
-        this.txPkts += txPkts;
+        this.txPkts.add(txPkts);
     }
 
     public void incrRxBytes(long rxBytes) {
-        this.rxBytes += rxBytes;
+        this.rxBytes.add(rxBytes);
     }
 
     public void incrTxBytes(long txBytes) {
-        this.txBytes += txBytes;
+        this.txBytes.add(txBytes);
     }
 
     public void incrRxErr() {
@@ -39,7 +42,7 @@ public class IfaceStatistics {
     }
 
     public void incrRxErr(long rxErr) {
-        this.rxErr += rxErr;
+        this.rxErr.add(rxErr);
     }
 
     public void incrTxErr() {
@@ -47,7 +50,7 @@ public class IfaceStatistics {
     }
 
     public void incrTxErr(long txErr) {
-        this.txErr += txErr;
+        this.txErr.add(txErr);
     }
 
     public void incrCsumSkip() {
@@ -55,45 +58,45 @@ public class IfaceStatistics {
     }
 
     public void incrCsumSkip(long csumSkip) {
-        this.txCsumSkip += csumSkip;
+        this.txCsumSkip.add(csumSkip);
     }
 
     public long getRxPkts() {
-        return rxPkts;
+        return rxPkts.sum();
     }
 
     public long getTxPkts() {
-        return txPkts;
+        return txPkts.sum();
     }
 
     public long getRxBytes() {
-        return rxBytes;
+        return rxBytes.sum();
     }
 
     public long getTxBytes() {
-        return txBytes;
+        return txBytes.sum();
     }
 
     public long getRxErr() {
-        return rxErr;
+        return rxErr.sum();
     }
 
     public long getTxErr() {
-        return txErr;
+        return txErr.sum();
     }
 
     public long getTxCsumSkip() {
-        return txCsumSkip;
+        return txCsumSkip.sum();
     }
 
     @Override
     public String toString() {
-        return "rx_pkts=" + rxPkts +
-               " tx_pkts=" + txPkts +
-               " rx_bytes=" + rxBytes +
-               " tx_bytes=" + txBytes +
-               " rx_err=" + rxErr +
-               " tx_err=" + txErr +
-               " csum_skip=" + txCsumSkip;
+        return "rx_pkts=" + rxPkts.sum() +
+               " tx_pkts=" + txPkts.sum() +
+               " rx_bytes=" + rxBytes.sum() +
+               " tx_bytes=" + txBytes.sum() +
+               " rx_err=" + rxErr.sum() +
+               " tx_err=" + txErr.sum() +
+               " csum_skip=" + txCsumSkip.sum();
     }
 }
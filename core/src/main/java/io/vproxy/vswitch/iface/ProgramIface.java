@@ -9,6 +9,9 @@ import io.vproxy.vpacket.EthernetPacket;
 import io.vproxy.vswitch.PacketBuffer;
 import io.vproxy.vswitch.VirtualNetwork;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class ProgramIface extends Iface {
     public final String alias;
     private final VirtualNetwork network;
@@ -54,6 +57,22 @@ public class ProgramIface extends Iface {
         });
     }
 
+    // all packets are handled in one batch
+    public void injectPackets(List<EthernetPacket> pkts) {
+        var pkbs = new ArrayList<PacketBuffer>(pkts.size());
+        for (var pkt : pkts) {
+            var pkb = PacketBuffer.fromPacket(network, pkt);
+            pkb.devin = this;
+            pkbs.add(pkb);
+        }
+        loop.runOnLoop(() -> {
+            for (var pkb : pkbs) {
+                received(pkb);
+            }
+            callback.alertPacketsArrive(this);
+        });
+    }
+
     @Override
     public void sendPacket(PacketBuffer pkb) {
         Logger.alert("ProgramIface " + name() + " sendPacket: " + pkb);
@@ -4,6 +4,7 @@ import io.vproxy.base.util.Consts;
 import io.vproxy.vfd.IPPort;
 import io.vproxy.vswitch.PacketBuffer;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 public class RemoteSwitchIface extends AbstractBaseSwitchSocketIface {
@@ -48,7 +49,7 @@ public class RemoteSwitchIface extends AbstractBaseSwitchSocketIface {
     }
 
     @Override
-    protected void manipulate() {
+    protected void manipulate(ByteBuffer sndBuf) {
         if (addSwitchFlag) {
             sndBuf.put(1, (byte) (sndBuf.get(1) | ((Consts.I_AM_FROM_SWITCH >> 16) & 0xff)));
         } else {
@@ -23,6 +23,11 @@ public class DevInput extends Node {
         fillEdges(ethernetInput);
     }
 
+    @Override
+    public boolean shardable() {
+        return true;
+    }
+
     @Override
     protected HandleResult preHandle(PacketBuffer pkb) {
         return HandleResult.PASS;
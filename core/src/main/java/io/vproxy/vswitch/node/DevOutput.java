@@ -20,6 +20,12 @@ public class DevOutput extends Node {
     protected void initNode() {
     }
 
+    // packets to sock based ifaces are sent by the shard, others are handed back by the shard delegate
+    @Override
+    public boolean shardable() {
+        return true;
+    }
+
     @Override
     protected HandleResult preHandle(PacketBuffer pkb) {
         return HandleResult.PASS;
@@ -11,6 +11,8 @@ import io.vproxy.vpacket.AbstractPacket;
 import io.vproxy.vpacket.ArpPacket;
 import io.vproxy.vpacket.IcmpPacket;
 import io.vproxy.vswitch.PacketBuffer;
+import io.vproxy.vswitch.VirtualNetwork;
+import io.vproxy.vswitch.iface.Iface;
 
 public class EthernetInput extends Node {
     private final NodeEgress unicastInput = new NodeEgress("unicast-input");
@@ -32,6 +34,11 @@ public class EthernetInput extends Node {
         fillEdges(multicastInput);
     }
 
+    @Override
+    public boolean shardable() {
+        return true;
+    }
+
     @Override
     protected HandleResult preHandle(PacketBuffer pkb) {
         return HandleResult.PASS;
@@ -49,6 +56,38 @@ public class EthernetInput extends Node {
             assert Logger.lowLevelDebug("no iface provided with this packet");
         }
 
+        return handleAfterMacRecorded(pkb);
+    }
+
+    @Override
+    protected void handle(PacketVector vector, NodeGraphScheduler scheduler) {
+        // packets of one vector usually come from a few hosts,
+        // recording the same mac -> iface again only resets the same timer, so skip it
+        VirtualNetwork lastNetwork = null;
+        MacAddress lastSrc = null;
+        Iface lastDevin = null;
+        for (int i = 0; i < vector.size(); ++i) {
+            var pkb = vector.get(i);
+            scheduler.resetForNewPacket();
+
+            MacAddress src = pkb.pkt.getSrc();
+            if (pkb.devin != null) {
+                if (pkb.devin != lastDevin || pkb.network != lastNetwork || !src.equals(lastSrc)) {
+                    assert Logger.lowLevelDebug("record the mac -> iface info");
+                    pkb.network.macTable.record(src, pkb.devin);
+                    lastNetwork = pkb.network;
+                    lastSrc = src;
+                    lastDevin = pkb.devin;
+                }
+            } else {
+                assert Logger.lowLevelDebug("no iface provided with this packet");
+            }
+
+            vector.setResult(i, handleAfterMacRecorded(pkb));
+        }
+    }
+
+    private HandleResult handleAfterMacRecorded(PacketBuffer pkb) {
         // check whether need to refresh the arp table
         updateArpTable(pkb);
 
@@ -26,6 +26,11 @@ public class EthernetOutput extends Node {
         fillEdges(multicastOutput);
     }
 
+    @Override
+    public boolean shardable() {
+        return true;
+    }
+
     @Override
     protected HandleResult preHandle(PacketBuffer pkb) {
         return HandleResult.PASS;
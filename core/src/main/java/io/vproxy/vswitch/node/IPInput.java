@@ -29,6 +29,11 @@ public class IPInput extends Node {
         fillEdges(udpInput);
     }
 
+    @Override
+    public boolean shardable() {
+        return true;
+    }
+
     @Override
     protected HandleResult preHandle(PacketBuffer pkb) {
         return HandleResult.PASS;
@@ -41,6 +41,11 @@ public class IPInputRoute extends AbstractNeighborResolve {
         fillEdges(ipOutputRoute);
     }
 
+    @Override
+    public boolean shardable() {
+        return true;
+    }
+
     @Override
     protected HandleResult preHandle(PacketBuffer pkb) {
         return HandleResult.PASS;
@@ -33,6 +33,11 @@ public class IPOutputRoute extends AbstractNeighborResolve {
         fillEdges(ethernetReinput);
     }
 
+    @Override
+    public boolean shardable() {
+        return true;
+    }
+
     @Override
     protected HandleResult preHandle(PacketBuffer pkb) {
         return HandleResult.PASS;
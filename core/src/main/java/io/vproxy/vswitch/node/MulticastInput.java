@@ -23,6 +23,11 @@ public class MulticastInput extends Node {
         fillEdges(multicastOutput);
     }
 
+    @Override
+    public boolean shardable() {
+        return true;
+    }
+
     @Override
     protected HandleResult preHandle(PacketBuffer pkb) {
         return HandleResult.PASS;
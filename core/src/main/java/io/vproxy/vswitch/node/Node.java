@@ -1,6 +1,7 @@
 package io.vproxy.vswitch.node;
 
 import io.vproxy.base.util.Logger;
+import io.vproxy.base.util.coll.RingQueue;
 import io.vproxy.commons.graph.GraphBuilder;
 import io.vproxy.commons.graph.GraphNode;
 import io.vproxy.vswitch.PacketBuffer;
@@ -11,6 +12,9 @@ public abstract class Node extends GraphNode<Node> {
 
     protected final NodeEgress errorDrop = new NodeEgress("error-drop");
 
+    // packets waiting to be handled by this node, only used in the vector mode of the scheduler
+    final RingQueue<PacketBuffer> vectorPending = new RingQueue<>();
+
     public Node(String name) {
         super(name);
     }
@@ -21,12 +25,30 @@ public abstract class Node extends GraphNode<Node> {
     // called after the node graph is ready
     protected abstract void initNode();
 
+    // whether the node can run on switch shards other than the main one
+    // the node must only read tables which can be accessed from other event loops
+    // packets going to other nodes are handed off to the main shard
+    public boolean shardable() {
+        return false;
+    }
+
     // the code in preHandle() is executed in the caller node
     protected abstract HandleResult preHandle(PacketBuffer pkb);
 
     // the code in handle() is executed in this node
     protected abstract HandleResult handle(PacketBuffer pkb, NodeGraphScheduler scheduler);
 
+    // the code in handle() is executed in this node, for all packets in the vector
+    // the result of each packet must be set into the vector
+    // nodes may override this method to process the whole vector at once
+    protected void handle(PacketVector vector, NodeGraphScheduler scheduler) {
+        for (int i = 0; i < vector.size(); ++i) {
+            var pkb = vector.get(i);
+            scheduler.resetForNewPacket();
+            vector.setResult(i, handle(pkb, scheduler));
+        }
+    }
+
     protected void fillEdges(NodeEgress egress) {
         egress.edges = getEdges(egress.name);
     }
@@ -1,5 +1,7 @@
 package io.vproxy.vswitch.node;
 
+import io.vproxy.base.Config;
+import io.vproxy.base.util.LogType;
 import io.vproxy.base.util.Logger;
 import io.vproxy.base.util.coll.RingQueue;
 import io.vproxy.vswitch.PacketBuffer;
@@ -9,19 +11,53 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Run packets through the node graph.<br>
+ * In the scalar mode, each packet runs through the whole node chain before the next packet is handled.<br>
+ * In the vector mode, packets are queued on the node they are going to, and each node handles
+ * a vector of up to {@link PacketVector#MAX_SIZE} packets at a time with {@link Node#handle(PacketVector, NodeGraphScheduler)}.
+ * The packets are then passed to the queues of their next nodes, so the code and data of a node
+ * stay hot in cache while the whole vector is being handled.
+ */
 public class NodeGraphScheduler {
     public final NodeGraph graph;
     private boolean generated = false;
     private boolean isScheduling = false;
     private final Map<Node, RingQueue<PacketBuffer>> nextMap = new HashMap<>();
 
+    // START fields for vector mode
+    private boolean vectorMode = Config.vswitchVectorMode;
+    // nodes with pending packets, each node appears at most once
+    private final RingQueue<Node> readyNodes = new RingQueue<>();
+    private final PacketVector vector = new PacketVector();
+    // END fields for vector mode
+
     public NodeGraphScheduler(NodeGraph graph) {
         this.graph = graph;
     }
 
+    public boolean isVectorMode() {
+        return vectorMode;
+    }
+
+    public void setVectorMode(boolean vectorMode) {
+        if (isScheduling) {
+            throw new IllegalStateException("cannot switch the mode while scheduling");
+        }
+        this.vectorMode = vectorMode;
+    }
+
     public void schedule(PacketBuffer pkb) {
         if (isScheduling) {
             add(pkb);
+        } else if (vectorMode) {
+            isScheduling = true;
+            try {
+                add(pkb);
+                dispatchVectors();
+            } finally {
+                isScheduling = false;
+            }
         } else {
             setTrace(pkb);
             isScheduling = true;
@@ -44,6 +80,18 @@ public class NodeGraphScheduler {
             }
             return;
         }
+        if (vectorMode) {
+            isScheduling = true;
+            try {
+                for (var pkb : ls) {
+                    add(pkb);
+                }
+                dispatchVectors();
+            } finally {
+                isScheduling = false;
+            }
+            return;
+        }
         var first = ls.get(0);
         for (int i = 1; i < ls.size(); ++i) {
             add(ls.get(i));
@@ -58,6 +106,12 @@ public class NodeGraphScheduler {
         return false;
     }
 
+    // called before the packet is passed to pkb.next
+    // return true if the packet is taken away from this scheduler, e.g. handed off to another event loop
+    protected boolean handoff(PacketBuffer pkb) {
+        return false;
+    }
+
     private void add(PacketBuffer pkb) {
         if (pkb.next == null) {
             assert Logger.lowLevelDebug("pkb.next doesn't exist");
@@ -69,14 +123,25 @@ public class NodeGraphScheduler {
             packetDroppedOrStolen(pkb);
             return;
         }
+        if (handoff(pkb)) {
+            return;
+        }
         setTrace(pkb);
+        generated = true;
+        if (vectorMode) {
+            var pending = pkb.next.vectorPending;
+            if (pending.isEmpty()) {
+                readyNodes.add(pkb.next);
+            }
+            pending.add(pkb);
+            return;
+        }
         RingQueue<PacketBuffer> q = nextMap.get(pkb.next);
         if (q == null) {
             q = new RingQueue<>();
             nextMap.put(pkb.next, q);
         }
         q.add(pkb);
-        generated = true;
     }
 
     private void setTrace(PacketBuffer pkb) {
@@ -108,6 +173,10 @@ public class NodeGraphScheduler {
                 packetDroppedOrStolen(pkb);
                 break;
             }
+            if (handoff(pkb)) {
+                assert Logger.lowLevelDebug("the pkb is handed off before reaching " + next.name);
+                break;
+            }
             assert Logger.lowLevelDebug("next node is " + next.name);
 
             if (pkb.debugger.isDebugOn()) {
@@ -203,10 +272,71 @@ public class NodeGraphScheduler {
         }
     }
 
-    private void resetForNewPacket() {
+    void resetForNewPacket() {
         generated = false;
     }
 
+    private void dispatchVectors() {
+        Node node;
+        while ((node = readyNodes.poll()) != null) {
+            var pending = node.vectorPending;
+            PacketBuffer pkb;
+            while (!vector.isFull() && (pkb = pending.poll()) != null) {
+                if (pkb.debugger.isDebugOn()) {
+                    pkb.debugger.resetIndent();
+                    pkb.debugger.append("node: ").append(node.name);
+                    pkb.debugger.newLine();
+                    pkb.debugger.incIndent();
+                    pkb.debugger.incIndent();
+                }
+                pkb.next = null;
+                vector.add(pkb);
+            }
+            if (!pending.isEmpty()) {
+                // more packets than one vector can hold, handle them after other nodes
+                readyNodes.add(node);
+            }
+            try {
+                node.handle(vector, this);
+                for (int i = 0; i < vector.size(); ++i) {
+                    handleVectorResult(node, vector.get(i), vector.getResult(i));
+                }
+            } finally {
+                vector.clear();
+            }
+        }
+    }
+
+    private void handleVectorResult(Node node, PacketBuffer pkb, HandleResult res) {
+        if (res == null) {
+            Logger.error(LogType.IMPROPER_USE, "node " + node.name + " didn't set the handle result for " + pkb);
+            res = HandleResult.DROP;
+        }
+        assert Logger.lowLevelDebug("handle result: " + res + ", next: " + (pkb.next == null ? "null" : pkb.next.name));
+        if (pkb.debugger.isDebugOn()) {
+            pkb.debugger.decIndent();
+            pkb.debugger.append("result: ").append(res);
+            pkb.debugger.newLine();
+        }
+        switch (res) {
+            case PASS:
+            case PICK:
+                assert Logger.lowLevelDebug("picked");
+                // drops the packet if next node is not set
+                add(pkb);
+                break;
+            case CONTINUE:
+            case DROP:
+                assert Logger.lowLevelDebug("dropped");
+                packetDroppedOrStolen(pkb);
+                break;
+            case STOLEN:
+                assert Logger.lowLevelDebug("stolen");
+                packetDroppedOrStolen(pkb);
+                break;
+        }
+    }
+
     private void postHandle() {
         while (true) {
             var handled = false;
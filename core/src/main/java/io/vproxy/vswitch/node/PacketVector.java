@@ -0,0 +1,71 @@
+package io.vproxy.vswitch.node;
+
+import io.vproxy.vswitch.PacketBuffer;
+
+/**
+ * A frame of packets handled by one node at a time in the vector mode of {@link NodeGraphScheduler}.<br>
+ * The node stores the handle result of each packet into the vector,
+ * and the scheduler splits the packets into sub-vectors of the next nodes.
+ */
+public final class PacketVector {
+    public static final int MAX_SIZE = 256;
+
+    private final PacketBuffer[] packets = new PacketBuffer[MAX_SIZE];
+    private final HandleResult[] results = new HandleResult[MAX_SIZE];
+    private int size = 0;
+
+    PacketVector() {
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == MAX_SIZE;
+    }
+
+    public PacketBuffer get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index=" + index + ", size=" + size);
+        }
+        return packets[index];
+    }
+
+    public HandleResult getResult(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index=" + index + ", size=" + size);
+        }
+        return results[index];
+    }
+
+    public void setResult(int index, HandleResult result) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index=" + index + ", size=" + size);
+        }
+        results[index] = result;
+    }
+
+    boolean add(PacketBuffer pkb) {
+        if (size == MAX_SIZE) {
+            return false;
+        }
+        packets[size] = pkb;
+        results[size] = null;
+        ++size;
+        return true;
+    }
+
+    void clear() {
+        for (int i = 0; i < size; ++i) {
+            packets[i] = null;
+            results[i] = null;
+        }
+        size = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "PacketVector(size=" + size + ")";
+    }
+}
@@ -46,13 +46,14 @@ public class TcpInput extends Node {
 
         var ipPkt = pkb.ipPkt;
         var tcpPkt = (TcpPacket) ipPkt.getPacket();
-        IPPort src = tcpPkt.getSrc(ipPkt);
-        IPPort dst = tcpPkt.getDst(ipPkt);
-        var tcpEntry = pkb.network.conntrack.lookupTcp(src, dst);
+        // looked up with the raw bytes, the IPPort objects are only built for new connections
+        var tcpEntry = pkb.network.conntrack.lookupTcp(ipPkt, tcpPkt);
         if (tcpEntry != null) {
             pkb.tcp = tcpEntry;
         } else if (tcpPkt.getFlags() == Consts.TCP_FLAGS_SYN) {
             // only consider the packets with only SYN on it
+            IPPort src = tcpPkt.getSrc(ipPkt);
+            IPPort dst = tcpPkt.getDst(ipPkt);
             var listenEntry = pkb.network.conntrack.lookupTcpListen(dst);
             if (listenEntry == null) {
                 assert Logger.lowLevelDebug("no tcp entry nor tcp listen entry found");
@@ -6,6 +6,7 @@ import io.vproxy.commons.graph.GraphBuilder;
 import io.vproxy.vfd.IPPort;
 import io.vproxy.vpacket.PartialPacket;
 import io.vproxy.vpacket.UdpPacket;
+import io.vproxy.vpacket.conntrack.udp.UdpListenEntry;
 import io.vproxy.vswitch.PacketBuffer;
 import io.vproxy.vswitch.stack.conntrack.EnhancedUDPEntry;
 
@@ -43,10 +44,17 @@ public class UdpInput extends Node {
 
         var ipPkt = pkb.ipPkt;
         var udpPkt = (UdpPacket) ipPkt.getPacket();
-        IPPort dst = new IPPort(ipPkt.getDst(), udpPkt.getDstPort());
-        var udpListen = pkb.network.conntrack.lookupUdpListen(dst);
-        if (udpListen == null) {
-            return _returnnext(pkb, icmpPortUnreachableOutput);
+        // looked up with the raw bytes, the IPPort objects are only built for new entries
+        var udpEntry = pkb.network.conntrack.lookupUdp(ipPkt, udpPkt);
+        UdpListenEntry udpListen;
+        if (udpEntry != null && udpEntry.listenEntry != null) {
+            udpListen = udpEntry.listenEntry;
+        } else {
+            IPPort dst = new IPPort(ipPkt.getDst(), udpPkt.getDstPort());
+            udpListen = pkb.network.conntrack.lookupUdpListen(dst);
+            if (udpListen == null) {
+                return _returnnext(pkb, icmpPortUnreachableOutput);
+            }
         }
 
         assert Logger.lowLevelDebug("handleUdp(" + pkb + ")");
@@ -57,6 +65,11 @@ public class UdpInput extends Node {
             }
             return _returndrop(pkb);
         }
+        if (udpEntry != null && udpEntry.listenEntry == udpListen) {
+            udpEntry.update();
+            pkb.udp = udpEntry;
+            return _return(HandleResult.STOLEN, pkb);
+        }
         assert Logger.lowLevelDebug("recording udp entry: " + pkb);
         var remote = new IPPort(pkb.ipPkt.getSrc(), pkb.udpPkt.getSrcPort());
         var local = new IPPort(pkb.ipPkt.getDst(), pkb.udpPkt.getDstPort());
@@ -4,6 +4,7 @@ import io.vproxy.base.util.Logger;
 import io.vproxy.commons.graph.GraphBuilder;
 import io.vproxy.vfd.MacAddress;
 import io.vproxy.vswitch.PacketBuffer;
+import io.vproxy.vswitch.VirtualNetwork;
 import io.vproxy.vswitch.iface.Iface;
 
 public class UnicastInput extends Node {
@@ -27,6 +28,11 @@ public class UnicastInput extends Node {
         fillEdges(devOutput);
     }
 
+    @Override
+    public boolean shardable() {
+        return true;
+    }
+
     @Override
     protected HandleResult preHandle(PacketBuffer pkb) {
         return HandleResult.PASS;
@@ -38,6 +44,35 @@ public class UnicastInput extends Node {
 
         MacAddress dst = pkb.pkt.getDst();
         Iface output = pkb.network.macTable.lookup(dst);
+        return forward(pkb, output);
+    }
+
+    @Override
+    protected void handle(PacketVector vector, NodeGraphScheduler scheduler) {
+        // packets of one vector usually go to a few hosts, reuse the mac lookup result
+        // the mac table is not modified while this node is handling the vector
+        VirtualNetwork lastNetwork = null;
+        MacAddress lastDst = null;
+        Iface lastOutput = null;
+        for (int i = 0; i < vector.size(); ++i) {
+            var pkb = vector.get(i);
+            scheduler.resetForNewPacket();
+
+            MacAddress dst = pkb.pkt.getDst();
+            Iface output;
+            if (pkb.network == lastNetwork && dst.equals(lastDst)) {
+                output = lastOutput;
+            } else {
+                output = pkb.network.macTable.lookup(dst);
+                lastNetwork = pkb.network;
+                lastDst = dst;
+                lastOutput = output;
+            }
+            vector.setResult(i, forward(pkb, output));
+        }
+    }
+
+    private HandleResult forward(PacketBuffer pkb, Iface output) {
         if (pkb.debugger.isDebugOn()) {
             pkb.debugger.line(d -> d.append("mac lookup output dev is ")
                 .append(output == null ? "null" : output.name()));
@@ -24,6 +24,11 @@ public class VXLanLoopDetect extends Node {
         fillEdges(ethernetInput);
     }
 
+    @Override
+    public boolean shardable() {
+        return true;
+    }
+
     @Override
     protected HandleResult preHandle(PacketBuffer pkb) {
         if (pkb.vxlan != null) {
@@ -1,5 +1,6 @@
 package io.vproxy.vswitch.stack.conntrack;
 
+import io.vproxy.base.util.ByteArray;
 import io.vproxy.base.util.Consts;
 import io.vproxy.vfd.MacAddress;
 import io.vproxy.vpacket.EthernetPacket;
@@ -14,11 +15,27 @@ public class Fastpath {
     public final MacAddress local;
     public final MacAddress remote;
 
+    // pre-built ethernet headers: dst=remote, src=local, type=ipv4/ipv6
+    private final ByteArray headerV4;
+    private final ByteArray headerV6;
+
+    private long hits = 0;
+
     public Fastpath(Iface output, int vrf, MacAddress local, MacAddress remote) {
         this.output = output;
         this.vrf = vrf;
         this.local = local;
         this.remote = remote;
+        this.headerV4 = buildHeader(Consts.ETHER_TYPE_IPv4);
+        this.headerV6 = buildHeader(Consts.ETHER_TYPE_IPv6);
+    }
+
+    private ByteArray buildHeader(int type) {
+        var header = ByteArray.allocate(14);
+        remote.bytes.copyInto(header, 0, 0, 6);
+        local.bytes.copyInto(header, 6, 0, 6);
+        header.int16(12, type);
+        return header;
     }
 
     public boolean validateAndSetInto(SwitchDelegate sw, PacketBuffer pkb) {
@@ -33,19 +50,26 @@ public class Fastpath {
             pkb.network = net;
             pkb.vrf = net.vrf;
         }
+        ++hits;
+
+        boolean isV4 = pkb.ipPkt instanceof Ipv4Packet;
+        // rewrite the l2 header in place when the ip packet is still backed by a buffer
+        if (pkb.prependEthernetInPlace(remote, local, isV4 ? headerV4 : headerV6)) {
+            return true;
+        }
         EthernetPacket ether = new EthernetPacket();
         ether.setDst(remote);
         ether.setSrc(local);
-        if (pkb.ipPkt instanceof Ipv4Packet) {
-            ether.setType(Consts.ETHER_TYPE_IPv4);
-        } else {
-            ether.setType(Consts.ETHER_TYPE_IPv6);
-        }
+        ether.setType(isV4 ? Consts.ETHER_TYPE_IPv4 : Consts.ETHER_TYPE_IPv6);
         ether.setPacket(pkb.ipPkt);
         pkb.replacePacket(ether);
         return true;
     }
 
+    public long getHits() {
+        return hits;
+    }
+
     @Override
     public String toString() {
         return "Fastpath{" +
@@ -53,6 +77,7 @@ public class Fastpath {
                ", vrf=" + vrf +
                ", local=" + local +
                ", remote=" + remote +
+               ", hits=" + hits +
                '}';
     }
 }
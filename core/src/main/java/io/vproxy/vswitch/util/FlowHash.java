@@ -0,0 +1,38 @@
+package io.vproxy.vswitch.util;
+
+import io.vproxy.vpacket.TcpPacket;
+import io.vproxy.vpacket.UdpPacket;
+import io.vproxy.vswitch.PacketBuffer;
+
+/**
+ * Symmetric hash of the ip flow of a packet: both directions of a connection get the same value.
+ * The packet should be fully parsed.
+ */
+public class FlowHash {
+    private FlowHash() {
+    }
+
+    public static int hash(PacketBuffer pkb) {
+        var ip = pkb.ipPkt;
+        if (ip == null) {
+            return 0;
+        }
+        int h = ip.getSrc().hashCode() ^ ip.getDst().hashCode();
+        h = h * 31 + ip.getProtocol();
+        var l4 = ip.getPacket();
+        if (l4 instanceof TcpPacket tcp) {
+            h = h * 31 + (tcp.getSrcPort() ^ tcp.getDstPort());
+        } else if (l4 instanceof UdpPacket udp) {
+            h = h * 31 + (udp.getSrcPort() ^ udp.getDstPort());
+        }
+        // mix the bits, the result is usually used with modulo of a small number
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    public static int select(PacketBuffer pkb, int n) {
+        return (hash(pkb) & 0x7fffffff) % n;
+    }
+}
@@ -2,13 +2,18 @@ package io.vproxy.vproxyx.websocks;
 
 import io.vproxy.base.util.LogType;
 import io.vproxy.base.util.Logger;
+import io.vproxy.base.util.coll.AhoCorasick;
 
 import java.util.*;
-import java.util.function.Function;
 import java.util.regex.Pattern;
 
 /**
  * https://github.com/gfwlist/gfwlist/wiki/Syntax
+ * <br>
+ * The first matching rule in the list decides the result.
+ * Rules are compiled when added: domain and suffix rules into a {@link DomainSuffixTrie},
+ * substring and prefix rules into an {@link AhoCorasick} automaton, both reporting the index of the first matching rule,
+ * then only the regexp rules before that index are evaluated one by one.
  */
 public class ABP {
     private final Set<Character> validSimpleRuleStart = new HashSet<>() {{
@@ -24,7 +29,98 @@ public class ABP {
     }};
     private final String abpSource;
     private final boolean defaultBlock;
-    private final List<Function<String, Boolean>> checkers = new LinkedList<>();
+    private final List<Rule> rules = new ArrayList<>();
+    private volatile Compiled compiled = null;
+
+    // prepended to the input so that prefix rules can be matched by the automaton
+    private static final char BEGIN = '\u0001';
+    private static final String[] PROTOCOLS = new String[]{"http://", "https://"};
+
+    private enum Kind {
+        MATCHING_SPECIFIC_URI(true, true, "matching specific uri rule"),
+        MATCHING_FROM_BEGINNING(true, true, "matching from beginning rule"),
+        MATCHING_REGEXP(true, true, "matching regexp rule"),
+        WHITELIST_MATCHING_SPECIFIC_URI(false, false, "WHITELIST matching specific uri rule"),
+        WHITELIST_MATCHING_FROM_BEGINNING(false, false, "WHITELIST matching from beginning rule"),
+        WHITELIST_SIMPLE(false, false, "WHITELIST simple rule"),
+        WHITELIST_REGEXP(false, true, "WHITELIST regexp rule"),
+        WHITELIST_SUFFIX(false, true, "WHITELIST suffix rule"),
+        SUFFIX(true, true, "suffix rule"),
+        SIMPLE(true, true, "simple rule"),
+        ;
+        final boolean block;
+        final boolean alert;
+        final String desc;
+
+        Kind(boolean block, boolean alert, String desc) {
+            this.block = block;
+            this.alert = alert;
+            this.desc = desc;
+        }
+    }
+
+    private static final class Rule {
+        final Kind kind;
+        final String rule;
+        final String host; // null for regexp
+        final Pattern pattern; // null for others
+        // a string which the input must contain for the regexp to match, null if unknown
+        final String literal;
+
+        Rule(Kind kind, String rule, String host) {
+            this.kind = kind;
+            this.rule = rule;
+            this.host = host;
+            this.pattern = null;
+            this.literal = null;
+        }
+
+        Rule(Kind kind, String rule, Pattern pattern) {
+            this.kind = kind;
+            this.rule = rule;
+            this.host = null;
+            this.pattern = pattern;
+            var literal = requiredLiteral(rule);
+            if (literal != null) {
+                for (String protocol : PROTOCOLS) {
+                    if (overlaps(protocol, literal)) {
+                        // may be matched by the prepended protocol
+                        literal = null;
+                        break;
+                    }
+                }
+            }
+            this.literal = literal;
+        }
+
+        boolean matches(String input) {
+            return switch (kind) {
+                case MATCHING_SPECIFIC_URI, WHITELIST_MATCHING_SPECIFIC_URI ->
+                    input.equals(host) || (input.endsWith("." + host) && input.length() > host.length() + 1);
+                case MATCHING_FROM_BEGINNING -> input.equals(host);
+                case WHITELIST_MATCHING_FROM_BEGINNING -> input.startsWith(host);
+                case SIMPLE, WHITELIST_SIMPLE -> input.contains(host);
+                case SUFFIX, WHITELIST_SUFFIX -> input.endsWith(host);
+                case MATCHING_REGEXP, WHITELIST_REGEXP -> matchesRegexp(input, null);
+            };
+        }
+
+        boolean matchesRegexp(String input, String[] withProtocols) {
+            if (pattern.matcher(input).matches()) {
+                return true;
+            }
+            for (int i = 0; i < PROTOCOLS.length; ++i) {
+                String s = withProtocols == null ? PROTOCOLS[i] + input : withProtocols[i];
+                if (pattern.matcher(s).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private record Compiled(Rule[] rules, DomainSuffixTrie trie, AhoCorasick ac, int[] regexps) {
+    }
 
     public ABP(String abpSource, boolean defaultBlock) {
         this.abpSource = abpSource;
@@ -36,24 +132,85 @@ public class ABP {
     }
 
     public boolean block(String input) {
-        for (var func : checkers) {
-            Boolean result = func.apply(input);
-            if (result == null) { // null means don't know
+        var c = compiled;
+        if (c == null) {
+            return defaultBlock;
+        }
+        int first = c.trie.minMatch(input);
+
+        int state = c.ac.step(AhoCorasick.ROOT, BEGIN);
+        first = Math.min(first, c.ac.output(state));
+        for (int i = 0; i < input.length(); ++i) {
+            state = c.ac.step(state, input.charAt(i));
+            first = Math.min(first, c.ac.output(state));
+        }
+
+        String[] withProtocols = null;
+        for (int idx : c.regexps) {
+            if (idx >= first) {
+                break;
+            }
+            var r = c.rules[idx];
+            if (r.literal != null && !input.contains(r.literal)) {
                 continue;
             }
-            return result;
+            if (withProtocols == null) {
+                withProtocols = new String[PROTOCOLS.length];
+                for (int i = 0; i < PROTOCOLS.length; ++i) {
+                    withProtocols[i] = PROTOCOLS[i] + input;
+                }
+            }
+            if (r.matchesRegexp(input, withProtocols)) {
+                first = idx;
+                break;
+            }
+        }
+
+        if (first == AhoCorasick.NO_MATCH) {
+            return defaultBlock;
+        }
+        return matched(input, c.rules[first]);
+    }
+
+    /**
+     * Check the rules one by one, the result is the same as {@link #block(String)}.
+     */
+    public boolean blockLinear(String input) {
+        var c = compiled;
+        if (c == null) {
+            return defaultBlock;
+        }
+        for (var r : c.rules) {
+            if (r.matches(input)) {
+                return matched(input, r);
+            }
         }
         return defaultBlock;
     }
 
+    private boolean matched(String input, Rule r) {
+        if (r.kind.alert) {
+            Logger.alert(input + " matches ABP " + r.kind.desc + ": " + r.rule);
+        } else {
+            assert Logger.lowLevelDebug(input + " matches ABP " + r.kind.desc + ": " + r.rule);
+        }
+        return r.kind.block;
+    }
+
     public void addBase64(String base64) {
         addRule(new String(Base64.getDecoder().decode(base64)));
     }
 
-    public void addRule(String rule) {
+    public synchronized void addRule(String rule) {
         for (String line : rule.split("\n")) {
             addRuleOneLine(line);
         }
+        compile();
+    }
+
+    public int getRuleCount() {
+        var c = compiled;
+        return c == null ? 0 : c.rules.length;
     }
 
     private void addRuleOneLine(String line) {
@@ -87,152 +244,178 @@ public class ABP {
         }
     }
 
-    private interface MatchingSpecificURI extends Function<String, Boolean> {
-    }
-
     private void addMatchingSpecificURI(String rule) {
-        var host = extractHost(rule);
-        var addDot = "." + host;
-        checkers.add((MatchingSpecificURI) input -> {
-            if (input.equals(host) || (input.endsWith(addDot) && input.length() > addDot.length())) {
-                Logger.alert(input + " matches ABP matching specific uri rule: " + rule);
-                return true;
-            }
-            return null;
-        });
-    }
-
-    private interface MatchingFromBeginning extends Function<String, Boolean> {
+        rules.add(new Rule(Kind.MATCHING_SPECIFIC_URI, rule, extractHost(rule)));
     }
 
     private void addMatchingFromBeginning(String rule) {
-        var host = extractHost(rule);
-        checkers.add((MatchingFromBeginning) input -> {
-            if (input.equals(host)) {
-                Logger.alert(input + " matches ABP matching from beginning rule: " + rule);
-                return true;
-            }
-            return null;
-        });
-    }
-
-    private interface MatchingRegexp extends Function<String, Boolean> {
+        rules.add(new Rule(Kind.MATCHING_FROM_BEGINNING, rule, extractHost(rule)));
     }
 
     private void addMatchingRegexp(String rule) {
-        Pattern pattern = Pattern.compile(rule);
-        checkers.add((MatchingRegexp) input -> {
-            String[] protocols = new String[]{"", "http://", "https://"};
-            for (String protocol : protocols) {
-                if (pattern.matcher(protocol + input).matches()) {
-                    Logger.alert(input + " matches ABP matching regexp rule: " + rule);
-                    return true;
-                }
-            }
-            return null;
-        });
-    }
-
-    private interface WhitelistRuleMatchingSpecificURI extends Function<String, Boolean> {
+        rules.add(new Rule(Kind.MATCHING_REGEXP, rule, Pattern.compile(rule)));
     }
 
     private void addWhitelistRuleMatchingSpecificURI(String rule) {
-        var host = extractHost(rule);
-        var addDot = "." + host;
-        checkers.add((WhitelistRuleMatchingSpecificURI) input -> {
-            if (input.equals(host) || (input.endsWith(addDot) || input.length() > addDot.length())) {
-                assert Logger.lowLevelDebug(input + " matches ABP WHITELIST matching specific uri rule: " + rule);
-                return false;
-            }
-            return null;
-        });
-    }
-
-    private interface WhitelistMatchingFromBeginningRule extends Function<String, Boolean> {
+        rules.add(new Rule(Kind.WHITELIST_MATCHING_SPECIFIC_URI, rule, extractHost(rule)));
     }
 
     private void addWhitelistRuleMatchingFromBeginning(String rule) {
-        var host = extractHost(rule);
-        checkers.add((WhitelistMatchingFromBeginningRule) input -> {
-            if (input.startsWith(host)) {
-                assert Logger.lowLevelDebug(input + " matches ABP WHITELIST matching from beginning rule: " + rule);
-                return false;
-            }
-            return null;
-        });
+        rules.add(new Rule(Kind.WHITELIST_MATCHING_FROM_BEGINNING, rule, extractHost(rule)));
     }
 
-    private interface WhitelistSimpleRule extends Function<String, Boolean> {
+    private void addWhitelistSimpleRule(String rule) {
+        rules.add(new Rule(Kind.WHITELIST_SIMPLE, rule, extractHost(rule)));
     }
 
-    private void addWhitelistSimpleRule(String rule) {
-        var host = extractHost(rule);
-        checkers.add((WhitelistSimpleRule) input -> {
-            if (input.contains(host)) {
-                assert Logger.lowLevelDebug(input + " matches ABP WHITELIST simple rule: " + rule);
-                return false;
-            }
-            return null;
-        });
+    private void addWhitelistRuleRegexp(String rule) {
+        rules.add(new Rule(Kind.WHITELIST_REGEXP, rule, Pattern.compile(rule)));
     }
 
-    private interface WhitelistRegexpRule extends Function<String, Boolean> {
+    private void addWhitelistSuffixRule(String rule) {
+        rules.add(new Rule(Kind.WHITELIST_SUFFIX, rule, extractHost(rule)));
     }
 
-    private void addWhitelistRuleRegexp(String rule) {
-        Pattern pattern = Pattern.compile(rule);
-        checkers.add((WhitelistRegexpRule) input -> {
-            String[] protocols = new String[]{"", "http://", "https://"};
-            for (String protocol : protocols) {
-                if (pattern.matcher(protocol + input).matches()) {
-                    Logger.alert(input + " matches ABP WHITELIST regexp rule: " + rule);
-                    return false;
-                }
-            }
-            return null;
-        });
+    private void addSuffixRule(String rule) {
+        rules.add(new Rule(Kind.SUFFIX, rule, extractHost(rule)));
     }
 
-    private interface WhitelistSuffixRule extends Function<String, Boolean> {
+    private void addSimpleRule(String rule) {
+        rules.add(new Rule(Kind.SIMPLE, rule, extractHost(rule)));
     }
 
-    private void addWhitelistSuffixRule(String rule) {
-        var host = extractHost(rule);
-        checkers.add((WhitelistSuffixRule) input -> {
-            if (input.endsWith(host)) {
-                Logger.alert(input + " matches ABP WHITELIST suffix rule: " + rule);
-                return false;
+    private void compile() {
+        var ruleArray = rules.toArray(new Rule[0]);
+        var trie = new DomainSuffixTrie.Builder();
+        var ac = new AhoCorasick.Builder();
+        var regexps = new ArrayList<Integer>();
+        for (int i = 0; i < ruleArray.length; ++i) {
+            var r = ruleArray[i];
+            switch (r.kind) {
+                case MATCHING_SPECIFIC_URI, WHITELIST_MATCHING_SPECIFIC_URI -> trie.add(r.host, DomainSuffixTrie.Type.DOMAIN, i);
+                case MATCHING_FROM_BEGINNING -> trie.add(r.host, DomainSuffixTrie.Type.EXACT, i);
+                case SUFFIX, WHITELIST_SUFFIX -> trie.add(r.host, DomainSuffixTrie.Type.SUFFIX, i);
+                case WHITELIST_MATCHING_FROM_BEGINNING -> ac.add(BEGIN + r.host, i);
+                case SIMPLE, WHITELIST_SIMPLE -> ac.add(r.host, i);
+                case MATCHING_REGEXP, WHITELIST_REGEXP -> regexps.add(i);
             }
-            return null;
-        });
+        }
+        compiled = new Compiled(ruleArray, trie.build(), ac.build(), regexps.stream().mapToInt(i -> i).toArray());
     }
 
-    private interface SuffixRule extends Function<String, Boolean> {
+    /**
+     * Find the longest string which must appear in any string fully matching the regexp.
+     * Only chars outside of groups and classes are considered, and nothing is returned if there are top level alternations.
+     */
+    static String requiredLiteral(String regexp) {
+        if (regexp.contains("\\Q")) {
+            return null;
+        }
+        String longest = null;
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < regexp.length(); ++i) {
+            char c = regexp.charAt(i);
+            if (c == '[') {
+                i = skipClass(regexp, i);
+                longest = endRun(run, longest);
+                continue;
+            }
+            if (depth > 0) {
+                if (c == '\\') {
+                    ++i;
+                } else if (c == '(') {
+                    ++depth;
+                } else if (c == ')') {
+                    --depth;
+                }
+                continue;
+            }
+            char literal;
+            if (c == '(') {
+                if (i + 1 < regexp.length() && regexp.charAt(i + 1) == '?') {
+                    return null; // flags or special groups
+                }
+                ++depth;
+                longest = endRun(run, longest);
+                continue;
+            } else if (c == '|') {
+                return null;
+            } else if (c == '\\') {
+                if (i + 1 >= regexp.length()) {
+                    return null;
+                }
+                char n = regexp.charAt(++i);
+                if ("dDwWsSbB".indexOf(n) != -1) {
+                    longest = endRun(run, longest);
+                    continue;
+                }
+                if (Character.isLetterOrDigit(n)) {
+                    return null; // back references, hex, unicode or property escapes
+                }
+                literal = n;
+            } else if (c == '{') {
+                // quantifier
+                int end = regexp.indexOf('}', i);
+                i = end == -1 ? regexp.length() : end;
+                longest = endRun(run, longest);
+                continue;
+            } else if (".^$?*+}".indexOf(c) != -1) {
+                longest = endRun(run, longest);
+                continue;
+            } else {
+                literal = c;
+            }
+            char next = i + 1 < regexp.length() ? regexp.charAt(i + 1) : 0;
+            if (next == '?' || next == '*' || next == '{') {
+                // the char is optional
+                longest = endRun(run, longest);
+            } else if (next == '+') {
+                run.append(literal);
+                longest = endRun(run, longest);
+            } else {
+                run.append(literal);
+            }
+        }
+        return endRun(run, longest);
     }
 
-    private void addSuffixRule(String rule) {
-        var host = extractHost(rule);
-        checkers.add((SuffixRule) input -> {
-            if (input.endsWith(host)) {
-                Logger.alert(input + " matches ABP suffix rule: " + rule);
-                return true;
+    private static int skipClass(String regexp, int i) {
+        int depth = 0;
+        for (; i < regexp.length(); ++i) {
+            char c = regexp.charAt(i);
+            if (c == '\\') {
+                ++i;
+            } else if (c == '[') {
+                ++depth;
+            } else if (c == ']') {
+                if (--depth == 0) {
+                    return i;
+                }
             }
-            return null;
-        });
+        }
+        return i;
     }
 
-    private interface SimpleRule extends Function<String, Boolean> {
+    private static String endRun(StringBuilder run, String longest) {
+        if (!run.isEmpty() && (longest == null || run.length() > longest.length())) {
+            longest = run.toString();
+        }
+        run.setLength(0);
+        return longest;
     }
 
-    private void addSimpleRule(String rule) {
-        var host = extractHost(rule);
-        checkers.add((SimpleRule) input -> {
-            if (input.contains(host)) {
-                Logger.alert(input + " matches ABP simple rule: " + rule);
+    // whether some non-empty suffix of the protocol is a prefix of the literal, or the literal is inside the protocol
+    private static boolean overlaps(String protocol, String literal) {
+        if (protocol.contains(literal)) {
+            return true;
+        }
+        for (int i = 0; i < protocol.length(); ++i) {
+            if (literal.startsWith(protocol.substring(i))) {
                 return true;
             }
-            return null;
-        });
+        }
+        return false;
     }
 
     private String extractHost(String uri) {
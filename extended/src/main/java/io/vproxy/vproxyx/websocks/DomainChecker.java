@@ -1,5 +1,7 @@
 package io.vproxy.vproxyx.websocks;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Pattern;
 
 public interface DomainChecker {
@@ -7,6 +9,28 @@ public interface DomainChecker {
 
     String serialize();
 
+    /**
+     * Merge the checkers for matching, all suffix checkers in the list are compiled into one trie.
+     * The result list matches the same domains as the input list, but it should not be used for serializing.
+     */
+    static List<DomainChecker> compile(List<DomainChecker> checkers) {
+        var suffixes = new ArrayList<String>();
+        var ret = new ArrayList<DomainChecker>();
+        for (var c : checkers) {
+            if (c instanceof SuffixDomainChecker s) {
+                suffixes.add(s.suffix);
+            } else {
+                ret.add(c);
+            }
+        }
+        if (suffixes.size() > 1) {
+            ret.add(0, new SuffixSetDomainChecker(suffixes));
+        } else if (suffixes.size() == 1) {
+            ret.add(0, new SuffixDomainChecker(suffixes.get(0)));
+        }
+        return ret;
+    }
+
     class SuffixDomainChecker implements DomainChecker {
         public final String suffix;
 
@@ -25,6 +49,30 @@ public interface DomainChecker {
         }
     }
 
+    class SuffixSetDomainChecker implements DomainChecker {
+        public final List<String> suffixes;
+        private final DomainSuffixTrie trie;
+
+        SuffixSetDomainChecker(List<String> suffixes) {
+            this.suffixes = List.copyOf(suffixes);
+            var builder = new DomainSuffixTrie.Builder();
+            for (String s : suffixes) {
+                builder.add(s, DomainSuffixTrie.Type.SUFFIX, 0);
+            }
+            this.trie = builder.build();
+        }
+
+        @Override
+        public boolean needProxy(String domain, int port) {
+            return trie.minMatch(domain) != DomainSuffixTrie.NO_MATCH;
+        }
+
+        @Override
+        public String serialize() {
+            return String.join("\n", suffixes);
+        }
+    }
+
     class PatternDomainChecker implements DomainChecker {
         public final Pattern pattern;
 
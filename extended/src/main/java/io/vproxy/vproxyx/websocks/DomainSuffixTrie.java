@@ -0,0 +1,129 @@
+package io.vproxy.vproxyx.websocks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * A trie of reversed domain rules, so all rules matching the end of a domain are checked
+ * by walking the domain from its last char once.<br>
+ * Each rule carries an int id, and {@link #minMatch(String)} reports the smallest id of the rules matched.<br>
+ * Immutable after built.
+ */
+public class DomainSuffixTrie {
+    public static final int NO_MATCH = Integer.MAX_VALUE;
+
+    public enum Type {
+        /**
+         * domain equals the rule
+         */
+        EXACT,
+        /**
+         * domain equals the rule or is a sub domain of it
+         */
+        DOMAIN,
+        /**
+         * domain ends with the rule, not necessarily on the dot
+         */
+        SUFFIX,
+    }
+
+    private final char[][] keys;
+    private final int[][] next;
+    private final int[] exact;
+    private final int[] domain;
+    private final int[] suffix;
+
+    public static class Builder {
+        private final List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        private final List<int[]> ids = new ArrayList<>();
+
+        public Builder() {
+            newNode();
+        }
+
+        private int newNode() {
+            children.add(new TreeMap<>());
+            ids.add(new int[]{NO_MATCH, NO_MATCH, NO_MATCH});
+            return children.size() - 1;
+        }
+
+        public Builder add(String rule, Type type, int id) {
+            if (id < 0 || id == NO_MATCH)
+                throw new IllegalArgumentException("invalid id " + id);
+            int node = 0;
+            for (int i = rule.length() - 1; i >= 0; --i) {
+                char c = rule.charAt(i);
+                Integer n = children.get(node).get(c);
+                if (n == null) {
+                    n = newNode();
+                    children.get(node).put(c, n);
+                }
+                node = n;
+            }
+            int[] arr = ids.get(node);
+            arr[type.ordinal()] = Math.min(arr[type.ordinal()], id);
+            return this;
+        }
+
+        public DomainSuffixTrie build() {
+            return new DomainSuffixTrie(this);
+        }
+    }
+
+    private DomainSuffixTrie(Builder builder) {
+        int size = builder.children.size();
+        keys = new char[size][];
+        next = new int[size][];
+        exact = new int[size];
+        domain = new int[size];
+        suffix = new int[size];
+        for (int i = 0; i < size; ++i) {
+            var m = builder.children.get(i);
+            keys[i] = new char[m.size()];
+            next[i] = new int[m.size()];
+            int j = 0;
+            for (var e : m.entrySet()) {
+                keys[i][j] = e.getKey();
+                next[i][j] = e.getValue();
+                ++j;
+            }
+            int[] arr = builder.ids.get(i);
+            exact[i] = arr[Type.EXACT.ordinal()];
+            domain[i] = arr[Type.DOMAIN.ordinal()];
+            suffix[i] = arr[Type.SUFFIX.ordinal()];
+        }
+    }
+
+    public boolean isEmpty() {
+        return keys.length == 1;
+    }
+
+    /**
+     * @return min id of the rules matching the domain, or {@link #NO_MATCH}
+     */
+    public int minMatch(String input) {
+        int len = input.length();
+        int min = NO_MATCH;
+        int node = 0;
+        for (int d = 0; ; ++d) {
+            // the node represents the last d chars of the input
+            min = Math.min(min, suffix[node]);
+            if (d == len) {
+                min = Math.min(min, Math.min(exact[node], domain[node]));
+                break;
+            }
+            int dot = len - d - 1;
+            if (dot > 0 && input.charAt(dot) == '.') {
+                min = Math.min(min, domain[node]);
+            }
+            int idx = Arrays.binarySearch(keys[node], input.charAt(dot));
+            if (idx < 0) {
+                break;
+            }
+            node = next[node][idx];
+        }
+        return min;
+    }
+}
@@ -11,11 +11,12 @@ import io.vproxy.base.selector.SelectorEventLoop;
 import io.vproxy.base.socks.AddressType;
 import io.vproxy.base.util.*;
 import io.vproxy.base.util.callback.Callback;
+import io.vproxy.base.util.coll.LRUMap;
 import io.vproxy.base.util.nio.ByteArrayChannel;
 import io.vproxy.base.util.ringbuffer.SSLUtils;
-import io.vproxy.base.component.pool.ConnectionPool;
 import io.vproxy.base.component.pool.ConnectionPoolHandler;
 import io.vproxy.base.component.pool.PoolCallback;
+import io.vproxy.base.component.pool.ShardedConnectionPool;
 import io.vproxy.socks.Socks5ConnectorProvider;
 import io.vproxy.util.CoreUtils;
 import io.vproxy.vfd.IP;
@@ -99,9 +100,21 @@ public class WebSocksProxyAgentConnectorProvider implements Socks5ConnectorProvi
 
         @Override
         public ConnectableConnection provide(NetEventLoop loop) {
-            SvrHandleConnector connector = servers.get(alias).next(null/*we ignore the source because it's wrr*/);
-            if (connector == null) {
-                assert Logger.lowLevelDebug("no available remote server connector for now");
+            // the sharded pool only asks for connections to a specific server
+            return null;
+        }
+
+        @Override
+        public ConnectableConnection provide(NetEventLoop loop, IPPort target) {
+            SvrHandleConnector connector = null;
+            for (ServerGroup.ServerHandle h : servers.get(alias).getServerHandles()) {
+                if (h.healthy && h.server.equals(target)) {
+                    connector = h.makeConnector();
+                    break;
+                }
+            }
+            if (connector == null || !connector.isValid()) {
+                assert Logger.lowLevelDebug("remote server " + target + " is not available for now");
                 return null;
             }
             SharedData shared = (SharedData) connector.getData(); /*sharedData, see ConfigProcessor*/
@@ -639,32 +652,60 @@ public class WebSocksProxyAgentConnectorProvider implements Socks5ConnectorProvi
     private final Map<String, ServerGroup> servers;
     private final String user;
     private final String pass;
-    private final Map<String, Map<SelectorEventLoop, ConnectionPool>> pool;
+    private final Map<String, ShardedConnectionPool> pool;
+
+    private static final int PROXY_DECISION_CACHE_SIZE = 4096;
+    private static final String NO_PROXY = "";
+    // address:port => server alias or NO_PROXY
+    private final LRUMap<String, String> proxyDecisionCache = new LRUMap<>(PROXY_DECISION_CACHE_SIZE);
 
     public WebSocksProxyAgentConnectorProvider(ConfigProcessor config) {
         this.strictMode = config.isStrictMode();
-        this.proxyDomains = config.getDomains();
-        this.noProxyDomains = config.getNoProxyDomains();
-        this.httpsSniErasureDomains = config.getHttpsSniErasureDomains();
+        this.proxyDomains = compileDomainCheckers(config.getDomains());
+        this.noProxyDomains = compileDomainCheckers(config.getNoProxyDomains());
+        this.httpsSniErasureDomains = DomainChecker.compile(config.getHttpsSniErasureDomains());
         this.servers = config.getServers();
         this.user = config.getUser();
         this.pass = config.getPass();
 
         pool = new HashMap<>();
         for (String alias : config.getServers().keySet()) {
-            final String finalAlias = alias;
-            Map<SelectorEventLoop, ConnectionPool> poolMap = new HashMap<>();
-            pool.put(alias, poolMap);
-            for (NetEventLoop loop : config.workerLoopGroup.list()) {
-                poolMap.put(loop.getSelectorEventLoop(), new ConnectionPool(loop,
-                    new ConnectionPoolParams().setCapacity(config.getPoolSize()),
-                    params -> new WebSocksPoolHandler(finalAlias, params.poolCallback())
-                ));
-            }
+            // keep the pooled connections for each remote server on each worker loop
+            pool.put(alias, new ShardedConnectionPool("websocks-agent-" + alias,
+                new ConnectionPoolParams().setCapacity(config.getPoolSize()).setMinIdle(config.getPoolSize()),
+                params -> new WebSocksPoolHandler(alias, params.poolCallback())
+            ));
+        }
+    }
+
+    private static LinkedHashMap<String, List<DomainChecker>> compileDomainCheckers(LinkedHashMap<String, List<DomainChecker>> map) {
+        var ret = new LinkedHashMap<String, List<DomainChecker>>();
+        for (var entry : map.entrySet()) {
+            ret.put(entry.getKey(), DomainChecker.compile(entry.getValue()));
         }
+        return ret;
     }
 
     private String getProxy(String address, int port) {
+        String key = address + ":" + port;
+        String alias;
+        synchronized (proxyDecisionCache) {
+            alias = proxyDecisionCache.get(key);
+        }
+        if (alias == null) {
+            alias = getProxyNoCache(address, port);
+            if (alias == null) {
+                alias = NO_PROXY;
+            }
+            synchronized (proxyDecisionCache) {
+                proxyDecisionCache.put(key, alias);
+            }
+        }
+        //noinspection StringEquality
+        return alias == NO_PROXY ? null : alias;
+    }
+
+    private String getProxyNoCache(String address, int port) {
         for (Map.Entry<String, List<DomainChecker>> entry : noProxyDomains.entrySet()) {
             for (DomainChecker checker : entry.getValue()) {
                 // HERE, needProxy means "DO NOT need proxy"
@@ -723,21 +764,23 @@ public class WebSocksProxyAgentConnectorProvider implements Socks5ConnectorProvi
         // proxy the net flow using WebSocks
         Logger.alert("[PROXY] proxy the request to " + address + ":" + port + " via " + serverAlias);
 
-        // try to fetch an existing connection from pool
-        pool.get(serverAlias).get(loop.getSelectorEventLoop()).get(loop.getSelectorEventLoop(), conn -> {
+        // retrieve a remote server
+        SvrHandleConnector connector = servers.get(serverAlias).next(null/*we ignore the source because it's wrr*/);
+        if (connector == null) {
+            // no connectors for now
+            // the process is definitely cannot proceed
+            // we do not try direct connect here
+            // (because it's specified in config file that this domain requires proxy)
+            // just raise error
+            providedCallback.accept(null);
+            return;
+        }
+
+        // try to fetch an existing connection to the server from pool
+        pool.get(serverAlias).get(loop.getSelectorEventLoop(), connector.remote, conn -> {
             boolean isPooledConn = conn != null;
             if (conn == null) {
-                // retrieve a remote connection
-                SvrHandleConnector connector = servers.get(serverAlias).next(null/*we ignore the source because it's wrr*/);
-                if (connector == null) {
-                    // no connectors for now
-                    // the process is definitely cannot proceed
-                    // we do not try direct connect here
-                    // (because it's specified in config file that this domain requires proxy)
-                    // just raise error
-                    providedCallback.accept(null);
-                    return;
-                }
+                // make a new connection
                 try {
                     SharedData sharedData = (SharedData) connector.getData(); /*sharedData, see ConfigProcessor*/
                     if (sharedData.svr.useSSL()) {
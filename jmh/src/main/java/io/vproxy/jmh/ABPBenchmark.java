@@ -0,0 +1,77 @@
+package io.vproxy.jmh;
+
+import io.vproxy.vproxyx.websocks.ABP;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups per microsecond of a gfwlist-like rule list.<br>
+ * compiled: {@link ABP#block(String)}, rules are matched by a suffix trie and an Aho-Corasick automaton.<br>
+ * linear: {@link ABP#blockLinear(String)}, rules are checked one by one.<br>
+ * The inputs either match no rules or match whitelist rules, because matching blocking rules prints logs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ABPBenchmark {
+    private static final int INPUTS = 1024;
+
+    @Param({"compiled", "linear"})
+    public String matcher;
+    @Param({"500", "5000"})
+    public int rules;
+
+    private ABP abp;
+    private String[] inputs;
+    private int cursor = 0;
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(1234);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rules; ++i) {
+            switch (i % 10) {
+                case 0, 1, 2, 3 -> sb.append("||block").append(i).append(".com\n");
+                case 4, 5 -> sb.append(".suffix").append(i).append(".net\n");
+                case 6 -> sb.append("|http://exact").append(i).append(".org/path\n");
+                case 7 -> sb.append("keyword").append(i).append("\n");
+                case 8 -> sb.append("@@||allow").append(i).append(".cn\n");
+                default -> {
+                    if (i % 100 == 9) {
+                        sb.append("/^https?:\\/\\/[^\\/]+regex").append(i).append("\\.com/\n");
+                    } else {
+                        sb.append("@@|http://start").append(i).append("\n");
+                    }
+                }
+            }
+        }
+        abp = new ABP("jmh", false);
+        abp.addRule(sb.toString());
+
+        inputs = new String[INPUTS];
+        for (int i = 0; i < INPUTS; ++i) {
+            int n = rand.nextInt(rules);
+            inputs[i] = switch (i % 4) {
+                case 0 -> "www.allow" + (n / 10 * 10 + 8) + ".cn";
+                case 1 -> "start" + (n / 10 * 10 + 19) + ".example.com";
+                default -> "www.miss" + n + ".example.com";
+            };
+        }
+    }
+
+    @Benchmark
+    public boolean block() {
+        String input = inputs[cursor];
+        cursor = (cursor + 1) % INPUTS;
+        if (matcher.equals("compiled")) {
+            return abp.block(input);
+        } else {
+            return abp.blockLinear(input);
+        }
+    }
+}
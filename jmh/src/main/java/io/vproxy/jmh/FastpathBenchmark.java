@@ -0,0 +1,110 @@
+package io.vproxy.jmh;
+
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.Consts;
+import io.vproxy.vfd.IP;
+import io.vproxy.vfd.IPv4;
+import io.vproxy.vfd.MacAddress;
+import io.vproxy.vpacket.*;
+import io.vproxy.vswitch.PacketBuffer;
+import io.vproxy.vswitch.iface.Iface;
+import io.vproxy.vswitch.stack.conntrack.Fastpath;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packets per second of forming the ethernet packet for an ip packet received into a buffer.<br>
+ * fastpath: {@link Fastpath#validateAndSetInto} writes the l2 header into the headroom of the buffer.<br>
+ * slowpath: an {@link EthernetPacket} object is built for the ip packet and the whole packet is serialized again,
+ * which is what happens when the l2 header cannot be written in place.<br>
+ * The score is packets per microsecond.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FastpathBenchmark {
+    private static final int VRF = 1;
+    private static final int HEADROOM = 14;
+
+    @Param({"slowpath", "fastpath"})
+    public String path;
+
+    @Param({"64", "1400"})
+    public int payload;
+
+    private ByteArray rxBuf;
+    private Fastpath fastpath;
+
+    @Setup
+    public void setup() {
+        var udp = new UdpPacket();
+        udp.setSrcPort(53);
+        udp.setDstPort(51234);
+        udp.setLength(8 + payload);
+        udp.setData(new PacketBytes(ByteArray.allocateInitZero(payload)));
+
+        var ipv4 = new Ipv4Packet();
+        ipv4.setSrc((IPv4) IP.from("10.0.0.1"));
+        ipv4.setDst((IPv4) IP.from("10.0.0.2"));
+        var udpRaw = udp.buildIPv4UdpPacket(ipv4, AbstractPacket.FLAG_CHECKSUM_UNNECESSARY);
+        ipv4.setVersion(4);
+        ipv4.setIhl(5);
+        ipv4.setTotalLength(20 + udpRaw.length());
+        ipv4.setTtl(64);
+        ipv4.setProtocol(Consts.IP_PROTOCOL_UDP);
+        ipv4.setOptions(ByteArray.allocate(0));
+        ipv4.setPacket(udp);
+
+        byte[] ipBytes = ipv4.getRawPacket(0).toJavaArray();
+        byte[] buf = new byte[HEADROOM + ipBytes.length];
+        System.arraycopy(ipBytes, 0, buf, HEADROOM, ipBytes.length);
+        rxBuf = ByteArray.from(buf);
+
+        var output = new Iface() {
+            @Override
+            public void sendPacket(PacketBuffer pkb) {
+            }
+
+            @Override
+            public int getLocalSideVrf(int hint) {
+                return VRF;
+            }
+
+            @Override
+            public int getOverhead() {
+                return 0;
+            }
+
+            @Override
+            public String name() {
+                return "bench";
+            }
+        };
+        fastpath = new Fastpath(output, VRF, new MacAddress("00:00:00:00:00:01"), new MacAddress("00:00:00:00:00:02"));
+    }
+
+    @Benchmark
+    public ByteArray output() {
+        var pkb = PacketBuffer.fromIpBytes(null, VRF, rxBuf, HEADROOM, 0);
+        String err = pkb.init();
+        if (err != null) {
+            throw new IllegalStateException(err);
+        }
+        if (path.equals("fastpath")) {
+            fastpath.validateAndSetInto(null, pkb);
+            return pkb.pkt.getRawPacket(AbstractPacket.FLAG_CHECKSUM_UNNECESSARY);
+        }
+        var ip = pkb.ipPkt;
+        ip.clearAllRawPackets();
+        var ether = new EthernetPacket();
+        ether.setDst(fastpath.remote);
+        ether.setSrc(fastpath.local);
+        ether.setType(Consts.ETHER_TYPE_IPv4);
+        ether.setPacket(ip);
+        return ether.getRawPacket(AbstractPacket.FLAG_CHECKSUM_UNNECESSARY);
+    }
+}
@@ -0,0 +1,86 @@
+package io.vproxy.jmh;
+
+import io.vproxy.dep.com.twitter.hpack.hpack.Decoder;
+import io.vproxy.dep.com.twitter.hpack.hpack.Encoder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HPackBenchmark {
+    private static final int TABLE_SIZE = 4096;
+    private static final int MAX_HEADER_SIZE = 8192;
+    private static final String[][] HEADERS = {
+        {":method", "GET"},
+        {":scheme", "https"},
+        {":authority", "www.example.com"},
+        {":path", "/api/v1/users/123/profile?fields=name,email"},
+        {"user-agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko)"},
+        {"accept", "application/json, text/plain, */*"},
+        {"accept-encoding", "gzip, deflate, br"},
+        {"accept-language", "en-US,en;q=0.9"},
+        {"cookie", "session=0123456789abcdef0123456789abcdef; theme=dark"},
+        {"x-request-id", "7f9c2ba4-e88f-4f4a-a3a2-0cfe7d0d6b1e"},
+    };
+
+    private byte[][] names;
+    private byte[][] values;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+
+    // the connection level encoder and decoder, both sides have the same dynamic table
+    private Encoder encoder;
+    private Decoder decoder;
+    // encoded by a new encoder, so it only refers to the static table
+    private byte[] coldBlock;
+
+    @Setup
+    public void setup() throws IOException {
+        names = new byte[HEADERS.length][];
+        values = new byte[HEADERS.length][];
+        for (int i = 0; i < HEADERS.length; ++i) {
+            names[i] = HEADERS[i][0].getBytes(StandardCharsets.UTF_8);
+            values[i] = HEADERS[i][1].getBytes(StandardCharsets.UTF_8);
+        }
+        encoder = new Encoder(TABLE_SIZE);
+        decoder = new Decoder(MAX_HEADER_SIZE, TABLE_SIZE);
+        coldBlock = encode(new Encoder(TABLE_SIZE));
+    }
+
+    private byte[] encode(Encoder encoder) throws IOException {
+        out.reset();
+        for (int i = 0; i < names.length; ++i) {
+            encoder.encodeHeader(out, names[i], values[i], false);
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encodeCold() throws IOException {
+        return encode(new Encoder(TABLE_SIZE));
+    }
+
+    @Benchmark
+    public void decodeCold(Blackhole bh) throws IOException {
+        var decoder = new Decoder(MAX_HEADER_SIZE, TABLE_SIZE);
+        decoder.decode(new ByteArrayInputStream(coldBlock), (name, value, sensitive) -> bh.consume(value));
+        bh.consume(decoder.endHeaderBlock());
+    }
+
+    // headers of following requests on the same connection are mostly indexed
+    @Benchmark
+    public void encodeDecodeWarm(Blackhole bh) throws IOException {
+        byte[] block = encode(encoder);
+        decoder.decode(new ByteArrayInputStream(block), (name, value, sensitive) -> bh.consume(value));
+        bh.consume(decoder.endHeaderBlock());
+    }
+}
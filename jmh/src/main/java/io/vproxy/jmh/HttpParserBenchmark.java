@@ -0,0 +1,97 @@
+package io.vproxy.jmh;
+
+import io.vproxy.base.http.HttpReqParser;
+import io.vproxy.base.http.HttpRespParser;
+import io.vproxy.base.processor.Processor;
+import io.vproxy.base.processor.http1.HttpContext;
+import io.vproxy.base.processor.http1.HttpProcessor;
+import io.vproxy.base.processor.http1.HttpSubContext;
+import io.vproxy.base.processor.http1.entity.Request;
+import io.vproxy.base.processor.http1.entity.Response;
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.vfd.IP;
+import io.vproxy.vfd.IPPort;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpParserBenchmark {
+    private static final byte[] REQUEST = ("" +
+        "POST /api/v1/users/123/profile?fields=name,email HTTP/1.1\r\n" +
+        "Host: www.example.com\r\n" +
+        "User-Agent: Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko)\r\n" +
+        "Accept: application/json, text/plain, */*\r\n" +
+        "Accept-Encoding: gzip, deflate, br\r\n" +
+        "Accept-Language: en-US,en;q=0.9\r\n" +
+        "Cookie: session=0123456789abcdef0123456789abcdef; theme=dark\r\n" +
+        "Content-Type: application/json\r\n" +
+        "Content-Length: 27\r\n" +
+        "\r\n" +
+        "{\"name\":\"vproxy\",\"id\":123}\n").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CHUNKED_RESPONSE = ("" +
+        "HTTP/1.1 200 OK\r\n" +
+        "Server: vproxy\r\n" +
+        "Content-Type: text/plain\r\n" +
+        "Transfer-Encoding: chunked\r\n" +
+        "\r\n" +
+        "10\r\n" +
+        "0123456789abcdef\r\n" +
+        "5\r\n" +
+        "hello\r\n" +
+        "0\r\n" +
+        "\r\n").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] REQUEST_HEAD = ("" +
+        "GET /hello/url HTTP/1.1\r\n" +
+        "Host: www.example.com\r\n" +
+        "User-Agent: curl/8.0.0\r\n" +
+        "Accept: */*\r\n" +
+        "\r\n").getBytes(StandardCharsets.UTF_8);
+
+    private ByteArray request;
+    private ByteArray chunkedResponse;
+    private ByteArray requestHead;
+    private HttpProcessor processor;
+    private HttpContext ctx;
+
+    @Setup
+    public void setup() {
+        request = ByteArray.from(REQUEST);
+        chunkedResponse = ByteArray.from(CHUNKED_RESPONSE);
+        requestHead = ByteArray.from(REQUEST_HEAD);
+        processor = new HttpProcessor();
+        ctx = processor.init(new Processor.ContextInitParams(
+            new IPPort(IP.from(new byte[]{1, 2, 3, 4}), 1122)));
+    }
+
+    @Benchmark
+    public Request parseRequest() {
+        var parser = new HttpReqParser();
+        if (parser.feed(request.toFullChannel()) != 0) {
+            throw new IllegalStateException(parser.getErrorMessage());
+        }
+        return parser.getResult();
+    }
+
+    @Benchmark
+    public Response parseChunkedResponse() {
+        var parser = new HttpRespParser();
+        if (parser.feed(chunkedResponse.toFullChannel()) != 0) {
+            throw new IllegalStateException(parser.getErrorMessage());
+        }
+        return parser.getResult();
+    }
+
+    // the frontend sub context parses the headers and adds x-forwarded-for etc.
+    @Benchmark
+    public ByteArray subContextFrontendHeaders() throws Exception {
+        HttpSubContext front = processor.initSub(new Processor.SubContextInitParams<>(ctx, 0, null));
+        return front.unittest_feed(requestHead);
+    }
+}
@@ -0,0 +1,98 @@
+package io.vproxy.jmh;
+
+import io.vproxy.base.selector.wrap.kcp.Kcp;
+import io.vproxy.base.selector.wrap.kcp.KCPHandler;
+import io.vproxy.base.selector.wrap.kcp.mock.ByteBuf;
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.nio.ByteArrayChannel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One round of the kcp input/flush loop between two in-memory endpoints:
+ * send, flush, input on the peer, ack, and receive.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KcpBenchmark {
+    @Param({"128", "16384"})
+    public int payload;
+
+    private Kcp sender;
+    private Kcp receiver;
+    private final ArrayDeque<ByteArray> toSender = new ArrayDeque<>();
+    private final ArrayDeque<ByteArray> toReceiver = new ArrayDeque<>();
+    private final List<ByteBuf> received = new ArrayList<>();
+    private ByteArray data;
+    private long clock = 0;
+
+    @Setup
+    public void setup() {
+        sender = newKcp(toReceiver);
+        receiver = newKcp(toSender);
+        data = ByteArray.allocateInitZero(payload);
+    }
+
+    @TearDown
+    public void tearDown() {
+        sender.release();
+        receiver.release();
+    }
+
+    // configured the same way as KCPHandler
+    private static Kcp newKcp(ArrayDeque<ByteArray> wire) {
+        var opts = new KCPHandler.KCPOptions();
+        var kcp = new Kcp(0, (buf, k) -> wire.add(buf.chnl.readAll().copy()));
+        kcp.setStream(true);
+        kcp.nodelay(opts.nodelay, opts.interval, opts.resend, opts.nc);
+        kcp.wndsize(opts.sndWnd, opts.rcvWnd);
+        kcp.setMtu(opts.mtu);
+        kcp.setRxMinrto(opts.rxMinRto);
+        kcp.setNocwnd(true);
+        return kcp;
+    }
+
+    private static void deliver(ArrayDeque<ByteArray> wire, Kcp kcp) {
+        ByteArray packet;
+        while ((packet = wire.poll()) != null) {
+            int ret = kcp.input(new ByteBuf(ByteArrayChannel.fromFull(packet)));
+            if (ret < 0) {
+                throw new IllegalStateException("kcp input failed: " + ret);
+            }
+        }
+    }
+
+    @Benchmark
+    public int roundTrip() {
+        int ret = sender.send(new ByteBuf(ByteArrayChannel.fromFull(data)));
+        if (ret < 0) {
+            throw new IllegalStateException("kcp send failed: " + ret);
+        }
+        clock += 10;
+        sender.update(clock);
+        deliver(toReceiver, receiver);
+        receiver.update(clock);
+        deliver(toSender, sender);
+
+        int total = 0;
+        while (receiver.canRecv()) {
+            received.clear();
+            if (receiver.recv(received) <= 0) {
+                break;
+            }
+            for (var b : received) {
+                total += b.readableBytes();
+                b.release();
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,82 @@
+package io.vproxy.jmh;
+
+import io.vproxy.base.util.Network;
+import io.vproxy.base.util.Networks;
+import io.vproxy.vfd.IP;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NetworksBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"16", "1000", "100000"})
+    public int rules;
+
+    private Networks<R> v4;
+    private Networks<R> v6;
+    private IP[] v4Queries;
+    private IP[] v6Queries;
+    private int idx = 0;
+
+    private static final class R implements Networks.Rule {
+    }
+
+    @Setup
+    public void setup() {
+        var rand = new Random(42);
+        Map<Network, R> v4Rules = new HashMap<>();
+        Map<Network, R> v6Rules = new HashMap<>();
+        for (int i = 0; i < rules; ++i) {
+            byte[] v4bytes = new byte[4];
+            rand.nextBytes(v4bytes);
+            v4Rules.put(network(v4bytes, 8 + rand.nextInt(25)), new R());
+            byte[] v6bytes = new byte[16];
+            rand.nextBytes(v6bytes);
+            v6Rules.put(network(v6bytes, 16 + rand.nextInt(113)), new R());
+        }
+        v4 = new Networks<>();
+        v4.addAll(v4Rules);
+        v6 = new Networks<>();
+        v6.addAll(v6Rules);
+        v4Queries = new IP[QUERIES];
+        v6Queries = new IP[QUERIES];
+        for (int i = 0; i < QUERIES; ++i) {
+            v4Queries[i] = IP.from(IP.ipv4Int2Bytes(rand.nextInt()));
+            byte[] v6bytes = new byte[16];
+            rand.nextBytes(v6bytes);
+            v6Queries[i] = IP.from(v6bytes);
+        }
+    }
+
+    private static Network network(byte[] ip, int mask) {
+        for (int i = 0; i < ip.length; ++i) {
+            int remaining = mask - i * 8;
+            if (remaining <= 0) {
+                ip[i] = 0;
+            } else if (remaining < 8) {
+                ip[i] &= (byte) (0xff << (8 - remaining));
+            }
+        }
+        return Network.from(IP.from(ip).formatToIPString() + "/" + mask);
+    }
+
+    @Benchmark
+    public Object lookupV4() {
+        return v4.lookup(v4Queries[idx++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public Object lookupV6() {
+        return v6.lookup(v6Queries[idx++ & (QUERIES - 1)]);
+    }
+}
@@ -0,0 +1,116 @@
+package io.vproxy.jmh;
+
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.commons.graph.GraphBuilder;
+import io.vproxy.vswitch.PacketBuffer;
+import io.vproxy.vswitch.node.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packets per second of the scalar and vector mode of {@link NodeGraphScheduler}.<br>
+ * The graph is a chain of nodes, each node looks up its own table with bytes of the packet,
+ * which simulates nodes with their own code and data, e.g. dev-input, ethernet-input, ip-input ...<br>
+ * The score is packets per microsecond.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NodeGraphSchedulerBenchmark {
+    private static final int BATCH = PacketVector.MAX_SIZE;
+    private static final int NODES = 8;
+
+    @Param({"false", "true"})
+    public boolean vectorMode;
+
+    private NodeGraphScheduler scheduler;
+    private Node first;
+    private final List<PacketBuffer> batch = new ArrayList<>(BATCH);
+    private long handled = 0;
+
+    private static final class ChainNode extends Node {
+        private final String nextName;
+        private final NodeEgress next;
+        private final int[] table = new int[16384];
+
+        ChainNode(int idx, Random rand) {
+            super("chain-" + idx);
+            this.nextName = idx + 1 < NODES ? "chain-" + (idx + 1) : null;
+            this.next = new NodeEgress("next");
+            for (int i = 0; i < table.length; ++i) {
+                table[i] = rand.nextInt();
+            }
+        }
+
+        @Override
+        protected void initGraph(GraphBuilder<Node> builder) {
+            if (nextName != null) {
+                builder.addEdge(name, nextName, "next", DEFAULT_EDGE_DISTANCE);
+            }
+        }
+
+        @Override
+        protected void initNode() {
+            fillEdges(next);
+        }
+
+        @Override
+        protected HandleResult preHandle(PacketBuffer pkb) {
+            return HandleResult.PASS;
+        }
+
+        @Override
+        protected HandleResult handle(PacketBuffer pkb, NodeGraphScheduler scheduler) {
+            var buf = pkb.pktBuf;
+            int key = (buf.uint8(0) << 6) ^ (buf.uint8(1) << 3) ^ buf.uint8(2);
+            pkb.mask ^= table[key & (table.length - 1)];
+            if (nextName == null) {
+                return HandleResult.STOLEN;
+            }
+            return _returnnext(pkb, next);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        var rand = new Random(42);
+        var graph = new NodeGraph();
+        for (int i = 0; i < NODES; ++i) {
+            graph.addNode(new ChainNode(i, rand));
+        }
+        graph.initGraph();
+        graph.initNode();
+        first = graph.getNode("chain-0");
+
+        scheduler = new NodeGraphScheduler(graph) {
+            @Override
+            protected void packetDroppedOrStolen(PacketBuffer pkb) {
+                ++handled;
+            }
+        };
+        scheduler.setVectorMode(vectorMode);
+
+        for (int i = 0; i < BATCH; ++i) {
+            byte[] bytes = new byte[64];
+            rand.nextBytes(bytes);
+            batch.add(PacketBuffer.fromEtherBytes(null, 0, ByteArray.from(bytes), 0, 0));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long schedule() {
+        for (var pkb : batch) {
+            pkb.next = first;
+        }
+        scheduler.schedule(batch);
+        return handled;
+    }
+}
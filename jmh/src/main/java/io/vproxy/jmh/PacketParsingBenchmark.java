@@ -0,0 +1,101 @@
+package io.vproxy.jmh;
+
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.Consts;
+import io.vproxy.vfd.IP;
+import io.vproxy.vfd.IPv4;
+import io.vproxy.vpacket.AbstractPacket;
+import io.vproxy.vpacket.Ipv4Packet;
+import io.vproxy.vpacket.PacketDataBuffer;
+import io.vproxy.vpacket.TcpPacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PacketParsingBenchmark {
+    @Param({"64", "1400"})
+    public int payload;
+
+    private byte[] ipv4Bytes;
+    private byte[] tcpBytes;
+
+    @Setup
+    public void setup() {
+        var tcp = new TcpPacket();
+        tcp.setSrcPort(51234);
+        tcp.setDstPort(443);
+        tcp.setSeqNum(0x12345678L);
+        tcp.setAckNum(0x9abcdef0L);
+        tcp.setFlags(Consts.TCP_FLAGS_ACK | Consts.TCP_FLAGS_PSH);
+        tcp.setWindow(512);
+        var options = new ArrayList<TcpPacket.TcpOption>();
+        var mss = new TcpPacket.TcpOption(tcp);
+        mss.setKind(Consts.TCP_OPTION_MSS);
+        mss.setLength(4);
+        mss.setData(ByteArray.allocate(2).int16(0, 1460));
+        options.add(mss);
+        var nop = new TcpPacket.TcpOption(tcp);
+        nop.setKind(Consts.TCP_OPTION_NOP);
+        options.add(nop);
+        var wscale = new TcpPacket.TcpOption(tcp);
+        wscale.setKind(Consts.TCP_OPTION_WINDOW_SCALE);
+        wscale.setLength(3);
+        wscale.setData(ByteArray.from((byte) 7));
+        options.add(wscale);
+        tcp.setOptions(options);
+        tcp.setData(ByteArray.allocateInitZero(payload));
+
+        var ipv4 = new Ipv4Packet();
+        ipv4.setSrc((IPv4) IP.from("10.0.0.1"));
+        ipv4.setDst((IPv4) IP.from("10.0.0.2"));
+        var tcpRaw = tcp.buildIPv4TcpPacket(ipv4, AbstractPacket.FLAG_CHECKSUM_UNNECESSARY);
+        ipv4.setVersion(4);
+        ipv4.setIhl(5);
+        ipv4.setTotalLength(20 + tcpRaw.length());
+        ipv4.setTtl(64);
+        ipv4.setProtocol(Consts.IP_PROTOCOL_TCP);
+        ipv4.setOptions(ByteArray.allocate(0));
+        ipv4.setPacket(tcp);
+
+        ipv4Bytes = ipv4.getRawPacket(0).toJavaArray();
+        tcpBytes = tcpRaw.toJavaArray();
+    }
+
+    @Benchmark
+    public Ipv4Packet ipv4Full() {
+        var ipv4 = new Ipv4Packet();
+        String err = ipv4.from(new PacketDataBuffer(ByteArray.from(ipv4Bytes)));
+        if (err != null) {
+            throw new IllegalStateException(err);
+        }
+        return ipv4;
+    }
+
+    // only the ip header is parsed, which is what the switch does for most packets
+    @Benchmark
+    public Ipv4Packet ipv4Partial() {
+        var ipv4 = new Ipv4Packet();
+        String err = ipv4.initPartial(new PacketDataBuffer(ByteArray.from(ipv4Bytes)));
+        if (err != null) {
+            throw new IllegalStateException(err);
+        }
+        return ipv4;
+    }
+
+    @Benchmark
+    public TcpPacket tcp() {
+        var tcp = new TcpPacket();
+        String err = tcp.from(new PacketDataBuffer(ByteArray.from(tcpBytes)));
+        if (err != null) {
+            throw new IllegalStateException(err);
+        }
+        return tcp;
+    }
+}
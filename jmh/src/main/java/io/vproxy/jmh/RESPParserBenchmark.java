@@ -0,0 +1,61 @@
+package io.vproxy.jmh;
+
+import io.vproxy.base.redis.RESPParser;
+import io.vproxy.base.redis.entity.RESP;
+import io.vproxy.base.util.ringbuffer.SimpleRingBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RESPParserBenchmark {
+    private static final int MAX_LEN = 16384;
+    private static final byte[] SET_COMMAND = ("" +
+        "*3\r\n" +
+        "$3\r\nSET\r\n" +
+        "$17\r\nuser:1234:session\r\n" +
+        "$64\r\n0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef\r\n"
+    ).getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MGET_REPLY = ("" +
+        "*4\r\n" +
+        "$5\r\nalpha\r\n" +
+        "$-1\r\n" +
+        ":1024\r\n" +
+        "+OK\r\n"
+    ).getBytes(StandardCharsets.UTF_8);
+
+    private ByteBuffer setCommand;
+    private ByteBuffer mgetReply;
+
+    @Setup
+    public void setup() {
+        setCommand = ByteBuffer.wrap(SET_COMMAND);
+        mgetReply = ByteBuffer.wrap(MGET_REPLY);
+    }
+
+    private static RESP parse(ByteBuffer bytes) {
+        bytes.limit(bytes.capacity()).position(0);
+        var parser = new RESPParser(MAX_LEN);
+        if (parser.feed(SimpleRingBuffer.wrap(bytes)) != 0) {
+            throw new IllegalStateException(parser.getErrorMessage());
+        }
+        return parser.getResult();
+    }
+
+    @Benchmark
+    public RESP command() {
+        return parse(setCommand);
+    }
+
+    @Benchmark
+    public RESP reply() {
+        return parse(mgetReply);
+    }
+}
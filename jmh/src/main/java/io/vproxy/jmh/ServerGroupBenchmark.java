@@ -0,0 +1,67 @@
+package io.vproxy.jmh;
+
+import io.vproxy.base.component.check.HealthCheckConfig;
+import io.vproxy.base.component.elgroup.EventLoopGroup;
+import io.vproxy.base.component.svrgroup.Method;
+import io.vproxy.base.component.svrgroup.ServerGroup;
+import io.vproxy.base.connection.Connector;
+import io.vproxy.vfd.IP;
+import io.vproxy.vfd.IPPort;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServerGroupBenchmark {
+    private static final int SOURCES = 1024;
+
+    @Param({"wrr", "wlc", "source", "maglev", "ketama", "p2c"})
+    public Method method;
+    @Param({"4", "64"})
+    public int servers;
+
+    private EventLoopGroup elg;
+    private ServerGroup group;
+    private IPPort[] sources;
+    private int cursor = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        // no event loop in the group, so health check clients are never started
+        elg = new EventLoopGroup("jmh-elg");
+        group = new ServerGroup("jmh-sg", elg,
+            new HealthCheckConfig(1000, 24 * 60 * 60 * 1000, 1, 1), method);
+        Random rand = new Random(1234);
+        for (int i = 0; i < servers; ++i) {
+            var h = group.add("s" + i,
+                new IPPort(IP.from(new byte[]{10, 0, (byte) (i >> 8), (byte) i}), 80),
+                1 + rand.nextInt(10));
+            h.healthy = true;
+        }
+        sources = new IPPort[SOURCES];
+        for (int i = 0; i < SOURCES; ++i) {
+            byte[] ip = new byte[4];
+            rand.nextBytes(ip);
+            sources[i] = new IPPort(IP.from(ip), 1024 + rand.nextInt(60000));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        group.destroy();
+        elg.close();
+    }
+
+    @Benchmark
+    public Connector next() {
+        IPPort source = sources[cursor];
+        cursor = (cursor + 1) & (SOURCES - 1);
+        return group.next(source);
+    }
+}
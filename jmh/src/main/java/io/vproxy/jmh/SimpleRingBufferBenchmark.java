@@ -0,0 +1,64 @@
+package io.vproxy.jmh;
+
+import io.vproxy.base.util.nio.ByteArrayChannel;
+import io.vproxy.base.util.ringbuffer.SimpleRingBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimpleRingBufferBenchmark {
+    private static final int CAPACITY = 16384;
+
+    @Param({"64", "1024", "8192"})
+    public int chunk;
+    @Param({"true", "false"})
+    public boolean direct;
+    // keep half of a chunk in the buffer, so the cursors keep wrapping around the capacity
+    @Param({"false", "true"})
+    public boolean wrapping;
+
+    private SimpleRingBuffer buf;
+    private ByteArrayChannel src;
+    private ByteArrayChannel dst;
+
+    @Setup
+    public void setup() {
+        buf = direct ? SimpleRingBuffer.allocateDirect(CAPACITY) : SimpleRingBuffer.allocate(CAPACITY);
+        byte[] bytes = new byte[chunk];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) i;
+        }
+        src = ByteArrayChannel.fromFull(bytes);
+        dst = ByteArrayChannel.fromEmpty(chunk);
+        if (wrapping) {
+            buf.storeBytesFrom(ByteArrayChannel.fromFull(new byte[chunk / 2]));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        buf.clean();
+    }
+
+    @Benchmark
+    public int storeAndRetrieve() {
+        src.reset();
+        dst.reset();
+        int n = buf.storeBytesFrom(src);
+        return n + buf.writeTo(dst);
+    }
+
+    @Benchmark
+    public int storeAndRetrieveVectored() throws Exception {
+        src.reset();
+        dst.reset();
+        int n = buf.storeBytesFromVectored(src);
+        return n + buf.writeToVectored(dst);
+    }
+}
@@ -99,7 +99,7 @@ interface PNIPosixNative {
     void bindIPv4(int fd, int addrHostOrder, int port) throws IOException;
 
     @LinkerOption.Critical
-    void bindIPv6(int fd, String fullAddr, int port) throws IOException;
+    void bindIPv6(int fd, int addr0, int addr1, int addr2, int addr3, int port) throws IOException;
 
     @LinkerOption.Critical
     void bindUnixDomainSocket(int fd, String path) throws IOException;
@@ -111,7 +111,7 @@ interface PNIPosixNative {
     void connectIPv4(int fd, int addrHostOrder, int port) throws IOException;
 
     @LinkerOption.Critical
-    void connectIPv6(int fd, String fullAddr, int port) throws IOException;
+    void connectIPv6(int fd, int addr0, int addr1, int addr2, int addr3, int port) throws IOException;
 
     @LinkerOption.Critical
     void connectUDS(int fd, String sock) throws IOException;
@@ -148,11 +148,23 @@ interface PNIPosixNative {
     @LinkerOption.Critical
     int write(int fd, @Raw ByteBuffer directBuffer, int off, int len) throws IOException;
 
+    @LinkerOption.Critical
+    int readv(int fd, MemorySegment iov, int iovcnt) throws IOException;
+
+    @LinkerOption.Critical
+    int writev(int fd, MemorySegment iov, int iovcnt) throws IOException;
+
+    @LinkerOption.Critical
+    void pipe2(int[] fds) throws IOException;
+
+    @LinkerOption.Critical
+    int splice(int fdIn, int fdOut, int len) throws IOException;
+
     @LinkerOption.Critical
     int sendtoIPv4(int fd, @Raw ByteBuffer directBuffer, int off, int len, int addrHostOrder, int port) throws IOException;
 
     @LinkerOption.Critical
-    int sendtoIPv6(int fd, @Raw ByteBuffer directBuffer, int off, int len, String fullAddr, int port) throws IOException;
+    int sendtoIPv6(int fd, @Raw ByteBuffer directBuffer, int off, int len, int addr0, int addr1, int addr2, int addr3, int port) throws IOException;
 
     @LinkerOption.Critical
     PNIUDPRecvResultIPv4ST recvfromIPv4(int fd, @Raw ByteBuffer directBuffer, int off, int len) throws IOException;
@@ -160,6 +172,15 @@ interface PNIPosixNative {
     @LinkerOption.Critical
     PNIUDPRecvResultIPv6ST recvfromIPv6(int fd, @Raw ByteBuffer directBuffer, int off, int len) throws IOException;
 
+    @LinkerOption.Critical
+    boolean recvfromIPv6Bin(int fd, @Raw ByteBuffer directBuffer, int off, int len, PNIUDPRecvResultIPv6BinST result) throws IOException;
+
+    @LinkerOption.Critical
+    int recvmmsg(int fd, @Raw ByteBuffer directBuffer, int headroom, int slotLen, @Raw ByteBuffer meta, int vlen, boolean ipv4) throws IOException;
+
+    @LinkerOption.Critical
+    int sendmmsg(int fd, @Raw ByteBuffer directBuffer, int headroom, int slotLen, @Raw ByteBuffer meta, int vlen, boolean ipv4) throws IOException;
+
     @LinkerOption.Critical
     long currentTimeMillis();
 
@@ -202,6 +223,19 @@ class PNIUDPRecvResultIPv6ST {
     @Unsigned int len;
 }
 
+@SuppressWarnings("unused")
+@Struct
+@AlwaysAligned
+@Name("UDPRecvResultIPv6Bin_st")
+class PNIUDPRecvResultIPv6BinST {
+    @Unsigned int ip0;
+    @Unsigned int ip1;
+    @Unsigned int ip2;
+    @Unsigned int ip3;
+    @Unsigned short port;
+    @Unsigned int len;
+}
+
 @SuppressWarnings("unused")
 @Struct
 @AlwaysAligned
@@ -0,0 +1,83 @@
+package io.vproxy.poc;
+
+import io.vproxy.vfd.DatagramBatch;
+import io.vproxy.vfd.DatagramFD;
+import io.vproxy.vfd.FDProvider;
+import io.vproxy.vfd.IPPort;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compare packets per second of sending/receiving datagrams one by one and in batch.<br>
+ * Run with -Dvfd=posix to use recvmmsg/sendmmsg.
+ */
+public class DatagramBatchBenchmark {
+    private static final int PAYLOAD_LEN = 64;
+    private static final int BATCH = 64;
+    private static final long DURATION_MILLIS = 5_000;
+
+    public static void main(String[] args) throws IOException {
+        IPPort addr = new IPPort("127.0.0.1", 18089);
+        try (DatagramFD server = FDProvider.get().openDatagramFD();
+             DatagramFD client = FDProvider.get().openDatagramFD()) {
+            server.configureBlocking(false);
+            server.bind(addr);
+            client.configureBlocking(false);
+
+            System.out.println("fds: " + FDProvider.get().getProvided());
+            // warm up
+            single(server, client, addr, 1_000);
+            batch(server, client, addr, 1_000);
+
+            long singlePPS = single(server, client, addr, DURATION_MILLIS);
+            System.out.println("one by one: " + singlePPS + " pps");
+            long batchPPS = batch(server, client, addr, DURATION_MILLIS);
+            System.out.println("batch(" + BATCH + "): " + batchPPS + " pps");
+        }
+    }
+
+    private static long single(DatagramFD server, DatagramFD client, IPPort addr, long duration) throws IOException {
+        ByteBuffer snd = ByteBuffer.allocateDirect(PAYLOAD_LEN);
+        ByteBuffer rcv = ByteBuffer.allocateDirect(2048);
+        long received = 0;
+        long begin = System.currentTimeMillis();
+        while (System.currentTimeMillis() - begin < duration) {
+            for (int i = 0; i < BATCH; ++i) {
+                snd.limit(PAYLOAD_LEN).position(0);
+                client.send(snd, addr);
+            }
+            while (true) {
+                rcv.limit(rcv.capacity()).position(0);
+                if (server.receive(rcv) == null) {
+                    break;
+                }
+                ++received;
+            }
+        }
+        return received * 1000 / (System.currentTimeMillis() - begin);
+    }
+
+    private static long batch(DatagramFD server, DatagramFD client, IPPort addr, long duration) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocateDirect(PAYLOAD_LEN);
+        DatagramBatch snd = new DatagramBatch(BATCH, PAYLOAD_LEN);
+        for (int i = 0; i < BATCH; ++i) {
+            payload.limit(PAYLOAD_LEN).position(0);
+            snd.add(payload, addr);
+        }
+        DatagramBatch rcv = new DatagramBatch(BATCH, 2048);
+        long received = 0;
+        long begin = System.currentTimeMillis();
+        while (System.currentTimeMillis() - begin < duration) {
+            client.sendBatch(snd);
+            while (true) {
+                int n = server.receiveBatch(rcv);
+                received += n;
+                if (n < rcv.slots) {
+                    break;
+                }
+            }
+        }
+        return received * 1000 / (System.currentTimeMillis() - begin);
+    }
+}
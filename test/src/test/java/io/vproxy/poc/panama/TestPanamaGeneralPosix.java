@@ -5,12 +5,14 @@ import io.vproxy.base.util.OS;
 import io.vproxy.base.util.Utils;
 import io.vproxy.base.util.direct.DirectByteBuffer;
 import io.vproxy.base.util.direct.DirectMemoryUtils;
+import io.vproxy.pni.Allocator;
 import io.vproxy.vfd.IP;
 import io.vproxy.vfd.IPPort;
 import io.vproxy.vfd.TapInfo;
 import io.vproxy.vfd.UDSPath;
 import io.vproxy.vfd.posix.AEFiredEvent;
 import io.vproxy.vfd.posix.GeneralPosix;
+import io.vproxy.vfd.posix.UDPRecvResultIPv6BinST;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -251,7 +253,7 @@ public class TestPanamaGeneralPosix {
         var fd = posix.createIPv6TcpFD();
         deferClose.add(fd);
 
-        posix.bindIPv6(fd, "::1", 29999);
+        posix.bindIPv6(fd, IP.fromIPv6("::1"), 29999);
     }
 
     @Test
@@ -267,7 +269,7 @@ public class TestPanamaGeneralPosix {
         var fd = posix.createIPv6UdpFD();
         deferClose.add(fd);
 
-        posix.bindIPv6(fd, "::1", 29999);
+        posix.bindIPv6(fd, IP.fromIPv6("::1"), 29999);
     }
 
     @Test
@@ -277,13 +279,13 @@ public class TestPanamaGeneralPosix {
         posix.bindIPv4(fd, IP.ipv4Bytes2Int(IP.from("127.0.0.1").getAddress()), 29999);
         fd = posix.createIPv6TcpFD();
         deferClose.add(fd);
-        posix.bindIPv6(fd, "::1", 29999);
+        posix.bindIPv6(fd, IP.fromIPv6("::1"), 29999);
         fd = posix.createIPv4UdpFD();
         deferClose.add(fd);
         posix.bindIPv4(fd, IP.ipv4Bytes2Int(IP.from("127.0.0.1").getAddress()), 29999);
         fd = posix.createIPv6UdpFD();
         deferClose.add(fd);
-        posix.bindIPv6(fd, "::1", 29999);
+        posix.bindIPv6(fd, IP.fromIPv6("::1"), 29999);
     }
 
     @Test
@@ -350,12 +352,12 @@ public class TestPanamaGeneralPosix {
     public void connectIPv6() throws Exception {
         var fd = posix.createIPv6TcpFD();
         deferClose.add(fd);
-        posix.bindIPv6(fd, "::1", 29999);
+        posix.bindIPv6(fd, IP.fromIPv6("::1"), 29999);
 
         fd = posix.createIPv6TcpFD();
         deferClose.add(fd);
 
-        posix.connectIPv6(fd, "::1", 29999);
+        posix.connectIPv6(fd, IP.fromIPv6("::1"), 29999);
     }
 
     @Test
@@ -383,7 +385,7 @@ public class TestPanamaGeneralPosix {
         deferClose.add(fd);
 
         posix.setBlocking(fd, false);
-        posix.bindIPv6(fd, "::1", 29999);
+        posix.bindIPv6(fd, IP.fromIPv6("::1"), 29999);
         var n = posix.accept(fd);
         assertEquals(0, n);
 
@@ -462,11 +464,11 @@ public class TestPanamaGeneralPosix {
         var fd2 = posix.createIPv6UdpFD();
         deferClose.add(fd2);
 
-        posix.bindIPv6(fd2, "::1", 29999);
+        posix.bindIPv6(fd2, IP.fromIPv6("::1"), 29999);
 
         eventFdBuf.getMemorySegment().set(ValueLayout.JAVA_LONG, 0, 123L);
         var n = posix.sendtoIPv6(fd, eventFdBuf.realBuffer(), 0, 8,
-            "::1", 29999);
+            IP.fromIPv6("::1"), 29999);
         assertEquals(8, n);
 
         var res = posix.recvfromIPv6(fd2, tmpbuf.realBuffer(), 0, 8);
@@ -477,6 +479,32 @@ public class TestPanamaGeneralPosix {
         assertEquals(posix.getIPv4Local(fd).toIPPort().getPort(), res.address.toIPPort().getPort());
     }
 
+    @Test
+    public void recvfromIPv6Bin() throws Exception {
+        var fd = posix.createIPv6UdpFD();
+        deferClose.add(fd);
+
+        var fd2 = posix.createIPv6UdpFD();
+        deferClose.add(fd2);
+
+        posix.bindIPv6(fd2, IP.fromIPv6("::1"), 29999);
+
+        var res = new UDPRecvResultIPv6BinST(Allocator.ofAuto());
+        assertFalse(posix.recvfromIPv6(fd2, tmpbuf.realBuffer(), 0, 8, res));
+
+        eventFdBuf.getMemorySegment().set(ValueLayout.JAVA_LONG, 0, 123L);
+        var n = posix.sendtoIPv6(fd, eventFdBuf.realBuffer(), 0, 8,
+            IP.fromIPv6("::1"), 29999);
+        assertEquals(8, n);
+
+        assertTrue(posix.recvfromIPv6(fd2, tmpbuf.realBuffer(), 0, 8, res));
+        var l = tmpbuf.getMemorySegment().get(ValueLayout.JAVA_LONG, 0);
+        assertEquals(123L, l);
+        assertEquals(8, res.getLen());
+        assertEquals(IP.from("::1"), IP.fromIPv6(res.getIp0(), res.getIp1(), res.getIp2(), res.getIp3()));
+        assertEquals(posix.getIPv6Local(fd).toIPPort().getPort(), res.getPort() & 0xffff);
+    }
+
     @Test
     public void currentTimeMillis() {
         var now = System.currentTimeMillis();
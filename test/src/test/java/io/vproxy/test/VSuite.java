@@ -15,6 +15,7 @@ import org.junit.runners.Suite;
     TestResolver.class,
     TestSocks5.class,
     TestConnectClient.class,
+    TestConnectionPool.class,
     TestSSL.class,
     TestProtocols.class,
     TestHttp1Processor.class,
@@ -24,6 +25,7 @@ import org.junit.runners.Suite;
     TestPcap.class,
     TestRouteTable.class,
     TestTCP.class,
+    TestStreamedFD.class,
     TestHttpServer.class,
     TestHttpClient.class,
     TestNetServerClient.class,
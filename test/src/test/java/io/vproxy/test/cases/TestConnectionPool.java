@@ -0,0 +1,286 @@
+package io.vproxy.test.cases;
+
+import io.vproxy.base.component.elgroup.EventLoopGroup;
+import io.vproxy.base.component.pool.ConnectionPoolHandler;
+import io.vproxy.base.component.pool.ConnectionPoolParams;
+import io.vproxy.base.component.pool.ShardedConnectionPool;
+import io.vproxy.base.connection.ConnectableConnection;
+import io.vproxy.base.connection.NetEventLoop;
+import io.vproxy.base.selector.SelectorEventLoop;
+import io.vproxy.base.util.thread.VProxyThread;
+import io.vproxy.test.tool.IdServer;
+import io.vproxy.vfd.IPPort;
+import org.junit.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TestConnectionPool {
+    private static final int serverPort = 19180;
+    private static final IPPort target = new IPPort("127.0.0.1", serverPort);
+
+    private static SelectorEventLoop serverLoop;
+
+    @BeforeClass
+    public static void classSetUp() throws Exception {
+        serverLoop = SelectorEventLoop.open();
+        serverLoop.loop(r -> VProxyThread.create(r, "serverLoop"));
+        new IdServer("0", new NetEventLoop(serverLoop), serverPort);
+    }
+
+    @AfterClass
+    public static void classTearDown() throws Exception {
+        Thread t = serverLoop.getRunningThread();
+        serverLoop.close();
+        t.join();
+    }
+
+    private SelectorEventLoop loop1;
+    private SelectorEventLoop loop2;
+    private ShardedConnectionPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        loop1 = SelectorEventLoop.open();
+        loop1.loop(r -> VProxyThread.create(r, "loop1"));
+        loop2 = SelectorEventLoop.open();
+        loop2.loop(r -> VProxyThread.create(r, "loop2"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+        Thread.sleep(100);
+        loop1.close();
+        loop2.close();
+    }
+
+    private ShardedConnectionPool newPool(int maxIdle) {
+        return new ShardedConnectionPool("test-pool", new ConnectionPoolParams()
+            .setMaxIdle(maxIdle)
+            .setKeepaliveInterval(-1));
+    }
+
+    private ConnectableConnection get(SelectorEventLoop loop) throws Exception {
+        CompletableFuture<ConnectableConnection> f = new CompletableFuture<>();
+        pool.get(loop, target, conn -> {
+            if (SelectorEventLoop.current() != loop) {
+                f.completeExceptionally(new Exception("callback is not running on the caller loop"));
+                return;
+            }
+            f.complete(conn);
+        });
+        return f.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void hitAndMiss() throws Exception {
+        pool = newPool(4);
+
+        assertNull(get(loop1));
+        assertEquals(0, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+
+        ConnectableConnection conn = ConnectableConnection.create(target);
+        pool.store(loop1, conn);
+        assertSame(conn, get(loop1));
+        assertNull(conn.getEventLoop());
+        assertFalse(conn.isClosed());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+
+        // retrieved connections are no longer in the pool
+        assertNull(get(loop1));
+        assertEquals(1, pool.getHitCount());
+        assertEquals(2, pool.getMissCount());
+
+        conn.close();
+    }
+
+    @Test
+    public void lifo() throws Exception {
+        pool = newPool(4);
+
+        ConnectableConnection conn1 = ConnectableConnection.create(target);
+        ConnectableConnection conn2 = ConnectableConnection.create(target);
+        ConnectableConnection conn3 = ConnectableConnection.create(target);
+        pool.store(loop1, conn1);
+        pool.store(loop1, conn2);
+        pool.store(loop1, conn3);
+
+        assertSame(conn3, get(loop1));
+        assertSame(conn2, get(loop1));
+        // stored again, so it's the most recently used one
+        pool.store(loop1, conn2);
+        assertSame(conn2, get(loop1));
+        assertSame(conn1, get(loop1));
+        assertNull(get(loop1));
+
+        conn1.close();
+        conn2.close();
+        conn3.close();
+    }
+
+    @Test
+    public void maxIdle() throws Exception {
+        pool = newPool(2);
+
+        ConnectableConnection conn1 = ConnectableConnection.create(target);
+        ConnectableConnection conn2 = ConnectableConnection.create(target);
+        ConnectableConnection conn3 = ConnectableConnection.create(target);
+        pool.store(loop1, conn1);
+        pool.store(loop1, conn2);
+        pool.store(loop1, conn3);
+
+        // the pool is full, so the connection is closed instead of being pooled
+        assertSame(conn2, get(loop1));
+        assertTrue(conn3.isClosed());
+        assertFalse(conn1.isClosed());
+        assertFalse(conn2.isClosed());
+
+        // max idle is counted per loop
+        ConnectableConnection conn4 = ConnectableConnection.create(target);
+        ConnectableConnection conn5 = ConnectableConnection.create(target);
+        pool.store(loop2, conn4);
+        pool.store(loop2, conn5);
+        assertSame(conn5, get(loop2));
+        assertFalse(conn4.isClosed());
+
+        assertSame(conn1, get(loop1));
+        assertNull(get(loop1));
+        assertSame(conn4, get(loop2));
+        assertNull(get(loop2));
+
+        conn1.close();
+        conn2.close();
+        conn4.close();
+        conn5.close();
+    }
+
+    @Test
+    public void crossLoopGet() throws Exception {
+        pool = newPool(4);
+
+        ConnectableConnection conn = ConnectableConnection.create(target);
+        pool.store(loop1, conn);
+
+        // the sub pool of loop2 does not see connections of loop1
+        assertNull(get(loop2));
+        assertSame(conn, get(loop1));
+
+        // a connection retrieved on loop1 can be stored into loop2
+        pool.store(loop2, conn);
+        assertNull(get(loop1));
+        assertSame(conn, get(loop2));
+
+        // retrieve from loop2 for loop1, the callback runs on loop1
+        pool.store(loop1, conn);
+        CompletableFuture<ConnectableConnection> f = new CompletableFuture<>();
+        loop2.runOnLoop(() -> pool.get(loop1, target, c ->
+            f.complete(SelectorEventLoop.current() == loop1 ? c : null)));
+        assertSame(conn, f.get(1, TimeUnit.SECONDS));
+
+        conn.close();
+    }
+
+    @Test
+    public void doNotRetryWhenHandlerRefuses() throws Exception {
+        AtomicInteger provideCount = new AtomicInteger();
+        pool = new ShardedConnectionPool("test-pool", new ConnectionPoolParams()
+            .setMaxIdle(4)
+            .setMinIdle(1)
+            .setKeepaliveInterval(-1),
+            _ -> new ConnectionPoolHandler() {
+                @Override
+                public ConnectableConnection provide(NetEventLoop loop) {
+                    return null;
+                }
+
+                @Override
+                public ConnectableConnection provide(NetEventLoop loop, IPPort target) {
+                    provideCount.incrementAndGet();
+                    return null;
+                }
+
+                @Override
+                public void keepaliveReadable(ConnectableConnection conn) {
+                }
+
+                @Override
+                public void keepalive(ConnectableConnection conn) {
+                }
+            });
+
+        assertNull(get(loop1));
+        assertEquals(1, provideCount.get());
+        // the pool used to retry every second
+        Thread.sleep(1500);
+        assertEquals(1, provideCount.get());
+
+        // filling is triggered again by the next retrieval
+        assertNull(get(loop1));
+        assertEquals(2, provideCount.get());
+    }
+
+    @Test
+    public void getOffLoop() {
+        pool = newPool(4);
+        try {
+            pool.get(target, _ -> {
+            });
+            fail("get without a loop should fail");
+        } catch (IllegalStateException ignore) {
+        }
+    }
+
+    @Test
+    public void dropShardWhenLoopClosed() throws Exception {
+        pool = newPool(4);
+
+        SelectorEventLoop loop3 = SelectorEventLoop.open();
+        loop3.loop(r -> VProxyThread.create(r, "loop3"));
+        ConnectableConnection conn = ConnectableConnection.create(target);
+        pool.store(loop3, conn);
+        assertNull(get(loop1));
+        assertEquals(2, pool.getShardCount());
+
+        loop3.close();
+        assertTrue(loop3.isClosed());
+        // the sub pool of the closed loop is dropped when another loop joins
+        assertNull(get(loop2));
+        assertEquals(2, pool.getShardCount());
+        assertTrue(conn.isClosed());
+    }
+
+    @Test
+    public void dropShardWhenGroupLoopClosed() throws Exception {
+        pool = newPool(4);
+
+        EventLoopGroup elg = new EventLoopGroup("test-pool-elg");
+        try {
+            SelectorEventLoop loop3 = elg.add("loop3").getSelectorEventLoop();
+            ConnectableConnection conn = ConnectableConnection.create(target);
+            pool.store(loop3, conn);
+            assertSame(conn, get(loop3));
+            pool.store(loop3, conn);
+            assertEquals(1, pool.getShardCount());
+
+            elg.remove("loop3");
+            // dropped right after the loop exits, no other loop joins
+            long begin = System.currentTimeMillis();
+            while (pool.getShardCount() != 0 && System.currentTimeMillis() - begin < 1000) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, pool.getShardCount());
+            assertTrue(conn.isClosed());
+        } finally {
+            elg.close();
+        }
+    }
+}
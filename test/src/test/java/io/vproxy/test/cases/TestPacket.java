@@ -286,6 +286,36 @@ public class TestPacket {
         checkPartialAndModify(ether.getRawPacket(0), EthernetPacket::new, (p, b) -> p.from(b, true), p -> p.setDst(new MacAddress("ab:cd:ef:01:23:45")));
     }
 
+    @Test
+    public void ethernetBuildInPlace() {
+        Ipv4Packet ipv4 = genIpv4();
+        ByteArray ipBytes = ipv4.getRawPacket(0);
+        ByteArray buf = ByteArray.allocate(14).concat(ipBytes).copy();
+        var raw = new PacketDataBuffer(buf, 14, 0);
+        Ipv4Packet parsed = new Ipv4Packet();
+        assertNull(parsed.from(raw));
+
+        var dst = randomMac();
+        var src = randomMac();
+        var header = dst.bytes.copy().concat(src.bytes.copy()).concat(ByteArray.allocate(2).int16(0, Consts.ETHER_TYPE_IPv4)).copy();
+        // the ip packet is not parsed from the buffer
+        assertNull(EthernetPacket.buildInPlace(new PacketDataBuffer(ipBytes.copy()), dst, src, header, parsed));
+
+        EthernetPacket ether = EthernetPacket.buildInPlace(raw, dst, src, header, parsed);
+        assertNotNull(ether);
+        assertEquals(0, raw.pktOff);
+        assertEquals(Consts.ETHER_TYPE_IPv4, ether.getType());
+        assertSame(parsed, ether.getPacket());
+
+        EthernetPacket expected = new EthernetPacket();
+        expected.setDst(dst);
+        expected.setSrc(src);
+        expected.setType(Consts.ETHER_TYPE_IPv4);
+        expected.setPacket(ipv4);
+        assertEquals(expected.getRawPacket(0), ether.getRawPacket(0));
+        assertEquals(ipBytes, parsed.getRawPacket(0));
+    }
+
     @Test
     public void ethernetArp() {
         EthernetPacket ether = genEther();
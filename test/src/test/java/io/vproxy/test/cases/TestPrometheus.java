@@ -2,6 +2,7 @@ package io.vproxy.test.cases;
 
 import io.vproxy.base.prometheus.Counter;
 import io.vproxy.base.prometheus.Gauge;
+import io.vproxy.base.prometheus.Histogram;
 import io.vproxy.base.prometheus.Metrics;
 import org.junit.Test;
 
@@ -67,4 +68,60 @@ public class TestPrometheus {
                 "",
             metrics.toString());
     }
+
+    @Test
+    public void histogram() throws Exception {
+        Metrics metrics = new Metrics();
+
+        Histogram histogram = new Histogram("vproxy_test_case_time_micros", Map.of("method", "histogram"), 6);
+        metrics.add(histogram);
+
+        histogram.record(0);
+        histogram.record(8);
+        histogram.record(9);
+        histogram.record(64);
+        histogram.record(65);
+        Thread t = new Thread(() -> histogram.record(20));
+        t.start();
+        t.join();
+
+        assertEquals(6, histogram.count());
+        assertEquals(166, histogram.sum());
+        assertEquals(9, histogram.valueAtQuantile(0.5));
+        assertEquals(Long.MAX_VALUE, histogram.valueAtQuantile(1));
+
+        assertEquals("" +
+                "# TYPE vproxy_test_case_time_micros histogram\n" +
+                "vproxy_test_case_time_micros_bucket{method=\"histogram\",le=\"8\"} 2\n" +
+                "vproxy_test_case_time_micros_bucket{method=\"histogram\",le=\"16\"} 3\n" +
+                "vproxy_test_case_time_micros_bucket{method=\"histogram\",le=\"32\"} 4\n" +
+                "vproxy_test_case_time_micros_bucket{method=\"histogram\",le=\"64\"} 5\n" +
+                "vproxy_test_case_time_micros_bucket{method=\"histogram\",le=\"+Inf\"} 6\n" +
+                "vproxy_test_case_time_micros_sum{method=\"histogram\"} 166\n" +
+                "vproxy_test_case_time_micros_count{method=\"histogram\"} 6\n" +
+                "",
+            metrics.toString());
+    }
+
+    @Test
+    public void histogramManyThreads() throws Exception {
+        Histogram histogram = new Histogram("vproxy_test_case_time_micros", Map.of("method", "histogramManyThreads"));
+        // more threads than stripes, some of them share a stripe
+        Thread[] threads = new Thread[16];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(() -> {
+                for (int n = 0; n < 10000; ++n) {
+                    histogram.record(n % 100);
+                }
+            });
+        }
+        for (var t : threads) {
+            t.start();
+        }
+        for (var t : threads) {
+            t.join();
+        }
+        assertEquals(16 * 10000, histogram.count());
+        assertEquals(16L * 100 * (99 * 100 / 2), histogram.sum());
+    }
 }
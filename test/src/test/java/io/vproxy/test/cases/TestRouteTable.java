@@ -2,16 +2,24 @@ package io.vproxy.test.cases;
 
 import io.vproxy.base.util.Network;
 import io.vproxy.base.util.Networks;
+import io.vproxy.base.util.net.LPMTable;
 import io.vproxy.vfd.IP;
 import io.vproxy.vswitch.RouteTable;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class TestRouteTable {
     private static class R implements Networks.Rule {
@@ -58,6 +66,136 @@ public class TestRouteTable {
         assertNull(nets.lookup(IP.from("2001::2:1")));
     }
 
+    @Test
+    public void networksModifiedAfterLookup() {
+        var nets = new Networks<R>();
+        assertNull(nets.lookup(IP.from("10.1.2.3")));
+        nets.add(Network.from("10.0.0.0/8"), new R(1));
+        assertEquals(nets.lookup(IP.from("10.1.2.3")).n, 1);
+        nets.add(Network.from("10.1.2.0/24"), new R(2));
+        nets.add(Network.from("0.0.0.0/0"), new R(3));
+        nets.add(Network.from("::/0"), new R(4));
+        assertEquals(nets.lookup(IP.from("10.1.2.3")).n, 2);
+        assertEquals(nets.lookup(IP.from("10.1.3.3")).n, 1);
+        assertEquals(nets.lookup(IP.from("11.1.2.3")).n, 3);
+        assertEquals(nets.lookup(IP.from("2001::1")).n, 4);
+        assertEquals(nets.lookup(IP.from("::ffff:10.1.2.3")).n, 4);
+
+        nets.remove(Network.from("10.1.2.0/24"));
+        assertEquals(nets.lookup(IP.from("10.1.2.3")).n, 1);
+        nets.removeBy(r -> r.n == 4);
+        assertEquals(nets.lookup(IP.from("::ffff:10.1.2.3")).n, 1);
+        assertNull(nets.lookup(IP.from("2001::1")));
+    }
+
+    @Test
+    public void networksManyRules() {
+        var nets = new Networks<R>();
+        for (int i = 0; i < 1024; ++i) {
+            nets.add(Network.from("10." + (i / 256) + "." + (i % 256) + ".0/24"), new R(i));
+        }
+        nets.add(Network.from("10.0.0.0/8"), new R(-1));
+        for (int i = 0; i < 1024; ++i) {
+            assertEquals(i, nets.lookup(IP.from("10." + (i / 256) + "." + (i % 256) + ".7")).n);
+        }
+        assertEquals(-1, nets.lookup(IP.from("10.4.0.1")).n);
+        assertNull(nets.lookup(IP.from("11.0.0.1")));
+    }
+
+    @Test
+    public void networksAddAll() {
+        Map<Network, R> rules = new HashMap<>();
+        for (int i = 0; i < 256; ++i) {
+            rules.put(Network.from("fd00:" + Integer.toHexString(i) + "::/32"), new R(i));
+            rules.put(Network.from("10." + i + ".0.0/16"), new R(1000 + i));
+        }
+        var nets = new Networks<R>();
+        nets.addAll(rules);
+        for (int i = 0; i < 256; ++i) {
+            assertEquals(i, nets.lookup(IP.from("fd00:" + Integer.toHexString(i) + "::1")).n);
+            assertEquals(1000 + i, nets.lookup(IP.from("10." + i + ".1.1")).n);
+        }
+        assertNull(nets.lookup(IP.from("fd01::1")));
+    }
+
+    @Test
+    public void networksAddedOneByOne() {
+        var nets = new Networks<R>();
+        int n = 65536;
+        long begin = System.currentTimeMillis();
+        for (int i = 0; i < n; ++i) {
+            nets.add(Network.from("10." + (i / 256) + "." + (i % 256) + ".0/24"), new R(i));
+            if (i % 4096 == 0) {
+                assertEquals(i, nets.lookup(IP.from("10." + (i / 256) + "." + (i % 256) + ".1")).n);
+            }
+        }
+        for (int i = 0; i < n; ++i) {
+            assertEquals(i, nets.lookup(IP.from("10." + (i / 256) + "." + (i % 256) + ".1")).n);
+        }
+        // rebuilding on every add would take minutes
+        long cost = System.currentTimeMillis() - begin;
+        assertTrue("cost " + cost + "ms", cost < 10_000);
+    }
+
+    @Test
+    public void networksLookupWhileAdding() throws Exception {
+        var nets = new Networks<R>();
+        int n = 4096;
+        var failed = new AtomicReference<String>();
+        var done = new AtomicBoolean(false);
+        var threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; ++t) {
+            var thread = new Thread(() -> {
+                var rand = new Random();
+                while (!done.get()) {
+                    int i = rand.nextInt(n);
+                    var r = nets.lookup(IP.from("10." + (i / 256) + "." + (i % 256) + ".1"));
+                    if (r != null && r.n != i) {
+                        failed.set("lookup " + i + " got " + r.n);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (int i = 0; i < n; ++i) {
+            nets.add(Network.from("10." + (i / 256) + "." + (i % 256) + ".0/24"), new R(i));
+        }
+        done.set(true);
+        for (var thread : threads) {
+            thread.join();
+        }
+        assertNull(failed.get());
+        for (int i = 0; i < n; ++i) {
+            assertEquals(i, nets.lookup(IP.from("10." + (i / 256) + "." + (i % 256) + ".1")).n);
+        }
+    }
+
+    @Test
+    public void lpmTableV6LongPrefixes() {
+        var rand = new Random(1);
+        var builder = new LPMTable.Builder<Integer>(128);
+        int[][] keys = new int[10000][];
+        for (int i = 0; i < keys.length; ++i) {
+            keys[i] = new int[]{rand.nextInt(), rand.nextInt(), rand.nextInt(), rand.nextInt()};
+            int len = i % 2 == 0 ? 64 : 128;
+            builder.add(keys[i][0], keys[i][1], keys[i][2], keys[i][3], len, i);
+        }
+        builder.add(0, 0, 0, 0, 0, -1);
+        var table = builder.build();
+        for (int i = 0; i < keys.length; ++i) {
+            var k = keys[i];
+            assertEquals(i, (int) table.lookup(k[0], k[1], k[2], k[3]));
+            if (i % 2 == 0) {
+                assertEquals(i, (int) table.lookup(k[0], k[1], ~k[2], k[3]));
+            } else {
+                assertEquals(-1, (int) table.lookup(k[0], k[1], k[2], ~k[3]));
+            }
+        }
+        // long prefixes are collapsed into small nodes, instead of one 256 entries node per 8 bits
+        assertTrue(table.toString(), table.memoryBytes() < 4 * 1024 * 1024);
+    }
+
     private Network getNetwork(String s) {
         String[] ab = s.split("/");
         String a = ab[0];
@@ -3,6 +3,7 @@ package io.vproxy.test.cases;
 import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpClient;
 import io.vertx.core.http.HttpClientOptions;
+import io.vproxy.base.GlobalInspection;
 import io.vproxy.base.component.check.CheckProtocol;
 import io.vproxy.base.component.check.HealthCheckConfig;
 import io.vproxy.base.component.elgroup.EventLoopGroup;
@@ -24,6 +25,9 @@ import io.vproxy.base.util.ringbuffer.SSLUnwrapRingBuffer;
 import io.vproxy.base.util.ringbuffer.SSLUtils;
 import io.vproxy.base.util.ringbuffer.SSLWrapRingBuffer;
 import io.vproxy.base.util.ringbuffer.SimpleRingBuffer;
+import io.vproxy.base.util.ringbuffer.ssl.SSL;
+import io.vproxy.base.util.ringbuffer.ssl.SSLContextHolder;
+import io.vproxy.base.util.ringbuffer.ssl.SSLTaskExecutor;
 import io.vproxy.base.util.ringbuffer.ssl.VSSLContext;
 import io.vproxy.base.util.thread.VProxyThread;
 import io.vproxy.component.app.TcpLB;
@@ -45,7 +49,9 @@ import java.net.UnknownHostException;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.security.KeyStore;
+import java.security.cert.X509Certificate;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 
 import static org.junit.Assert.*;
 
@@ -373,6 +379,77 @@ public class TestSSL {
         assertEquals(serverMsg, clientInputData.toString());
     }
 
+    @Test
+    public void handshakeRejectedWhenTaskQueueFull() throws Exception {
+        KeyStore ks = KeyStore.getInstance("JKS");
+        KeyStore ts = KeyStore.getInstance("JKS");
+
+        char[] passphrase = "passphrase".toCharArray();
+
+        ks.load(TestSSL.class.getResourceAsStream("/" + keyStoreFile), passphrase);
+        ts.load(TestSSL.class.getResourceAsStream("/" + trustStoreFile), passphrase);
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509");
+        kmf.init(ks, passphrase);
+
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance("SunX509");
+        tmf.init(ts);
+
+        SSLContext context = SSLContext.getInstance("TLSv1.2");
+        context.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+
+        // one thread and one queue slot, both occupied
+        SSLTaskExecutor executor = new SSLTaskExecutor("test", 1, 1);
+        CountDownLatch latch = new CountDownLatch(1);
+        Runnable block = () -> {
+            try {
+                latch.await();
+            } catch (InterruptedException ignore) {
+            }
+        };
+        try {
+            // engines which are not handshaking have no task, so the callback runs and blocks
+            assertTrue(executor.runDelegatedTasks(context.createSSLEngine(), block)); // running
+            assertTrue(executor.runDelegatedTasks(context.createSSLEngine(), block)); // queued
+
+            SSLEngine serverEngine = context.createSSLEngine();
+            serverEngine.setUseClientMode(false);
+            SSLEngine clientEngine = context.createSSLEngine("cassite.net", 443);
+            clientEngine.setUseClientMode(true);
+
+            SSLUtils.SSLBufferPair tuple = SSLUtils.genbuf(serverEngine, serverInputData, serverOutputData, q::add);
+            serverWrap = tuple.right;
+            serverUnwrap = tuple.left;
+            serverUnwrap.setTaskExecutor(executor);
+            tuple = SSLUtils.genbuf(clientEngine, clientInputData, clientOutputData, q::add);
+            clientWrap = tuple.right;
+            clientUnwrap = tuple.left;
+            clientUnwrap.setTaskExecutor(executor);
+
+            clientOutputData.storeBytesFrom(ByteArrayChannel.fromFull("hello".getBytes()));
+
+            // CLIENT_HELLO, the server engine requires delegated tasks to handle it,
+            // the error is raised when the unwrap buffer is used next time
+            IOException err = null;
+            for (int i = 0; i < 3 && err == null; ++i) {
+                try {
+                    clientSendMessage();
+                } catch (RuntimeException e) {
+                    assertTrue(e.getCause() instanceof IOException);
+                    err = (IOException) e.getCause();
+                }
+                runQ();
+            }
+            assertNotNull("the handshake should fail", err);
+            assertEquals("ssl task queue is full", err.getMessage());
+            assertEquals(1, executor.getRejectedCount());
+            assertEquals(0, serverInputData.used());
+        } finally {
+            latch.countDown();
+            executor.shutdown();
+        }
+    }
+
     void runQ() {
         Runnable r;
         while ((r = q.poll()) != null) {
@@ -425,6 +502,110 @@ public class TestSSL {
         socket.close();
     }
 
+    @Test
+    public void certKeySessionResumption() throws Exception {
+        String alias = "test-session-resumption";
+        CertKey ck = new CertKey(alias, new String[]{TEST_CERT}, TEST_KEY);
+        VSSLContext vsslContext = new VSSLContext();
+        ck.setInto(vsslContext);
+        SSL ssl = vsslContext.createSSL();
+        ssl.sslEngineBuilder.configure(engine -> engine.setUseClientMode(false));
+
+        // tls 1.2 session ids, the client reuses the session when connecting to the same host and port
+        SSLContext clientContext = SSLContext.getInstance("TLSv1.2");
+        clientContext.init(null, new TrustManager[]{new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        }}, null);
+
+        try {
+            var stats = SSLContextHolder.findSessionStats(alias);
+            assertNotNull(stats);
+
+            handshakeWithServerSSL(ssl, clientContext);
+            assertEquals(1, stats.getFull());
+            assertEquals(0, stats.getResumed());
+
+            // the session creation time is compared with the handshake begin time in millis
+            Thread.sleep(2);
+            handshakeWithServerSSL(ssl, clientContext);
+            assertEquals(1, stats.getFull());
+            assertEquals(1, stats.getResumed());
+
+            String metrics = GlobalInspection.getInstance().getPrometheusString();
+            assertTrue(metrics, metrics.contains("ssl_session_resumed_count{cert_key=\"" + alias + "\"} 1"));
+            assertTrue(metrics, metrics.contains("ssl_session_full_handshake_count{cert_key=\"" + alias + "\"} 1"));
+        } finally {
+            SSLContextHolder.removeSessionStats(alias);
+        }
+        assertNull(SSLContextHolder.findSessionStats(alias));
+        assertFalse(GlobalInspection.getInstance().getPrometheusString().contains("cert_key=\"" + alias + "\""));
+    }
+
+    private void handshakeWithServerSSL(SSL ssl, SSLContext clientContext) throws Exception {
+        serverOutputData = RingBuffer.allocate(16384);
+        serverInputData = RingBuffer.allocate(16384);
+        clientOutputData = RingBuffer.allocate(16384);
+        clientInputData = RingBuffer.allocate(16384);
+
+        SSLEngine clientEngine = clientContext.createSSLEngine("vproxy.cassite.net", 443);
+        clientEngine.setUseClientMode(true);
+
+        SSLUtils.SSLBufferPair tuple = SSLUtils.genbufForServer(ssl, serverInputData, serverOutputData, q::add);
+        serverWrap = tuple.right;
+        serverUnwrap = tuple.left;
+        tuple = SSLUtils.genbuf(clientEngine, clientInputData, clientOutputData, q::add);
+        clientWrap = tuple.right;
+        clientUnwrap = tuple.left;
+
+        serverWrap.addHandler(new RingBufferETHandler() {
+            @Override
+            public void readableET() {
+                serverSendMessage();
+            }
+
+            @Override
+            public void writableET() {
+                // will not fire
+            }
+        });
+        clientWrap.addHandler(new RingBufferETHandler() {
+            @Override
+            public void readableET() {
+                clientSendMessage();
+            }
+
+            @Override
+            public void writableET() {
+                // will not fire
+            }
+        });
+
+        serverOutputData.storeBytesFrom(ByteArrayChannel.fromFull("server".getBytes()));
+        clientOutputData.storeBytesFrom(ByteArrayChannel.fromFull("client".getBytes()));
+
+        clientSendMessage();
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        do {
+            Thread.sleep(1);
+            runQ();
+        } while ((serverInputData.used() != 6 || clientInputData.used() != 6) && System.currentTimeMillis() < deadline);
+
+        assertEquals("client", serverInputData.toString());
+        assertEquals("server", clientInputData.toString());
+    }
+
     @SuppressWarnings("deprecation")
     @Test
     public void sslProxy() throws Exception {
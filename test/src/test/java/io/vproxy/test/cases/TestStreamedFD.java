@@ -0,0 +1,451 @@
+package io.vproxy.test.cases;
+
+import io.vproxy.base.Config;
+import io.vproxy.base.connection.*;
+import io.vproxy.base.selector.SelectorEventLoop;
+import io.vproxy.base.selector.wrap.h2streamed.H2StreamedFDHandler;
+import io.vproxy.base.selector.wrap.kcp.KCPFDs;
+import io.vproxy.base.selector.wrap.streamed.StreamedArqUDPClientFDs;
+import io.vproxy.base.selector.wrap.streamed.StreamedArqUDPServerFDs;
+import io.vproxy.base.selector.wrap.streamed.StreamedFDHandler;
+import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.RingBuffer;
+import io.vproxy.base.util.Utils;
+import io.vproxy.base.util.coll.Tuple;
+import io.vproxy.base.util.nio.ByteArrayChannel;
+import io.vproxy.base.util.thread.VProxyThread;
+import io.vproxy.vfd.IPPort;
+import io.vproxy.vfd.SocketFD;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class TestStreamedFD {
+    private static final byte TYPE_PING = 0x6;
+    private static final byte TYPE_WINDOW_UPDATE = 0x8;
+    private static final byte FLAG_ACK = 0x1;
+    private static final long FLOW_CONTROL_PING_DATA = 0x766670726f787946L;
+
+    // counts WINDOW_UPDATE frames received
+    static class RecordingHandler extends H2StreamedFDHandler {
+        final AtomicInteger windowUpdateFrames = new AtomicInteger();
+
+        RecordingHandler(boolean client) {
+            super(client);
+        }
+
+        @Override
+        protected int clientFeed(ByteArray array) throws IOException {
+            int n = super.clientFeed(array);
+            if (n > 0 && array.get(3) == TYPE_WINDOW_UPDATE) {
+                windowUpdateFrames.incrementAndGet();
+            }
+            return n;
+        }
+    }
+
+    // behaves like the versions without flow control
+    static class OldHandler extends H2StreamedFDHandler {
+        final AtomicInteger windowUpdateFrames = new AtomicInteger();
+        private boolean windowIgnored = false;
+
+        OldHandler(boolean client) {
+            super(client);
+        }
+
+        @Override
+        protected ByteArray flowControlMessage(int window) {
+            return null;
+        }
+
+        @Override
+        protected int clientFeed(ByteArray array) throws IOException {
+            if (!windowIgnored) {
+                // the old versions send without limit
+                windowIgnored = true;
+                flowControlAckReceived();
+            }
+            if (array.length() < 9) {
+                return 0;
+            }
+            int len = array.uint24(0);
+            if (array.length() < 9 + len) {
+                return 0;
+            }
+            byte type = array.get(3);
+            if (type == TYPE_WINDOW_UPDATE) {
+                windowUpdateFrames.incrementAndGet();
+                throw new IOException("invalid frame type: " + type);
+            }
+            if (type == TYPE_PING && (array.get(4) & FLAG_ACK) == 0 && len >= 8) {
+                // every ping is responded with the same data
+                keepaliveReceived(array.int64(9), false);
+                return 9 + len;
+            }
+            return super.clientFeed(array);
+        }
+    }
+
+    // ignores the window announced by the remote side
+    static class OverflowHandler extends H2StreamedFDHandler {
+        OverflowHandler(boolean client) {
+            super(client);
+        }
+
+        @Override
+        protected int clientFeed(ByteArray array) throws IOException {
+            if (array.length() >= 9 + 16 && array.uint24(0) == 16 && array.get(3) == TYPE_PING
+                && (array.get(4) & FLAG_ACK) == 0 && array.int64(9) == FLOW_CONTROL_PING_DATA) {
+                flowControlReceived(Integer.MAX_VALUE);
+                return 9 + 16;
+            }
+            return super.clientFeed(array);
+        }
+    }
+
+    static class Peer implements ConnectableConnectionHandler {
+        private final ByteArrayChannel toSend;
+        volatile boolean paused;
+        final AtomicLong received = new AtomicLong();
+        volatile int firstByte = -1;
+        volatile IOException error;
+        volatile boolean closed;
+
+        Peer(byte[] toSend, boolean paused) {
+            this.toSend = toSend == null ? null : ByteArrayChannel.fromFull(toSend);
+            this.paused = paused;
+        }
+
+        long sent() {
+            return toSend == null ? 0 : toSend.getReadOff();
+        }
+
+        void fill(Connection conn) {
+            if (toSend == null || toSend.used() == 0) {
+                return;
+            }
+            conn.getOutBuffer().storeBytesFrom(toSend);
+        }
+
+        void drain(Connection conn) {
+            RingBuffer in = conn.getInBuffer();
+            int n = in.used();
+            if (n == 0) {
+                return;
+            }
+            byte[] bytes = Utils.allocateByteArray(n);
+            in.writeTo(ByteArrayChannel.fromEmpty(bytes));
+            if (firstByte == -1) {
+                firstByte = bytes[0];
+            }
+            received.addAndGet(n);
+        }
+
+        @Override
+        public void connected(ConnectableConnectionHandlerContext ctx) {
+            fill(ctx.connection);
+        }
+
+        @Override
+        public void readable(ConnectionHandlerContext ctx) {
+            if (!paused) {
+                drain(ctx.connection);
+            }
+        }
+
+        @Override
+        public void writable(ConnectionHandlerContext ctx) {
+            fill(ctx.connection);
+        }
+
+        @Override
+        public void exception(ConnectionHandlerContext ctx, IOException err) {
+            error = err;
+        }
+
+        @Override
+        public void remoteClosed(ConnectionHandlerContext ctx) {
+            ctx.connection.close();
+            closed(ctx);
+        }
+
+        @Override
+        public void closed(ConnectionHandlerContext ctx) {
+            closed = true;
+        }
+
+        @Override
+        public void removed(ConnectionHandlerContext ctx) {
+            // ignore
+        }
+    }
+
+    private SelectorEventLoop loop;
+    private NetEventLoop netLoop;
+    private IPPort address;
+    private StreamedArqUDPClientFDs clientFDs;
+    private volatile Supplier<Peer> serverPeers;
+    private final List<Tuple<Connection, Peer>> accepted = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        loop = SelectorEventLoop.open();
+        netLoop = new NetEventLoop(loop);
+        loop.loop(r -> VProxyThread.create(r, "streamed-fd-test"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        loop.close();
+    }
+
+    private void start(int port, Supplier<StreamedFDHandler> clientHandler, Supplier<StreamedFDHandler> serverHandler) throws Exception {
+        address = new IPPort("127.0.0.1", port);
+        CompletableFuture<Void> f = new CompletableFuture<>();
+        loop.runOnLoop(() -> {
+            try {
+                var serverFDs = new StreamedArqUDPServerFDs(KCPFDs.getFast3(), loop, address, serverHandler) {
+                };
+                ServerSock server = ServerSock.createUDP(address, loop, serverFDs);
+                netLoop.addServer(server, null, new ServerHandler() {
+                    @Override
+                    public void acceptFail(ServerHandlerContext ctx, IOException err) {
+                        // ignore
+                    }
+
+                    @Override
+                    public void connection(ServerHandlerContext ctx, Connection connection) {
+                        Peer peer = serverPeers.get();
+                        try {
+                            ctx.eventLoop.addConnection(connection, null, peer);
+                        } catch (IOException e) {
+                            connection.close();
+                            return;
+                        }
+                        accepted.add(new Tuple<>(connection, peer));
+                        peer.fill(connection);
+                    }
+
+                    @Override
+                    public Tuple<RingBuffer, RingBuffer> getIOBuffers(SocketFD channel) {
+                        return new Tuple<>(RingBuffer.allocateDirect(16384), RingBuffer.allocateDirect(16384));
+                    }
+
+                    @Override
+                    public void removed(ServerHandlerContext ctx) {
+                        ctx.server.close();
+                    }
+                });
+                clientFDs = new StreamedArqUDPClientFDs(KCPFDs.getFast3(), loop, address, clientHandler);
+                f.complete(null);
+            } catch (Throwable t) {
+                f.completeExceptionally(t);
+            }
+        });
+        f.get();
+    }
+
+    private ConnectableConnection connect(Peer peer) throws Exception {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (true) {
+            CompletableFuture<ConnectableConnection> f = new CompletableFuture<>();
+            loop.runOnLoop(() -> {
+                try {
+                    ConnectableConnection conn = ConnectableConnection.createUDP(address, new ConnectionOpts(),
+                        RingBuffer.allocateDirect(16384), RingBuffer.allocateDirect(16384), loop, clientFDs);
+                    netLoop.addConnectableConnection(conn, null, peer);
+                    f.complete(conn);
+                } catch (Throwable t) {
+                    f.completeExceptionally(t);
+                }
+            });
+            try {
+                return f.get();
+            } catch (ExecutionException e) {
+                // the streamed arq udp connection may be still handshaking
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private void resume(Connection conn, Peer peer) {
+        loop.runOnLoop(() -> {
+            peer.paused = false;
+            peer.drain(conn);
+        });
+    }
+
+    private static void waitUntil(String msg, BooleanSupplier cond, long timeoutMillis) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!cond.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("timed out waiting for: " + msg);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    // wait until the value stays the same for the duration
+    private static long waitUntilStable(Supplier<Long> value, long stableMillis, long timeoutMillis) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long last = value.get();
+        long lastChange = System.currentTimeMillis();
+        while (System.currentTimeMillis() - lastChange < stableMillis) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("timed out waiting for the value to be stable, current: " + last);
+            }
+            Thread.sleep(10);
+            long v = value.get();
+            if (v != last) {
+                last = v;
+                lastChange = System.currentTimeMillis();
+            }
+        }
+        return last;
+    }
+
+    private static byte[] randomBytes(int len, byte first) {
+        byte[] bytes = Utils.allocateByteArray(len);
+        new Random(len).nextBytes(bytes); // random bytes cannot be compressed
+        bytes[0] = first;
+        return bytes;
+    }
+
+    @Test
+    public void flowControlNegotiatedAndCreditsReturned() throws Exception {
+        var clientHandler = new RecordingHandler(true);
+        var serverHandler = new RecordingHandler(false);
+        start(19191, () -> clientHandler, () -> serverHandler);
+        serverPeers = () -> new Peer(null, true);
+
+        int total = 3 * Config.streamedFdWindow;
+        Peer client = new Peer(randomBytes(total, (byte) 'a'), false);
+        connect(client);
+        waitUntil("accepted", () -> accepted.size() == 1, 5_000);
+        var server = accepted.get(0);
+
+        // the receiver doesn't read, the sender is blocked by the window
+        long sent = waitUntilStable(client::sent, 1_000, 30_000);
+        assertTrue("sent " + sent, sent >= Config.streamedFdWindow);
+        assertTrue("sent " + sent, sent <= Config.streamedFdWindow + 16384 /*out buffer*/);
+        assertEquals(0, clientHandler.windowUpdateFrames.get());
+
+        // the receiver returns credits when reading
+        resume(server.left, server.right);
+        waitUntil("all received", () -> server.right.received.get() == total, 60_000);
+        assertEquals(total, client.sent());
+        assertTrue(clientHandler.windowUpdateFrames.get() > 0);
+        // the client doesn't read anything, so no credit is returned
+        assertEquals(0, serverHandler.windowUpdateFrames.get());
+        assertNull(client.error);
+        assertNull(server.right.error);
+    }
+
+    @Test
+    public void flowControlDisabledWithOldPeer() throws Exception {
+        var clientHandler = new RecordingHandler(true);
+        var serverHandler = new OldHandler(false);
+        start(19192, () -> clientHandler, () -> serverHandler);
+
+        int total = 3 * Config.streamedFdWindow;
+        serverPeers = () -> new Peer(randomBytes(total, (byte) 'b'), true);
+
+        Peer client = new Peer(randomBytes(total, (byte) 'a'), false);
+        connect(client);
+        waitUntil("accepted", () -> accepted.size() == 1, 5_000);
+        var server = accepted.get(0);
+
+        // the old peer keeps buffering without reading, so the sender is not limited by the window
+        waitUntil("all sent", () -> client.sent() == total, 60_000);
+        // data sent by the old peer is read, but no credit is returned
+        waitUntil("all received by client", () -> client.received.get() == total, 60_000);
+
+        resume(server.left, server.right);
+        waitUntil("all received by server", () -> server.right.received.get() == total, 60_000);
+
+        assertEquals(0, serverHandler.windowUpdateFrames.get());
+        assertEquals(0, clientHandler.windowUpdateFrames.get());
+        assertNull(client.error);
+        assertNull(server.right.error);
+        assertFalse(client.closed);
+        assertFalse(server.right.closed);
+    }
+
+    @Test
+    public void resetWhenWindowOverflows() throws Exception {
+        start(19193, () -> new OverflowHandler(true), () -> new RecordingHandler(false));
+        serverPeers = () -> new Peer(null, true);
+
+        int total = 3 * Config.streamedFdWindow;
+        Peer client = new Peer(randomBytes(total, (byte) 'a'), false);
+        connect(client);
+        waitUntil("accepted", () -> accepted.size() == 1, 5_000);
+        var server = accepted.get(0);
+
+        waitUntil("client closed", () -> client.closed, 30_000);
+        assertNotNull(client.error);
+        assertTrue(String.valueOf(client.error), Utils.isReset(client.error));
+        // the receiver never buffers more than the window
+        resume(server.left, server.right);
+        waitUntil("server closed", () -> server.right.closed, 5_000);
+        assertTrue(server.right.received.get() <= Config.streamedFdWindow);
+
+        // only the stream is reset, other streams still work
+        serverPeers = () -> new Peer(null, false);
+        Peer client2 = new Peer(randomBytes(1024, (byte) 'c'), false);
+        connect(client2);
+        waitUntil("accepted", () -> accepted.size() == 2, 5_000);
+        var server2 = accepted.get(1);
+        waitUntil("received", () -> server2.right.received.get() == 1024, 5_000);
+        assertEquals('c', server2.right.firstByte);
+        assertNull(client2.error);
+    }
+
+    @Test
+    public void smallStreamNotStarvedByBulkStream() throws Exception {
+        start(19194, () -> new RecordingHandler(true), () -> new RecordingHandler(false));
+
+        int bulk = 16 * Config.streamedFdWindow;
+        int small = 1024;
+        serverPeers = () -> new Peer(null, false);
+
+        Peer bulkClient = new Peer(randomBytes(bulk, (byte) 'a'), false);
+        connect(bulkClient);
+        waitUntil("accepted", () -> accepted.size() == 1, 5_000);
+        var bulkServer = accepted.get(0);
+        // make sure the bulk stream is saturating the connection
+        waitUntil("bulk started", () -> bulkServer.right.received.get() >= Config.streamedFdWindow / 2, 30_000);
+
+        serverPeers = () -> new Peer(null, false);
+        Peer smallClient = new Peer(randomBytes(small, (byte) 'b'), false);
+        connect(smallClient);
+        waitUntil("accepted", () -> accepted.size() == 2, 5_000);
+        var smallServer = accepted.get(1);
+        waitUntil("small received", () -> smallServer.right.received.get() == small, 30_000);
+        long bulkReceived = bulkServer.right.received.get();
+
+        assertEquals('b', smallServer.right.firstByte);
+        // the small stream doesn't wait until the bulk stream finishes
+        assertTrue("bulk received " + bulkReceived, bulkReceived < bulk);
+
+        waitUntil("bulk received", () -> bulkServer.right.received.get() == bulk, 120_000);
+        assertNull(bulkClient.error);
+        assertNull(smallClient.error);
+    }
+}
@@ -3,6 +3,7 @@ package io.vproxy.test.cases;
 import io.vproxy.app.app.cmd.handle.resource.SwitchHandle;
 import io.vproxy.app.plugin.impl.BasePacketFilter;
 import io.vproxy.base.component.elgroup.EventLoopGroup;
+import io.vproxy.base.Config;
 import io.vproxy.base.util.Annotations;
 import io.vproxy.base.util.ByteArray;
 import io.vproxy.base.util.Consts;
@@ -20,12 +21,21 @@ import io.vproxy.vswitch.RouteTable;
 import io.vproxy.vswitch.Switch;
 import io.vproxy.vswitch.iface.ProgramIface;
 import io.vproxy.vswitch.plugin.FilterResult;
+import io.vproxy.vswitch.util.FlowHash;
 import io.vproxy.vswitch.util.SwitchUtils;
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import static org.junit.Assert.*;
 
@@ -114,6 +124,73 @@ public class TestSwitch {
         assertSame(net1.macTable.lookup(new MacAddress("aa:bb:cc:dd:ee:00")), eth0);
     }
 
+    private EthernetPacket buildEther(String srcMac, String dstMac, String payload) {
+        var e = new EthernetPacket();
+        e.setSrc(new MacAddress(srcMac));
+        e.setDst(new MacAddress(dstMac));
+        e.setType(0xffff);
+        e.setPacket(new PacketBytes(ByteArray.from(payload)));
+        return e;
+    }
+
+    @Test
+    public void vectorModeSameAsScalar() throws Exception {
+        var scalar = runBatches(false);
+        var vector = runBatches(true);
+        assertEquals(scalar, vector);
+        // unicast packets, plus the flooded and broadcast ones
+        assertTrue(scalar.get("eth1").size() >= 5);
+        assertTrue(scalar.get("eth3").size() >= 3);
+        var sameIface = buildEther("aa:bb:cc:dd:ee:00", "aa:bb:cc:dd:ee:09", "a-same-iface").toString();
+        for (var ls : scalar.values()) {
+            assertFalse(ls.contains(sameIface));
+        }
+    }
+
+    private Map<String, List<String>> runBatches(boolean vectorMode) throws Exception {
+        sw.setVectorMode(vectorMode);
+        assertEquals(vectorMode, sw.isVectorMode());
+
+        var net1 = sw.getNetwork(1);
+        net1.macTable.clearCache();
+        net1.macTable.record(new MacAddress("aa:bb:cc:dd:ee:01"), eth1);
+        net1.macTable.record(new MacAddress("aa:bb:cc:dd:ee:03"), eth3);
+        net1.macTable.record(new MacAddress("aa:bb:cc:dd:ee:09"), eth0);
+
+        var batch = new ArrayList<EthernetPacket>();
+        for (int i = 0; i < 3; ++i) {
+            batch.add(buildEther("aa:bb:cc:dd:ee:00", "aa:bb:cc:dd:ee:01", "a-b-" + i));
+        }
+        batch.add(buildEther("aa:bb:cc:dd:ee:08", "aa:bb:cc:dd:ee:01", "h-b"));
+        batch.add(buildEther("aa:bb:cc:dd:ee:00", "aa:bb:cc:dd:ee:03", "a-d"));
+        batch.add(buildEther("aa:bb:cc:dd:ee:00", "aa:bb:cc:dd:ee:09", "a-same-iface"));
+        batch.add(buildEther("aa:bb:cc:dd:ee:00", "aa:bb:cc:dd:ee:77", "a-unknown"));
+        batch.add(buildEther("aa:bb:cc:dd:ee:00", "ff:ff:ff:ff:ff:ff", "a-broadcast"));
+        batch.add(buildEther("aa:bb:cc:dd:ee:00", "aa:bb:cc:dd:ee:03", "a-d-again"));
+        eth0.injectPackets(batch);
+        eth2.injectPackets(List.of(
+            buildEther("aa:bb:cc:dd:ee:02", "aa:bb:cc:dd:ee:01", "c-b"),
+            buildEther("aa:bb:cc:dd:ee:02", "aa:bb:cc:dd:ee:03", "c-d")));
+
+        Map<String, List<String>> received = new TreeMap<>();
+        for (var iface : List.of(eth0, eth1, eth2, eth3, eth24, eth25, eth36, eth47)) {
+            var ls = new ArrayList<String>();
+            ProgramIface.ReceivedPacket p;
+            while ((p = iface.poll()) != null) {
+                ls.add(p.pkt.toString());
+            }
+            Collections.sort(ls);
+            received.put(iface.alias, ls);
+        }
+        var macs = new ArrayList<String>();
+        for (var entry : net1.macTable.listEntries()) {
+            macs.add(entry.mac + "->" + entry.iface.name());
+        }
+        Collections.sort(macs);
+        received.put("mac-table", macs);
+        return received;
+    }
+
     private EthernetPacket buildArpRequest(String srcMac, String srcIP, String dstIP) {
         var e = new EthernetPacket();
         e.setSrc(new MacAddress(srcMac));
@@ -668,4 +745,127 @@ public class TestSwitch {
         assertEquals(443, tcp.getSrcPort());
         assertEquals(34567, tcp.getDstPort());
     }
+
+    @Test
+    public void flowHashSymmetric() throws Exception {
+        var net1 = sw.getNetwork(1);
+        for (int i = 0; i < 16; ++i) {
+            var a = buildTcp("aa:bb:cc:dd:ee:01", "192.168.1.1", 10000 + i, "aa:bb:cc:dd:ee:02", "192.168.1.2", 443, 1, Consts.TCP_FLAGS_SYN);
+            var b = buildTcp("aa:bb:cc:dd:ee:02", "192.168.1.2", 443, "aa:bb:cc:dd:ee:01", "192.168.1.1", 10000 + i, 1, Consts.TCP_FLAGS_SYN | Consts.TCP_FLAGS_ACK);
+            var pa = PacketBuffer.fromPacket(net1, a);
+            var pb = PacketBuffer.fromPacket(net1, b);
+            assertEquals(FlowHash.hash(pa), FlowHash.hash(pb));
+            int idx = FlowHash.select(pa, 3);
+            assertTrue(0 <= idx && idx < 3);
+        }
+    }
+
+    @Test
+    public void detachOwnsItsBuffer() throws Exception {
+        var e = buildPing("aa:bb:cc:dd:ee:02", "192.168.1.2", "aa:bb:cc:dd:ee:01", "192.168.1.1");
+        var raw = e.getRawPacket(0);
+        var buf = ByteArray.allocate(SwitchUtils.RCV_HEAD_PRESERVE_LEN + raw.length());
+        raw.copyInto(buf, SwitchUtils.RCV_HEAD_PRESERVE_LEN, 0, raw.length());
+        var pkb = PacketBuffer.fromEtherBytes(eth2, 1, buf, SwitchUtils.RCV_HEAD_PRESERVE_LEN, 0);
+        assertNull(pkb.init());
+        pkb.mask = 123;
+
+        var copy = pkb.detach();
+        assertNotNull(copy);
+        // the original buffer is reused for other packets
+        for (int i = 0; i < buf.length(); ++i) {
+            buf.set(i, (byte) 0);
+        }
+        assertEquals(e, copy.pkt);
+        assertEquals(1, copy.vrf);
+        assertSame(eth2, copy.devin);
+        assertEquals(123, copy.mask);
+    }
+
+    @Test
+    public void shardedVXLan() throws Exception {
+        Assume.assumeTrue(Config.supportReusePortLB());
+
+        var elg = new EventLoopGroup("elg-sharded");
+        elg.add("el0");
+        elg.add("el1");
+        elg.add("el2");
+        var bind = new IPPort("127.0.0.1", 18472);
+        var sharded = new Switch("sharded", bind, elg,
+            SwitchHandle.MAC_TABLE_TIMEOUT, SwitchHandle.ARP_TABLE_TIMEOUT,
+            SecurityGroup.allowAll());
+        sharded.setShardCount(3);
+        var sockets = new ArrayList<DatagramSocket>();
+        try {
+            sharded.start();
+            sharded.addNetwork(1, Network.from("192.168.1.0/24"), Network.from("fd00::1:0/120"), new Annotations());
+            assertEquals(3, sharded.getShardCount());
+            Thread.sleep(200); // wait for shard socks to be bound
+
+            var target = new InetSocketAddress("127.0.0.1", 18472);
+            var receiver = new DatagramSocket(new InetSocketAddress("127.0.0.1", 0));
+            receiver.setSoTimeout(2_000);
+            sockets.add(receiver);
+            var receiverMac = new MacAddress("aa:bb:cc:dd:ee:00");
+
+            // let the switch learn the receiver
+            byte[] learn = buildVXLan(buildEther("aa:bb:cc:dd:ee:00", "ff:ff:ff:ff:ff:ff", "learn"));
+            receiver.send(new DatagramPacket(learn, learn.length, target));
+            var net = sharded.getNetwork(1);
+            long begin = System.currentTimeMillis();
+            while (net.macTable.lookup(receiverMac) == null) {
+                assertTrue(System.currentTimeMillis() - begin < 2_000);
+                Thread.sleep(10);
+            }
+            Thread.sleep(100); // wait for the snapshot to be published to shards
+
+            // different source ports, spread across the shard socks by the kernel
+            int n = 32;
+            for (int i = 0; i < n; ++i) {
+                sockets.add(new DatagramSocket(new InetSocketAddress("127.0.0.1", 0)));
+            }
+            // the first round creates ifaces for the remotes on the main loop,
+            // the second round is handled by the loops owning the socks
+            for (int round = 0; round < 2; ++round) {
+                for (int i = 0; i < n; ++i) {
+                    var mac = String.format("aa:bb:cc:dd:%02x:01", i);
+                    byte[] b = buildVXLan(buildEther(mac, "aa:bb:cc:dd:ee:00", "pkt-" + round + "-" + i));
+                    sockets.get(i + 1).send(new DatagramPacket(b, b.length, target));
+                }
+                var payloads = new ArrayList<String>();
+                for (int i = 0; i < n; ++i) {
+                    byte[] rcv = new byte[2048];
+                    var p = new DatagramPacket(rcv, rcv.length);
+                    receiver.receive(p);
+                    var vxlan = new VXLanPacket();
+                    assertNull(vxlan.from(new PacketDataBuffer(ByteArray.from(rcv).sub(0, p.getLength()))));
+                    assertEquals(receiverMac, vxlan.getPacket().getDst());
+                    payloads.add(new String(vxlan.getPacket().getPacket().getRawPacket(0).toJavaArray()));
+                }
+                for (int i = 0; i < n; ++i) {
+                    assertTrue(payloads.contains("pkt-" + round + "-" + i));
+                }
+            }
+            assertTrue("no packet handled by shards", sharded.getShardHandledPackets() > 0);
+        } finally {
+            for (var s : sockets) {
+                s.close();
+            }
+            sharded.stop();
+            for (var name : List.of("el0", "el1", "el2")) {
+                try {
+                    elg.remove(name);
+                } catch (Exception ignore) {
+                }
+            }
+        }
+    }
+
+    private byte[] buildVXLan(EthernetPacket e) {
+        var vxlan = new VXLanPacket();
+        vxlan.setFlags(0x08);
+        vxlan.setVni(1);
+        vxlan.setPacket(e);
+        return vxlan.getRawPacket(0).toJavaArray();
+    }
 }
@@ -1,6 +1,7 @@
 package io.vproxy.test.cases;
 
 import io.vproxy.base.Config;
+import io.vproxy.base.GlobalInspection;
 import io.vproxy.base.component.check.HealthCheckConfig;
 import io.vproxy.base.component.elgroup.EventLoopGroup;
 import io.vproxy.base.component.svrgroup.Method;
@@ -405,6 +406,168 @@ public class TestTcpLB {
         }
     }
 
+    @Test
+    public void consistentHashingRemapping() throws Exception {
+        for (Method method : new Method[]{Method.maglev, Method.ketama}) {
+            ServerGroup sg = new ServerGroup("sg-" + method, elg0, new HealthCheckConfig(400, /* disable health check */24 * 60 * 60 * 1000, 2, 3), method);
+            int serverCount = 10;
+            for (int i = 0; i < serverCount; ++i) {
+                sg.add("svr" + i, new IPPort("127.0.0." + (i + 1), 80), 10);
+            }
+            for (ServerGroup.ServerHandle h : sg.getServerHandles()) {
+                h.healthy = true;
+            }
+
+            int clientCount = 10000;
+            IPPort[] before = new IPPort[clientCount];
+            for (int i = 0; i < clientCount; ++i) {
+                IPPort source = new IPPort(IP.from(new byte[]{10, (byte) (i >> 16), (byte) (i >> 8), (byte) i}), 12345);
+                before[i] = sg.next(source).remote;
+                assertEquals("same source should go to the same server", before[i], sg.next(source).remote);
+            }
+
+            sg.remove("svr3");
+            int moved = 0;
+            for (int i = 0; i < clientCount; ++i) {
+                IPPort source = new IPPort(IP.from(new byte[]{10, (byte) (i >> 16), (byte) (i >> 8), (byte) i}), 12345);
+                IPPort after = sg.next(source).remote;
+                if (!after.equals(before[i])) {
+                    ++moved;
+                    if (method == Method.ketama) { // maglev may remap a few more flows to make the table balanced
+                        assertEquals("only flows of the removed server should be remapped", "127.0.0.4", before[i].getAddress().formatToIPString());
+                    }
+                }
+            }
+            assertTrue(method + ": moved " + moved + " should be about 1/" + serverCount, moved < clientCount * 2 / serverCount);
+
+            sg.destroy();
+        }
+    }
+
+    @Test
+    public void maglevTableNotResizedWhenServersAdded() throws Exception {
+        ServerGroup sg = new ServerGroup("sg-maglev-grow", elg0, new HealthCheckConfig(400, /* disable health check */24 * 60 * 60 * 1000, 2, 3), Method.maglev);
+        int serverCount = 50;
+        for (int i = 0; i < serverCount; ++i) {
+            sg.add("svr" + i, new IPPort("127.0.1." + (i + 1), 80), 10);
+        }
+        for (ServerGroup.ServerHandle h : sg.getServerHandles()) {
+            h.healthy = true;
+        }
+
+        int clientCount = 10000;
+        IPPort[] before = new IPPort[clientCount];
+        for (int i = 0; i < clientCount; ++i) {
+            IPPort source = new IPPort(IP.from(new byte[]{10, (byte) (i >> 16), (byte) (i >> 8), (byte) i}), 12345);
+            before[i] = sg.next(source).remote;
+        }
+
+        // the 51st server, with a table resized by the servers count, nearly every flow would move
+        sg.add("svr" + serverCount, new IPPort("127.0.1." + (serverCount + 1), 80), 10);
+        for (ServerGroup.ServerHandle h : sg.getServerHandles()) {
+            h.healthy = true;
+        }
+        int moved = 0;
+        for (int i = 0; i < clientCount; ++i) {
+            IPPort source = new IPPort(IP.from(new byte[]{10, (byte) (i >> 16), (byte) (i >> 8), (byte) i}), 12345);
+            if (!sg.next(source).remote.equals(before[i])) {
+                ++moved;
+            }
+        }
+        assertTrue("moved " + moved + " should be about 1/" + (serverCount + 1), moved < clientCount * 2 / (serverCount + 1));
+
+        sg.destroy();
+    }
+
+    @Test
+    public void switchMethodAfterModifications() throws Exception {
+        ServerGroup sg = new ServerGroup("sg-switch-method", elg0, new HealthCheckConfig(400, /* disable health check */24 * 60 * 60 * 1000, 2, 3), Method.wrr);
+        sg.add("svr0", new IPPort("127.0.0.1", 80), 10);
+        sg.add("svr1", new IPPort("127.0.0.2", 80), 10);
+        for (ServerGroup.ServerHandle h : sg.getServerHandles()) {
+            h.healthy = true;
+        }
+        // only built for wrr until the method is switched
+        sg.getServerHandles().get(0).setWeight(0);
+
+        IPPort source = new IPPort("10.0.0.1", 12345);
+        for (Method method : Method.values()) {
+            sg.setMethod(method);
+            for (int i = 0; i < 10; ++i) {
+                var connector = sg.next(source);
+                assertNotNull(method + " should find a server", connector);
+                assertEquals(method + " should not use the server with weight 0", "127.0.0.2", connector.remote.getAddress().formatToIPString());
+            }
+        }
+
+        sg.destroy();
+    }
+
+    @Test
+    public void connectFailurePenaltyCapped() throws Exception {
+        int timeout = 400;
+        ServerGroup sg = new ServerGroup("sg-failure-penalty", elg0, new HealthCheckConfig(timeout, /* disable health check */24 * 60 * 60 * 1000, 2, 3), Method.p2c);
+        sg.add("svr0", new IPPort("127.0.0.1", 80), 10);
+        ServerGroup.ServerHandle h = sg.getServerHandles().get(0);
+        h.makeConnector().connectionSucceeded(1_000_000);
+        for (int i = 0; i < 200; ++i) {
+            h.makeConnector().connectionFailed();
+        }
+        long cost = h.getConnectCostEWMA();
+        assertTrue("cost " + cost + " should not exceed the health check timeout", cost <= timeout * 1_000_000L);
+        assertTrue("cost " + cost + " should be penalized", cost > timeout * 1_000_000L / 2);
+
+        // recovers after some successful connects
+        for (int i = 0; i < 50; ++i) {
+            h.makeConnector().connectionSucceeded(1_000_000);
+        }
+        assertTrue("cost " + h.getConnectCostEWMA() + " should recover", h.getConnectCostEWMA() < 2_000_000);
+
+        sg.destroy();
+    }
+
+    @Test
+    public void p2c() throws Exception {
+        ServerGroup sg = new ServerGroup("sg-p2c", elg0, new HealthCheckConfig(400, /* disable health check */24 * 60 * 60 * 1000, 2, 3), Method.p2c);
+        sg.add("svr0", new IPPort("127.0.0.1", 80), 10);
+        sg.add("svr1", new IPPort("127.0.0.2", 80), 10);
+        sg.add("svr2", new IPPort("127.0.0.3", 80), 10);
+        ServerGroup.ServerHandle[] handles = new ServerGroup.ServerHandle[3];
+        for (ServerGroup.ServerHandle h : sg.getServerHandles()) {
+            h.healthy = true;
+            handles[Integer.parseInt(h.alias.substring("svr".length()))] = h;
+        }
+        // force the loads: svr0 < svr1 < svr2
+        handles[0].makeConnector().connectionSucceeded(1_000_000);
+        handles[1].makeConnector().connectionSucceeded(10_000_000);
+        handles[2].makeConnector().connectionSucceeded(100_000_000);
+
+        IPPort source = new IPPort("10.0.0.1", 12345);
+        int[] counts = new int[3];
+        for (int i = 0; i < 3000; ++i) {
+            counts[sg.next(source).remote.getAddress().getAddress()[3] - 1]++;
+        }
+        // the most loaded server is never the better one of two samples
+        assertEquals("svr2 should never be selected", 0, counts[2]);
+        // svr0 wins every pair it is in, which is 2/3 of the pairs
+        assertTrue("svr0 should be selected more than svr1: " + counts[0] + " vs " + counts[1], counts[0] > counts[1]);
+        assertTrue("svr1 should be selected when paired with svr2: " + counts[1], counts[1] > 0);
+
+        // unhealthy servers are skipped
+        handles[0].healthy = false;
+        for (int i = 0; i < 1000; ++i) {
+            assertNotEquals("svr0 is down", "127.0.0.1", sg.next(source).remote.getAddress().formatToIPString());
+        }
+        handles[1].healthy = false;
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals("svr2 is the only healthy server", "127.0.0.3", sg.next(source).remote.getAddress().formatToIPString());
+        }
+        handles[2].healthy = false;
+        assertNull("no healthy server", sg.next(source));
+
+        sg.destroy();
+    }
+
     @Test
     public void changeHealthCheckOnRunning() throws Exception {
         ServerGroup.ServerHandle h = sg0.getServerHandles().stream().findFirst().get();
@@ -716,4 +879,12 @@ public class TestTcpLB {
         assertNotSame("the old server is removed", old, list.get(0));
         assertFalse("the new server is not logic deleted", list.get(0).isLogicDelete());
     }
+
+    @Test
+    public void noSslHandshakeTimeWithoutTls() {
+        String metrics = GlobalInspection.getInstance().getPrometheusString();
+        // lb0 does not serve tls
+        assertTrue(metrics, metrics.lines().noneMatch(l ->
+            l.startsWith("tcp_lb_ssl_handshake_time_micros") && l.contains("tcp_lb=\"lb0\"")));
+    }
 }
@@ -4,10 +4,16 @@ import io.vproxy.base.selector.PeriodicEvent;
 import io.vproxy.base.selector.SelectorEventLoop;
 import io.vproxy.base.selector.TimerEvent;
 import io.vproxy.base.util.thread.VProxyThread;
+import io.vproxy.base.util.time.TimeElem;
+import io.vproxy.base.util.time.TimeQueue;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import static org.junit.Assert.*;
 
 public class TestTimer {
@@ -76,4 +82,56 @@ public class TestTimer {
         Thread.sleep(500);
         assertEquals("still 3 alerts", 3, i[0]);
     }
+
+    @Test
+    public void timeWheelLoop() throws Exception {
+        var opts = new SelectorEventLoop.InitOptions();
+        opts.timeWheel = true;
+        var loop = SelectorEventLoop.open(opts);
+        loop.loop(r -> VProxyThread.create(r, "EventLoopWithTimeWheel"));
+        try {
+            boolean[] done = {false, false, false};
+            TimerEvent te0 = loop.delay(1000, () -> done[0] = true);
+            loop.delay(500, () -> done[1] = true);
+            loop.delay(1500, () -> done[2] = true);
+            Thread.sleep(550);
+            assertArrayEquals("500 ms", new boolean[]{false, true, false}, done);
+            te0.cancel();
+            Thread.sleep(1000);
+            assertArrayEquals("1500 ms", new boolean[]{false, true, true}, done);
+        } finally {
+            loop.close();
+        }
+    }
+
+    @Test
+    public void timeWheelOrder() {
+        TimeQueue<Long> wheel = TimeQueue.createTimeWheel();
+        Random rand = new Random();
+        long current = 1_000_000;
+        List<TimeElem<Long>> elems = new ArrayList<>();
+        for (int i = 0; i < 10000; ++i) {
+            int timeout = rand.nextInt(10) == 0 ? rand.nextInt(100_000_000) : rand.nextInt(5000);
+            elems.add(wheel.add(current, timeout, current + timeout));
+        }
+        // cancel half of them
+        List<TimeElem<Long>> canceled = elems.subList(0, 5000);
+        for (var e : canceled) {
+            e.removeSelf();
+        }
+        int fired = 0;
+        while (!wheel.isEmpty()) {
+            int next = wheel.nextTime(current);
+            if (next == 0) {
+                long trigger = wheel.poll();
+                assertTrue("should not fire earlier than expected", trigger <= current);
+                assertTrue("should not fire too late", current - trigger <= 1000);
+                ++fired;
+            } else {
+                assertTrue(next > 0);
+                current += Math.min(next, 1000);
+            }
+        }
+        assertEquals(5000, fired);
+    }
 }
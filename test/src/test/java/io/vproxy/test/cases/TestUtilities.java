@@ -1,10 +1,21 @@
 package io.vproxy.test.cases;
 
 import io.vproxy.base.Config;
+import io.vproxy.base.GlobalInspection;
+import io.vproxy.base.component.svrgroup.WRRSequence;
+import io.vproxy.base.connection.Protocol;
+import io.vproxy.base.processor.Hint;
+import io.vproxy.base.processor.HintIndex;
+import io.vproxy.base.selector.SelectorEventLoop;
+import io.vproxy.base.util.AnnotationKeys;
+import io.vproxy.base.util.Annotations;
 import io.vproxy.base.util.ByteArray;
+import io.vproxy.base.util.Consts;
 import io.vproxy.base.util.Network;
 import io.vproxy.base.util.Utils;
 import io.vproxy.base.util.bitwise.*;
+import io.vproxy.base.util.coll.AhoCorasick;
+import io.vproxy.base.util.coll.MPSCArrayQueue;
 import io.vproxy.base.util.coll.RingQueue;
 import io.vproxy.base.util.display.TreeBuilder;
 import io.vproxy.base.util.net.IPPortPool;
@@ -14,14 +25,42 @@ import io.vproxy.base.util.objectpool.PrototypeObjectList;
 import io.vproxy.base.util.ratelimit.RateLimiter;
 import io.vproxy.base.util.ratelimit.SimpleRateLimiter;
 import io.vproxy.base.util.ratelimit.StatisticsRateLimiter;
+import io.vproxy.base.util.thread.VProxyThread;
+import io.vproxy.base.util.RingBuffer;
+import io.vproxy.base.util.RingBufferETHandler;
+import io.vproxy.base.util.nio.ByteArrayChannel;
+import io.vproxy.base.util.ringbuffer.PooledRingBuffer;
+import io.vproxy.base.util.ringbuffer.ProxyOutputRingBuffer;
+import io.vproxy.base.util.ringbuffer.RingBufferPool;
+import io.vproxy.base.util.ringbuffer.SimpleRingBuffer;
+import io.vproxy.base.util.ringbuffer.SpliceRingBuffer;
+import io.vproxy.component.secure.SecurityGroup;
+import io.vproxy.component.secure.SecurityGroupRule;
+import io.vproxy.vfd.DatagramBatch;
+import io.vproxy.vfd.FDProvider;
 import io.vproxy.vfd.IP;
 import io.vproxy.vfd.IPPort;
 import io.vproxy.vfd.MacAddress;
+import io.vproxy.vfd.ServerSocketFD;
+import io.vproxy.vfd.SocketFD;
+import io.vproxy.vpacket.conntrack.FlowTable;
+import io.vproxy.vproxyx.websocks.ABP;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
@@ -127,6 +166,179 @@ public class TestUtilities {
         }
     }
 
+    @Test
+    public void mpscArrayQueue() throws Exception {
+        MPSCArrayQueue<Integer> q = new MPSCArrayQueue<>(5);
+        assertEquals(8, q.capacity());
+        assertTrue(q.isEmpty());
+        assertNull(q.poll());
+        for (int i = 0; i < 8; ++i) {
+            assertTrue(q.offer(i));
+        }
+        assertFalse(q.offer(8));
+        assertEquals(8, q.size());
+        List<Integer> drained = new LinkedList<>();
+        assertEquals(3, q.drain(drained::add, 3));
+        assertEquals(List.of(0, 1, 2), drained);
+        assertTrue(q.offer(8));
+        assertEquals(6, q.drain(drained::add, 100));
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8), drained);
+        assertTrue(q.isEmpty());
+
+        // multiple producers, elements from the same producer keep their order
+        MPSCArrayQueue<int[]> mq = new MPSCArrayQueue<>(64);
+        int producers = 4;
+        int perProducer = 10000;
+        List<Thread> threads = new LinkedList<>();
+        for (int p = 0; p < producers; ++p) {
+            int pid = p;
+            Thread t = new Thread(() -> {
+                for (int i = 0; i < perProducer; ++i) {
+                    int[] e = {pid, i};
+                    while (!mq.offer(e)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        int[] last = new int[producers];
+        Arrays.fill(last, -1);
+        int total = 0;
+        while (total < producers * perProducer) {
+            int[] e = mq.poll();
+            if (e == null) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(last[e[0]] + 1, e[1]);
+            last[e[0]] = e[1];
+            ++total;
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertTrue(mq.isEmpty());
+    }
+
+    @Test
+    public void hintIndex() {
+        String[] hosts = {null, "*", "example.com", "a.example.com", "b.a.example.com", "com", "test.org", ""};
+        String[] uris = {null, "*", "/", "", "/api", "/api/v1", "/static", "/api/v1/users"};
+        int[] ports = {0, 80, 443};
+        var rand = new Random(7);
+        List<Annotations[]> annos = new ArrayList<>();
+        var builder = new HintIndex.Builder<Integer>();
+        for (int i = 0; i < 200; ++i) {
+            var handleAnno = randomHintAnnotations(rand, hosts, uris, ports);
+            var groupAnno = randomHintAnnotations(rand, hosts, uris, ports);
+            annos.add(new Annotations[]{handleAnno, groupAnno});
+            builder.add(i, handleAnno, groupAnno);
+        }
+        var index = builder.build();
+
+        String[] inputHosts = {null, "example.com", "www.example.com:8080", "x.b.a.example.com", "example.org", "com", "*", "test.org"};
+        String[] inputUris = {null, "/", "/api", "/api/v1/users/1?x=y", "/static/", "/other", "*"};
+        for (var host : inputHosts) {
+            for (var uri : inputUris) {
+                for (int port : ports) {
+                    Hint hint;
+                    if (uri == null) {
+                        hint = Hint.ofHostPort(host, port);
+                    } else {
+                        hint = Hint.ofHostPortUri(host, port, uri);
+                    }
+                    Integer expected = null;
+                    int level = 0;
+                    for (int i = 0; i < annos.size(); ++i) {
+                        int l = hint.matchLevel(annos.get(i));
+                        if (l > level) {
+                            level = l;
+                            expected = i;
+                        }
+                    }
+                    assertEquals(hint.toString(), expected, index.search(hint));
+                }
+            }
+        }
+    }
+
+    private static Annotations randomHintAnnotations(Random rand, String[] hosts, String[] uris, int[] ports) {
+        var map = new HashMap<String, String>();
+        var host = hosts[rand.nextInt(hosts.length)];
+        if (host != null) {
+            map.put(AnnotationKeys.ServerGroup_HintHost.name, host);
+        }
+        var uri = uris[rand.nextInt(uris.length)];
+        if (uri != null) {
+            map.put(AnnotationKeys.ServerGroup_HintUri.name, uri);
+        }
+        int port = ports[rand.nextInt(ports.length)];
+        if (port != 0) {
+            map.put(AnnotationKeys.ServerGroup_HintPort.name, "" + port);
+        }
+        return new Annotations(map);
+    }
+
+    @Test
+    public void securityGroupPortRules() throws Exception {
+        var secg = new SecurityGroup("secg-test", true);
+        var net = Network.from("10.0.0.0/8");
+        secg.addRule(new SecurityGroupRule("r0", net, Protocol.TCP, 80, 80, true));
+        secg.addRule(new SecurityGroupRule("r1", net, Protocol.TCP, 1, 1024, false));
+        secg.addRule(new SecurityGroupRule("r2", net, Protocol.TCP, 1000, 2000, true));
+        secg.addRule(new SecurityGroupRule("r3", Network.from("10.1.0.0/16"), Protocol.TCP, 0, 65535, false));
+        var ip = IP.from("10.0.0.1");
+
+        assertTrue(secg.allow(Protocol.TCP, ip, 80));
+        assertFalse(secg.allow(Protocol.TCP, ip, 443));
+        // first match wins: [1000, 1024] is covered by r1
+        assertFalse(secg.allow(Protocol.TCP, ip, 1000));
+        assertTrue(secg.allow(Protocol.TCP, ip, 1025));
+        assertTrue(secg.allow(Protocol.TCP, ip, 3000));
+        assertTrue(secg.allow(Protocol.UDP, ip, 443));
+        assertFalse(secg.allow(Protocol.TCP, IP.from("10.1.0.1"), 80));
+
+        secg.removeRule("r1");
+        assertTrue(secg.allow(Protocol.TCP, ip, 1000));
+        assertTrue(secg.allow(Protocol.TCP, ip, 443));
+
+        var hits = new HashMap<String, Long>();
+        for (var r : secg.getRules()) {
+            hits.put(r.alias, r.getHitCount());
+        }
+        assertEquals(Map.of("r0", 1L, "r2", 2L, "r3", 1L), hits);
+        secg.destroy();
+    }
+
+    @Test
+    public void wrrSequence() {
+        assertArrayEquals(new int[0], WRRSequence.build(new int[0]));
+        assertArrayEquals(new int[]{0}, WRRSequence.build(new int[]{10}));
+        assertArrayEquals(new int[]{0, 1, 0}, WRRSequence.build(new int[]{10, 5}));
+        assertArrayEquals(new int[]{0, 0, 1, 0}, WRRSequence.build(new int[]{3, 1}));
+
+        var rand = new Random(42);
+        for (int round = 0; round < 100; ++round) {
+            int[] weights = new int[1 + rand.nextInt(10)];
+            int total = 0;
+            for (int i = 0; i < weights.length; ++i) {
+                weights[i] = 1 + rand.nextInt(100);
+                total += weights[i];
+            }
+            int[] seq = WRRSequence.build(weights);
+            int[] count = new int[weights.length];
+            for (int idx : seq) {
+                ++count[idx];
+            }
+            for (int i = 0; i < weights.length; ++i) {
+                // each index appears weight/gcd times
+                assertEquals(weights[i] * (long) seq.length, count[i] * (long) total);
+            }
+        }
+    }
+
     @Test
     public void ringQueue() {
         RingQueue<Integer> q = new RingQueue<>(5);
@@ -545,4 +757,661 @@ public class TestUtilities {
         assertEquals("[fd00::abcd:1234]:1-65535", new IPPortPool("fd00::abcd:1234:1-65535").serialize());
         assertEquals("[fd00::abcd:1234]:1-65535", new IPPortPool("[fd00::abcd:1234]:1-65535").serialize());
     }
+
+    @Test
+    public void datagramBatch() {
+        DatagramBatch batch = new DatagramBatch(2, 8);
+        IPPort a = new IPPort("1.2.3.4", 80);
+        IPPort b = new IPPort("5.6.7.8", 443);
+        assertTrue(batch.add(ByteBuffer.wrap("abc".getBytes()), a));
+        assertTrue(batch.add(ByteBuffer.wrap("hello".getBytes()), b));
+        assertFalse(batch.add(ByteBuffer.wrap("x".getBytes()), a));
+        assertEquals(2, batch.count());
+        assertTrue(batch.isIPv4());
+
+        assertEquals(3, batch.length(0));
+        ByteBuffer buf = batch.get(1);
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+        assertEquals("hello", new String(bytes));
+        assertSame(a, batch.address(0));
+        assertEquals(b, batch.address(1));
+
+        batch.reset();
+        assertEquals(0, batch.count());
+        try {
+            batch.add(ByteBuffer.allocate(9), a);
+            fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+        assertTrue(batch.add(ByteBuffer.allocate(1), a));
+        try {
+            batch.add(ByteBuffer.allocate(1), new IPPort("::1", 80));
+            fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+
+        batch.setReceived(1, true);
+        batch.setReceived(1, 8, new IPPort(IP.from("9.9.9.9"), 53));
+        assertEquals(8, batch.length(1));
+        assertEquals(new IPPort("9.9.9.9", 53), batch.address(1));
+    }
+
+    @Test
+    public void datagramBatchHeadroom() {
+        DatagramBatch batch = new DatagramBatch(2, 8, 4);
+        assertEquals(4, batch.slotOffset(0));
+        assertEquals(16, batch.slotOffset(1));
+        assertEquals(24, batch.getRawData().capacity());
+
+        IPPort a = new IPPort("fd00::1", 80);
+        assertTrue(batch.add(ByteBuffer.wrap("abc".getBytes()), a));
+        assertTrue(batch.add(ByteBuffer.wrap("hello".getBytes()), a));
+        assertFalse(batch.isIPv4());
+        assertEquals('a', batch.getRawData().get(4));
+        assertEquals('h', batch.getRawData().get(16));
+
+        // simulate receiving from another ipv6 remote
+        IP ip = IP.from("fd00::abcd:1234");
+        ByteBuffer meta = batch.getRawMeta();
+        meta.putInt(DatagramBatch.META_LEN + 4, 443);
+        meta.put(DatagramBatch.META_LEN + 8, ip.getAddress());
+        batch.setReceived(2, false);
+        assertSame(a, batch.address(0));
+        IPPort b = batch.address(1);
+        assertEquals(new IPPort(ip, 443), b);
+        assertSame(b, batch.address(1));
+    }
+
+    @Test
+    public void pooledRingBuffer() {
+        PooledRingBuffer buf = PooledRingBuffer.allocate(16);
+        assertFalse(buf.isAttached());
+        assertEquals(16, buf.free());
+        int[] readable = {0};
+        int[] writable = {0};
+        buf.addHandler(new RingBufferETHandler() {
+            @Override
+            public void readableET() {
+                ++readable[0];
+            }
+
+            @Override
+            public void writableET() {
+                ++writable[0];
+            }
+        });
+
+        assertEquals(0, buf.storeBytesFrom(ByteArrayChannel.fromEmpty(0)));
+        assertFalse(buf.isAttached());
+        assertEquals(0, readable[0]);
+
+        assertEquals(16, buf.storeBytesFrom(ByteArrayChannel.fromFull("0123456789abcdefXYZ".getBytes())));
+        assertTrue(buf.isAttached());
+        assertEquals(1, readable[0]);
+        assertEquals(0, buf.free());
+
+        ByteArrayChannel out = ByteArrayChannel.fromEmpty(10);
+        assertEquals(10, buf.writeTo(out));
+        assertEquals(1, writable[0]);
+        assertTrue(buf.isAttached());
+        assertEquals(6, buf.used());
+
+        out = ByteArrayChannel.fromEmpty(10);
+        assertEquals(6, buf.writeTo(out));
+        assertEquals("abcdef", new String(out.getBytes(), 0, 6));
+        assertFalse(buf.isAttached());
+        assertEquals(16, buf.free());
+
+        buf.clean();
+    }
+
+    @Test
+    public void loopInspectionSlowCallback() throws Exception {
+        var opts = new SelectorEventLoop.InitOptions();
+        opts.inspection = true;
+        SelectorEventLoop loop = SelectorEventLoop.open(opts);
+        loop.loop(r -> VProxyThread.create(r, "loop-inspection-test"));
+        try {
+            var inspection = loop.getInspection();
+            assertNotNull(inspection);
+            long slowMillis = Config.eventLoopSlowCallbackMillis;
+
+            loop.runOnLoop(() -> {
+            });
+            loop.runOnLoop(() -> {
+                try {
+                    Thread.sleep(slowMillis * 4);
+                } catch (InterruptedException ignore) {
+                }
+            });
+
+            // the counter is published once per second, keep the loop polling until then
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (inspection.getSlowCallbacks() == 0 && System.currentTimeMillis() < deadline) {
+                loop.runOnLoop(() -> {
+                });
+                Thread.sleep(50);
+            }
+            assertEquals(1, inspection.getSlowCallbacks());
+
+            var slow = inspection.getSlowestCallbacks();
+            assertEquals(1, slow.size());
+            assertTrue(slow.get(0).costNanos >= slowMillis * 4 * 1_000_000);
+            assertTrue(slow.get(0).handler, slow.get(0).handler.startsWith(TestUtilities.class.getName()));
+            // the watchdog samples the loop thread while the callback is sleeping
+            var stack = inspection.getLastSampledStack();
+            assertNotNull(stack);
+            assertTrue(stack, stack.contains("loopInspectionSlowCallback"));
+
+            // served at /eventloops
+            String report = GlobalInspection.getInstance().getEventLoopInspection();
+            assertTrue(report, report.contains("loop-inspection-test "));
+            assertTrue(report, report.contains("slow-callbacks=1"));
+            assertTrue(report, report.contains(slow.get(0).handler));
+            assertTrue(report, report.contains("last sampled stack:"));
+        } finally {
+            loop.close();
+        }
+        // removed from the report when the loop stops
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (GlobalInspection.getInstance().getEventLoopInspection().contains("loop-inspection-test ")
+            && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertFalse(GlobalInspection.getInstance().getEventLoopInspection().contains("loop-inspection-test "));
+    }
+
+    @Test
+    public void runOnLoopKeepsOrderWithOverflow() throws Exception {
+        SelectorEventLoop loop = SelectorEventLoop.open();
+        loop.loop(r -> VProxyThread.create(r, "run-on-loop-order-test"));
+        try {
+            // much more than the array capacity, submitted while the loop is draining
+            int n = Config.eventLoopTaskQueueCapacity * 50;
+            int[] next = {0};
+            int[] outOfOrder = {-1};
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            for (int i = 0; i < n; ++i) {
+                int expected = i;
+                loop.nextTick(() -> {
+                    if (next[0] != expected && outOfOrder[0] == -1) {
+                        outOfOrder[0] = expected;
+                    }
+                    next[0] = expected + 1;
+                    if (expected == n - 1) {
+                        future.complete(null);
+                    }
+                });
+            }
+            future.get(10, TimeUnit.SECONDS);
+            assertEquals(-1, outOfOrder[0]);
+        } finally {
+            loop.close();
+        }
+    }
+
+    @Test
+    public void pooledRingBufferOnLoop() throws Exception {
+        SelectorEventLoop loop = SelectorEventLoop.open();
+        loop.loop(r -> VProxyThread.create(r, "pooled-ring-buffer-test"));
+        RingBufferPool pool;
+        try {
+            PooledRingBuffer buf = PooledRingBuffer.allocate(1024);
+            CompletableFuture<RingBufferPool> future = new CompletableFuture<>();
+            loop.runOnLoop(() -> {
+                try {
+                    RingBufferPool pool = RingBufferPool.current();
+                    assertNotNull(pool);
+                    long attached = pool.getAttached();
+
+                    // the first buffer is cut from a new slab, the rest of the slab is kept as free buffers
+                    assertEquals(10, buf.storeBytesFrom(ByteArrayChannel.fromFull("0123456789".getBytes())));
+                    assertTrue(buf.isAttached());
+                    assertEquals(attached + 1, pool.getAttached());
+                    long free = pool.getFreeBytes();
+                    assertTrue(free > 0);
+
+                    // written out, the buffer goes back to the free list of this pool
+                    assertEquals(10, buf.writeTo(ByteArrayChannel.fromEmpty(10)));
+                    assertFalse(buf.isAttached());
+                    assertEquals(attached, pool.getAttached());
+                    assertEquals(free + 1024, pool.getFreeBytes());
+
+                    // attached again, hit the free list
+                    assertEquals(3, buf.storeBytesFrom(ByteArrayChannel.fromFull("abc".getBytes())));
+                    assertEquals(attached + 1, pool.getAttached());
+                    assertEquals(free, pool.getFreeBytes());
+                    future.complete(pool);
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+            pool = future.get(5, TimeUnit.SECONDS);
+            long attached = pool.getAttached();
+            long free = pool.getFreeBytes();
+
+            // released on a thread without pool: still accounted in the owner pool,
+            // but not put back to its free list
+            assertNull(RingBufferPool.current());
+            buf.clean();
+            assertEquals(attached - 1, pool.getAttached());
+            assertEquals(free, pool.getFreeBytes());
+        } finally {
+            loop.close();
+        }
+
+        // the free list is dropped when the loop exits
+        long begin = System.currentTimeMillis();
+        while (pool.getFreeBytes() != 0) {
+            assertTrue("free list is not dropped", System.currentTimeMillis() - begin < 5_000);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void vectoredRingBuffer() throws Exception {
+        SimpleRingBuffer buf = SimpleRingBuffer.allocate(16);
+        assertEquals(12, buf.storeBytesFrom(ByteArrayChannel.fromFull("0123456789ab".getBytes())));
+        ByteArrayChannel out = ByteArrayChannel.fromEmpty(8);
+        assertEquals(8, buf.writeTo(out));
+        assertEquals("01234567", new String(out.getBytes()));
+
+        // free space is split into [12, 16) and [0, 8)
+        assertEquals(10, buf.storeBytesFromVectored(ByteArrayChannel.fromFull("cdefghijkl".getBytes())));
+        assertEquals(14, buf.used());
+        assertFalse(buf.getEPosIsAfterSPos());
+
+        // bytes are split into [8, 16) and [0, 6)
+        out = ByteArrayChannel.fromEmpty(20);
+        assertEquals(14, buf.writeToVectored(out));
+        assertEquals("89abcdefghijkl", new String(out.getBytes(), 0, 14));
+        assertEquals(0, buf.used());
+        assertEquals(0, buf.getSPos());
+        assertEquals(0, buf.getEPos());
+    }
+
+    @Test
+    public void vectoredRingBufferOverSocket() throws Exception {
+        byte[] input = new byte[8 * 1024 * 1024];
+        new Random(2).nextBytes(input);
+        ByteArrayChannel src = ByteArrayChannel.fromFull(input);
+        ByteArrayChannel dst = ByteArrayChannel.fromEmpty(input.length);
+
+        ServerSocketFD server = FDProvider.get().openServerSocketFD();
+        // inherited by the accepted socket, keeps the window small so that writes become partial
+        server.setOption(StandardSocketOptions.SO_RCVBUF, 4096);
+        server.bind(new IPPort("127.0.0.1", 31084));
+        SocketFD[] pair = socketPair(server);
+
+        SimpleRingBuffer out = SimpleRingBuffer.allocateDirect(65536);
+        SimpleRingBuffer in = SimpleRingBuffer.allocateDirect(65536);
+        int wrappedWrites = 0;
+        int partialWrappedWrites = 0;
+        int wrappedReads = 0;
+        long deadline = System.currentTimeMillis() + 10_000;
+        try {
+            while (dst.used() < input.length) {
+                assertTrue("relay timed out", System.currentTimeMillis() < deadline);
+                out.storeBytesFrom(src);
+                int used = out.used();
+                boolean wrapped = !out.getEPosIsAfterSPos() && out.getEPos() > 0;
+                int n = out.writeToVectored(pair[0]);
+                if (wrapped) {
+                    ++wrappedWrites;
+                    if (n < used) {
+                        ++partialWrappedWrites;
+                    }
+                }
+
+                // the free space is split into [ePos, cap) and [0, sPos)
+                if (in.getEPosIsAfterSPos() && in.getSPos() > 0 && in.getEPos() < in.capacity()) {
+                    ++wrappedReads;
+                }
+                in.storeBytesFromVectored(pair[1]);
+                // only drain a part of the buffer, so that the free space wraps
+                in.writeTo(dst, 40000);
+            }
+            assertEquals(0, out.used());
+            assertArrayEquals(input, dst.getBytes());
+            assertTrue("wrapped writes: " + wrappedWrites, wrappedWrites > 0);
+            assertTrue("partial wrapped writes: " + partialWrappedWrites, partialWrappedWrites > 0);
+            assertTrue("wrapped reads: " + wrappedReads, wrappedReads > 0);
+        } finally {
+            out.clean();
+            in.clean();
+            for (SocketFD fd : pair) {
+                fd.close();
+            }
+            server.close();
+        }
+    }
+
+    @Test
+    public void vectoredIOMoreBuffersThanIOVecs() throws Exception {
+        // more buffers than VProxyThreadVariable.IOVecs_maxCount, handled without readv/writev
+        int count = VProxyThread.VProxyThreadVariable.IOVecs_maxCount + 36;
+        byte[] input = new byte[count * 100];
+        new Random(3).nextBytes(input);
+        ByteBuffer[] srcs = new ByteBuffer[count];
+        ByteBuffer[] dsts = new ByteBuffer[count];
+        for (int i = 0; i < count; ++i) {
+            srcs[i] = ByteBuffer.allocateDirect(100);
+            srcs[i].put(input, i * 100, 100).flip();
+            dsts[i] = ByteBuffer.allocateDirect(100);
+        }
+
+        ServerSocketFD server = FDProvider.get().openServerSocketFD();
+        server.bind(new IPPort("127.0.0.1", 31085));
+        SocketFD[] pair = socketPair(server);
+        long deadline = System.currentTimeMillis() + 10_000;
+        try {
+            int wrote = 0;
+            int read = 0;
+            while (read < input.length) {
+                assertTrue("relay timed out", System.currentTimeMillis() < deadline);
+                if (wrote < input.length) {
+                    wrote += pair[0].write(srcs, 0, count);
+                }
+                int n = pair[1].read(dsts, 0, count);
+                if (n > 0) {
+                    read += n;
+                }
+            }
+            assertEquals(input.length, wrote);
+            for (int i = 0; i < count; ++i) {
+                assertFalse(srcs[i].hasRemaining());
+                assertFalse(dsts[i].hasRemaining());
+            }
+            byte[] output = new byte[input.length];
+            for (int i = 0; i < count; ++i) {
+                dsts[i].flip().get(output, i * 100, 100);
+            }
+            assertArrayEquals(input, output);
+        } finally {
+            for (SocketFD fd : pair) {
+                fd.close();
+            }
+            server.close();
+        }
+    }
+
+    @Test
+    public void proxyOutputRingBufferVectored() throws Exception {
+        int[] readable = {0};
+        int[] writable = {0};
+        int[] done = {0};
+        ProxyOutputRingBuffer out = ProxyOutputRingBuffer.allocateDirect(16);
+        out.addHandler(new RingBufferETHandler() {
+            @Override
+            public void readableET() {
+                ++readable[0];
+            }
+
+            @Override
+            public void writableET() {
+                ++writable[0];
+            }
+        });
+        assertEquals(10, out.storeBytesFrom(ByteArrayChannel.fromFull("0123456789".getBytes())));
+        int readableBefore = readable[0];
+
+        // the proxied bytes are split into [8, 16) and [0, 6)
+        SimpleRingBuffer proxied = SimpleRingBuffer.allocateDirect(16);
+        assertEquals(12, proxied.storeBytesFrom(ByteArrayChannel.fromFull("abcdefghijkl".getBytes())));
+        assertEquals(8, proxied.writeTo(ByteArrayChannel.fromEmpty(8)));
+        assertEquals(10, proxied.storeBytesFrom(ByteArrayChannel.fromFull("mnopqrstuv".getBytes())));
+        assertFalse(proxied.getEPosIsAfterSPos());
+
+        out.proxy(proxied, 12, () -> ++done[0]);
+        // the default buffer still has data, not switched to proxy mode
+        assertEquals(readableBefore, readable[0]);
+        // new data of the proxied buffer is not readable before the default buffer is drained
+        proxied.storeBytesFrom(ByteArrayChannel.fromFull("w".getBytes()));
+        assertEquals(readableBefore, readable[0]);
+
+        // partially written, only from the default buffer
+        ByteArrayChannel chnl = ByteArrayChannel.fromEmpty(4);
+        assertEquals(4, out.writeToVectored(chnl));
+        assertEquals("0123", new String(chnl.getBytes()));
+        assertEquals(0, done[0]);
+
+        // the rest of the default buffer and 12 bytes of the proxied buffer in one call
+        chnl = ByteArrayChannel.fromEmpty(32);
+        assertEquals(18, out.writeToVectored(chnl));
+        assertEquals("456789ijklmnopqrst", new String(chnl.getBytes(), 0, 18));
+        assertEquals(1, done[0]);
+        assertTrue(writable[0] > 0);
+        // the bytes exceeding the proxy length are kept in the proxied buffer
+        assertEquals("uvw", new String(readAll(proxied)));
+
+        // proxy with an empty default buffer switches to proxy mode immediately
+        readableBefore = readable[0];
+        SimpleRingBuffer proxied2 = SimpleRingBuffer.allocateDirect(16);
+        out.proxy(proxied2, 3, () -> ++done[0]);
+        assertEquals(readableBefore + 1, readable[0]);
+        proxied2.storeBytesFrom(ByteArrayChannel.fromFull("xyz".getBytes()));
+        assertEquals(readableBefore + 2, readable[0]);
+        chnl = ByteArrayChannel.fromEmpty(8);
+        assertEquals(3, out.writeToVectored(chnl));
+        assertEquals("xyz", new String(chnl.getBytes(), 0, 3));
+        assertEquals(2, done[0]);
+        assertEquals(0, out.used());
+
+        out.clean();
+        proxied.clean();
+        proxied2.clean();
+    }
+
+    private static byte[] readAll(RingBuffer buf) throws Exception {
+        ByteArrayChannel chnl = ByteArrayChannel.fromEmpty(buf.used());
+        buf.writeTo(chnl);
+        return chnl.getBytes();
+    }
+
+    @Test
+    public void spliceRingBuffer() throws Exception {
+        Assume.assumeTrue("splice is not supported", SpliceRingBuffer.isSupported());
+        byte[] input = new byte[4 * 1024 * 1024];
+        new Random(1).nextBytes(input);
+        byte[] copied = relayThroughRingBuffer(SimpleRingBuffer.allocateDirect(65536), input, 31080);
+        byte[] spliced = relayThroughRingBuffer(SpliceRingBuffer.allocate(), input, 31082);
+        assertArrayEquals(input, copied);
+        assertArrayEquals(copied, spliced);
+    }
+
+    private static SocketFD[] socketPair(ServerSocketFD server) throws Exception {
+        SocketFD client = FDProvider.get().openSocketFD();
+        client.connect(server.getLocalAddress());
+        SocketFD accepted;
+        while ((accepted = server.accept()) == null) {
+            Thread.sleep(1);
+        }
+        client.finishConnect();
+        return new SocketFD[]{client, accepted};
+    }
+
+    // input -> in[0] -> in[1] -> buf -> out[0] -> out[1] -> output
+    private static byte[] relayThroughRingBuffer(RingBuffer buf, byte[] input, int port) throws Exception {
+        ServerSocketFD server1 = FDProvider.get().openServerSocketFD();
+        server1.bind(new IPPort("127.0.0.1", port));
+        ServerSocketFD server2 = FDProvider.get().openServerSocketFD();
+        server2.bind(new IPPort("127.0.0.1", port + 1));
+        SocketFD[] in = socketPair(server1);
+        SocketFD[] out = socketPair(server2);
+
+        ByteBuffer src = ByteBuffer.wrap(input);
+        ByteBuffer dst = ByteBuffer.allocate(input.length);
+        long deadline = System.currentTimeMillis() + 10_000;
+        try {
+            // nothing to read does not make the buffer full
+            src.limit(100);
+            in[0].write(src);
+            while (buf.used() < 100) {
+                assertTrue("store timed out", System.currentTimeMillis() < deadline);
+                buf.storeBytesFrom(in[1]);
+            }
+            assertEquals(0, buf.storeBytesFrom(in[1]));
+            assertEquals(buf.capacity() - 100, buf.free());
+            src.limit(input.length);
+
+            while (dst.hasRemaining()) {
+                assertTrue("relay timed out", System.currentTimeMillis() < deadline);
+                if (src.hasRemaining()) {
+                    in[0].write(src);
+                }
+                buf.storeBytesFrom(in[1]);
+                assertTrue(buf.used() + buf.free() <= buf.capacity());
+                buf.writeTo(out[0], Integer.MAX_VALUE);
+                out[1].read(dst);
+            }
+            assertEquals(0, buf.used());
+            assertEquals(buf.capacity(), buf.free());
+        } finally {
+            buf.clean();
+            for (SocketFD fd : in) {
+                fd.close();
+            }
+            for (SocketFD fd : out) {
+                fd.close();
+            }
+            server1.close();
+            server2.close();
+        }
+        return dst.array();
+    }
+
+    @Test
+    public void flowTable() {
+        var expired = new ArrayList<String>();
+        var table = new FlowTable<String>(Consts.IP_PROTOCOL_UDP, expired::add);
+        var map = new HashMap<String, String>();
+        var rand = new Random(1);
+        for (int i = 0; i < 5000; ++i) {
+            IP src = i % 2 == 0 ? IP.from(new byte[]{10, 0, (byte) (i >> 8), (byte) i}) : IP.from("fd00::" + Integer.toHexString(i));
+            int port = rand.nextInt(65536);
+            String key = src.formatToIPString() + ":" + port;
+            assertNull(table.put(src, port, IP.from("10.0.0.1"), 53, key, 0));
+            map.put(key, key);
+            if (i % 3 == 0) {
+                assertEquals(key, table.remove(src, port, IP.from("10.0.0.1"), 53));
+                map.remove(key);
+            }
+        }
+        assertEquals(map.size(), table.size());
+        assertEquals(map.size(), table.values().size());
+        assertEquals(map.keySet(), new HashSet<>(table.values()));
+        assertTrue(expired.isEmpty());
+
+        // raw ipv4 header + udp header: 192.168.0.2:1234 => 192.168.0.1:53
+        ByteArray pkt = ByteArray.from(
+            0x45, 0, 0, 28, 0, 0, 0, 0, 64, 17, 0, 0,
+            192, 168, 0, 2, 192, 168, 0, 1,
+            0x04, 0xd2, 0, 53, 0, 8, 0, 0);
+        assertNull(table.lookup(pkt, 0));
+        table.put(IP.from("192.168.0.2"), 1234, IP.from("192.168.0.1"), 53, "raw", 0);
+        assertEquals("raw", table.lookup(pkt, 0));
+        assertNull(table.lookup(IP.from("192.168.0.1"), 53, IP.from("192.168.0.2"), 1234));
+
+        // fragments are not looked up with raw bytes: MF set, and non-zero fragment offset
+        assertTrue(table.isRawLookupSupported(pkt, 0));
+        pkt.set(6, (byte) 0x20);
+        assertFalse(table.isRawLookupSupported(pkt, 0));
+        assertNull(table.lookup(pkt, 0));
+        pkt.set(6, (byte) 0);
+        pkt.set(7, (byte) 1);
+        assertFalse(table.isRawLookupSupported(pkt, 0));
+        assertNull(table.lookup(pkt, 0));
+        pkt.set(7, (byte) 0);
+        // DF is fine
+        pkt.set(6, (byte) 0x40);
+        assertEquals("raw", table.lookup(pkt, 0));
+    }
+
+    @Test
+    public void flowTableTimeoutAndState() {
+        long now = Config.currentTimestamp;
+        try {
+            var expired = new ArrayList<String>();
+            var table = new FlowTable<String>(Consts.IP_PROTOCOL_TCP, expired::add);
+            IP a = IP.from("10.0.0.2");
+            IP b = IP.from("10.0.0.1");
+            table.put(a, 1234, b, 80, "nat", 0);
+            assertEquals(-1, table.getTTL(a, 1234, b, 80));
+            assertEquals(0, table.getState(a, 1234, b, 80));
+
+            assertTrue(table.setState(a, 1234, b, 80, 7));
+            assertEquals(7, table.getState(a, 1234, b, 80));
+            assertTrue(table.setTimeout(a, 1234, b, 80, 1000));
+            assertEquals(1000, table.getTTL(a, 1234, b, 80));
+
+            Config.currentTimestamp = now + 600;
+            assertEquals(400, table.getTTL(a, 1234, b, 80));
+            assertTrue(table.touch(a, 1234, b, 80));
+            assertEquals(1000, table.getTTL(a, 1234, b, 80));
+
+            Config.currentTimestamp = now + 1200;
+            assertEquals(0, table.sweep(table.capacity()));
+            assertTrue(expired.isEmpty());
+
+            Config.currentTimestamp = now + 1601;
+            assertEquals(1, table.sweep(table.capacity()));
+            assertEquals(List.of("nat"), expired);
+            assertEquals(0, table.size());
+            assertEquals(-1, table.getState(a, 1234, b, 80));
+            assertFalse(table.setTimeout(a, 1234, b, 80, 1000));
+        } finally {
+            Config.currentTimestamp = now;
+        }
+    }
+
+    @Test
+    public void ahoCorasick() {
+        var ac = new AhoCorasick.Builder()
+            .add("he", 3)
+            .add("she", 1)
+            .add("hers", 0)
+            .add("his", 2)
+            .build();
+        assertEquals(0, ac.minMatch("ushers"));
+        assertEquals(1, ac.minMatch("ushe"));
+        assertEquals(2, ac.minMatch("ahis"));
+        assertEquals(AhoCorasick.NO_MATCH, ac.minMatch("xyz"));
+    }
+
+    @Test
+    public void abp() {
+        var abp = new ABP("test", false);
+        abp.addRule("""
+            ! comment
+            @@||allow.example.com
+            ||example.com
+            |http://exact.org/path
+            .suffix.net
+            keyword
+            @@|http://start
+            /^https?:\\/\\/[^\\/]+regex\\.com/
+            """);
+        String[][] cases = {
+            {"example.com", "true"},
+            {"www.example.com", "true"},
+            {"allow.example.com", "false"},
+            {"a.allow.example.com", "false"},
+            {"notexample.com", "false"},
+            {"exact.org", "true"},
+            {"www.exact.org", "false"},
+            {"a.suffix.net", "true"},
+            {"xsuffix.net", "true"},
+            {"has-keyword.com", "true"},
+            {"start.com", "false"},
+            {"start-keyword.com", "true"}, // the first matching rule decides
+            {"www.regex.com", "true"},
+            {"regex.com", "false"},
+            {"other.com", "false"},
+        };
+        for (var c : cases) {
+            assertEquals(c[0], Boolean.parseBoolean(c[1]), abp.block(c[0]));
+            assertEquals(c[0], Boolean.parseBoolean(c[1]), abp.blockLinear(c[0]));
+        }
+    }
 }